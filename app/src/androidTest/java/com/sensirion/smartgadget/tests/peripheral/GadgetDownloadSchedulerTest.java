@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.peripheral;
+
+import android.support.annotation.NonNull;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.sensirion.smartgadget.peripheral.rht_sensor.external.GadgetDownloadScheduler;
+import com.sensirion.smartgadget.peripheral.rht_sensor.external.GadgetDownloadSchedulerListener;
+import com.sensirion.smartgadget.peripheral.rht_sensor.external.GadgetDownloadStarter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the queue, the concurrency cap, the retries and the progress of the scheduled gadget
+ * downloads with fake gadgets.
+ */
+public class GadgetDownloadSchedulerTest extends AndroidTestCase {
+
+    @NonNull
+    private static final String TEST_DEVICE_ADDRESS_1 = "AA:BB:CC:DD:EE:A1";
+    @NonNull
+    private static final String TEST_DEVICE_ADDRESS_2 = "AA:BB:CC:DD:EE:A2";
+    @NonNull
+    private static final String TEST_DEVICE_ADDRESS_3 = "AA:BB:CC:DD:EE:A3";
+    @NonNull
+    private static final String TEST_DEVICE_ADDRESS_4 = "AA:BB:CC:DD:EE:A4";
+    @NonNull
+    private static final List<String> TEST_DEVICE_ADDRESSES = Arrays.asList(
+            TEST_DEVICE_ADDRESS_1, TEST_DEVICE_ADDRESS_2, TEST_DEVICE_ADDRESS_3, TEST_DEVICE_ADDRESS_4);
+
+    @NonNull
+    private final FakeGadgets mGadgets = new FakeGadgets();
+    @NonNull
+    private final GadgetDownloadScheduler mScheduler = new GadgetDownloadScheduler(mGadgets);
+
+    /**
+     * {@inheritDoc}
+     */
+    public void tearDown() throws Exception {
+        mScheduler.cancel();
+        super.tearDown();
+    }
+
+    @SmallTest
+    public void testQueuedDownloadsRespectTheConcurrencyCap() {
+        mGadgets.connect(TEST_DEVICE_ADDRESSES);
+        mScheduler.setMaxConcurrentDownloads(2);
+        mScheduler.schedule(TEST_DEVICE_ADDRESSES);
+
+        assertEquals(Arrays.asList(TEST_DEVICE_ADDRESS_1, TEST_DEVICE_ADDRESS_2), mGadgets.getStartedDownloads());
+        mScheduler.onDownloadCompleted(TEST_DEVICE_ADDRESS_2);
+        assertEquals(Arrays.asList(TEST_DEVICE_ADDRESS_1, TEST_DEVICE_ADDRESS_2, TEST_DEVICE_ADDRESS_3), mGadgets.getStartedDownloads());
+
+        // Gadgets already waiting or downloading are not queued twice.
+        mScheduler.schedule(Collections.singletonList(TEST_DEVICE_ADDRESS_1));
+        assertEquals(3, mGadgets.getStartedDownloads().size());
+
+        mScheduler.onDownloadCompleted(TEST_DEVICE_ADDRESS_1);
+        mScheduler.onDownloadCompleted(TEST_DEVICE_ADDRESS_3);
+        assertEquals(TEST_DEVICE_ADDRESSES, mGadgets.getStartedDownloads());
+        assertTrue(mScheduler.isScheduling());
+        mScheduler.onDownloadCompleted(TEST_DEVICE_ADDRESS_4);
+        assertFalse(mScheduler.isScheduling());
+    }
+
+    @SmallTest
+    public void testProgressIsAggregatedOverAllGadgets() {
+        mGadgets.connect(TEST_DEVICE_ADDRESSES);
+        mScheduler.setMaxConcurrentDownloads(2);
+        mScheduler.schedule(TEST_DEVICE_ADDRESSES);
+        assertEquals(0, mScheduler.getProgress());
+
+        mScheduler.onDownloadProgress(TEST_DEVICE_ADDRESS_1, 50);
+        mScheduler.onDownloadProgress(TEST_DEVICE_ADDRESS_2, 30);
+        assertEquals((50 + 30) / 4, mScheduler.getProgress());
+
+        // A gadget that is not downloading does not report progress.
+        mScheduler.onDownloadProgress(TEST_DEVICE_ADDRESS_4, 90);
+        assertEquals((50 + 30) / 4, mScheduler.getProgress());
+
+        mScheduler.onDownloadCompleted(TEST_DEVICE_ADDRESS_1);
+        assertEquals((100 + 30) / 4, mScheduler.getProgress());
+        mScheduler.onGadgetDisconnected(TEST_DEVICE_ADDRESS_4);
+        assertEquals((100 + 30 + 100) / 4, mScheduler.getProgress());
+    }
+
+    @SmallTest
+    public void testUnavailableGadgetFailsWithoutAttempts() {
+        mGadgets.connect(Collections.singletonList(TEST_DEVICE_ADDRESS_1));
+        mScheduler.schedule(Arrays.asList(TEST_DEVICE_ADDRESS_1, TEST_DEVICE_ADDRESS_2));
+
+        assertEquals(Collections.singletonList(TEST_DEVICE_ADDRESS_1), mGadgets.getStartedDownloads());
+        assertEquals(50, mScheduler.getProgress());
+    }
+
+    @SmallTest
+    public void testRetryDelayGrowsExponentially() {
+        assertEquals(2000, GadgetDownloadScheduler.obtainRetryDelayMs(1));
+        assertEquals(4000, GadgetDownloadScheduler.obtainRetryDelayMs(2));
+        assertEquals(8000, GadgetDownloadScheduler.obtainRetryDelayMs(3));
+        assertEquals(60000, GadgetDownloadScheduler.obtainRetryDelayMs(10));
+        assertEquals(60000, GadgetDownloadScheduler.obtainRetryDelayMs(Integer.MAX_VALUE));
+    }
+
+    @MediumTest
+    public void testFailedDownloadIsRetriedUntilTheMaximumAttempts() throws InterruptedException {
+        final FinishListener listener = new FinishListener();
+        mScheduler.registerListener(listener);
+        try {
+            mGadgets.connect(TEST_DEVICE_ADDRESSES);
+            mGadgets.failDownloads(TEST_DEVICE_ADDRESS_1);
+            mScheduler.setMaxDownloadAttempts(2);
+            mScheduler.schedule(Arrays.asList(TEST_DEVICE_ADDRESS_1, TEST_DEVICE_ADDRESS_2));
+
+            // The failed gadget waits for its retry while the other one downloads.
+            assertEquals(Arrays.asList(TEST_DEVICE_ADDRESS_1, TEST_DEVICE_ADDRESS_2), mGadgets.getStartedDownloads());
+            mScheduler.onDownloadCompleted(TEST_DEVICE_ADDRESS_2);
+            assertTrue(mScheduler.isScheduling());
+
+            final long timeoutMs = 2 * GadgetDownloadScheduler.obtainRetryDelayMs(1);
+            assertTrue("testFailedDownloadIsRetriedUntilTheMaximumAttempts: The downloads did not finish",
+                    listener.mFinished.await(timeoutMs, TimeUnit.MILLISECONDS));
+            assertEquals(Arrays.asList(TEST_DEVICE_ADDRESS_1, TEST_DEVICE_ADDRESS_2, TEST_DEVICE_ADDRESS_1), mGadgets.getStartedDownloads());
+            assertEquals(1, listener.mNumberCompleted);
+            assertEquals(1, listener.mNumberFailed);
+        } finally {
+            mScheduler.unregisterListener(listener);
+        }
+    }
+
+    /**
+     * Connected gadgets whose downloads are only registered, the test reports their progress and results.
+     */
+    private static class FakeGadgets implements GadgetDownloadStarter {
+
+        @NonNull
+        private final Set<String> mConnectedAddresses = new HashSet<>();
+        @NonNull
+        private final Set<String> mFailingAddresses = new HashSet<>();
+        @NonNull
+        private final List<String> mStartedDownloads = new ArrayList<>();
+
+        private synchronized void connect(@NonNull final List<String> deviceAddresses) {
+            mConnectedAddresses.addAll(deviceAddresses);
+        }
+
+        private synchronized void failDownloads(@NonNull final String deviceAddress) {
+            mFailingAddresses.add(deviceAddress);
+        }
+
+        @NonNull
+        private synchronized List<String> getStartedDownloads() {
+            return new ArrayList<>(mStartedDownloads);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized boolean isDownloadAvailable(@NonNull final String deviceAddress) {
+            return mConnectedAddresses.contains(deviceAddress);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized boolean isDownloading(@NonNull final String deviceAddress) {
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized boolean startDownload(@NonNull final String deviceAddress) {
+            mStartedDownloads.add(deviceAddress);
+            return !mFailingAddresses.contains(deviceAddress);
+        }
+    }
+
+    private static class FinishListener implements GadgetDownloadSchedulerListener {
+
+        @NonNull
+        private final CountDownLatch mFinished = new CountDownLatch(1);
+        private volatile int mNumberCompleted = -1;
+        private volatile int mNumberFailed = -1;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onScheduledDownloadProgress(final int progress, final int numberDownloading, final int numberWaiting,
+                                                final int numberCompleted, final int numberFailed) {
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onScheduledDownloadsFinished(final int numberCompleted, final int numberFailed) {
+            mNumberCompleted = numberCompleted;
+            mNumberFailed = numberFailed;
+            mFinished.countDown();
+        }
+    }
+}
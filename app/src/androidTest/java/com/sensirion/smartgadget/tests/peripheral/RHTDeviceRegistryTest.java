@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.peripheral;
+
+import android.support.annotation.NonNull;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.sensirion.smartgadget.peripheral.rht_sensor.RHTDeviceRegistry;
+import com.sensirion.smartgadget.peripheral.rht_utils.RHTDataPoint;
+import com.sensirion.smartgadget.utils.DeviceModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RHTDeviceRegistryTest extends AndroidTestCase {
+
+    @NonNull
+    private static final String TEST_DEVICE_ADDRESS_1 = "AA:BB:CC:DD:EE:F1";
+    @NonNull
+    private static final String TEST_DEVICE_ADDRESS_2 = "AA:BB:CC:DD:EE:F2";
+
+    @NonNull
+    private final RHTDeviceRegistry mRegistry = new RHTDeviceRegistry();
+
+    @SmallTest
+    public void testConnectedDevicesKeepTheirConnectionOrder() {
+        assertTrue(mRegistry.onDeviceConnected(createModel(TEST_DEVICE_ADDRESS_2)));
+        assertTrue(mRegistry.onDeviceConnected(createModel(TEST_DEVICE_ADDRESS_1)));
+        assertFalse(mRegistry.onDeviceConnected(createModel(TEST_DEVICE_ADDRESS_1)));
+
+        final List<DeviceModel> connectedModels = mRegistry.getConnectedDeviceModels();
+        assertEquals(2, connectedModels.size());
+        assertEquals(TEST_DEVICE_ADDRESS_2, connectedModels.get(0).getAddress());
+        assertEquals(TEST_DEVICE_ADDRESS_1, mRegistry.getLastConnectedAddress());
+
+        assertTrue(mRegistry.onDeviceDisconnected(TEST_DEVICE_ADDRESS_1));
+        assertFalse(mRegistry.isConnected(TEST_DEVICE_ADDRESS_1));
+        assertEquals(1, mRegistry.getNumberConnectedDevices());
+        assertEquals(TEST_DEVICE_ADDRESS_2, mRegistry.getLastConnectedAddress());
+    }
+
+    @SmallTest
+    public void testDisconnectedDeviceKeepsItsLastDataPoint() {
+        mRegistry.onDeviceConnected(createModel(TEST_DEVICE_ADDRESS_1));
+        mRegistry.onDataPoint(TEST_DEVICE_ADDRESS_1, new RHTDataPoint(25f, 50f, 1000));
+        mRegistry.onDeviceDisconnected(TEST_DEVICE_ADDRESS_1);
+
+        final RHTDeviceRegistry.DeviceSnapshot snapshot = mRegistry.getSnapshot(TEST_DEVICE_ADDRESS_1);
+        assertNotNull(snapshot);
+        assertNull(snapshot.getDeviceModel());
+        assertNotNull(snapshot.getLastDataPoint());
+        assertEquals(1000, snapshot.getLastDataPoint().getTimestamp());
+    }
+
+    @SmallTest
+    public void testChangesSinceVersion() {
+        mRegistry.onDeviceConnected(createModel(TEST_DEVICE_ADDRESS_1));
+        mRegistry.onDeviceConnected(createModel(TEST_DEVICE_ADDRESS_2));
+        final List<RHTDeviceRegistry.DeviceSnapshot> changes = new ArrayList<>();
+        final long version = mRegistry.getChangesSince(0, changes);
+        assertEquals(2, changes.size());
+        assertEquals(mRegistry.getVersion(), version);
+
+        changes.clear();
+        assertEquals(version, mRegistry.getChangesSince(version, changes));
+        assertTrue(changes.isEmpty());
+
+        final long dataPointVersion = mRegistry.onDataPoint(TEST_DEVICE_ADDRESS_2, new RHTDataPoint(25f, 50f, 1000));
+        assertEquals(dataPointVersion, mRegistry.getChangesSince(version, changes));
+        assertEquals(1, changes.size());
+        assertEquals(TEST_DEVICE_ADDRESS_2, changes.get(0).getDeviceAddress());
+        assertEquals(dataPointVersion, changes.get(0).getVersion());
+    }
+
+    @SmallTest
+    public void testClearReportsTheRemovedDevices() {
+        mRegistry.onDeviceConnected(createModel(TEST_DEVICE_ADDRESS_1));
+        mRegistry.onDataPoint(TEST_DEVICE_ADDRESS_1, new RHTDataPoint(25f, 50f, 1000));
+        final List<RHTDeviceRegistry.DeviceSnapshot> changes = new ArrayList<>();
+        final long version = mRegistry.getChangesSince(0, changes);
+
+        mRegistry.clear();
+        assertNull(mRegistry.getSnapshot(TEST_DEVICE_ADDRESS_1));
+        assertTrue(mRegistry.getConnectedDeviceModels().isEmpty());
+        assertNull(mRegistry.getLastConnectedAddress());
+
+        changes.clear();
+        assertEquals(mRegistry.getVersion(), mRegistry.getChangesSince(version, changes));
+        assertEquals(1, changes.size());
+        assertEquals(TEST_DEVICE_ADDRESS_1, changes.get(0).getDeviceAddress());
+        assertTrue(changes.get(0).isRemoved());
+        assertFalse(changes.get(0).isConnected());
+        assertNull(changes.get(0).getLastDataPoint());
+
+        mRegistry.onDataPoint(TEST_DEVICE_ADDRESS_1, new RHTDataPoint(26f, 51f, 2000));
+        final RHTDeviceRegistry.DeviceSnapshot snapshot = mRegistry.getSnapshot(TEST_DEVICE_ADDRESS_1);
+        assertNotNull(snapshot);
+        assertFalse(snapshot.isRemoved());
+    }
+
+    @NonNull
+    private static DeviceModel createModel(@NonNull final String deviceAddress) {
+        return new DeviceModel(deviceAddress, 0, deviceAddress, false);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.peripheral;
+
+import android.support.annotation.NonNull;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSampleBus;
+import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSampleSubscriber;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Checks that the samples are delivered in the executor of every subscriber with its delivery policy.
+ */
+public class RHTSampleBusTest extends AndroidTestCase {
+
+    @NonNull
+    private static final String TEST_DEVICE_ADDRESS_1 = "AA:BB:CC:DD:EE:F1";
+    @NonNull
+    private static final String TEST_DEVICE_ADDRESS_2 = "AA:BB:CC:DD:EE:F2";
+
+    @NonNull
+    private final RHTSampleBus mBus = new RHTSampleBus();
+    @NonNull
+    private final ManualExecutor mExecutor = new ManualExecutor();
+    @NonNull
+    private final TestSubscriber mSubscriber = new TestSubscriber();
+
+    @SmallTest
+    public void testLatestWinsKeepsTheLastSampleOfEveryDevice() {
+        mBus.subscribe(mSubscriber, mExecutor, RHTSampleBus.DeliveryPolicy.LATEST_WINS, 8);
+        publishSamples();
+
+        // Publishing only schedules a single delivery, it never calls the subscriber.
+        assertEquals(1, mExecutor.mTasks.size());
+        assertTrue(mSubscriber.mTimestamps.isEmpty());
+
+        mExecutor.runAll();
+        assertEquals(2, mSubscriber.mTimestamps.size());
+        assertEquals(3L, (long) mSubscriber.mTimestamps.get(0));
+        assertEquals(4L, (long) mSubscriber.mTimestamps.get(1));
+    }
+
+    @SmallTest
+    public void testLosslessDeliversEverySampleInOrder() {
+        mBus.subscribe(mSubscriber, mExecutor, RHTSampleBus.DeliveryPolicy.LOSSLESS, 8);
+        publishSamples();
+
+        assertEquals(1, mExecutor.mTasks.size());
+        mExecutor.runAll();
+        assertEquals(4, mSubscriber.mTimestamps.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 1L, (long) mSubscriber.mTimestamps.get(i));
+        }
+    }
+
+    @SmallTest
+    public void testFullLosslessMailboxRejectsSamples() {
+        mBus.subscribe(mSubscriber, mExecutor, RHTSampleBus.DeliveryPolicy.LOSSLESS, 2);
+        publishSamples();
+
+        assertEquals(2, mBus.getNumberRejectedSamples());
+        assertEquals(2, mBus.getNumberRejectedSamples(mSubscriber));
+        mExecutor.runAll();
+        assertEquals(2, mSubscriber.mTimestamps.size());
+    }
+
+    @SmallTest
+    public void testUnsubscribedSubscriberDoesNotReceiveSamples() {
+        mBus.subscribe(mSubscriber, mExecutor, RHTSampleBus.DeliveryPolicy.LOSSLESS, 8);
+        publishSamples();
+        assertTrue(mBus.unsubscribe(mSubscriber));
+
+        mExecutor.runAll();
+        assertTrue(mSubscriber.mTimestamps.isEmpty());
+    }
+
+    private void publishSamples() {
+        mBus.publish(TEST_DEVICE_ADDRESS_1, 20f, 40f, 1);
+        mBus.publish(TEST_DEVICE_ADDRESS_2, 21f, 41f, 2);
+        mBus.publish(TEST_DEVICE_ADDRESS_1, 22f, 42f, 3);
+        mBus.publish(TEST_DEVICE_ADDRESS_2, 23f, 43f, 4);
+    }
+
+    private static class ManualExecutor implements Executor {
+
+        @NonNull
+        private final Queue<Runnable> mTasks = new LinkedList<>();
+
+        @Override
+        public void execute(@NonNull final Runnable runnable) {
+            mTasks.add(runnable);
+        }
+
+        private void runAll() {
+            while (!mTasks.isEmpty()) {
+                mTasks.poll().run();
+            }
+        }
+    }
+
+    private static class TestSubscriber implements RHTSampleSubscriber {
+
+        @NonNull
+        private final List<Long> mTimestamps = new ArrayList<>();
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onNewSample(@NonNull final String deviceAddress, final float temperature,
+                                final float relativeHumidity, final long timestamp) {
+            mTimestamps.add(timestamp);
+        }
+    }
+}
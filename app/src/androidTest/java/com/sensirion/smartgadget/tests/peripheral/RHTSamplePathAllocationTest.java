@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.peripheral;
+
+import android.os.Debug;
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSampleBus;
+import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSampleSubscriber;
+import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSensorFacade;
+import com.sensirion.smartgadget.persistence.history_database.HistoryDatabaseManager;
+import com.sensirion.smartgadget.tests.persistence.history_database.AbstractHistoryDatabaseTest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Counts the allocations of the live sample path in the thread that receives the samples, once
+ * every device sent its first sample. The samples enter through {@link RHTSensorFacade}, which
+ * stores the last value of the device and publishes it in the {@link RHTSampleBus}, with the
+ * history subscriber attached. The count covers the hand over to the history thread and the
+ * delivery to the subscribers of the test, not the work done later in the history thread. The
+ * samples are written into the test history database, and deleted after the test.
+ */
+public class RHTSamplePathAllocationTest extends AbstractHistoryDatabaseTest {
+
+    @NonNull
+    private static final String TEST_DEVICE_ADDRESS_1 = "AA:BB:CC:DD:EE:F1";
+    @NonNull
+    private static final String TEST_DEVICE_ADDRESS_2 = "AA:BB:CC:DD:EE:F2";
+
+    private static final int NUMBER_WARM_UP_SAMPLES = 100;
+    private static final int NUMBER_MEASURED_SAMPLES = 1000;
+    private static final long HISTORY_RELEASE_TIMEOUT_MS = 15000;
+
+    // Delivers in the publishing thread, so the delivery is counted in the thread of the test.
+    @NonNull
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull final Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @NonNull
+    private final CountingSubscriber mUserInterfaceSubscriber = new CountingSubscriber();
+    @NonNull
+    private final CountingSubscriber mPersistenceSubscriber = new CountingSubscriber();
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    protected List<String> getTestDeviceAddresses() {
+        return Arrays.asList(TEST_DEVICE_ADDRESS_1, TEST_DEVICE_ADDRESS_2);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        RHTSensorFacade.init(getContext());
+        final RHTSampleBus bus = RHTSampleBus.getInstance();
+        bus.subscribe(mUserInterfaceSubscriber, DIRECT_EXECUTOR, RHTSampleBus.DeliveryPolicy.LATEST_WINS, RHTSampleBus.DEFAULT_LATEST_WINS_CAPACITY);
+        bus.subscribe(mPersistenceSubscriber, DIRECT_EXECUTOR, RHTSampleBus.DeliveryPolicy.LOSSLESS, RHTSampleBus.DEFAULT_LOSSLESS_CAPACITY);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        RHTSampleBus.getInstance().unsubscribe(mUserInterfaceSubscriber);
+        RHTSampleBus.getInstance().unsubscribe(mPersistenceSubscriber);
+        // The history writes the samples in the background, releasing it waits until they are stored.
+        HistoryDatabaseManager.getInstance().release();
+        assertTrue(HistoryDatabaseManager.getInstance().awaitRelease(HISTORY_RELEASE_TIMEOUT_MS));
+        initTestHistoryDatabase(getContext());
+        mDatabaseFacade = HistoryDatabaseManager.getInstance().getDatabaseFacade();
+        super.tearDown();
+    }
+
+    @MediumTest
+    @SuppressWarnings("deprecation")
+    public void testSteadyStateSamplesDoNotAllocate() {
+        final RHTSensorFacade sensorFacade = RHTSensorFacade.getInstance();
+        publishSamples(sensorFacade, NUMBER_WARM_UP_SAMPLES);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        publishSamples(sensorFacade, NUMBER_MEASURED_SAMPLES);
+        Debug.stopAllocCounting();
+        final int numberAllocations = Debug.getThreadAllocCount();
+
+        assertEquals(NUMBER_WARM_UP_SAMPLES + NUMBER_MEASURED_SAMPLES, mUserInterfaceSubscriber.mNumberSamples);
+        assertEquals(NUMBER_WARM_UP_SAMPLES + NUMBER_MEASURED_SAMPLES, mPersistenceSubscriber.mNumberSamples);
+        assertEquals(String.format("testSteadyStateSamplesDoNotAllocate: %d allocations for %d samples.", numberAllocations, NUMBER_MEASURED_SAMPLES),
+                0, numberAllocations);
+    }
+
+    private static void publishSamples(@NonNull final RHTSensorFacade sensorFacade, final int numberSamples) {
+        for (int i = 0; i < numberSamples; i++) {
+            final String deviceAddress = (i % 2 == 0) ? TEST_DEVICE_ADDRESS_1 : TEST_DEVICE_ADDRESS_2;
+            final float temperature = 20f + (i % 10) / 10f;
+            final float humidity = 40f + (i % 20) / 10f;
+            sensorFacade.onNewRHTData(temperature, humidity, deviceAddress, i);
+        }
+    }
+
+    private static class CountingSubscriber implements RHTSampleSubscriber {
+
+        private int mNumberSamples = 0;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onNewSample(@NonNull final String deviceAddress, final float temperature,
+                                final float relativeHumidity, final long timestamp) {
+            mNumberSamples++;
+        }
+    }
+}
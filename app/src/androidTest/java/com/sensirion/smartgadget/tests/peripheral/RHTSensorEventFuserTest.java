@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.peripheral;
+
+import android.support.annotation.NonNull;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.sensirion.smartgadget.peripheral.rht_sensor.internal.RHTSensorEventFuser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RHTSensorEventFuserTest extends AndroidTestCase {
+
+    private static final long MS = 1000000;
+    private static final long TEST_EMISSION_INTERVAL_NS = 1000 * MS;
+    private static final long TEST_REORDER_WINDOW_NS = 10000 * MS;
+
+    @NonNull
+    private final List<long[]> mTimestamps = new ArrayList<>();
+    @NonNull
+    private final List<float[]> mValues = new ArrayList<>();
+    @NonNull
+    private final RHTSensorEventFuser.Listener mListener = new RHTSensorEventFuser.Listener() {
+        @Override
+        public void onFusedSample(final long timestampNs, final float temperature, final float humidity) {
+            mTimestamps.add(new long[]{timestampNs});
+            mValues.add(new float[]{temperature, humidity});
+        }
+    };
+
+    @SmallTest
+    public void testBatchesArePairedByTimestamp() {
+        final RHTSensorEventFuser fuser = new RHTSensorEventFuser(0, TEST_REORDER_WINDOW_NS, mListener);
+        final long now = 5000 * MS;
+        // The temperature batch arrives before the humidity batch of the same period.
+        fuser.onTemperatureEvent(1000 * MS, 21f, now);
+        assertTrue(fuser.onTemperatureEvent(3000 * MS, 23f, now));
+        assertTrue(mValues.isEmpty());
+        fuser.onHumidityEvent(1000 * MS, 41f, now);
+        assertTrue(fuser.onHumidityEvent(3000 * MS, 43f, now));
+        assertEquals(2, mValues.size());
+
+        // The last humidity waits for the next temperature until the reorder window has passed.
+        assertFalse(fuser.flush(3000 * MS + TEST_REORDER_WINDOW_NS));
+        assertEquals(3, mValues.size());
+        assertEquals(21f, mValues.get(0)[0]);
+        assertEquals(41f, mValues.get(0)[1]);
+        assertEquals(23f, mValues.get(1)[0]);
+        assertEquals(41f, mValues.get(1)[1]);
+        assertEquals(3000 * MS, mTimestamps.get(2)[0]);
+        assertEquals(43f, mValues.get(2)[1]);
+    }
+
+    @SmallTest
+    public void testSamplesAreEmittedOncePerInterval() {
+        final RHTSensorEventFuser fuser = new RHTSensorEventFuser(TEST_EMISSION_INTERVAL_NS, 0, mListener);
+        fuser.onTemperatureEvent(0, 20f, 0);
+        for (int i = 1; i <= 20; i++) {
+            final long timestamp = i * 100 * MS;
+            fuser.onHumidityEvent(timestamp, 40f + i, timestamp);
+        }
+        assertEquals(21, fuser.getNumberEvents());
+        assertEquals(2, fuser.getNumberEmittedSamples());
+        assertEquals(41f, mValues.get(0)[1]);
+        assertEquals(1100 * MS, mTimestamps.get(1)[0]);
+
+        // The newest suppressed sample is kept until the interval has expired.
+        assertTrue(fuser.flush(2000 * MS));
+        assertEquals(100 * MS, fuser.getFlushDelayNs(2000 * MS));
+        assertFalse(fuser.flush(2100 * MS));
+        assertEquals(3, fuser.getNumberEmittedSamples());
+        assertEquals(2000 * MS, mTimestamps.get(2)[0]);
+        assertEquals(20f, mValues.get(2)[0]);
+        assertEquals(60f, mValues.get(2)[1]);
+    }
+
+    @SmallTest
+    public void testResetForgetsTheLastValues() {
+        final RHTSensorEventFuser fuser = new RHTSensorEventFuser(0, 0, mListener);
+        fuser.onTemperatureEvent(0, 20f, 0);
+        fuser.reset();
+        fuser.onHumidityEvent(MS, 40f, MS);
+        assertTrue(mValues.isEmpty());
+    }
+}
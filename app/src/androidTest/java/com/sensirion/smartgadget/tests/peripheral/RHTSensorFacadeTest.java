@@ -31,14 +31,21 @@
 package com.sensirion.smartgadget.tests.peripheral;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
 import android.test.suitebuilder.annotation.SmallTest;
+import android.view.Choreographer;
 
 import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSensorFacade;
 import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSensorListener;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 public class RHTSensorFacadeTest extends AndroidTestCase {
 
     @NonNull
@@ -49,6 +56,11 @@ public class RHTSensorFacadeTest extends AndroidTestCase {
     private static final float TEST_TEMPERATURE = 25f;
     private static final float TEST_HUMIDITY = 54f;
 
+    private static final int NUMBER_FRAME_SAMPLES = 5;
+    // Frames waited after the first delivery, a sample left for a later frame is delivered meanwhile.
+    private static final int NUMBER_EXTRA_FRAMES = 3;
+    private static final long TIMEOUT_MS = 2000;
+
     @Nullable
     private RHTSensorFacade mSensorFacade;
 
@@ -113,6 +125,65 @@ public class RHTSensorFacadeTest extends AndroidTestCase {
         assertTrue(listener.numberOfNotifications == 2);
     }
 
+    /**
+     * Test that with frame aligned delivery several samples of one device posted within one frame
+     * reach the listener once, with the latest sample.
+     */
+    @MediumTest
+    public void testFrameAlignedDeliveryConflatesTheSamplesOfAFrame() throws InterruptedException {
+        assertNotNull("testFrameAlignedDeliveryConflatesTheSamplesOfAFrame: mSensorFacade is needed", mSensorFacade);
+        final RHTSensorFacade sensorFacade = mSensorFacade;
+        final boolean wasFrameAlignedDelivery = sensorFacade.isFrameAlignedDelivery();
+        sensorFacade.setFrameAlignedDelivery(true);
+        final FrameTestRHTListener listener = new FrameTestRHTListener(TEST_DEVICE_ADDRESS_1);
+        final CountDownLatch postedLatch = new CountDownLatch(1);
+        // No frame is drawn while the main thread runs this task, so all the samples wait for the same frame.
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                sensorFacade.registerListener(listener);
+                listener.startCounting();
+                for (int i = 0; i < NUMBER_FRAME_SAMPLES; i++) {
+                    sensorFacade.onNewRHTData(TEST_TEMPERATURE + i, TEST_HUMIDITY, TEST_DEVICE_ADDRESS_1);
+                }
+                postedLatch.countDown();
+            }
+        });
+        try {
+            assertTrue("testFrameAlignedDeliveryConflatesTheSamplesOfAFrame: The samples were not posted",
+                    postedLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertTrue("testFrameAlignedDeliveryConflatesTheSamplesOfAFrame: No sample was delivered",
+                    listener.awaitFirstNotification(TIMEOUT_MS));
+            assertTrue("testFrameAlignedDeliveryConflatesTheSamplesOfAFrame: The extra frames were not drawn",
+                    awaitFrames(NUMBER_EXTRA_FRAMES));
+            assertEquals(1, listener.getNumberNotifications());
+            assertEquals(TEST_TEMPERATURE + NUMBER_FRAME_SAMPLES - 1, listener.getLastTemperature(), 0f);
+        } finally {
+            sensorFacade.unregisterListener(listener);
+            sensorFacade.setFrameAlignedDelivery(wasFrameAlignedDelivery);
+        }
+    }
+
+    private static boolean awaitFrames(final int numberFrames) throws InterruptedException {
+        final CountDownLatch frameLatch = new CountDownLatch(numberFrames);
+        final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(final long frameTimeNanos) {
+                frameLatch.countDown();
+                if (frameLatch.getCount() > 0) {
+                    Choreographer.getInstance().postFrameCallback(this);
+                }
+            }
+        };
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().postFrameCallback(frameCallback);
+            }
+        });
+        return frameLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
     private static class TestRHTListener implements RHTSensorListener {
 
         @Nullable
@@ -146,4 +217,65 @@ public class RHTSensorFacadeTest extends AndroidTestCase {
             // DO NOTHING
         }
     }
+
+    /**
+     * Counts the samples of one device, which are delivered in the main thread.
+     */
+    private static class FrameTestRHTListener implements RHTSensorListener {
+
+        @NonNull
+        private final String mDeviceAddress;
+        @NonNull
+        private final CountDownLatch mFirstNotificationLatch = new CountDownLatch(1);
+        private volatile boolean mIsCounting = false;
+        private volatile int mNumberNotifications = 0;
+        private volatile float mLastTemperature = Float.NaN;
+
+        FrameTestRHTListener(@NonNull final String deviceAddress) {
+            mDeviceAddress = deviceAddress;
+        }
+
+        /**
+         * Ignores the samples notified on registration. Has to be called in the main thread.
+         */
+        void startCounting() {
+            mIsCounting = true;
+        }
+
+        boolean awaitFirstNotification(final long timeoutMs) throws InterruptedException {
+            return mFirstNotificationLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        int getNumberNotifications() {
+            return mNumberNotifications;
+        }
+
+        float getLastTemperature() {
+            return mLastTemperature;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onNewRHTSensorData(final float temperature,
+                                       final float relativeHumidity,
+                                       @Nullable final String deviceAddress) {
+            if (!mIsCounting || !mDeviceAddress.equals(deviceAddress)) {
+                return;
+            }
+            mLastTemperature = temperature;
+            mNumberNotifications++;
+            mFirstNotificationLatch.countDown();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onGadgetConnectionChanged(@NonNull final String deviceAddress,
+                                              final boolean deviceIsConnected) {
+            // DO NOTHING
+        }
+    }
 }
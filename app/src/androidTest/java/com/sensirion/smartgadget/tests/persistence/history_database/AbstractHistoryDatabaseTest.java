@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.persistence.history_database;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.test.AndroidTestCase;
+
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.parser.QueryResult;
+import com.sensirion.smartgadget.persistence.history_database.HistoryDatabaseManager;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryBlockTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDeviceTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryLoggedRangeTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryRollupTable;
+
+import java.util.List;
+
+/**
+ * Runs a test against the test history database. The values of the test devices are deleted
+ * before and after every test, so the tests do not depend on each other.
+ */
+public abstract class AbstractHistoryDatabaseTest extends AndroidTestCase {
+
+    @Nullable
+    protected DatabaseFacade mDatabaseFacade;
+
+    /**
+     * Initializes the {@link HistoryDatabaseManager} with the test database. When the application
+     * already opened the permanent database, it is released first, so the tests never write into it.
+     *
+     * @param context of the test.
+     */
+    public static void initTestHistoryDatabase(@NonNull final Context context) {
+        if (!HistoryDatabaseManager.init(context.getApplicationContext(), true)
+                && !HistoryDatabaseManager.getInstance().isTestDatabase()) {
+            HistoryDatabaseManager.getInstance().release();
+            HistoryDatabaseManager.init(context.getApplicationContext(), true);
+        }
+    }
+
+    /**
+     * Obtains the devices whose values are written by the test.
+     *
+     * @return {@link java.util.List} with the addresses of the test devices.
+     */
+    @NonNull
+    protected abstract List<String> getTestDeviceAddresses();
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setUp() throws Exception {
+        super.setUp();
+        initTestHistoryDatabase(getContext());
+        mDatabaseFacade = HistoryDatabaseManager.getInstance().getDatabaseFacade();
+        deleteTestValues();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        deleteTestValues();
+        super.tearDown();
+    }
+
+    /**
+     * Obtains the identifier of a device in the history.
+     *
+     * @param deviceAddress of the device.
+     * @return <code>long</code> with the device identifier.
+     */
+    protected long obtainDeviceId(@NonNull final String deviceAddress) {
+        assertNotNull(mDatabaseFacade);
+        final QueryResult result = mDatabaseFacade.rawDatabaseQuery(obtainDeviceIdSubquery(), new String[]{deviceAddress});
+        assertNotNull(result);
+        return result.getFirstQueryResult().getLong(0);
+    }
+
+    /**
+     * Counts the history data rows of a device.
+     *
+     * @param deviceAddress of the device.
+     * @return <code>int</code> with the number of rows.
+     */
+    protected int countRows(@NonNull final String deviceAddress) {
+        assertNotNull(mDatabaseFacade);
+        final QueryResult result = mDatabaseFacade.rawDatabaseQuery(String.format("SELECT COUNT(*) FROM %s WHERE %s = (%s)",
+                HistoryDataTable.getInstance().getName(), HistoryDataTable.COLUMN_DEVICE_ID, obtainDeviceIdSubquery()), new String[]{deviceAddress});
+        assertNotNull(result);
+        return result.getFirstQueryResult().getInt(0);
+    }
+
+    /**
+     * Obtains a subquery with the identifier of the device whose address is its only argument.
+     *
+     * @return {@link java.lang.String} with the SQL subquery.
+     */
+    @NonNull
+    protected static String obtainDeviceIdSubquery() {
+        return String.format("SELECT %s FROM %s WHERE %s = ?", HistoryDeviceTable.COLUMN_DEVICE_ID,
+                HistoryDeviceTable.getInstance().getName(), HistoryDeviceTable.COLUMN_DEVICE_ADDRESS);
+    }
+
+    private void deleteTestValues() {
+        if (mDatabaseFacade == null) {
+            return;
+        }
+        for (final String deviceAddress : getTestDeviceAddresses()) {
+            deleteTestValues(HistoryDataTable.getInstance().getName(), HistoryDataTable.COLUMN_DEVICE_ID, deviceAddress);
+            deleteTestValues(HistoryBlockTable.getInstance().getName(), HistoryBlockTable.COLUMN_DEVICE_ID, deviceAddress);
+            deleteTestValues(HistoryLoggedRangeTable.getInstance().getName(), HistoryLoggedRangeTable.COLUMN_DEVICE_ID, deviceAddress);
+            for (final HistoryRollupTable rollupTable : HistoryRollupTable.getInstances()) {
+                deleteTestValues(rollupTable.getName(), HistoryRollupTable.COLUMN_DEVICE_ID, deviceAddress);
+            }
+        }
+    }
+
+    private void deleteTestValues(@NonNull final String tableName, @NonNull final String deviceIdColumn, @NonNull final String deviceAddress) {
+        assertNotNull(mDatabaseFacade);
+        mDatabaseFacade.prepare(String.format("DELETE FROM %s WHERE %s = (%s)", tableName, deviceIdColumn, obtainDeviceIdSubquery()))
+                .bindString(1, deviceAddress).execute();
+    }
+}
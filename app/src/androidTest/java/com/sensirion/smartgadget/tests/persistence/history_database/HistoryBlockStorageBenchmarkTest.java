@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.persistence.history_database;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import com.sensirion.database_library.parser.QueryResult;
+import com.sensirion.database_library.parser.RowCallback;
+import com.sensirion.smartgadget.persistence.history_database.HistoryBlock;
+import com.sensirion.smartgadget.persistence.history_database.HistoryBlockStore;
+import com.sensirion.smartgadget.persistence.history_database.HistoryDataBatchWriter;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryBlockTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataTable;
+import com.sensirion.smartgadget.view.history.HistoryResult;
+import com.sensirion.smartgadget.view.history.HistorySeries;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks the block codec and compares the size and the read throughput of the compressed blocks
+ * with the history rows.
+ */
+public class HistoryBlockStorageBenchmarkTest extends AbstractHistoryDatabaseTest {
+
+    private static final String TAG = HistoryBlockStorageBenchmarkTest.class.getSimpleName();
+
+    @NonNull
+    private static final String BENCHMARK_DEVICE_ADDRESS = "AA:BB:CC:DD:EE:C1";
+    @NonNull
+    private static final List<String> BENCHMARK_DEVICE_LIST = Collections.singletonList(BENCHMARK_DEVICE_ADDRESS);
+    private static final int NUMBER_BENCHMARK_VALUES = 6 * 3600;
+    private static final long BENCHMARK_SAMPLING_PERIOD_MS = 1000;
+    // The values are stored in the future, so the rollups do not purge them during the benchmark.
+    private static final long BENCHMARK_TIME_OFFSET_MS = 24 * 3600 * 1000L;
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    protected List<String> getTestDeviceAddresses() {
+        return BENCHMARK_DEVICE_LIST;
+    }
+
+    @SmallTest
+    public void testBlockRoundTrip() {
+        final long blockStart = HistoryBlockTable.obtainBlockStart(System.currentTimeMillis());
+        final HistoryBlock block = new HistoryBlock(blockStart);
+        block.add(blockStart + 5000, 21.37f, 45.5f, false);
+        block.add(blockStart + 6000, 21.38f, 45.49f, true);
+        block.add(blockStart + 1000, -5.25f, 99.99f, false);
+        block.add(blockStart + 9007, 22.4f, 0f, true);
+
+        final HistoryBlock decodedBlock = new HistoryBlock(0);
+        decodedBlock.decode(blockStart, block.encode(), block.size());
+
+        assertEquals(block.size(), decodedBlock.size());
+        assertEquals(blockStart + 1000, decodedBlock.getTimestamp(0));
+        for (int i = 0; i < block.size(); i++) {
+            assertEquals(block.getTimestamp(i), decodedBlock.getTimestamp(i));
+            assertEquals(block.getTemperature(i), decodedBlock.getTemperature(i), HistoryBlock.VALUE_RESOLUTION / 2);
+            assertEquals(block.getHumidity(i), decodedBlock.getHumidity(i), HistoryBlock.VALUE_RESOLUTION / 2);
+            assertEquals(block.comesFromLog(i), decodedBlock.comesFromLog(i));
+        }
+        assertEquals(-5.25f, decodedBlock.getMinimumTemperature(), HistoryBlock.VALUE_RESOLUTION / 2);
+        assertEquals(99.99f, decodedBlock.getMaximumHumidity(), HistoryBlock.VALUE_RESOLUTION / 2);
+    }
+
+    @LargeTest
+    public void testBlockStorageSizeAndReadThroughput() {
+        assertNotNull("testBlockStorageSizeAndReadThroughput: mDatabaseFacade is needed", mDatabaseFacade);
+        final long firstTimestamp = HistoryBlockTable.obtainBlockStart(System.currentTimeMillis() + BENCHMARK_TIME_OFFSET_MS);
+        final long lastTimestamp = firstTimestamp + (NUMBER_BENCHMARK_VALUES - 1) * BENCHMARK_SAMPLING_PERIOD_MS;
+
+        final long initialRowBytes = obtainUsedDatabaseBytes();
+        final HistoryDataBatchWriter writer = new HistoryDataBatchWriter(mDatabaseFacade);
+        for (int i = 0; i < NUMBER_BENCHMARK_VALUES; i++) {
+            writer.add(BENCHMARK_DEVICE_ADDRESS, firstTimestamp + i * BENCHMARK_SAMPLING_PERIOD_MS, obtainTemperature(i), obtainHumidity(i), false);
+        }
+        writer.close();
+        final long rowBytes = obtainUsedDatabaseBytes() - initialRowBytes;
+
+        final HistoryBlockStore blockStore = new HistoryBlockStore(mDatabaseFacade);
+        final long deviceId = obtainDeviceId(BENCHMARK_DEVICE_ADDRESS);
+        final long initialBlockBytes = obtainUsedDatabaseBytes();
+        for (int i = 0; i < NUMBER_BENCHMARK_VALUES; i++) {
+            blockStore.append(deviceId, firstTimestamp + i * BENCHMARK_SAMPLING_PERIOD_MS, obtainTemperature(i), obtainHumidity(i), false);
+        }
+        blockStore.write();
+        final long blockBytes = obtainUsedDatabaseBytes() - initialBlockBytes;
+
+        final long rowReadStart = System.nanoTime();
+        final int numberReadRows = readRows(firstTimestamp, lastTimestamp);
+        final double rowValuesPerSecond = obtainValuesPerSecond(numberReadRows, System.nanoTime() - rowReadStart);
+
+        final long blockReadStart = System.nanoTime();
+        final HistoryResult blockResult = blockStore.readHistoryPoints(BENCHMARK_DEVICE_LIST, firstTimestamp, lastTimestamp);
+        final double blockValuesPerSecond = obtainValuesPerSecond(NUMBER_BENCHMARK_VALUES, System.nanoTime() - blockReadStart);
+        final long numberDroppedValues = blockStore.getNumberDroppedValues();
+        blockStore.release();
+
+        // The timing depends on the device load, so it is only logged.
+        Log.i(TAG, String.format("testBlockStorageSizeAndReadThroughput -> %d values. Rows: %d bytes, %.0f values/s - Blocks: %d bytes, %.0f values/s.",
+                NUMBER_BENCHMARK_VALUES, rowBytes, rowValuesPerSecond, blockBytes, blockValuesPerSecond));
+        assertEquals("testBlockStorageSizeAndReadThroughput: Not all rows were read", NUMBER_BENCHMARK_VALUES, numberReadRows);
+        assertEquals("testBlockStorageSizeAndReadThroughput: Values were dropped by the block store", 0, numberDroppedValues);
+        assertNotNull("testBlockStorageSizeAndReadThroughput: The blocks could not be read", blockResult);
+        final HistorySeries blockSeries = blockResult.getSeries(BENCHMARK_DEVICE_ADDRESS);
+        assertNotNull(blockSeries);
+        assertEquals("testBlockStorageSizeAndReadThroughput: Not all values were decoded", NUMBER_BENCHMARK_VALUES, blockSeries.size());
+        assertEquals(lastTimestamp, blockSeries.getTimestamp(NUMBER_BENCHMARK_VALUES - 1));
+        assertTrue("testBlockStorageSizeAndReadThroughput: Blocks should be smaller than rows", blockBytes < rowBytes);
+    }
+
+    private static float obtainTemperature(final int index) {
+        return 22f + (float) Math.sin(index / 600d) + (index % 7) * 0.01f;
+    }
+
+    private static float obtainHumidity(final int index) {
+        return 45f + 5f * (float) Math.cos(index / 900d);
+    }
+
+    private static double obtainValuesPerSecond(final int numberValues, final long elapsedNanoseconds) {
+        return numberValues * 1e9d / Math.max(1, elapsedNanoseconds);
+    }
+
+    private int readRows(final long firstTimestamp, final long lastTimestamp) {
+        assertNotNull(mDatabaseFacade);
+        final HistorySeries series = new HistorySeries(BENCHMARK_DEVICE_ADDRESS);
+        final String sql = String.format("SELECT %s, %s, %s FROM %s WHERE %s = (%s) AND %s BETWEEN %d AND %d ORDER BY %s",
+                HistoryDataTable.COLUMN_TIMESTAMP, HistoryDataTable.COLUMN_TEMPERATURE, HistoryDataTable.COLUMN_HUMIDITY,
+                HistoryDataTable.getInstance().getName(), HistoryDataTable.COLUMN_DEVICE_ID, obtainDeviceIdSubquery(),
+                HistoryDataTable.COLUMN_TIMESTAMP, firstTimestamp, lastTimestamp, HistoryDataTable.COLUMN_TIMESTAMP);
+        mDatabaseFacade.forEachRow(sql, new String[]{BENCHMARK_DEVICE_ADDRESS}, new RowCallback() {
+            @Override
+            public boolean onRow(@NonNull final Cursor cursor) {
+                series.add(cursor.getLong(0), cursor.getFloat(1), cursor.getFloat(2));
+                return true;
+            }
+        });
+        return series.size();
+    }
+
+    private long obtainUsedDatabaseBytes() {
+        return (obtainPragma("page_count") - obtainPragma("freelist_count")) * obtainPragma("page_size");
+    }
+
+    private long obtainPragma(@NonNull final String pragma) {
+        assertNotNull(mDatabaseFacade);
+        final QueryResult result = mDatabaseFacade.rawDatabaseQuery(String.format("PRAGMA %s;", pragma));
+        assertNotNull(result);
+        return result.getFirstQueryResult().getLong(0);
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.persistence.history_database;
+
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.sensirion.database_library.parser.QueryResult;
+import com.sensirion.database_library.parser.QueryResultRow;
+import com.sensirion.smartgadget.persistence.history_database.HistoryDataBatchWriter;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDeviceTable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that the batched history writer stores the same rows as the single row inserts, and
+ * logs the insert throughput of both.
+ */
+public class HistoryDataInsertBenchmarkTest extends AbstractHistoryDatabaseTest {
+
+    private static final String TAG = HistoryDataInsertBenchmarkTest.class.getSimpleName();
+
+    @NonNull
+    private static final String BENCHMARK_DEVICE_ADDRESS = "AA:BB:CC:DD:EE:B1";
+    private static final int NUMBER_BENCHMARK_ROWS = 2000;
+    private static final float TEST_TEMPERATURE = 25f;
+    private static final float TEST_TEMPERATURE_STEP = 0.001f;
+    private static final float TEST_HUMIDITY = 54f;
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    protected List<String> getTestDeviceAddresses() {
+        return Collections.singletonList(BENCHMARK_DEVICE_ADDRESS);
+    }
+
+    @LargeTest
+    public void testBatchedInsertThroughput() {
+        assertNotNull("testBatchedInsertThroughput: mDatabaseFacade is needed", mDatabaseFacade);
+        final long startTimestamp = System.currentTimeMillis();
+
+        final long singleInsertStart = System.nanoTime();
+        final HistoryDataTable table = HistoryDataTable.getInstance();
+        mDatabaseFacade.prepare(HistoryDeviceTable.getInstance().insertDeviceStatementSql()).bindString(1, BENCHMARK_DEVICE_ADDRESS).execute();
+        for (int i = 0; i < NUMBER_BENCHMARK_ROWS; i++) {
+            table.prepareInsertValue(mDatabaseFacade, BENCHMARK_DEVICE_ADDRESS, startTimestamp + i, TEST_TEMPERATURE, TEST_HUMIDITY, false).executeInsert();
+        }
+        final double singleInsertRowsPerSecond = obtainRowsPerSecond(System.nanoTime() - singleInsertStart);
+
+        final HistoryDataBatchWriter writer = new HistoryDataBatchWriter(mDatabaseFacade);
+        final long batchedInsertStart = System.nanoTime();
+        for (int i = 1; i <= NUMBER_BENCHMARK_ROWS; i++) {
+            writer.add(BENCHMARK_DEVICE_ADDRESS, startTimestamp - i, TEST_TEMPERATURE + i * TEST_TEMPERATURE_STEP, TEST_HUMIDITY, false);
+        }
+        writer.close();
+        final double batchedInsertRowsPerSecond = obtainRowsPerSecond(System.nanoTime() - batchedInsertStart);
+
+        // The timing depends on the device load, so it is only logged.
+        Log.i(TAG, String.format("testBatchedInsertThroughput -> Single inserts: %.0f rows/s - Batched inserts: %.0f rows/s.",
+                singleInsertRowsPerSecond, batchedInsertRowsPerSecond));
+        assertEquals("testBatchedInsertThroughput: Not all rows were written", 2 * NUMBER_BENCHMARK_ROWS, countRows(BENCHMARK_DEVICE_ADDRESS));
+
+        final QueryResult result = mDatabaseFacade.rawDatabaseQuery(String.format("SELECT %s, %s, %s, %s FROM %s WHERE %s = (%s) AND %s < ? ORDER BY %s DESC",
+                        HistoryDataTable.COLUMN_TIMESTAMP, HistoryDataTable.COLUMN_TEMPERATURE, HistoryDataTable.COLUMN_HUMIDITY, HistoryDataTable.COLUMN_COMES_FROM_LOG,
+                        table.getName(), HistoryDataTable.COLUMN_DEVICE_ID, obtainDeviceIdSubquery(), HistoryDataTable.COLUMN_TIMESTAMP, HistoryDataTable.COLUMN_TIMESTAMP),
+                new String[]{BENCHMARK_DEVICE_ADDRESS, Long.toString(startTimestamp)});
+        assertNotNull(result);
+        assertEquals("testBatchedInsertThroughput: Not all batched rows were written", NUMBER_BENCHMARK_ROWS, result.getNumberOfRows());
+        int i = 1;
+        for (final QueryResultRow row : result.getQueryResults()) {
+            assertEquals(startTimestamp - i, row.getLong(HistoryDataTable.COLUMN_TIMESTAMP).longValue());
+            assertEquals(TEST_TEMPERATURE + i * TEST_TEMPERATURE_STEP, row.getFloat(HistoryDataTable.COLUMN_TEMPERATURE), 1e-4f);
+            assertEquals(TEST_HUMIDITY, row.getFloat(HistoryDataTable.COLUMN_HUMIDITY), 1e-3f);
+            assertEquals(0, row.getInt(HistoryDataTable.COLUMN_COMES_FROM_LOG).intValue());
+            i++;
+        }
+    }
+
+    private static double obtainRowsPerSecond(final long elapsedNanoseconds) {
+        return NUMBER_BENCHMARK_ROWS * 1e9d / Math.max(1, elapsedNanoseconds);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.persistence.history_database;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.sensirion.smartgadget.R;
+import com.sensirion.smartgadget.persistence.history_database.HistoryDeadbandAggregator;
+import com.sensirion.smartgadget.persistence.history_database.HistoryLiveAggregator;
+import com.sensirion.smartgadget.persistence.history_database.HistoryWindowedMeanAggregator;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryTierConfiguration;
+
+/**
+ * Checks the values that the live aggregators decide to store.
+ */
+public class HistoryLiveAggregatorTest extends AndroidTestCase {
+
+    private static final long WINDOW_MS = 10 * 1000;
+    private static final float DELTA = 0.0001f;
+
+    @SmallTest
+    public void testWindowedMeanStoresTheFirstValueAndTheMeanOfEveryWindow() {
+        final HistoryWindowedMeanAggregator aggregator = new HistoryWindowedMeanAggregator(WINDOW_MS);
+        assertTrue(aggregator.addValue(1000, 20f, 40f));
+        assertEquals(1000, aggregator.getAggregatedTimestamp());
+
+        assertFalse(aggregator.addValue(2000, 20f, 40f));
+        assertFalse(aggregator.addValue(7000, 22f, 44f));
+        assertTrue(aggregator.addValue(12001, 24f, 48f));
+        assertEquals((2000 + 7000 + 12001) / 3, aggregator.getAggregatedTimestamp());
+        assertEquals(22f, aggregator.getAggregatedTemperature(), DELTA);
+        assertEquals(44f, aggregator.getAggregatedHumidity(), DELTA);
+
+        // The next window starts with the next value.
+        assertFalse(aggregator.addValue(13000, 30f, 50f));
+    }
+
+    @SmallTest
+    public void testDeadbandSkipsStableValues() {
+        final HistoryDeadbandAggregator aggregator = new HistoryDeadbandAggregator(
+                new HistoryWindowedMeanAggregator(0), 0.5f, 1f, 60 * 1000);
+        assertTrue(aggregator.addValue(1000, 20f, 40f));
+        assertFalse(aggregator.addValue(2000, 20.2f, 40.5f));
+        assertFalse(aggregator.addValue(3000, 19.8f, 39.5f));
+        assertEquals(2, aggregator.getNumberSkippedValues());
+
+        // A change beyond one of the thresholds is stored, after the last skipped value.
+        assertTrue(aggregator.addValue(4000, 20f, 41.5f));
+        assertEquals(3000, aggregator.getAggregatedTimestamp());
+        assertEquals(39.5f, aggregator.getAggregatedHumidity(), DELTA);
+        assertTrue(aggregator.nextAggregatedValue());
+        assertEquals(4000, aggregator.getAggregatedTimestamp());
+        assertEquals(41.5f, aggregator.getAggregatedHumidity(), DELTA);
+        assertFalse(aggregator.nextAggregatedValue());
+
+        // A change right after a stored value does not store anything else.
+        assertTrue(aggregator.addValue(5000, 21f, 41.5f));
+        assertEquals(5000, aggregator.getAggregatedTimestamp());
+        assertFalse(aggregator.nextAggregatedValue());
+
+        // A stable value is stored anyway after the maximum silence.
+        assertFalse(aggregator.addValue(64000, 21f, 41.5f));
+        assertTrue(aggregator.addValue(65000, 21f, 41.5f));
+        assertEquals(65000, aggregator.getAggregatedTimestamp());
+        assertFalse(aggregator.nextAggregatedValue());
+    }
+
+    @SmallTest
+    public void testFlushStoresThePendingValues() {
+        final HistoryWindowedMeanAggregator meanAggregator = new HistoryWindowedMeanAggregator(WINDOW_MS);
+        assertFalse(meanAggregator.flush());
+        assertTrue(meanAggregator.addValue(1000, 20f, 40f));
+        assertFalse(meanAggregator.addValue(2000, 22f, 44f));
+        assertTrue(meanAggregator.flush());
+        assertEquals(2000, meanAggregator.getAggregatedTimestamp());
+        assertEquals(22f, meanAggregator.getAggregatedTemperature(), DELTA);
+        assertFalse(meanAggregator.flush());
+
+        // The deadband stores the last skipped value, followed by the pending mean.
+        final HistoryDeadbandAggregator deadbandAggregator = new HistoryDeadbandAggregator(
+                new HistoryWindowedMeanAggregator(WINDOW_MS), 0.5f, 1f, 60 * 1000);
+        assertTrue(deadbandAggregator.addValue(1000, 20f, 40f));
+        assertFalse(deadbandAggregator.addValue(11000, 20.2f, 40.5f));
+        assertFalse(deadbandAggregator.addValue(21000, 20.2f, 40.5f));
+        assertEquals(1, deadbandAggregator.getNumberSkippedValues());
+        assertFalse(deadbandAggregator.addValue(22000, 20.1f, 40.2f));
+        assertTrue(deadbandAggregator.flush());
+        assertEquals(16000, deadbandAggregator.getAggregatedTimestamp());
+        assertTrue(deadbandAggregator.nextAggregatedValue());
+        assertEquals(22000, deadbandAggregator.getAggregatedTimestamp());
+        assertEquals(40.2f, deadbandAggregator.getAggregatedHumidity(), DELTA);
+        assertFalse(deadbandAggregator.nextAggregatedValue());
+        assertFalse(deadbandAggregator.flush());
+    }
+
+    @SmallTest
+    public void testDefaultMaxSilenceKeepsStableDevicesWithoutGraphGaps() {
+        final long gapThresholdMs = HistoryTierConfiguration.getInstance().getRawTier().getResolutionMs()
+                * getContext().getResources().getInteger(R.integer.history_graph_gap_resolution_multiplier);
+        final long maxSilenceMs = HistoryDeadbandAggregator.obtainDefaultMaxSilenceMs(getContext(), WINDOW_MS);
+        assertTrue(maxSilenceMs > 0);
+        assertTrue(maxSilenceMs < gapThresholdMs);
+
+        final HistoryLiveAggregator aggregator = HistoryDeadbandAggregator.factory(WINDOW_MS,
+                HistoryDeadbandAggregator.DEFAULT_TEMPERATURE_THRESHOLD, HistoryDeadbandAggregator.DEFAULT_HUMIDITY_THRESHOLD,
+                maxSilenceMs).create("AA:BB:CC:DD:EE:B1");
+        long lastStoredTimestamp = -1;
+        for (long timestamp = 0; timestamp < 10 * 60 * 1000; timestamp += 1000) {
+            if (!aggregator.addValue(timestamp, 21f, 45f)) {
+                continue;
+            }
+            do {
+                if (lastStoredTimestamp >= 0) {
+                    assertTrue(String.format("testDefaultMaxSilenceKeepsStableDevicesWithoutGraphGaps: Gap between %d and %d",
+                            lastStoredTimestamp, aggregator.getAggregatedTimestamp()),
+                            aggregator.getAggregatedTimestamp() - lastStoredTimestamp <= gapThresholdMs);
+                }
+                lastStoredTimestamp = aggregator.getAggregatedTimestamp();
+            } while (aggregator.nextAggregatedValue());
+        }
+        assertTrue(lastStoredTimestamp > 0);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.persistence.history_database;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.attributes.DatabaseAttributes;
+import com.sensirion.database_library.database_object.AbstractDatabaseObject;
+import com.sensirion.smartgadget.persistence.history_database.HistoryDataBatchWriter;
+import com.sensirion.smartgadget.persistence.history_database.HistoryRollupEngine;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryBlockTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDeviceTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryLoggedRangeTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryRollupStateTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryRollupTable;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that the downloaded gadget logs are stored only once, even after their raw values were
+ * merged into the rollup tables and purged.
+ */
+public class HistoryLoggedDataTest extends AndroidTestCase {
+
+    @NonNull
+    private static final String TEST_DATABASE_NAME = "history_logged_data_test.db";
+    @NonNull
+    private static final String TEST_DEVICE_ADDRESS = "AA:BB:CC:DD:EE:D1";
+    private static final int NUMBER_LOGGED_VALUES = 60;
+    private static final long LOGGING_PERIOD_MS = TimeUnit.SECONDS.toMillis(10);
+    // Older than the raw interval, so the purge deletes the logged values after their rollup.
+    private static final long LOG_AGE_MS = TimeUnit.HOURS.toMillis(2);
+
+    @Nullable
+    private DatabaseFacade mDatabaseFacade;
+    @Nullable
+    private HistoryDataBatchWriter mWriter;
+    @Nullable
+    private HistoryRollupEngine mRollupEngine;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setUp() throws Exception {
+        super.setUp();
+        getContext().deleteDatabase(TEST_DATABASE_NAME);
+        mDatabaseFacade = new DatabaseFacade(getContext(), new DatabaseAttributes(TEST_DATABASE_NAME, 1, obtainDatabaseObjects(), true));
+        mWriter = new HistoryDataBatchWriter(mDatabaseFacade);
+        mRollupEngine = new HistoryRollupEngine(mDatabaseFacade);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        if (mWriter != null) {
+            mWriter.close();
+        }
+        if (mRollupEngine != null) {
+            mRollupEngine.release();
+        }
+        if (mDatabaseFacade != null) {
+            mDatabaseFacade.closeDatabaseConnection();
+        }
+        getContext().deleteDatabase(TEST_DATABASE_NAME);
+        super.tearDown();
+    }
+
+    @SmallTest
+    public void testPurgedLogIsNotWrittenAgain() {
+        assertNotNull("testPurgedLogIsNotWrittenAgain: mWriter is needed", mWriter);
+        assertNotNull("testPurgedLogIsNotWrittenAgain: mRollupEngine is needed", mRollupEngine);
+        final long now = System.currentTimeMillis();
+        final long[] timestamps = obtainTimestamps(now - LOG_AGE_MS, NUMBER_LOGGED_VALUES);
+
+        assertEquals(NUMBER_LOGGED_VALUES, writeLog(timestamps));
+        mWriter.completeLoggedDownload(TEST_DEVICE_ADDRESS, timestamps[timestamps.length - 1]);
+        mRollupEngine.rollup();
+        mRollupEngine.purge(now);
+        assertEquals(0, obtainNumberRawValues());
+        final long numberRolledUpSamples = obtainNumberRolledUpSamples();
+        assertEquals(NUMBER_LOGGED_VALUES, numberRolledUpSamples);
+
+        // The gadget keeps its log, so the next download receives the same values again.
+        assertEquals(0, writeLog(timestamps));
+        mRollupEngine.rollup();
+        assertEquals(numberRolledUpSamples, obtainNumberRolledUpSamples());
+    }
+
+    @SmallTest
+    public void testFailedDownloadIsResumedAfterRestart() {
+        assertNotNull("testFailedDownloadIsResumedAfterRestart: mWriter is needed", mWriter);
+        assertNotNull("testFailedDownloadIsResumedAfterRestart: mRollupEngine is needed", mRollupEngine);
+        final long now = System.currentTimeMillis();
+        final long[] timestamps = obtainTimestamps(now - LOG_AGE_MS, 2 * NUMBER_LOGGED_VALUES);
+        final long[] receivedTimestamps = new long[NUMBER_LOGGED_VALUES];
+        System.arraycopy(timestamps, 0, receivedTimestamps, 0, NUMBER_LOGGED_VALUES);
+
+        // The download fails after the first half of the log and the application is restarted.
+        assertEquals(NUMBER_LOGGED_VALUES, writeLog(receivedTimestamps));
+        mRollupEngine.rollup();
+        mRollupEngine.purge(now);
+        assertEquals(0, obtainNumberRawValues());
+        mWriter.close();
+        mWriter = new HistoryDataBatchWriter(mDatabaseFacade);
+
+        assertEquals(NUMBER_LOGGED_VALUES, writeLog(timestamps));
+        mRollupEngine.rollup();
+        assertEquals(2 * NUMBER_LOGGED_VALUES, obtainNumberRolledUpSamples());
+    }
+
+    private int writeLog(@NonNull final long[] timestamps) {
+        final float[] temperatures = new float[timestamps.length];
+        final float[] humidities = new float[timestamps.length];
+        for (int i = 0; i < timestamps.length; i++) {
+            temperatures[i] = 20f + (i % 10) * 0.1f;
+            humidities[i] = 50f - (i % 10) * 0.1f;
+        }
+        return mWriter.writeLoggedValues(TEST_DEVICE_ADDRESS, timestamps, temperatures, humidities,
+                timestamps[0], timestamps[timestamps.length - 1]);
+    }
+
+    @NonNull
+    private static long[] obtainTimestamps(final long firstTimestamp, final int numberValues) {
+        final long[] timestamps = new long[numberValues];
+        for (int i = 0; i < numberValues; i++) {
+            timestamps[i] = firstTimestamp + i * LOGGING_PERIOD_MS;
+        }
+        return timestamps;
+    }
+
+    private long obtainNumberRawValues() {
+        return mDatabaseFacade.prepare(String.format("SELECT COUNT(*) FROM %s;", HistoryDataTable.getInstance().getName())).queryForLong(-1);
+    }
+
+    /**
+     * Counts the samples of the coarsest rollup table, whose buckets are never purged during the test.
+     */
+    private long obtainNumberRolledUpSamples() {
+        final List<HistoryRollupTable> rollupTables = HistoryRollupTable.getInstances();
+        final HistoryRollupTable rollupTable = rollupTables.get(rollupTables.size() - 1);
+        return mDatabaseFacade.prepare(String.format("SELECT IFNULL(SUM(%s), 0) FROM %s;",
+                HistoryRollupTable.COLUMN_SAMPLE_COUNT, rollupTable.getName())).queryForLong(-1);
+    }
+
+    @NonNull
+    private static Queue<AbstractDatabaseObject> obtainDatabaseObjects() {
+        final Queue<AbstractDatabaseObject> databaseObjects = new LinkedList<>();
+        databaseObjects.add(HistoryDataTable.getInstance());
+        databaseObjects.addAll(HistoryRollupTable.getInstances());
+        databaseObjects.add(HistoryRollupStateTable.getInstance());
+        databaseObjects.add(HistoryBlockTable.getInstance());
+        databaseObjects.add(HistoryLoggedRangeTable.getInstance());
+        databaseObjects.add(HistoryDeviceTable.getInstance());
+        databaseObjects.addAll(HistoryDataTable.getInstance().getIndices());
+        return databaseObjects;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.persistence.history_database;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.DatabaseStatement;
+import com.sensirion.database_library.parser.RowCallback;
+import com.sensirion.smartgadget.persistence.history_database.HistoryDataBatchWriter;
+import com.sensirion.smartgadget.persistence.history_database.HistoryDatabaseManager;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDeviceTable;
+import com.sensirion.smartgadget.view.history.HistoryResult;
+import com.sensirion.smartgadget.view.history.type.HistoryIntervalType;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reports the query plan and the reading time of every history data source.
+ */
+public class HistoryQueryPlanTest extends AndroidTestCase {
+
+    private static final String TAG = HistoryQueryPlanTest.class.getSimpleName();
+
+    @NonNull
+    private static final String TEST_DEVICE_ADDRESS = "AA:BB:CC:DD:EE:Q1";
+    @NonNull
+    private static final List<String> TEST_DEVICE_LIST = Collections.singletonList(TEST_DEVICE_ADDRESS);
+    private static final int NUMBER_TEST_ROWS = 3000;
+    private static final long TEST_ROW_INTERVAL_MS = 200;
+    private static final float TEST_TEMPERATURE = 25f;
+    private static final float TEST_HUMIDITY = 54f;
+
+    @Nullable
+    private DatabaseFacade mDatabaseFacade;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setUp() throws Exception {
+        super.setUp();
+        HistoryDatabaseManager.init(getContext().getApplicationContext(), true);
+        mDatabaseFacade = HistoryDatabaseManager.getInstance().getDatabaseFacade();
+        final HistoryDataBatchWriter writer = new HistoryDataBatchWriter(mDatabaseFacade);
+        final long lastTimestamp = System.currentTimeMillis();
+        for (int i = 0; i < NUMBER_TEST_ROWS; i++) {
+            writer.add(TEST_DEVICE_ADDRESS, lastTimestamp - i * TEST_ROW_INTERVAL_MS, TEST_TEMPERATURE, TEST_HUMIDITY, false);
+        }
+        writer.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        if (mDatabaseFacade != null) {
+            mDatabaseFacade.rawDatabaseQuery(String.format("DELETE FROM %s WHERE %s = (SELECT %s FROM %s WHERE %s = ?)",
+                    HistoryDataTable.getInstance().getName(), HistoryDataTable.COLUMN_DEVICE_ID, HistoryDeviceTable.COLUMN_DEVICE_ID,
+                    HistoryDeviceTable.getInstance().getName(), HistoryDeviceTable.COLUMN_DEVICE_ADDRESS), new String[]{TEST_DEVICE_ADDRESS});
+        }
+        super.tearDown();
+    }
+
+    @LargeTest
+    public void testHistoryViewQueryPlans() {
+        assertNotNull("testHistoryViewQueryPlans: mDatabaseFacade is needed", mDatabaseFacade);
+        for (final HistoryIntervalType interval : HistoryIntervalType.getIntervals()) {
+            final String plan = obtainQueryPlan(interval.getDataSource().prepareHistoryDataQuery(mDatabaseFacade, TEST_DEVICE_LIST, interval.getNumberMilliseconds()));
+
+            final long initialTime = System.nanoTime();
+            final HistoryResult result = HistoryDatabaseManager.getInstance().getHistoryPoints(interval, TEST_DEVICE_LIST);
+            final double elapsedMilliseconds = (System.nanoTime() - initialTime) / 1e6d;
+
+            assertNotNull(String.format("testHistoryViewQueryPlans: Interval %s could not be read", interval), result);
+            Log.i(TAG, String.format("testHistoryViewQueryPlans -> %s: %d values read in %.2f milliseconds. Query plan:%n%s",
+                    interval, result.size(), elapsedMilliseconds, plan));
+        }
+    }
+
+    @NonNull
+    private String obtainQueryPlan(@NonNull final DatabaseStatement statement) {
+        final StringBuilder plan = new StringBuilder();
+        final int numberRows = statement.prepareQueryPlan().forEachRow(new RowCallback() {
+            @Override
+            public boolean onRow(@NonNull final Cursor cursor) {
+                plan.append(cursor.getString(cursor.getColumnIndexOrThrow("detail"))).append('\n');
+                return true;
+            }
+        });
+        assertTrue(String.format("obtainQueryPlan: The query plan of %s could not be obtained", statement.getSql()), numberRows > 0);
+        return plan.toString();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.persistence.history_database;
+
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.sensirion.smartgadget.persistence.history_database.HistoryDataBatchWriter;
+import com.sensirion.smartgadget.persistence.history_database.HistoryDatabaseManager;
+import com.sensirion.smartgadget.view.history.HistoryResult;
+import com.sensirion.smartgadget.view.history.type.HistoryIntervalType;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures the latency of the one week history reads while a writer stores values of several
+ * devices at 10 Hz, and compares it with the latency of the same reads without a writer.
+ */
+public class HistoryReadWriteConcurrencyBenchmarkTest extends AbstractHistoryDatabaseTest {
+
+    private static final String TAG = HistoryReadWriteConcurrencyBenchmarkTest.class.getSimpleName();
+
+    @NonNull
+    private static final List<String> BENCHMARK_DEVICE_LIST = Arrays.asList("AA:BB:CC:DD:EE:D1", "AA:BB:CC:DD:EE:D2", "AA:BB:CC:DD:EE:D3");
+    private static final long WRITER_PERIOD_MS = 100;
+    private static final long BENCHMARK_DURATION_MS = 10000;
+    private static final int NUMBER_IDLE_READS = 10;
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    protected List<String> getTestDeviceAddresses() {
+        return BENCHMARK_DEVICE_LIST;
+    }
+
+    @LargeTest
+    public void testWeekReadLatencyWhileWriting() throws InterruptedException {
+        assertNotNull("testWeekReadLatencyWhileWriting: mDatabaseFacade is needed", mDatabaseFacade);
+        final HistoryDatabaseManager databaseManager = HistoryDatabaseManager.getInstance();
+
+        final long[] idleReadLatencies = new long[NUMBER_IDLE_READS];
+        for (int i = 0; i < NUMBER_IDLE_READS; i++) {
+            idleReadLatencies[i] = readOneWeek(databaseManager);
+        }
+
+        final AtomicBoolean isWriting = new AtomicBoolean(true);
+        final int[] numberWrittenValues = new int[1];
+        final Thread writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Every tick is written in its own transaction, the worst case for the readers.
+                final HistoryDataBatchWriter writer = new HistoryDataBatchWriter(mDatabaseFacade, HistoryDataBatchWriter.DEFAULT_MAX_BATCH_SIZE, 0);
+                long nextTickTime = System.currentTimeMillis();
+                while (isWriting.get()) {
+                    for (int i = 0; i < BENCHMARK_DEVICE_LIST.size(); i++) {
+                        writer.add(BENCHMARK_DEVICE_LIST.get(i), nextTickTime, 22f + i, 45f + i, false);
+                    }
+                    numberWrittenValues[0] += writer.flushIfDue();
+                    nextTickTime += WRITER_PERIOD_MS;
+                    final long sleepTime = nextTickTime - System.currentTimeMillis();
+                    if (sleepTime > 0) {
+                        try {
+                            Thread.sleep(sleepTime);
+                        } catch (@NonNull final InterruptedException e) {
+                            break;
+                        }
+                    }
+                }
+                numberWrittenValues[0] += writer.flush();
+                writer.close();
+            }
+        }, "BenchmarkWriter");
+        writerThread.start();
+
+        final long[] writingReadLatencies = new long[(int) (BENCHMARK_DURATION_MS / WRITER_PERIOD_MS)];
+        final long endTime = System.currentTimeMillis() + BENCHMARK_DURATION_MS;
+        int numberWritingReads = 0;
+        while (System.currentTimeMillis() < endTime && numberWritingReads < writingReadLatencies.length) {
+            writingReadLatencies[numberWritingReads++] = readOneWeek(databaseManager);
+        }
+        isWriting.set(false);
+        writerThread.join();
+
+        // The latencies depend on the device load, so they are only logged.
+        Log.i(TAG, String.format("testWeekReadLatencyWhileWriting -> %d values written. Idle reads: %s - Reads while writing: %s.",
+                numberWrittenValues[0], obtainLatencySummary(idleReadLatencies, NUMBER_IDLE_READS),
+                obtainLatencySummary(writingReadLatencies, numberWritingReads)));
+        assertTrue("testWeekReadLatencyWhileWriting: No history was read while writing", numberWritingReads > 0);
+        assertTrue("testWeekReadLatencyWhileWriting: The writer did not store any value", numberWrittenValues[0] > 0);
+        int numberStoredValues = 0;
+        for (final String deviceAddress : BENCHMARK_DEVICE_LIST) {
+            numberStoredValues += countRows(deviceAddress);
+        }
+        assertEquals("testWeekReadLatencyWhileWriting: Not all written values were stored", numberWrittenValues[0], numberStoredValues);
+    }
+
+    private static long readOneWeek(@NonNull final HistoryDatabaseManager databaseManager) {
+        final long initialTime = System.nanoTime();
+        final HistoryResult result = databaseManager.getHistoryPoints(obtainOneWeekInterval(), BENCHMARK_DEVICE_LIST);
+        assertNotNull("readOneWeek: The history could not be read", result);
+        return System.nanoTime() - initialTime;
+    }
+
+    @NonNull
+    private static HistoryIntervalType obtainOneWeekInterval() {
+        for (final HistoryIntervalType interval : HistoryIntervalType.getIntervals()) {
+            if (interval.getNumberMilliseconds() == TimeUnit.DAYS.toMillis(7)) {
+                return interval;
+            }
+        }
+        throw new AssertionError("obtainOneWeekInterval: The tier configuration has no one week interval");
+    }
+
+    @NonNull
+    private static String obtainLatencySummary(@NonNull final long[] latencies, final int numberLatencies) {
+        final long[] sortedLatencies = Arrays.copyOf(latencies, numberLatencies);
+        Arrays.sort(sortedLatencies);
+        final double nanosecondsPerMillisecond = 1e6d;
+        return String.format("%d reads, median %.2f ms, max %.2f ms", numberLatencies,
+                sortedLatencies[numberLatencies / 2] / nanosecondsPerMillisecond,
+                sortedLatencies[numberLatencies - 1] / nanosecondsPerMillisecond);
+    }
+}
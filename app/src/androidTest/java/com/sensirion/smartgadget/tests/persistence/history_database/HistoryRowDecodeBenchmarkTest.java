@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.persistence.history_database;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.sensirion.database_library.DatabaseStatement;
+import com.sensirion.database_library.parser.CursorReader;
+import com.sensirion.database_library.parser.QueryResult;
+import com.sensirion.database_library.parser.QueryResultRow;
+import com.sensirion.smartgadget.persistence.history_database.HistoryDataBatchWriter;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataTable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares the per row decoding cost of a large history result read through the column names of
+ * a {@link QueryResult} with the one of a {@link CursorReader} that resolves the column indices
+ * once, like the history read path does.
+ */
+public class HistoryRowDecodeBenchmarkTest extends AbstractHistoryDatabaseTest {
+
+    private static final String TAG = HistoryRowDecodeBenchmarkTest.class.getSimpleName();
+
+    @NonNull
+    private static final String BENCHMARK_DEVICE_ADDRESS = "AA:BB:CC:DD:EE:E1";
+    private static final int NUMBER_BENCHMARK_ROWS = 100000;
+    private static final long BENCHMARK_SAMPLING_PERIOD_MS = 100;
+    // The values are stored in the future, so the rollups do not purge them during the benchmark.
+    private static final long BENCHMARK_TIME_OFFSET_MS = 24 * 3600 * 1000L;
+
+    private long mFirstTimestamp;
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    protected List<String> getTestDeviceAddresses() {
+        return Collections.singletonList(BENCHMARK_DEVICE_ADDRESS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        assertNotNull(mDatabaseFacade);
+        mFirstTimestamp = System.currentTimeMillis() + BENCHMARK_TIME_OFFSET_MS;
+        final HistoryDataBatchWriter writer = new HistoryDataBatchWriter(mDatabaseFacade);
+        for (int i = 0; i < NUMBER_BENCHMARK_ROWS; i++) {
+            writer.add(BENCHMARK_DEVICE_ADDRESS, mFirstTimestamp + i * BENCHMARK_SAMPLING_PERIOD_MS, 20f + (i % 100) * 0.1f, 50f, false);
+        }
+        writer.close();
+    }
+
+    @LargeTest
+    public void testRowDecodeCost() {
+        assertNotNull("testRowDecodeCost: mDatabaseFacade is needed", mDatabaseFacade);
+
+        final long queryResultStart = System.nanoTime();
+        final QueryResult queryResult = mDatabaseFacade.rawDatabaseQuery(obtainBenchmarkSql(),
+                new String[]{BENCHMARK_DEVICE_ADDRESS, Long.toString(mFirstTimestamp)});
+        assertNotNull("testRowDecodeCost: The query result could not be read", queryResult);
+        final long namedColumnsStart = System.nanoTime();
+        double queryResultChecksum = 0;
+        for (final QueryResultRow row : queryResult.getQueryResults()) {
+            queryResultChecksum += row.getLong(HistoryDataTable.COLUMN_TIMESTAMP) - mFirstTimestamp;
+            queryResultChecksum += row.getFloat(HistoryDataTable.COLUMN_TEMPERATURE);
+            queryResultChecksum += row.getFloat(HistoryDataTable.COLUMN_HUMIDITY);
+        }
+        final long queryResultEnd = System.nanoTime();
+
+        final DatabaseStatement statement = mDatabaseFacade.prepare(obtainBenchmarkSql())
+                .bindString(1, BENCHMARK_DEVICE_ADDRESS).bindLong(2, mFirstTimestamp);
+        final int[] numberReadRows = new int[1];
+        // Adds every decoded value to a checksum, so no object is created per row.
+        final double[] readerChecksum = new double[1];
+        final long firstTimestamp = mFirstTimestamp;
+        final long readerStart = System.nanoTime();
+        final boolean wasRead = statement.query(new CursorReader() {
+            @Override
+            public void read(@NonNull final Cursor cursor) {
+                final int timestampIndex = cursor.getColumnIndexOrThrow(HistoryDataTable.COLUMN_TIMESTAMP);
+                final int temperatureIndex = cursor.getColumnIndexOrThrow(HistoryDataTable.COLUMN_TEMPERATURE);
+                final int humidityIndex = cursor.getColumnIndexOrThrow(HistoryDataTable.COLUMN_HUMIDITY);
+                while (cursor.moveToNext()) {
+                    readerChecksum[0] += cursor.getLong(timestampIndex) - firstTimestamp;
+                    readerChecksum[0] += cursor.getFloat(temperatureIndex);
+                    readerChecksum[0] += cursor.getFloat(humidityIndex);
+                    numberReadRows[0]++;
+                }
+            }
+        });
+        final long readerEnd = System.nanoTime();
+
+        // The timing depends on the device load, so it is only logged.
+        Log.i(TAG, String.format("testRowDecodeCost -> %d rows. QueryResult: %.0f ns/row (%.0f ns/row in the named getters) - CursorReader: %.0f ns/row.",
+                NUMBER_BENCHMARK_ROWS, obtainNanosecondsPerRow(queryResultEnd - queryResultStart), obtainNanosecondsPerRow(queryResultEnd - namedColumnsStart),
+                obtainNanosecondsPerRow(readerEnd - readerStart)));
+        assertEquals("testRowDecodeCost: Not all rows were copied", NUMBER_BENCHMARK_ROWS, queryResult.getNumberOfRows());
+        assertTrue("testRowDecodeCost: The cursor reader query failed", wasRead);
+        assertEquals("testRowDecodeCost: Not all rows were read", NUMBER_BENCHMARK_ROWS, numberReadRows[0]);
+        assertEquals("testRowDecodeCost: Both decoders should read the same values", queryResultChecksum, readerChecksum[0], 1e-3 * NUMBER_BENCHMARK_ROWS);
+    }
+
+    private static double obtainNanosecondsPerRow(final long elapsedNanoseconds) {
+        return elapsedNanoseconds / (double) NUMBER_BENCHMARK_ROWS;
+    }
+
+    @NonNull
+    private static String obtainBenchmarkSql() {
+        return String.format("SELECT %s, %s, %s FROM %s WHERE %s = (%s) AND %s >= ? ORDER BY %s",
+                HistoryDataTable.COLUMN_TIMESTAMP, HistoryDataTable.COLUMN_TEMPERATURE, HistoryDataTable.COLUMN_HUMIDITY,
+                HistoryDataTable.getInstance().getName(), HistoryDataTable.COLUMN_DEVICE_ID, obtainDeviceIdSubquery(),
+                HistoryDataTable.COLUMN_TIMESTAMP, HistoryDataTable.COLUMN_TIMESTAMP);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.tests.persistence.history_database;
+
+import android.support.annotation.NonNull;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.smartgadget.persistence.history_database.HistoryDatabaseManager;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataSource;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryRollupStateTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryRollupTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryTier;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryTierConfiguration;
+import com.sensirion.smartgadget.view.history.type.HistoryIntervalType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that the history tables and the data source of every interval follow the tier configuration.
+ */
+public class HistoryTierConfigurationTest extends AndroidTestCase {
+
+    @NonNull
+    private static final String ADDED_TABLE_NAME = "history_rollup_2880_min";
+
+    @NonNull
+    private final HistoryTierConfiguration mDefaultConfiguration = HistoryTierConfiguration.getInstance();
+
+    /**
+     * {@inheritDoc}
+     */
+    public void tearDown() throws Exception {
+        HistoryTierConfiguration.setInstance(mDefaultConfiguration);
+        super.tearDown();
+    }
+
+    @SmallTest
+    public void testDefaultIntervalsHaveTheirOwnTier() {
+        final List<HistoryRollupTable> rollupTables = HistoryRollupTable.getInstances();
+        final List<HistoryIntervalType> intervals = HistoryIntervalType.getIntervals();
+        assertEquals(rollupTables.size() + 1, intervals.size());
+        assertEquals(HistoryDataTable.getInstance(), intervals.get(0).getDataSource());
+        for (final HistoryIntervalType interval : intervals) {
+            final HistoryDataSource dataSource = interval.getDataSource();
+            assertEquals(String.format("testDefaultIntervalsHaveTheirOwnTier: Wrong retention for %s", interval),
+                    interval.getNumberMilliseconds(), dataSource.getNumberMilliseconds());
+            if (interval.getPosition() > 0) {
+                assertEquals(rollupTables.get(interval.getPosition() - 1), dataSource);
+            }
+        }
+    }
+
+    @SmallTest
+    public void testCustomTiers() {
+        HistoryTierConfiguration.setInstance(new HistoryTierConfiguration(
+                new HistoryTier(TimeUnit.SECONDS.toMillis(10), TimeUnit.DAYS.toMillis(1)),
+                Arrays.asList(
+                        new HistoryTier(TimeUnit.MINUTES.toMillis(5), TimeUnit.DAYS.toMillis(30)),
+                        new HistoryTier(TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(365))
+                )
+        ));
+        final List<HistoryRollupTable> rollupTables = HistoryRollupTable.getInstances();
+        assertEquals(2, rollupTables.size());
+        assertEquals("history_rollup_5_min", rollupTables.get(0).getName());
+        assertEquals("history_rollup_60_min", rollupTables.get(1).getName());
+
+        final HistoryTierConfiguration configuration = HistoryTierConfiguration.getInstance();
+        assertEquals(HistoryDataTable.getInstance(), configuration.obtainDataSource(TimeUnit.MINUTES.toMillis(10)));
+        assertEquals(HistoryDataTable.getInstance(), configuration.obtainDataSource(TimeUnit.HOURS.toMillis(1)));
+        assertEquals(rollupTables.get(0), configuration.obtainDataSource(TimeUnit.HOURS.toMillis(6)));
+        assertEquals(rollupTables.get(0), configuration.obtainDataSource(TimeUnit.DAYS.toMillis(1)));
+        assertEquals(rollupTables.get(1), configuration.obtainDataSource(TimeUnit.DAYS.toMillis(7)));
+        assertEquals(rollupTables.get(1), configuration.obtainDataSource(TimeUnit.DAYS.toMillis(30)));
+        assertEquals(rollupTables.get(1), configuration.obtainDataSource(TimeUnit.DAYS.toMillis(365)));
+
+        final List<HistoryIntervalType> intervals = HistoryIntervalType.getIntervals();
+        assertEquals(3, intervals.size());
+        assertEquals(TimeUnit.DAYS.toMillis(1), intervals.get(0).getNumberMilliseconds());
+        assertEquals(HistoryDataTable.getInstance(), intervals.get(0).getDataSource());
+        assertEquals(TimeUnit.DAYS.toMillis(30), intervals.get(1).getNumberMilliseconds());
+        assertEquals(rollupTables.get(0), intervals.get(1).getDataSource());
+        assertEquals(TimeUnit.DAYS.toMillis(365), intervals.get(2).getNumberMilliseconds());
+        assertEquals(rollupTables.get(1), intervals.get(2).getDataSource());
+    }
+
+    @SmallTest
+    public void testAddedTierTableIsCreatedOnOpen() {
+        HistoryDatabaseManager.init(getContext().getApplicationContext(), true);
+        final DatabaseFacade database = HistoryDatabaseManager.getInstance().getDatabaseFacade();
+        final List<HistoryTier> rollupTiers = new ArrayList<>(mDefaultConfiguration.getRollupTiers());
+        // Two days fit between the one month and the one year tiers, and its buckets are made of one month buckets.
+        rollupTiers.add(rollupTiers.size() - 1, new HistoryTier(TimeUnit.MINUTES.toMillis(2880), TimeUnit.DAYS.toMillis(90)));
+        HistoryTierConfiguration.setInstance(new HistoryTierConfiguration(mDefaultConfiguration.getRawTier(), rollupTiers));
+
+        try {
+            assertEquals(1, HistoryRollupTable.createMissingTables(database));
+            assertEquals(0, HistoryRollupTable.createMissingTables(database));
+            assertEquals(1, database.prepare("SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?;")
+                    .bindString(1, ADDED_TABLE_NAME).queryForLong(0));
+
+            final String lastValueIdSql = HistoryRollupStateTable.getInstance().obtainLastValueIdStatementSql();
+            assertEquals(database.prepare(lastValueIdSql).bindString(1, "history_rollup_720_min").queryForLong(-1),
+                    database.prepare(lastValueIdSql).bindString(1, ADDED_TABLE_NAME).queryForLong(-1));
+        } finally {
+            database.executeSQL(Arrays.asList(
+                    String.format("DROP TABLE IF EXISTS %s;", ADDED_TABLE_NAME),
+                    String.format("DELETE FROM %s WHERE %s = '%s';", HistoryRollupStateTable.getInstance().getName(),
+                            HistoryRollupStateTable.COLUMN_TABLE_NAME, ADDED_TABLE_NAME)));
+        }
+    }
+
+    @SmallTest
+    public void testRollupResolutionsHaveToIncrease() {
+        try {
+            new HistoryTierConfiguration(
+                    new HistoryTier(TimeUnit.SECONDS.toMillis(10), TimeUnit.DAYS.toMillis(1)),
+                    Arrays.asList(
+                            new HistoryTier(TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(365)),
+                            new HistoryTier(TimeUnit.MINUTES.toMillis(5), TimeUnit.DAYS.toMillis(30))
+                    )
+            );
+            fail("testRollupResolutionsHaveToIncrease: The unordered tiers were accepted.");
+        } catch (@NonNull final IllegalArgumentException ignored) {
+        }
+    }
+}
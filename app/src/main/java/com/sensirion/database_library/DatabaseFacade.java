@@ -32,8 +32,10 @@ package com.sensirion.database_library;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
@@ -41,20 +43,39 @@ import android.util.Log;
 import com.sensirion.database_library.attributes.DatabaseAttributes;
 import com.sensirion.database_library.database_object.AbstractDatabaseObject;
 import com.sensirion.database_library.parser.CursorParser;
+import com.sensirion.database_library.parser.CursorReader;
 import com.sensirion.database_library.parser.QueryResult;
+import com.sensirion.database_library.parser.RowCallback;
+import com.sensirion.database_library.parser.RowMapper;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Semaphore;
 
 public class DatabaseFacade {
 
     private static final String TAG = DatabaseFacade.class.getSimpleName();
+    private static final int MAX_CACHED_STATEMENTS = 32;
 
     @NonNull
     private final DatabaseAttributes mDatabaseAttributes;
     private final Semaphore mWritingPermits = new Semaphore(1, true);
+    // Compiled writing statements by SQL, the least recently used one is closed when the cache is full.
+    @NonNull
+    private final Map<String, SQLiteStatement> mStatementCache = new LinkedHashMap<String, SQLiteStatement>(MAX_CACHED_STATEMENTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(@NonNull final Map.Entry<String, SQLiteStatement> eldest) {
+            if (size() > MAX_CACHED_STATEMENTS) {
+                eldest.getValue().close();
+                return true;
+            }
+            return false;
+        }
+    };
     private InternalSQLiteOpenHelper mDatabase;
     private boolean mIsAutocommitEnabled;
 
@@ -127,7 +148,9 @@ public class DatabaseFacade {
     }
 
     /**
-     * Executes an standard rawDatabaseQuery.
+     * Executes an standard rawDatabaseQuery. All the result rows are copied into memory, use
+     * {@link #forEachRow(String, String[], RowCallback)} or {@link #queryForList(String, String[], RowMapper)}
+     * for reading large results.
      *
      * @param sql        - SQL Sentence. All 'dynamic' values should be '?'.
      * @param attributes - SQL attributes, we need one per '?' in SQL sentence.
@@ -135,35 +158,124 @@ public class DatabaseFacade {
      */
     @Nullable
     public QueryResult rawDatabaseQuery(@NonNull final String sql, @Nullable final String[] attributes) {
-        if (attributes == null) {
-            Log.d(TAG, String.format("rawDatabaseQuery -> Database %s received the following SQL: %s", getDatabaseName(), sql));
-        } else {
-            Log.d(TAG, String.format("rawDatabaseQuery -> Database %s received the following SQL: %s with the following attributes: %s", getDatabaseName(), sql, Arrays.toString(attributes)));
+        if (attributes != null) {
+            Log.d(TAG, String.format("rawDatabaseQuery -> Database %s received the following attributes: %s", getDatabaseName(), Arrays.toString(attributes)));
+        }
+        final QueryResult[] queryResult = new QueryResult[1];
+        rawDatabaseQuery(sql, attributes, new CursorReader() {
+            @Override
+            public void read(@NonNull final Cursor cursor) {
+                queryResult[0] = CursorParser.readQueryResult(cursor);
+            }
+        });
+        return queryResult[0];
+    }
+
+    /**
+     * Executes an standard rawDatabaseQuery, handing its rows one by one to a callback while the
+     * cursor is walked in place. The memory used does not depend on the number of rows.
+     *
+     * @param sql        - SQL Sentence. All 'dynamic' values should be '?'.
+     * @param attributes - SQL attributes, we need one per '?' in SQL sentence.
+     * @param callback   - receives every row until it asks to stop.
+     * @return <code>int</code> with the number of rows read - <code>-1</code> if the query failed.
+     */
+    public int forEachRow(@NonNull final String sql, @Nullable final String[] attributes, @NonNull final RowCallback callback) {
+        final int[] numberRows = new int[1];
+        final boolean wasExecuted = rawDatabaseQuery(sql, attributes, new CursorReader() {
+            @Override
+            public void read(@NonNull final Cursor cursor) {
+                numberRows[0] = CursorParser.forEachRow(cursor, callback);
+            }
+        });
+        return (wasExecuted) ? numberRows[0] : -1;
+    }
+
+    /**
+     * Executes an standard rawDatabaseQuery, converting every row with a mapper.
+     *
+     * @param sql        - SQL Sentence. All 'dynamic' values should be '?'.
+     * @param attributes - SQL attributes, we need one per '?' in SQL sentence.
+     * @param mapper     - converts every row.
+     * @param <T>        type of the mapped rows.
+     * @return {@link java.util.List} with the mapped rows - <code>null</code> if the query failed.
+     */
+    @Nullable
+    public <T> List<T> queryForList(@NonNull final String sql, @Nullable final String[] attributes, @NonNull final RowMapper<T> mapper) {
+        final List<T> result = new ArrayList<>();
+        final boolean wasExecuted = rawDatabaseQuery(sql, attributes, new CursorReader() {
+            @Override
+            public void read(@NonNull final Cursor cursor) {
+                CursorParser.mapRows(cursor, mapper, result);
+            }
+        });
+        return (wasExecuted) ? result : null;
+    }
+
+    /**
+     * Executes an standard rawDatabaseQuery and hands the resulting cursor to a reader, so the
+     * rows can be read in place instead of being copied into a {@link QueryResult}.
+     * SELECT statements are executed on the read path, see {@link #readDatabaseQuery(String, String[], CursorReader)}.
+     *
+     * @param sql        - SQL Sentence. All 'dynamic' values should be '?'.
+     * @param attributes - SQL attributes, we need one per '?' in SQL sentence.
+     * @param reader     - reads the cursor. The cursor is closed when the reader returns.
+     * @return <code>true</code> if the query was executed - <code>false</code> otherwise.
+     */
+    public boolean rawDatabaseQuery(@NonNull final String sql, @Nullable final String[] attributes, @NonNull final CursorReader reader) {
+        if (DatabaseUtils.getSqlStatementType(sql) == DatabaseUtils.STATEMENT_SELECT) {
+            return readDatabaseQuery(sql, attributes, reader);
         }
+        Log.d(TAG, String.format("rawDatabaseQuery -> Database %s received the following SQL: %s", getDatabaseName(), sql));
         final SQLiteDatabase db = mDatabase.getWritableDatabase();
 
         if (!db.inTransaction()) {
             beginTransaction(db);
         }
 
+        try {
+            return readCursor(db, sql, attributes, null, reader);
+        } finally {
+            if (mIsAutocommitEnabled) {
+                commit(db);
+            }
+        }
+    }
+
+    /**
+     * Executes a read only query without asking for the writing permit. Outside a transaction the
+     * write-ahead logging database runs it on one of its read only connections, so it sees the last
+     * committed data and neither waits for nor blocks the writers. Inside a transaction of the
+     * calling thread it is executed on the connection of that transaction, which is left open.
+     *
+     * @param sql        - SELECT Sentence. All 'dynamic' values should be '?'.
+     * @param attributes - SQL attributes, we need one per '?' in SQL sentence.
+     * @param reader     - reads the cursor. The cursor is closed when the reader returns.
+     * @return <code>true</code> if the query was executed - <code>false</code> otherwise.
+     */
+    public boolean readDatabaseQuery(@NonNull final String sql, @Nullable final String[] attributes, @NonNull final CursorReader reader) {
+        Log.d(TAG, String.format("readDatabaseQuery -> Database %s received the following SQL: %s", getDatabaseName(), sql));
+        return readCursor(mDatabase.getReadableDatabase(), sql, attributes, null, reader);
+    }
+
+    private boolean readCursor(@NonNull final SQLiteDatabase db, @NonNull final String sql, @Nullable final String[] attributes,
+                               @Nullable final SQLiteDatabase.CursorFactory cursorFactory, @NonNull final CursorReader reader) {
         Cursor c = null;
         try {
-            c = db.rawQuery(sql, attributes);
+            c = db.rawQueryWithFactory(cursorFactory, sql, attributes, null);
             if (c == null) {
-                return null;
+                return false;
             }
-            return CursorParser.parseCursor(c);
+            reader.read(c);
+            return true;
         } catch (@NonNull final SQLiteException e) {
-            Log.e(TAG, String.format("rawDatabaseQuery -> The following error was produced when looking into the database with the following sentence: %s  -> ", sql), e);
+            Log.e(TAG, String.format("readCursor -> The following error was produced when reading the database with the following sentence: %s  -> ", sql), e);
         } finally {
-            if (mIsAutocommitEnabled) {
-                commit(db);
-            }
             if (c != null) {
                 c.close();
             }
         }
-        return null;
+        return false;
     }
 
 
@@ -202,17 +314,129 @@ public class DatabaseFacade {
         }
     }
 
+    /**
+     * Executes a SQL sentence that cannot run inside a transaction, like <code>VACUUM</code>.
+     * The writing permit is held during the execution so no transaction runs in parallel.
+     *
+     * @param sql sentence without parameters.
+     * @return <code>true</code> if the sentence was executed - <code>false</code> otherwise.
+     */
+    public boolean executeWithoutTransaction(@NonNull final String sql) {
+        askWritingPermit();
+        try {
+            Log.d(TAG, String.format("executeWithoutTransaction -> The database received the following SQL sentence: %s", sql));
+            mDatabase.getWritableDatabase().execSQL(sql);
+            return true;
+        } catch (@NonNull final SQLiteException e) {
+            Log.e(TAG, "executeWithoutTransaction -> The following exception was thrown -> ", e);
+            return false;
+        } finally {
+            mWritingPermits.release(1);
+        }
+    }
+
+    /**
+     * Compiles a SQL statement that can be executed several times with different bindings.
+     * The statement is linked to the current database connection, so it has to be compiled
+     * again after {@link #deleteAllDatabaseData(Context)} or {@link #closeDatabaseConnection()}.
+     * The caller is responsible for wrapping its executions in a transaction.
+     *
+     * @param sql sentence. All 'dynamic' values should be '?'.
+     * @return {@link android.database.sqlite.SQLiteStatement} ready to be bound and executed.
+     */
+    @NonNull
+    public SQLiteStatement compileStatement(@NonNull final String sql) {
+        Log.d(TAG, String.format("compileStatement -> Database %s compiled the following SQL: %s", getDatabaseName(), sql));
+        return mDatabase.getWritableDatabase().compileStatement(sql);
+    }
+
+    /**
+     * Prepares a SQL sentence for being executed with typed values bound to its parameters.
+     *
+     * @param sql sentence. All 'dynamic' values should be '?'.
+     * @return {@link DatabaseStatement} without values bound.
+     */
+    @NonNull
+    public DatabaseStatement prepare(@NonNull final String sql) {
+        return new DatabaseStatement(this, sql);
+    }
+
+    /**
+     * Executes a writing statement with the compiled statement cached for its SQL. If the calling
+     * thread is not inside a transaction the statement is executed inside its own one.
+     *
+     * @param statement with the values bound.
+     * @param isInsert  <code>true</code> for obtaining the inserted row identifier - <code>false</code> for the number of modified rows.
+     * @return <code>long</code> with the result of the statement - <code>-1</code> if it failed.
+     */
+    long executeStatement(@NonNull final DatabaseStatement statement, final boolean isInsert) {
+        final SQLiteDatabase db = mDatabase.getWritableDatabase();
+        final boolean isOwnTransaction = !db.inTransaction();
+        if (isOwnTransaction) {
+            beginTransaction(db);
+        }
+        boolean wasExecuted = false;
+        try {
+            final SQLiteStatement compiledStatement = obtainCachedStatement(db, statement.getSql());
+            statement.bindTo(compiledStatement);
+            final long result = (isInsert) ? compiledStatement.executeInsert() : compiledStatement.executeUpdateDelete();
+            wasExecuted = true;
+            return result;
+        } catch (@NonNull final SQLiteException e) {
+            Log.e(TAG, String.format("executeStatement -> The following error was produced when executing the following sentence: %s  -> ", statement.getSql()), e);
+            return -1;
+        } finally {
+            if (isOwnTransaction && (mIsAutocommitEnabled || !wasExecuted)) {
+                finishTransaction(db, wasExecuted);
+            }
+        }
+    }
+
+    /**
+     * Executes a query statement on the read path, see {@link #readDatabaseQuery(String, String[], CursorReader)}.
+     * The connections keep their own cache of compiled queries, which is hit because the SQL of a
+     * statement does not change with its values.
+     *
+     * @param statement with the values bound.
+     * @param reader    reads the cursor. The cursor is closed when the reader returns.
+     * @return <code>true</code> if the query was executed - <code>false</code> otherwise.
+     */
+    boolean queryStatement(@NonNull final DatabaseStatement statement, @NonNull final CursorReader reader) {
+        return readCursor(mDatabase.getReadableDatabase(), statement.getSql(), null, statement.getCursorFactory(), reader);
+    }
+
+    @NonNull
+    private SQLiteStatement obtainCachedStatement(@NonNull final SQLiteDatabase db, @NonNull final String sql) {
+        synchronized (mStatementCache) {
+            SQLiteStatement compiledStatement = mStatementCache.get(sql);
+            if (compiledStatement == null) {
+                compiledStatement = db.compileStatement(sql);
+                mStatementCache.put(sql, compiledStatement);
+            }
+            return compiledStatement;
+        }
+    }
+
+    private void releaseStatementCache() {
+        synchronized (mStatementCache) {
+            for (final SQLiteStatement compiledStatement : mStatementCache.values()) {
+                compiledStatement.close();
+            }
+            mStatementCache.clear();
+        }
+    }
+
     /**
      * Close the database connection.
      */
     public void closeDatabaseConnection() {
+        releaseStatementCache();
         mDatabase.close();
     }
 
     /**
      * Begins a transaction.
      */
-    @SuppressWarnings("unused")
     public void beginTransaction() {
         beginTransaction(mDatabase.getWritableDatabase());
     }
@@ -348,6 +572,7 @@ public class DatabaseFacade {
     @SuppressWarnings("unused")
     public void deleteAllDatabaseData(@NonNull final Context context) {
         askWritingPermit();
+        releaseStatementCache();
         mDatabase.getWritableDatabase().close();
         context.deleteDatabase(mDatabaseAttributes.getDatabaseName());
         mDatabase = new InternalSQLiteOpenHelper(context, mDatabaseAttributes);
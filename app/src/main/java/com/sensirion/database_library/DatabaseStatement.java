@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.database_library;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.sensirion.database_library.parser.CursorParser;
+import com.sensirion.database_library.parser.CursorReader;
+import com.sensirion.database_library.parser.RowCallback;
+import com.sensirion.database_library.parser.RowMapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SQL sentence with typed values bound to its '?' parameters, obtained with
+ * {@link DatabaseFacade#prepare(String)}. The values are bound with their own type instead of
+ * being formatted into the SQL, so every execution uses the same SQL text and SQLite can reuse
+ * its compiled program. The bind methods return the statement, so the calls can be chained.
+ * A statement is not thread safe, but it can be bound and executed several times.
+ */
+public class DatabaseStatement {
+
+    private static final String TAG = DatabaseStatement.class.getSimpleName();
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_LONG = 1;
+    private static final int TYPE_DOUBLE = 2;
+    private static final int TYPE_STRING = 3;
+
+    @NonNull
+    private final DatabaseFacade mDatabase;
+    @NonNull
+    private final String mSql;
+    @NonNull
+    private final int[] mTypes;
+    @NonNull
+    private final long[] mLongValues;
+    @NonNull
+    private final double[] mDoubleValues;
+    @NonNull
+    private final String[] mStringValues;
+    @NonNull
+    private final SQLiteDatabase.CursorFactory mCursorFactory = new SQLiteDatabase.CursorFactory() {
+        @Override
+        public Cursor newCursor(@NonNull final SQLiteDatabase db, @NonNull final SQLiteCursorDriver driver,
+                                @Nullable final String editTable, @NonNull final SQLiteQuery query) {
+            bindTo(query);
+            return new SQLiteCursor(driver, editTable, query);
+        }
+    };
+
+    /**
+     * Friendly constructor. Should only be called by DatabaseFacade.
+     *
+     * @param database where the statement is executed.
+     * @param sql      sentence. All 'dynamic' values should be '?'.
+     */
+    DatabaseStatement(@NonNull final DatabaseFacade database, @NonNull final String sql) {
+        mDatabase = database;
+        mSql = sql;
+        final int numberParameters = countParameters(sql);
+        mTypes = new int[numberParameters];
+        mLongValues = new long[numberParameters];
+        mDoubleValues = new double[numberParameters];
+        mStringValues = new String[numberParameters];
+    }
+
+    /**
+     * Counts the '?' parameters of a SQL sentence, skipping the ones inside string literals.
+     */
+    private static int countParameters(@NonNull final String sql) {
+        int numberParameters = 0;
+        boolean isInsideLiteral = false;
+        for (int i = 0; i < sql.length(); i++) {
+            final char character = sql.charAt(i);
+            if (character == '\'') {
+                isInsideLiteral = !isInsideLiteral;
+            } else if (character == '?' && !isInsideLiteral) {
+                numberParameters++;
+            }
+        }
+        return numberParameters;
+    }
+
+    /**
+     * Binds an integer value.
+     *
+     * @param index of the parameter, starting at 1.
+     * @param value to bind.
+     * @return {@link DatabaseStatement} itself.
+     */
+    @NonNull
+    public DatabaseStatement bindLong(final int index, final long value) {
+        final int position = obtainPosition(index);
+        mTypes[position] = TYPE_LONG;
+        mLongValues[position] = value;
+        return this;
+    }
+
+    /**
+     * Binds a floating point value.
+     *
+     * @param index of the parameter, starting at 1.
+     * @param value to bind.
+     * @return {@link DatabaseStatement} itself.
+     */
+    @NonNull
+    public DatabaseStatement bindDouble(final int index, final double value) {
+        final int position = obtainPosition(index);
+        mTypes[position] = TYPE_DOUBLE;
+        mDoubleValues[position] = value;
+        return this;
+    }
+
+    /**
+     * Binds a text value.
+     *
+     * @param index of the parameter, starting at 1.
+     * @param value to bind - <code>null</code> binds NULL.
+     * @return {@link DatabaseStatement} itself.
+     */
+    @NonNull
+    public DatabaseStatement bindString(final int index, @Nullable final String value) {
+        final int position = obtainPosition(index);
+        mTypes[position] = (value == null) ? TYPE_NULL : TYPE_STRING;
+        mStringValues[position] = value;
+        return this;
+    }
+
+    /**
+     * Binds NULL.
+     *
+     * @param index of the parameter, starting at 1.
+     * @return {@link DatabaseStatement} itself.
+     */
+    @NonNull
+    public DatabaseStatement bindNull(final int index) {
+        final int position = obtainPosition(index);
+        mTypes[position] = TYPE_NULL;
+        mStringValues[position] = null;
+        return this;
+    }
+
+    /**
+     * Binds NULL to every parameter.
+     *
+     * @return {@link DatabaseStatement} itself.
+     */
+    @NonNull
+    public DatabaseStatement clearBindings() {
+        Arrays.fill(mTypes, TYPE_NULL);
+        Arrays.fill(mStringValues, null);
+        return this;
+    }
+
+    private int obtainPosition(final int index) {
+        if (index < 1 || index > mTypes.length) {
+            throw new IllegalArgumentException(String.format("%s: obtainPosition -> Parameter %d does not exist, the statement has %d parameters.", TAG, index, mTypes.length));
+        }
+        return index - 1;
+    }
+
+    /**
+     * Binds the values of this statement to a compiled SQLite program.
+     *
+     * @param program compiled from the SQL of this statement.
+     */
+    void bindTo(@NonNull final SQLiteProgram program) {
+        program.clearBindings();
+        for (int i = 0; i < mTypes.length; i++) {
+            switch (mTypes[i]) {
+                case TYPE_LONG:
+                    program.bindLong(i + 1, mLongValues[i]);
+                    break;
+                case TYPE_DOUBLE:
+                    program.bindDouble(i + 1, mDoubleValues[i]);
+                    break;
+                case TYPE_STRING:
+                    program.bindString(i + 1, mStringValues[i]);
+                    break;
+                default:
+                    program.bindNull(i + 1);
+            }
+        }
+    }
+
+    /**
+     * Obtains the factory that binds the values of this statement to the queries it creates.
+     *
+     * @return {@link android.database.sqlite.SQLiteDatabase.CursorFactory} of the statement.
+     */
+    @NonNull
+    SQLiteDatabase.CursorFactory getCursorFactory() {
+        return mCursorFactory;
+    }
+
+    /**
+     * Obtains the SQL sentence of the statement.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String getSql() {
+        return mSql;
+    }
+
+    /**
+     * Executes a statement that modifies the database, like an UPDATE or a DELETE.
+     *
+     * @return <code>int</code> with the number of modified rows - <code>-1</code> if the statement failed.
+     */
+    public int execute() {
+        return (int) mDatabase.executeStatement(this, false);
+    }
+
+    /**
+     * Executes an INSERT statement.
+     *
+     * @return <code>long</code> with the row identifier of the inserted row - <code>-1</code> if the statement failed.
+     */
+    public long executeInsert() {
+        return mDatabase.executeStatement(this, true);
+    }
+
+    /**
+     * Executes a query and hands the resulting cursor to a reader.
+     *
+     * @param reader reads the cursor. The cursor is closed when the reader returns.
+     * @return <code>true</code> if the query was executed - <code>false</code> otherwise.
+     */
+    public boolean query(@NonNull final CursorReader reader) {
+        return mDatabase.queryStatement(this, reader);
+    }
+
+    /**
+     * Executes a query, handing its rows one by one to a callback.
+     *
+     * @param callback receives every row until it asks to stop.
+     * @return <code>int</code> with the number of rows read - <code>-1</code> if the query failed.
+     */
+    public int forEachRow(@NonNull final RowCallback callback) {
+        final int[] numberRows = new int[1];
+        final boolean wasExecuted = query(new CursorReader() {
+            @Override
+            public void read(@NonNull final Cursor cursor) {
+                numberRows[0] = CursorParser.forEachRow(cursor, callback);
+            }
+        });
+        return (wasExecuted) ? numberRows[0] : -1;
+    }
+
+    /**
+     * Executes a query, converting every row with a mapper.
+     *
+     * @param mapper converts every row.
+     * @param <T>    type of the mapped rows.
+     * @return {@link java.util.List} with the mapped rows - <code>null</code> if the query failed.
+     */
+    @Nullable
+    public <T> List<T> queryForList(@NonNull final RowMapper<T> mapper) {
+        final List<T> result = new ArrayList<>();
+        final boolean wasExecuted = query(new CursorReader() {
+            @Override
+            public void read(@NonNull final Cursor cursor) {
+                CursorParser.mapRows(cursor, mapper, result);
+            }
+        });
+        return (wasExecuted) ? result : null;
+    }
+
+    /**
+     * Executes a query and reads the first column of its first row as text.
+     *
+     * @return {@link java.lang.String} with the value - <code>null</code> if the query failed, has no rows or the value is NULL.
+     */
+    @Nullable
+    public String queryForString() {
+        final String[] value = new String[1];
+        query(new CursorReader() {
+            @Override
+            public void read(@NonNull final Cursor cursor) {
+                if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                    value[0] = cursor.getString(0);
+                }
+            }
+        });
+        return value[0];
+    }
+
+    /**
+     * Executes a query and reads the first column of its first row as an integer.
+     *
+     * @param defaultValue returned if the query failed, has no rows or the value is NULL.
+     * @return <code>long</code> with the value.
+     */
+    public long queryForLong(final long defaultValue) {
+        final long[] value = {defaultValue};
+        query(new CursorReader() {
+            @Override
+            public void read(@NonNull final Cursor cursor) {
+                if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                    value[0] = cursor.getLong(0);
+                }
+            }
+        });
+        return value[0];
+    }
+
+    /**
+     * Obtains a statement that reports the query plan of this one, with the same values bound.
+     *
+     * @return {@link DatabaseStatement} with the EXPLAIN QUERY PLAN sentence.
+     */
+    @NonNull
+    public DatabaseStatement prepareQueryPlan() {
+        final DatabaseStatement statement = new DatabaseStatement(mDatabase, "EXPLAIN QUERY PLAN " + mSql);
+        System.arraycopy(mTypes, 0, statement.mTypes, 0, mTypes.length);
+        System.arraycopy(mLongValues, 0, statement.mLongValues, 0, mLongValues.length);
+        System.arraycopy(mDoubleValues, 0, statement.mDoubleValues, 0, mDoubleValues.length);
+        System.arraycopy(mStringValues, 0, statement.mStringValues, 0, mStringValues.length);
+        return statement;
+    }
+}
@@ -39,7 +39,12 @@ import android.util.Log;
 
 import com.sensirion.database_library.attributes.DatabaseAttributes;
 import com.sensirion.database_library.database_object.AbstractDatabaseObject;
+import com.sensirion.database_library.database_object.DatabaseObjectType;
+import com.sensirion.database_library.migration.AbstractDatabaseMigration;
 
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Queue;
 
 class InternalSQLiteOpenHelper extends SQLiteOpenHelper {
@@ -48,6 +53,10 @@ class InternalSQLiteOpenHelper extends SQLiteOpenHelper {
 
     @NonNull
     private final Queue<AbstractDatabaseObject> mDatabaseObjectList;
+    @NonNull
+    private final DatabaseAttributes mDatabaseAttributes;
+    @NonNull
+    private final List<String> mPendingPostMigrationSql = new LinkedList<>();
 
     /**
      * Friendly constructor. Should only be called by DatabaseFacade.
@@ -58,6 +67,10 @@ class InternalSQLiteOpenHelper extends SQLiteOpenHelper {
     InternalSQLiteOpenHelper(@NonNull final Context context, @NonNull final DatabaseAttributes databaseAttributes) {
         super(context.getApplicationContext(), databaseAttributes.getDatabaseName(), null, databaseAttributes.getDatabaseVersion());
         mDatabaseObjectList = databaseAttributes.getDatabaseObjects();
+        mDatabaseAttributes = databaseAttributes;
+        // Write-ahead logging lets the queries outside a transaction use a pool of read only
+        // connections that run in parallel with the single writing connection.
+        setWriteAheadLoggingEnabled(true);
         getWritableDatabase();
     }
 
@@ -69,6 +82,10 @@ class InternalSQLiteOpenHelper extends SQLiteOpenHelper {
     @Override
     public void onCreate(@NonNull final SQLiteDatabase db) {
         Log.i(TAG, "Database: onCreate()");
+        if (mDatabaseAttributes.isIncrementalVacuum()) {
+            // The vacuum mode of a database can only be set before its first table is created.
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
+        }
         for (final AbstractDatabaseObject table : mDatabaseObjectList) {
             createOrReplaceTableDatabase(db, table);
             Log.i(TAG, String.format("onCreate -> Database: Table %s has been created.", table.getName()));
@@ -96,6 +113,12 @@ class InternalSQLiteOpenHelper extends SQLiteOpenHelper {
     @Override
     public void onUpgrade(@NonNull final SQLiteDatabase db, final int oldVersion, final int newVersion) {
         Log.i(TAG, "onUpgrade()");
+        final List<AbstractDatabaseMigration> migrationPath = mDatabaseAttributes.getMigrationPath(oldVersion, newVersion);
+        if (migrationPath != null) {
+            migrateDatabase(db, migrationPath);
+            Log.i(TAG, String.format("onUpgrade -> Database has been migrated from version %d to version %d.", oldVersion, newVersion));
+            return;
+        }
         for (AbstractDatabaseObject table : mDatabaseObjectList) {
             createOrReplaceTableDatabase(db, table);
             Log.i(TAG, String.format("onUpgrade() -> Database: %s %s has been upgraded to the version %d.", table.getType(), table.getName(), newVersion));
@@ -115,6 +138,72 @@ class InternalSQLiteOpenHelper extends SQLiteOpenHelper {
         onCreate(db);
     }
 
+    /**
+     * Upgrades the database keeping its data. The views are dropped before executing the migrations
+     * and created again afterwards, the tables and indices that do not exist yet are created.
+     *
+     * @param migrationPath with the migrations that have to be executed, in order.
+     */
+    private void migrateDatabase(@NonNull final SQLiteDatabase db, @NonNull final List<AbstractDatabaseMigration> migrationPath) {
+        for (final AbstractDatabaseObject databaseObject : mDatabaseObjectList) {
+            if (databaseObject.getType() == DatabaseObjectType.VIEW) {
+                db.execSQL(String.format("DROP %s IF EXISTS %s;", databaseObject.getType(), databaseObject.getName()));
+            }
+        }
+        for (final AbstractDatabaseMigration migration : migrationPath) {
+            for (final String migrationSql : migration.getMigrationSql()) {
+                db.execSQL(migrationSql);
+            }
+            mPendingPostMigrationSql.addAll(migration.getPostMigrationSql());
+            Log.i(TAG, String.format("migrateDatabase -> Executed %s from version %d to version %d.", migration.getClass().getSimpleName(), migration.getFromVersion(), migration.getToVersion()));
+        }
+        for (final AbstractDatabaseObject databaseObject : mDatabaseObjectList) {
+            if (databaseObject.getType() == DatabaseObjectType.VIEW || !existsDatabaseObject(db, databaseObject)) {
+                db.execSQL(databaseObject.createSqlStatement());
+                Log.d(TAG, String.format("migrateDatabase -> Created %s %s.", databaseObject.getType(), databaseObject.getName()));
+            }
+        }
+    }
+
+    private static boolean existsDatabaseObject(@NonNull final SQLiteDatabase db, @NonNull final AbstractDatabaseObject databaseObject) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT COUNT(*) FROM sqlite_master WHERE type = ? AND name = ?;",
+                    new String[]{databaseObject.getType().name().toLowerCase(Locale.ENGLISH), databaseObject.getName()});
+            return cursor.moveToFirst() && cursor.getInt(0) > 0;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Executes the post migration statements once the upgrade transaction has been committed.
+     */
+    @Override
+    public void onOpen(@NonNull final SQLiteDatabase db) {
+        if (mPendingPostMigrationSql.isEmpty()) {
+            return;
+        }
+        // A VACUUM does not change the page layout of a database in write-ahead logging mode.
+        final boolean isWriteAheadLoggingEnabled = db.isWriteAheadLoggingEnabled();
+        if (isWriteAheadLoggingEnabled) {
+            db.disableWriteAheadLogging();
+        }
+        try {
+            for (final String postMigrationSql : mPendingPostMigrationSql) {
+                db.execSQL(postMigrationSql);
+                Log.i(TAG, String.format("onOpen -> Executed post migration statement: %s", postMigrationSql));
+            }
+        } finally {
+            mPendingPostMigrationSql.clear();
+            if (isWriteAheadLoggingEnabled) {
+                db.enableWriteAheadLogging();
+            }
+        }
+    }
+
     /**
      * Creates or replaces a table in the database.
      *
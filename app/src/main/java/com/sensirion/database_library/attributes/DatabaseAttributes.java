@@ -31,9 +31,14 @@
 package com.sensirion.database_library.attributes;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.sensirion.database_library.database_object.AbstractDatabaseObject;
+import com.sensirion.database_library.migration.AbstractDatabaseMigration;
 
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 
 public class DatabaseAttributes {
@@ -46,8 +51,30 @@ public class DatabaseAttributes {
     @NonNull
     private final Queue<AbstractDatabaseObject> mDatabaseTables;
     private final boolean mAutoCommit;
+    @NonNull
+    private final List<AbstractDatabaseMigration> mMigrations;
+    private final boolean mIncrementalVacuum;
 
     public DatabaseAttributes(@NonNull final String databaseName, final int databaseVersionNumber, @NonNull final Queue<AbstractDatabaseObject> databaseTables, final boolean autoCommit) {
+        this(databaseName, databaseVersionNumber, databaseTables, autoCommit, Collections.<AbstractDatabaseMigration>emptyList());
+    }
+
+    /**
+     * @param migrations that upgrade older versions of the database keeping its data. When no chain of
+     *                   migrations reaches the new version the database objects are dropped and created again.
+     */
+    public DatabaseAttributes(@NonNull final String databaseName, final int databaseVersionNumber, @NonNull final Queue<AbstractDatabaseObject> databaseTables,
+                              final boolean autoCommit, @NonNull final List<AbstractDatabaseMigration> migrations) {
+        this(databaseName, databaseVersionNumber, databaseTables, autoCommit, migrations, false);
+    }
+
+    /**
+     * @param migrations        that upgrade older versions of the database keeping its data.
+     * @param incrementalVacuum <code>true</code> for creating the database with <code>auto_vacuum = INCREMENTAL</code>,
+     *                          so its free pages can be released without rewriting the whole file.
+     */
+    public DatabaseAttributes(@NonNull final String databaseName, final int databaseVersionNumber, @NonNull final Queue<AbstractDatabaseObject> databaseTables,
+                              final boolean autoCommit, @NonNull final List<AbstractDatabaseMigration> migrations, final boolean incrementalVacuum) {
         if (databaseTables.isEmpty()) {
             throw new IllegalArgumentException(String.format("%s: Constructor -> A database should have tables in order to be created.", TAG));
         }
@@ -58,6 +85,8 @@ public class DatabaseAttributes {
         mDatabaseVersion = databaseVersionNumber;
         mDatabaseTables = databaseTables;
         mAutoCommit = autoCommit;
+        mMigrations = migrations;
+        mIncrementalVacuum = incrementalVacuum;
     }
 
     /**
@@ -97,4 +126,41 @@ public class DatabaseAttributes {
     public boolean getAutocommit() {
         return mAutoCommit;
     }
+
+    /**
+     * Returns if new databases are created with incremental vacuum.
+     *
+     * @return <code>true</code> if it's enabled. <code>false</code> otherwise.
+     */
+    public boolean isIncrementalVacuum() {
+        return mIncrementalVacuum;
+    }
+
+    /**
+     * Obtains the chain of migrations that upgrades the database between two versions.
+     *
+     * @param oldVersion version of the stored database.
+     * @param newVersion version of the database attributes.
+     * @return {@link java.util.List} with the migrations in execution order - <code>null</code> if the versions are not connected by migrations.
+     */
+    @Nullable
+    public List<AbstractDatabaseMigration> getMigrationPath(final int oldVersion, final int newVersion) {
+        final List<AbstractDatabaseMigration> migrationPath = new LinkedList<>();
+        int currentVersion = oldVersion;
+        while (currentVersion < newVersion) {
+            AbstractDatabaseMigration nextMigration = null;
+            for (final AbstractDatabaseMigration migration : mMigrations) {
+                if (migration.getFromVersion() == currentVersion && migration.getToVersion() <= newVersion) {
+                    nextMigration = migration;
+                    break;
+                }
+            }
+            if (nextMigration == null) {
+                return null;
+            }
+            migrationPath.add(nextMigration);
+            currentVersion = nextMigration.getToVersion();
+        }
+        return (currentVersion == newVersion) ? migrationPath : null;
+    }
 }
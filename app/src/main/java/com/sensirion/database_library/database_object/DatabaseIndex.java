@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.database_library.database_object;
+
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+/**
+ * Index over one or several columns of a table.
+ */
+public class DatabaseIndex extends AbstractDatabaseObject {
+
+    @NonNull
+    private final String mIndexedTableName;
+    @NonNull
+    private final String[] mIndexedColumns;
+    private final boolean mIsUnique;
+
+    /**
+     * @param indexName        name of the index.
+     * @param indexedTableName name of the indexed table.
+     * @param isUnique         <code>true</code> if the indexed columns cannot be repeated - <code>false</code> otherwise.
+     * @param indexedColumns   in the order they are stored in the index.
+     */
+    public DatabaseIndex(@NonNull final String indexName, @NonNull final String indexedTableName,
+                         final boolean isUnique, @NonNull final String... indexedColumns) {
+        super(indexName, DatabaseObjectType.INDEX);
+        if (indexedColumns.length == 0) {
+            throw new IllegalArgumentException(String.format("%s: Constructor -> Index %s needs at least one column.", TAG, indexName));
+        }
+        mIndexedTableName = indexedTableName;
+        mIndexedColumns = indexedColumns;
+        mIsUnique = isUnique;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public String createSqlStatement() {
+        return String.format("CREATE %sINDEX IF NOT EXISTS %s ON %s (%s);", (mIsUnique) ? "UNIQUE " : "",
+                getName(), mIndexedTableName, TextUtils.join(", ", mIndexedColumns));
+    }
+}
@@ -32,5 +32,6 @@ package com.sensirion.database_library.database_object;
 
 public enum DatabaseObjectType {
     TABLE,
-    VIEW
+    VIEW,
+    INDEX
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.database_library.migration;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Upgrades a database from one version to the next one, keeping its data.
+ * <p/>
+ * Before the migration statements are executed all the views of the database are dropped.
+ * After the last migration has been executed the views are created again and the tables and
+ * indices that do not exist yet are created.
+ */
+public abstract class AbstractDatabaseMigration {
+
+    protected final String TAG = this.getClass().getSimpleName();
+
+    private final int mFromVersion;
+    private final int mToVersion;
+
+    protected AbstractDatabaseMigration(final int fromVersion, final int toVersion) {
+        if (toVersion <= fromVersion) {
+            throw new IllegalArgumentException(String.format("%s: Constructor -> A migration needs to go to a newer version. From: %d - To: %d.", TAG, fromVersion, toVersion));
+        }
+        mFromVersion = fromVersion;
+        mToVersion = toVersion;
+    }
+
+    /**
+     * Obtains the database version this migration starts from.
+     *
+     * @return <code>int</code> with the source version.
+     */
+    public int getFromVersion() {
+        return mFromVersion;
+    }
+
+    /**
+     * Obtains the database version after this migration.
+     *
+     * @return <code>int</code> with the target version.
+     */
+    public int getToVersion() {
+        return mToVersion;
+    }
+
+    /**
+     * Obtains the SQL statements that migrate the database, executed in order inside the upgrade transaction.
+     *
+     * @return {@link java.util.List} with the SQL sentences.
+     */
+    @NonNull
+    public abstract List<String> getMigrationSql();
+
+    /**
+     * Obtains the SQL statements executed once the upgrade transaction was committed, for the
+     * statements that cannot run inside a transaction like <code>VACUUM</code>. They are executed
+     * with write-ahead logging disabled.
+     *
+     * @return {@link java.util.List} with the SQL sentences - empty by default.
+     */
+    @NonNull
+    public List<String> getPostMigrationSql() {
+        return Collections.emptyList();
+    }
+}
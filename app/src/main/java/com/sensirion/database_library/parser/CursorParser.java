@@ -34,6 +34,7 @@ import android.database.Cursor;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.util.List;
 
 public abstract class CursorParser {
 
@@ -47,15 +48,10 @@ public abstract class CursorParser {
      */
     public static QueryResult parseCursor(@Nullable final Cursor c) {
         try {
-            if (c == null || !c.moveToFirst()) {
+            if (c == null) {
                 return null;
             }
-            final QueryResult queryResult = new QueryResult(c.getColumnNames());
-            do {
-                queryResult.addRow(obtainCursorRow(c));
-            } while (c.moveToNext());
-            return queryResult;
-
+            return readQueryResult(c);
         } finally {
             if (c != null) {
                 c.close();
@@ -63,6 +59,60 @@ public abstract class CursorParser {
         }
     }
 
+    /**
+     * Copies the remaining rows of a cursor into a {@link QueryResult}. The cursor is not closed.
+     *
+     * @param c cursor that we want to extract the data.
+     * @return {@link com.sensirion.database_library.parser.QueryResult} with the cursor data - <code>null</code> if the cursor is empty.
+     */
+    @Nullable
+    public static QueryResult readQueryResult(@NonNull final Cursor c) {
+        final QueryResult queryResult = new QueryResult(c.getColumnNames());
+        forEachRow(c, new RowCallback() {
+            @Override
+            public boolean onRow(@NonNull final Cursor cursor) {
+                queryResult.addRow(obtainCursorRow(cursor));
+                return true;
+            }
+        });
+        if (queryResult.getNumberOfRows() == 0) {
+            return null;
+        }
+        return queryResult;
+    }
+
+    /**
+     * Walks the remaining rows of a cursor in place. The cursor is not closed.
+     *
+     * @param c        cursor that is going to be read.
+     * @param callback that receives every row.
+     * @return <code>int</code> with the number of rows handed to the callback.
+     */
+    public static int forEachRow(@NonNull final Cursor c, @NonNull final RowCallback callback) {
+        int numberRows = 0;
+        while (c.moveToNext()) {
+            numberRows++;
+            if (!callback.onRow(c)) {
+                break;
+            }
+        }
+        return numberRows;
+    }
+
+    /**
+     * Maps the remaining rows of a cursor. The cursor is not closed.
+     *
+     * @param c      cursor that is going to be read.
+     * @param mapper that converts every row.
+     * @param result list where the mapped rows are added.
+     * @param <T>    type of the mapped rows.
+     */
+    public static <T> void mapRows(@NonNull final Cursor c, @NonNull final RowMapper<T> mapper, @NonNull final List<T> result) {
+        while (c.moveToNext()) {
+            result.add(mapper.mapRow(c));
+        }
+    }
+
     @NonNull
     private static Object[] obtainCursorRow(@NonNull final Cursor c) {
         final int numberColumns = c.getColumnCount();
@@ -62,7 +62,6 @@ public class QueryResult {
      *
      * @return <code>int</code> with the number of rows.
      */
-    @SuppressWarnings("unused")
     public int getNumberOfRows() {
         return mResultRows.size();
     }
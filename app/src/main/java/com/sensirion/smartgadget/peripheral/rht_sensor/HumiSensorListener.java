@@ -33,7 +33,7 @@ package com.sensirion.smartgadget.peripheral.rht_sensor;
 import com.sensirion.smartgadget.utils.DeviceModel;
 
 public interface HumiSensorListener {
-    void onNewRHTData(float temperature, float humidity, String deviceAddress);
+    void onNewRHTData(float temperature, float humidity, String deviceAddress, long timestamp);
 
     void onGadgetConnectionChanged(DeviceModel model, boolean isConnected);
 }
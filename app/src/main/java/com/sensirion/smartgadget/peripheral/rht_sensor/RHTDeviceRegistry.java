@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.peripheral.rht_sensor;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.sensirion.smartgadget.peripheral.rht_utils.RHTDataPoint;
+import com.sensirion.smartgadget.utils.DeviceModel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the connection state and the last data point of every device as immutable snapshots,
+ * indexed by device address. Reading a device never locks and does not depend on the number of
+ * devices. Every update gets a new version of the registry, so a reader can ask for the devices
+ * that changed since the last version it saw.
+ * <p/>
+ * A connection change creates a new snapshot. A new data point is written into the value slot
+ * that all the snapshots of a device share instead, so storing the values of a known device does
+ * not allocate memory. The slot is read consistently with a sequence counter.
+ * <p/>
+ * The models of the connected devices are kept in an immutable list, in connection order, which
+ * is replaced on every connection change.
+ */
+public class RHTDeviceRegistry {
+
+    @NonNull
+    private final ConcurrentHashMap<String, DeviceSnapshot> mSnapshots = new ConcurrentHashMap<>();
+
+    // Written only by the synchronized updates, after the snapshot of the version is in the map.
+    private volatile long mVersion = 0;
+    @NonNull
+    private volatile List<DeviceModel> mConnectedDeviceModels = Collections.emptyList();
+
+    /**
+     * Obtains the current version of the registry.
+     *
+     * @return the version of the last update, <code>0</code> if the registry was never updated.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Obtains the snapshot of a device.
+     *
+     * @param deviceAddress of the device.
+     * @return {@link DeviceSnapshot} of the device - <code>null</code> if the device is unknown or was removed.
+     */
+    @Nullable
+    public DeviceSnapshot getSnapshot(@NonNull final String deviceAddress) {
+        final DeviceSnapshot snapshot = mSnapshots.get(deviceAddress);
+        return (snapshot == null || snapshot.mIsRemoved) ? null : snapshot;
+    }
+
+    /**
+     * Obtains the snapshots of every known device, connected or not. The devices removed with
+     * {@link #clear()} are included as removal snapshots, without connection nor values.
+     *
+     * @return {@link java.util.Collection} with a {@link DeviceSnapshot} for every device.
+     */
+    @NonNull
+    public Collection<DeviceSnapshot> getSnapshots() {
+        return Collections.unmodifiableCollection(mSnapshots.values());
+    }
+
+    /**
+     * Collects the snapshots that changed after a version. The returned version is the one that
+     * has to be used in the next call; the snapshots of later updates may be collected as well,
+     * and are collected again in the next call. Removed devices are reported with a snapshot
+     * whose {@link DeviceSnapshot#isRemoved()} is <code>true</code>.
+     *
+     * @param version of the last call, <code>0</code> for obtaining every device.
+     * @param changes where the changed snapshots are added.
+     * @return the version of the registry when the changes were collected.
+     */
+    public long getChangesSince(final long version, @NonNull final Collection<DeviceSnapshot> changes) {
+        final long currentVersion = mVersion;
+        for (final DeviceSnapshot snapshot : mSnapshots.values()) {
+            if (snapshot.getVersion() > version) {
+                changes.add(snapshot);
+            }
+        }
+        return currentVersion;
+    }
+
+    public boolean isConnected(@NonNull final String deviceAddress) {
+        final DeviceSnapshot snapshot = mSnapshots.get(deviceAddress);
+        return snapshot != null && snapshot.mIsConnected;
+    }
+
+    public int getNumberConnectedDevices() {
+        return mConnectedDeviceModels.size();
+    }
+
+    /**
+     * Obtains the models of the connected devices, in connection order.
+     *
+     * @return immutable {@link java.util.List} with the {@link com.sensirion.smartgadget.utils.DeviceModel} of every connected device.
+     */
+    @NonNull
+    public List<DeviceModel> getConnectedDeviceModels() {
+        return mConnectedDeviceModels;
+    }
+
+    /**
+     * Obtains the address of the device that was connected last.
+     *
+     * @return {@link java.lang.String} with the device address - <code>null</code> if no device is connected.
+     */
+    @Nullable
+    public String getLastConnectedAddress() {
+        final List<DeviceModel> connectedModels = mConnectedDeviceModels;
+        return (connectedModels.isEmpty()) ? null : connectedModels.get(connectedModels.size() - 1).getAddress();
+    }
+
+    /**
+     * Marks a device as connected.
+     *
+     * @param model of the device.
+     * @return <code>true</code> if the device was connected - <code>false</code> if it was already connected.
+     */
+    public synchronized boolean onDeviceConnected(@NonNull final DeviceModel model) {
+        final String deviceAddress = model.getAddress();
+        final DeviceSnapshot previous = mSnapshots.get(deviceAddress);
+        if (previous != null && previous.mIsConnected) {
+            return false;
+        }
+        final long version = mVersion + 1;
+        final ValueSlot valueSlot = (previous == null) ? new ValueSlot() : previous.mValueSlot;
+        mSnapshots.put(deviceAddress, new DeviceSnapshot(deviceAddress, model, true, valueSlot, version, false));
+        // The new device was connected last, so it goes at the end of the connection order.
+        final List<DeviceModel> connectedModels = new ArrayList<>(mConnectedDeviceModels.size() + 1);
+        connectedModels.addAll(mConnectedDeviceModels);
+        connectedModels.add(model);
+        mConnectedDeviceModels = Collections.unmodifiableList(connectedModels);
+        mVersion = version;
+        return true;
+    }
+
+    /**
+     * Marks a device as disconnected. Its last data point is kept.
+     *
+     * @param deviceAddress of the device.
+     * @return <code>true</code> if the device was disconnected - <code>false</code> if it was not connected.
+     */
+    public synchronized boolean onDeviceDisconnected(@NonNull final String deviceAddress) {
+        final DeviceSnapshot previous = mSnapshots.get(deviceAddress);
+        if (previous == null || !previous.mIsConnected) {
+            return false;
+        }
+        final long version = mVersion + 1;
+        mSnapshots.put(deviceAddress, new DeviceSnapshot(deviceAddress, null, false, previous.mValueSlot, version, false));
+        final List<DeviceModel> connectedModels = new ArrayList<>(mConnectedDeviceModels.size());
+        for (final DeviceModel connectedModel : mConnectedDeviceModels) {
+            if (!deviceAddress.equals(connectedModel.getAddress())) {
+                connectedModels.add(connectedModel);
+            }
+        }
+        mConnectedDeviceModels = Collections.unmodifiableList(connectedModels);
+        mVersion = version;
+        return true;
+    }
+
+    /**
+     * Stores the last data point of a device.
+     *
+     * @param deviceAddress of the device.
+     * @param dataPoint     received from the device.
+     * @return the version of the update.
+     */
+    public long onDataPoint(@NonNull final String deviceAddress, @NonNull final RHTDataPoint dataPoint) {
+        return onDataPoint(deviceAddress, dataPoint.getTemperatureCelsius(), dataPoint.getRelativeHumidity(), dataPoint.getTimestamp());
+    }
+
+    /**
+     * Stores the last values of a device. It only allocates memory for the first value of a device.
+     *
+     * @param deviceAddress    of the device.
+     * @param temperature      of the sample, in Celsius.
+     * @param relativeHumidity of the sample.
+     * @param timestamp        of the sample.
+     * @return the version of the update.
+     */
+    public synchronized long onDataPoint(@NonNull final String deviceAddress, final float temperature,
+                                         final float relativeHumidity, final long timestamp) {
+        DeviceSnapshot snapshot = mSnapshots.get(deviceAddress);
+        if (snapshot == null || snapshot.mIsRemoved) {
+            snapshot = new DeviceSnapshot(deviceAddress, null, false, new ValueSlot(), 0, false);
+            mSnapshots.put(deviceAddress, snapshot);
+        }
+        final long version = mVersion + 1;
+        snapshot.mValueSlot.write(temperature, relativeHumidity, timestamp, version);
+        mVersion = version;
+        return version;
+    }
+
+    /**
+     * Removes every device. Each device is replaced by a removal snapshot of a new version, so
+     * {@link #getChangesSince(long, Collection)} reports the removals.
+     */
+    public synchronized void clear() {
+        final long version = mVersion + 1;
+        for (final DeviceSnapshot snapshot : mSnapshots.values()) {
+            if (!snapshot.mIsRemoved) {
+                mSnapshots.put(snapshot.mDeviceAddress, new DeviceSnapshot(snapshot.mDeviceAddress, null, false, new ValueSlot(), version, true));
+            }
+        }
+        mConnectedDeviceModels = Collections.emptyList();
+        mVersion = version;
+    }
+
+    /**
+     * Last values of a device, shared by all its snapshots. It is only written by the synchronized
+     * updates of the registry; readers retry while the sequence counter is odd or changes.
+     */
+    private static final class ValueSlot {
+        private volatile int mSequence = 0;
+        private volatile float mTemperature;
+        private volatile float mRelativeHumidity;
+        private volatile long mTimestamp;
+        // 0 until the first value is written.
+        private volatile long mVersion = 0;
+
+        private void write(final float temperature, final float relativeHumidity, final long timestamp, final long version) {
+            mSequence++;
+            mTemperature = temperature;
+            mRelativeHumidity = relativeHumidity;
+            mTimestamp = timestamp;
+            mVersion = version;
+            mSequence++;
+        }
+
+        @Nullable
+        private RHTDataPoint read() {
+            while (true) {
+                final int sequence = mSequence;
+                if ((sequence & 1) != 0) {
+                    Thread.yield();
+                    continue;
+                }
+                final long version = mVersion;
+                final float temperature = mTemperature;
+                final float relativeHumidity = mRelativeHumidity;
+                final long timestamp = mTimestamp;
+                if (sequence == mSequence) {
+                    return (version == 0) ? null : new RHTDataPoint(temperature, relativeHumidity, timestamp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Immutable connection state of a device in a version of the registry, with the last values of the device.
+     */
+    public static final class DeviceSnapshot {
+        @NonNull
+        private final String mDeviceAddress;
+        @Nullable
+        private final DeviceModel mDeviceModel;
+        private final boolean mIsConnected;
+        @NonNull
+        private final ValueSlot mValueSlot;
+        private final long mVersion;
+        private final boolean mIsRemoved;
+
+        private DeviceSnapshot(@NonNull final String deviceAddress,
+                               @Nullable final DeviceModel deviceModel,
+                               final boolean isConnected,
+                               @NonNull final ValueSlot valueSlot,
+                               final long version,
+                               final boolean isRemoved) {
+            mDeviceAddress = deviceAddress;
+            mDeviceModel = deviceModel;
+            mIsConnected = isConnected;
+            mValueSlot = valueSlot;
+            mVersion = version;
+            mIsRemoved = isRemoved;
+        }
+
+        @NonNull
+        public String getDeviceAddress() {
+            return mDeviceAddress;
+        }
+
+        /**
+         * @return {@link com.sensirion.smartgadget.utils.DeviceModel} of the device - <code>null</code> if it is not connected.
+         */
+        @Nullable
+        public DeviceModel getDeviceModel() {
+            return mDeviceModel;
+        }
+
+        public boolean isConnected() {
+            return mIsConnected;
+        }
+
+        /**
+         * @return <code>true</code> if the device was removed from the registry - <code>false</code> otherwise.
+         */
+        public boolean isRemoved() {
+            return mIsRemoved;
+        }
+
+        /**
+         * @return {@link com.sensirion.smartgadget.peripheral.rht_utils.RHTDataPoint} received last - <code>null</code> if the device did not send data yet.
+         */
+        @Nullable
+        public RHTDataPoint getLastDataPoint() {
+            return mValueSlot.read();
+        }
+
+        /**
+         * @return the version of the registry in which the connection state or the last values of the device changed last.
+         */
+        public long getVersion() {
+            return Math.max(mVersion, mValueSlot.mVersion);
+        }
+    }
+}
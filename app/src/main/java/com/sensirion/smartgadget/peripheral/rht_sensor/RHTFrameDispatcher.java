@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.peripheral.rht_sensor;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Choreographer;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Executes the submitted tasks in the main thread, all together right before the next frame is
+ * drawn. Used as executor of a {@link RHTSampleBus.DeliveryPolicy#LATEST_WINS} subscription it
+ * delivers at most one sample per device and frame, no matter how fast the devices notify.
+ */
+public class RHTFrameDispatcher implements Executor, Choreographer.FrameCallback {
+
+    @Nullable
+    private static RHTFrameDispatcher mInstance = null;
+
+    @NonNull
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    @NonNull
+    private final Runnable mFrameScheduler = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(RHTFrameDispatcher.this);
+        }
+    };
+
+    // Tasks for the next frame, and tasks of the frame being dispatched. Swapped every frame.
+    @NonNull
+    private ArrayDeque<Runnable> mPendingTasks = new ArrayDeque<>();
+    @NonNull
+    private ArrayDeque<Runnable> mFrameTasks = new ArrayDeque<>();
+    private boolean mIsFrameScheduled = false;
+
+    // Written in the main thread only.
+    private volatile long mNumberDispatchedFrames = 0;
+    private volatile long mNumberExecutedTasks = 0;
+    private volatile long mDispatchTimeNs = 0;
+    private volatile long mMaxFrameDispatchTimeNs = 0;
+
+    private RHTFrameDispatcher() {
+    }
+
+    @NonNull
+    public synchronized static RHTFrameDispatcher getInstance() {
+        if (mInstance == null) {
+            mInstance = new RHTFrameDispatcher();
+        }
+        return mInstance;
+    }
+
+    /**
+     * Enqueues a task for the next frame.
+     *
+     * @param task executed in the main thread before the next frame.
+     */
+    @Override
+    public void execute(@NonNull final Runnable task) {
+        synchronized (this) {
+            mPendingTasks.add(task);
+            if (mIsFrameScheduled) {
+                return;
+            }
+            mIsFrameScheduled = true;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mFrameScheduler.run();
+        } else {
+            mMainHandler.post(mFrameScheduler);
+        }
+    }
+
+    /**
+     * Executes the tasks enqueued for this frame. Tasks enqueued meanwhile wait for the next frame.
+     */
+    @Override
+    public void doFrame(final long frameTimeNanos) {
+        synchronized (this) {
+            final ArrayDeque<Runnable> frameTasks = mPendingTasks;
+            mPendingTasks = mFrameTasks;
+            mFrameTasks = frameTasks;
+            mIsFrameScheduled = false;
+        }
+        final long initialTimeNs = System.nanoTime();
+        int numberTasks = 0;
+        Runnable task;
+        while ((task = mFrameTasks.poll()) != null) {
+            task.run();
+            numberTasks++;
+        }
+        final long dispatchTimeNs = System.nanoTime() - initialTimeNs;
+        mNumberDispatchedFrames++;
+        mNumberExecutedTasks += numberTasks;
+        mDispatchTimeNs += dispatchTimeNs;
+        mMaxFrameDispatchTimeNs = Math.max(mMaxFrameDispatchTimeNs, dispatchTimeNs);
+    }
+
+    /**
+     * Starts the statistics again, e.g. together with a {@link com.sensirion.smartgadget.utils.view.FrameJankMonitor}.
+     * Has to be called in the main thread.
+     */
+    public void resetStatistics() {
+        mNumberDispatchedFrames = 0;
+        mNumberExecutedTasks = 0;
+        mDispatchTimeNs = 0;
+        mMaxFrameDispatchTimeNs = 0;
+    }
+
+    public long getNumberDispatchedFrames() {
+        return mNumberDispatchedFrames;
+    }
+
+    public long getNumberExecutedTasks() {
+        return mNumberExecutedTasks;
+    }
+
+    /**
+     * @return the time spent executing tasks in all the frames since the last reset, in nanoseconds.
+     */
+    public long getDispatchTimeNs() {
+        return mDispatchTimeNs;
+    }
+
+    /**
+     * @return the longest time spent executing the tasks of a single frame since the last reset, in nanoseconds.
+     */
+    public long getMaxFrameDispatchTimeNs() {
+        return mMaxFrameDispatchTimeNs;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.peripheral.rht_sensor;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers the live samples of every sensor to its subscribers without making the producers wait
+ * for them. Every subscriber has its own mailbox and its own executor, so a slow subscriber only
+ * delays itself and never the Bluetooth or sensor callbacks publishing the samples.
+ */
+public class RHTSampleBus {
+
+    private static final String TAG = RHTSampleBus.class.getSimpleName();
+
+    public static final int DEFAULT_LOSSLESS_CAPACITY = 1024;
+    public static final int DEFAULT_LATEST_WINS_CAPACITY = 64;
+
+    /**
+     * How the samples pending for a subscriber are kept.
+     */
+    public enum DeliveryPolicy {
+        /**
+         * Only the latest sample of every device is kept, older pending samples are replaced.
+         * The capacity limits the number of devices. Suitable for the user interface.
+         */
+        LATEST_WINS,
+        /**
+         * Every sample is kept and delivered in order. The capacity limits the number of pending
+         * samples, samples arriving to a full mailbox are rejected and counted.
+         * Suitable for the persistence.
+         */
+        LOSSLESS
+    }
+
+    @Nullable
+    private static RHTSampleBus mInstance = null;
+    @Nullable
+    private static Executor mMainThreadExecutor = null;
+
+    // Replaced on every subscription change, so publishing iterates it without locks nor iterators.
+    @NonNull
+    private volatile RHTSampleMailbox[] mMailboxes = new RHTSampleMailbox[0];
+
+    /**
+     * Creates an independent bus. The application uses the instance of {@link #getInstance()}.
+     */
+    public RHTSampleBus() {
+    }
+
+    @NonNull
+    public synchronized static RHTSampleBus getInstance() {
+        if (mInstance == null) {
+            mInstance = new RHTSampleBus();
+        }
+        return mInstance;
+    }
+
+    /**
+     * Obtains an executor that runs its tasks in the main thread.
+     *
+     * @return {@link java.util.concurrent.Executor} of the main thread.
+     */
+    @NonNull
+    public synchronized static Executor getMainThreadExecutor() {
+        if (mMainThreadExecutor == null) {
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            mMainThreadExecutor = new Executor() {
+                @Override
+                public void execute(@NonNull final Runnable runnable) {
+                    mainHandler.post(runnable);
+                }
+            };
+        }
+        return mMainThreadExecutor;
+    }
+
+    /**
+     * Subscribes to the published samples. A subscriber that was already subscribed is subscribed
+     * again with the new executor and policy.
+     *
+     * @param subscriber that receives the samples.
+     * @param executor   where the samples are delivered. Samples are never delivered concurrently.
+     * @param policy     of the mailbox of the subscriber.
+     * @param capacity   of the mailbox of the subscriber, see {@link DeliveryPolicy}.
+     */
+    public void subscribe(@NonNull final RHTSampleSubscriber subscriber,
+                          @NonNull final Executor executor,
+                          @NonNull final DeliveryPolicy policy,
+                          final int capacity) {
+        final RHTSampleMailbox mailbox = new RHTSampleMailbox(subscriber, executor, policy, capacity);
+        synchronized (this) {
+            unsubscribe(subscriber);
+            final RHTSampleMailbox[] mailboxes = Arrays.copyOf(mMailboxes, mMailboxes.length + 1);
+            mailboxes[mailboxes.length - 1] = mailbox;
+            mMailboxes = mailboxes;
+        }
+        Log.d(TAG, String.format("subscribe -> Subscribed %s with policy %s.", subscriber, policy));
+    }
+
+    /**
+     * Unsubscribes a subscriber, discarding its pending samples.
+     *
+     * @param subscriber that does not want to receive more samples.
+     * @return <code>true</code> if it was subscribed - <code>false</code> otherwise.
+     */
+    public synchronized boolean unsubscribe(@NonNull final RHTSampleSubscriber subscriber) {
+        final RHTSampleMailbox[] mailboxes = mMailboxes;
+        for (int i = 0; i < mailboxes.length; i++) {
+            if (mailboxes[i].getSubscriber() == subscriber) {
+                mailboxes[i].close();
+                final RHTSampleMailbox[] remainingMailboxes = new RHTSampleMailbox[mailboxes.length - 1];
+                System.arraycopy(mailboxes, 0, remainingMailboxes, 0, i);
+                System.arraycopy(mailboxes, i + 1, remainingMailboxes, i, mailboxes.length - i - 1);
+                mMailboxes = remainingMailboxes;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Publishes a sample to every subscriber. It only stores the sample in the mailboxes and
+     * returns immediately, without allocating memory.
+     *
+     * @param deviceAddress    of the device that measured the sample.
+     * @param temperature      of the sample, in Celsius.
+     * @param relativeHumidity of the sample.
+     * @param timestamp        of the sample, in milliseconds.
+     */
+    public void publish(@NonNull final String deviceAddress, final float temperature,
+                        final float relativeHumidity, final long timestamp) {
+        final RHTSampleMailbox[] mailboxes = mMailboxes;
+        for (int i = 0; i < mailboxes.length; i++) {
+            mailboxes[i].offer(deviceAddress, temperature, relativeHumidity, timestamp);
+        }
+    }
+
+    /**
+     * Obtains the number of samples that were rejected by a full mailbox.
+     *
+     * @return the number of rejected samples of the current subscribers.
+     */
+    public long getNumberRejectedSamples() {
+        long numberRejectedSamples = 0;
+        for (final RHTSampleMailbox mailbox : mMailboxes) {
+            numberRejectedSamples += mailbox.getNumberRejectedSamples();
+        }
+        return numberRejectedSamples;
+    }
+
+    /**
+     * Obtains the number of samples that were rejected by the full mailbox of a subscriber.
+     *
+     * @param subscriber of the mailbox.
+     * @return the number of rejected samples of the subscriber - <code>0</code> if it is not subscribed.
+     */
+    public long getNumberRejectedSamples(@NonNull final RHTSampleSubscriber subscriber) {
+        for (final RHTSampleMailbox mailbox : mMailboxes) {
+            if (mailbox.getSubscriber() == subscriber) {
+                return mailbox.getNumberRejectedSamples();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Obtains the number of samples replaced by a newer sample before they were delivered.
+     *
+     * @return the number of conflated samples of the current subscribers.
+     */
+    public long getNumberConflatedSamples() {
+        long numberConflatedSamples = 0;
+        for (final RHTSampleMailbox mailbox : mMailboxes) {
+            numberConflatedSamples += mailbox.getNumberConflatedSamples();
+        }
+        return numberConflatedSamples;
+    }
+}
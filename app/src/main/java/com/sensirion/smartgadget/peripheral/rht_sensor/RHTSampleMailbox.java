@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.peripheral.rht_sensor;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pending samples of one subscriber of the {@link RHTSampleBus}. Offering a sample never blocks
+ * the producer: the samples are stored and a single drain task is handed to the executor of the
+ * subscriber, which delivers every sample that arrived until the mailbox is empty.
+ * <p/>
+ * The samples are kept in preallocated arrays, so neither offering nor delivering a sample
+ * allocates memory. Only the executor may allocate when the drain task is handed to it.
+ */
+class RHTSampleMailbox implements Runnable {
+
+    private static final String TAG = RHTSampleMailbox.class.getSimpleName();
+
+    @NonNull
+    private final RHTSampleSubscriber mSubscriber;
+    @NonNull
+    private final Executor mExecutor;
+    @NonNull
+    private final RHTSampleBus.DeliveryPolicy mPolicy;
+    private final int mCapacity;
+
+    // Pending samples, in arrival order for DeliveryPolicy.LOSSLESS and one per device for DeliveryPolicy.LATEST_WINS.
+    @NonNull
+    private final Samples mPendingSamples;
+    // Samples being delivered, only used by the drain task.
+    @NonNull
+    private final Samples mDeliveredSamples;
+
+    @NonNull
+    private final AtomicLong mNumberConflatedSamples = new AtomicLong();
+    @NonNull
+    private final AtomicLong mNumberRejectedSamples = new AtomicLong();
+
+    private boolean mIsDrainScheduled = false;
+    private volatile boolean mIsClosed = false;
+
+    RHTSampleMailbox(@NonNull final RHTSampleSubscriber subscriber,
+                     @NonNull final Executor executor,
+                     @NonNull final RHTSampleBus.DeliveryPolicy policy,
+                     final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(String.format("%s: RHTSampleMailbox -> The capacity has to be positive.", TAG));
+        }
+        mSubscriber = subscriber;
+        mExecutor = executor;
+        mPolicy = policy;
+        mCapacity = capacity;
+        mPendingSamples = new Samples(capacity);
+        mDeliveredSamples = new Samples(capacity);
+    }
+
+    @NonNull
+    RHTSampleSubscriber getSubscriber() {
+        return mSubscriber;
+    }
+
+    long getNumberConflatedSamples() {
+        return mNumberConflatedSamples.get();
+    }
+
+    long getNumberRejectedSamples() {
+        return mNumberRejectedSamples.get();
+    }
+
+    /**
+     * Stores a sample and schedules its delivery, if no delivery is scheduled yet.
+     *
+     * @return <code>true</code> if the sample was stored - <code>false</code> if the mailbox is full or closed.
+     */
+    boolean offer(@NonNull final String deviceAddress, final float temperature,
+                  final float relativeHumidity, final long timestamp) {
+        if (mIsClosed) {
+            return false;
+        }
+        synchronized (this) {
+            if (mPolicy == RHTSampleBus.DeliveryPolicy.LATEST_WINS) {
+                // The pending samples are at most one per device, a linear search is cheaper than a map entry per sample.
+                final int pendingPosition = mPendingSamples.indexOf(deviceAddress);
+                if (pendingPosition >= 0) {
+                    mPendingSamples.set(pendingPosition, deviceAddress, temperature, relativeHumidity, timestamp);
+                    mNumberConflatedSamples.incrementAndGet();
+                    return true;
+                }
+                if (mPendingSamples.mSize >= mCapacity) {
+                    return reject(deviceAddress);
+                }
+                mPendingSamples.add(deviceAddress, temperature, relativeHumidity, timestamp);
+            } else {
+                if (mPendingSamples.mSize >= mCapacity) {
+                    return reject(deviceAddress);
+                }
+                mPendingSamples.add(deviceAddress, temperature, relativeHumidity, timestamp);
+            }
+            if (mIsDrainScheduled) {
+                return true;
+            }
+            mIsDrainScheduled = true;
+        }
+        mExecutor.execute(this);
+        return true;
+    }
+
+    /**
+     * Discards the pending samples. The subscriber does not receive samples afterwards.
+     */
+    synchronized void close() {
+        mIsClosed = true;
+        mPendingSamples.clear();
+    }
+
+    /**
+     * Delivers the pending samples in the executor of the subscriber.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                if (mIsClosed || mPendingSamples.mSize == 0) {
+                    mIsDrainScheduled = false;
+                    return;
+                }
+                mDeliveredSamples.moveFrom(mPendingSamples);
+            }
+            for (int index = 0; index < mDeliveredSamples.mSize && !mIsClosed; index++) {
+                try {
+                    mSubscriber.onNewSample(mDeliveredSamples.mDeviceAddresses[index], mDeliveredSamples.mTemperatures[index],
+                            mDeliveredSamples.mRelativeHumidities[index], mDeliveredSamples.mTimestamps[index]);
+                } catch (final RuntimeException e) {
+                    Log.e(TAG, String.format("run -> Subscriber %s failed to process a sample of %s.", mSubscriber, mDeliveredSamples.mDeviceAddresses[index]), e);
+                }
+            }
+            mDeliveredSamples.clear();
+        }
+    }
+
+    /**
+     * Counts a rejected sample. The rejection is logged when the number of rejected samples reaches
+     * a power of two, so a mailbox that stays full does not flood the log.
+     */
+    private boolean reject(@NonNull final String deviceAddress) {
+        final long numberRejectedSamples = mNumberRejectedSamples.incrementAndGet();
+        if ((numberRejectedSamples & (numberRejectedSamples - 1)) == 0) {
+            Log.w(TAG, String.format("offer -> The mailbox of %s is full, rejected a sample of %s. %d samples rejected so far.",
+                    mSubscriber, deviceAddress, numberRejectedSamples));
+        }
+        return false;
+    }
+
+    /**
+     * Fixed size list of samples, stored in parallel arrays.
+     */
+    private static final class Samples {
+        @NonNull
+        private final String[] mDeviceAddresses;
+        @NonNull
+        private final float[] mTemperatures;
+        @NonNull
+        private final float[] mRelativeHumidities;
+        @NonNull
+        private final long[] mTimestamps;
+        private int mSize = 0;
+
+        private Samples(final int capacity) {
+            mDeviceAddresses = new String[capacity];
+            mTemperatures = new float[capacity];
+            mRelativeHumidities = new float[capacity];
+            mTimestamps = new long[capacity];
+        }
+
+        private int indexOf(@NonNull final String deviceAddress) {
+            for (int i = 0; i < mSize; i++) {
+                if (deviceAddress.equals(mDeviceAddresses[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void add(@NonNull final String deviceAddress, final float temperature,
+                         final float relativeHumidity, final long timestamp) {
+            set(mSize++, deviceAddress, temperature, relativeHumidity, timestamp);
+        }
+
+        private void set(final int index, @NonNull final String deviceAddress, final float temperature,
+                         final float relativeHumidity, final long timestamp) {
+            mDeviceAddresses[index] = deviceAddress;
+            mTemperatures[index] = temperature;
+            mRelativeHumidities[index] = relativeHumidity;
+            mTimestamps[index] = timestamp;
+        }
+
+        /**
+         * Moves the samples of another list with the same capacity into this empty list.
+         */
+        private void moveFrom(@NonNull final Samples other) {
+            System.arraycopy(other.mDeviceAddresses, 0, mDeviceAddresses, 0, other.mSize);
+            System.arraycopy(other.mTemperatures, 0, mTemperatures, 0, other.mSize);
+            System.arraycopy(other.mRelativeHumidities, 0, mRelativeHumidities, 0, other.mSize);
+            System.arraycopy(other.mTimestamps, 0, mTimestamps, 0, other.mSize);
+            mSize = other.mSize;
+            other.clear();
+        }
+
+        private void clear() {
+            // The addresses are released, so the devices of old samples are not kept alive.
+            for (int i = 0; i < mSize; i++) {
+                mDeviceAddresses[i] = null;
+            }
+            mSize = 0;
+        }
+    }
+}
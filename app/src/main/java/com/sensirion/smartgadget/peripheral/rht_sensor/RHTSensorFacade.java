@@ -41,14 +41,15 @@ import com.sensirion.smartgadget.peripheral.rht_utils.RHTDataPoint;
 import com.sensirion.smartgadget.utils.DeviceModel;
 import com.sensirion.smartgadget.utils.Settings;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 public class RHTSensorFacade implements HumiSensorListener {
 
@@ -56,11 +57,13 @@ public class RHTSensorFacade implements HumiSensorListener {
 
     @Nullable
     private static RHTSensorFacade mInstance;
-    private final List<DeviceModel> mConnectedDeviceListModels = Collections.synchronizedList(new LinkedList<DeviceModel>());
     private final Set<RHTSensorListener> mListeners = Collections.synchronizedSet(new HashSet<RHTSensorListener>());
+    private final Map<RHTSensorListener, RHTSampleSubscriber> mListenerSubscribers = Collections.synchronizedMap(new HashMap<RHTSensorListener, RHTSampleSubscriber>());
 
     @NonNull
-    private final Map<String, RHTDataPoint> mLastDataPoint = Collections.synchronizedMap(new HashMap<String, RHTDataPoint>());
+    private final RHTDeviceRegistry mDeviceRegistry = new RHTDeviceRegistry();
+
+    private volatile boolean mIsFrameAlignedDelivery = true;
 
     private RHTSensorFacade() {
     }
@@ -94,7 +97,13 @@ public class RHTSensorFacade implements HumiSensorListener {
     public void release(@NonNull final Context context) {
         RHTHumigadgetSensorManager.getInstance().release(context);
         RHTInternalSensorManager.getInstance().unregisterAllInternalSensorListeners();
-        mConnectedDeviceListModels.clear();
+        synchronized (mListenerSubscribers) {
+            for (final RHTSampleSubscriber subscriber : mListenerSubscribers.values()) {
+                RHTSampleBus.getInstance().unsubscribe(subscriber);
+            }
+            mListenerSubscribers.clear();
+        }
+        mDeviceRegistry.clear();
         mInstance = null;
     }
 
@@ -104,7 +113,7 @@ public class RHTSensorFacade implements HumiSensorListener {
      * @return <code>true</code> if they are connected devices - <code>false</code> otherwise.
      */
     public boolean hasConnectedDevices() {
-        return !mConnectedDeviceListModels.isEmpty();
+        return mDeviceRegistry.getNumberConnectedDevices() > 0;
     }
 
     /**
@@ -114,7 +123,7 @@ public class RHTSensorFacade implements HumiSensorListener {
      */
     @NonNull
     public List<DeviceModel> getConnectedSensors() {
-        return new LinkedList<>(mConnectedDeviceListModels);
+        return mDeviceRegistry.getConnectedDeviceModels();
     }
 
     /**
@@ -124,14 +133,7 @@ public class RHTSensorFacade implements HumiSensorListener {
      * @return <code>true</code> if connected - <code>false</code> if it's disconnected.
      */
     public boolean isDeviceConnected(@NonNull final String deviceAddress) {
-        synchronized (mConnectedDeviceListModels) {
-            for (final DeviceModel model : mConnectedDeviceListModels) {
-                if (model.getAddress().equals(deviceAddress)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return mDeviceRegistry.isConnected(deviceAddress);
     }
 
     /**
@@ -142,14 +144,29 @@ public class RHTSensorFacade implements HumiSensorListener {
      */
     @Nullable
     public DeviceModel getDeviceModel(@NonNull final String deviceAddress) {
-        synchronized (mConnectedDeviceListModels) {
-            for (final DeviceModel model : mConnectedDeviceListModels) {
-                if (model.getAddress().equals(deviceAddress)) {
-                    return model;
-                }
-            }
-        }
-        return null;
+        final RHTDeviceRegistry.DeviceSnapshot snapshot = mDeviceRegistry.getSnapshot(deviceAddress);
+        return (snapshot == null) ? null : snapshot.getDeviceModel();
+    }
+
+    /**
+     * Gets the current version of the connected devices and their last values. It grows with
+     * every connection, disconnection and received value.
+     *
+     * @return the current version, to be used with {@link #getDeviceChangesSince(long, Collection)}.
+     */
+    public long getDeviceVersion() {
+        return mDeviceRegistry.getVersion();
+    }
+
+    /**
+     * Collects the devices whose connection state or last value changed after a version.
+     *
+     * @param version of the last call - <code>0</code> for obtaining every device.
+     * @param changes where the {@link RHTDeviceRegistry.DeviceSnapshot} of the changed devices are added.
+     * @return the version that has to be used in the next call.
+     */
+    public long getDeviceChangesSince(final long version, @NonNull final Collection<RHTDeviceRegistry.DeviceSnapshot> changes) {
+        return mDeviceRegistry.getChangesSince(version, changes);
     }
 
     /**
@@ -162,6 +179,7 @@ public class RHTSensorFacade implements HumiSensorListener {
             Log.w(TAG, String.format("registerNotificationListener -> already contains listener: %s.", listener));
         }
         mListeners.add(listener);
+        subscribeListener(listener);
         RHTInternalSensorManager.getInstance().registerInternalSensorListener(this);
         RHTHumigadgetSensorManager.getInstance().registerHumigadgetListener(this);
         notifyCachedSensorData(listener);
@@ -175,11 +193,64 @@ public class RHTSensorFacade implements HumiSensorListener {
     public void unregisterListener(@NonNull final RHTSensorListener listener) {
         if (mListeners.contains(listener)) {
             mListeners.remove(listener);
+            final RHTSampleSubscriber subscriber = mListenerSubscribers.remove(listener);
+            if (subscriber != null) {
+                RHTSampleBus.getInstance().unsubscribe(subscriber);
+            }
         } else {
             Log.w(TAG, String.format("unregisterNotificationListener -> Has not found: %s", listener));
         }
     }
 
+    /**
+     * Selects how the samples are delivered to the listeners. With frame aligned delivery the
+     * listeners receive at most one sample per device and frame, right before the frame is drawn;
+     * otherwise every sample is posted to the main thread as soon as it arrives.
+     *
+     * @param isFrameAlignedDelivery <code>true</code> for delivering once per frame - <code>false</code> for delivering immediately.
+     */
+    public void setFrameAlignedDelivery(final boolean isFrameAlignedDelivery) {
+        if (mIsFrameAlignedDelivery == isFrameAlignedDelivery) {
+            return;
+        }
+        mIsFrameAlignedDelivery = isFrameAlignedDelivery;
+        synchronized (mListeners) {
+            for (final RHTSensorListener listener : mListeners) {
+                final RHTSampleSubscriber subscriber = mListenerSubscribers.remove(listener);
+                if (subscriber != null) {
+                    RHTSampleBus.getInstance().unsubscribe(subscriber);
+                }
+                subscribeListener(listener);
+            }
+        }
+        Log.i(TAG, String.format("setFrameAlignedDelivery -> Frame aligned delivery is %s.", (isFrameAlignedDelivery) ? "enabled" : "disabled"));
+    }
+
+    public boolean isFrameAlignedDelivery() {
+        return mIsFrameAlignedDelivery;
+    }
+
+    /**
+     * The samples reach the listeners through the {@link RHTSampleBus}, in the main thread and
+     * conflated to the latest sample of every device, see {@link #setFrameAlignedDelivery(boolean)}.
+     */
+    private void subscribeListener(@NonNull final RHTSensorListener listener) {
+        if (mListenerSubscribers.containsKey(listener)) {
+            return;
+        }
+        final RHTSampleSubscriber subscriber = new RHTSampleSubscriber() {
+            @Override
+            public void onNewSample(@NonNull final String deviceAddress, final float temperature,
+                                    final float relativeHumidity, final long timestamp) {
+                listener.onNewRHTSensorData(temperature, relativeHumidity, deviceAddress);
+            }
+        };
+        mListenerSubscribers.put(listener, subscriber);
+        final Executor executor = (mIsFrameAlignedDelivery) ? RHTFrameDispatcher.getInstance() : RHTSampleBus.getMainThreadExecutor();
+        RHTSampleBus.getInstance().subscribe(subscriber, executor,
+                RHTSampleBus.DeliveryPolicy.LATEST_WINS, RHTSampleBus.DEFAULT_LATEST_WINS_CAPACITY);
+    }
+
     private void selectFallback(@NonNull final String deviceAddress) {
         if (deviceAddress.equals(Settings.getInstance().getSelectedAddress())) {
             try {
@@ -199,12 +270,20 @@ public class RHTSensorFacade implements HumiSensorListener {
      */
     @Nullable
     public String getAddressLastConnectedGadget() {
-        synchronized (mConnectedDeviceListModels) {
-            if (mConnectedDeviceListModels.isEmpty()) {
-                return null;
-            }
-            return mConnectedDeviceListModels.get(mConnectedDeviceListModels.size() - 1).getAddress();
-        }
+        return mDeviceRegistry.getLastConnectedAddress();
+    }
+
+    /**
+     * Receives a sample measured now.
+     *
+     * @param temperature   of the sample.
+     * @param humidity      of the sample.
+     * @param deviceAddress of the device.
+     */
+    public void onNewRHTData(final float temperature,
+                             final float humidity,
+                             @Nullable final String deviceAddress) {
+        onNewRHTData(temperature, humidity, deviceAddress, System.currentTimeMillis());
     }
 
     /**
@@ -213,11 +292,11 @@ public class RHTSensorFacade implements HumiSensorListener {
     @Override
     public void onNewRHTData(final float temperature,
                              final float humidity,
-                             @Nullable final String deviceAddress) {
-        this.mLastDataPoint.put(deviceAddress,
-                new RHTDataPoint(temperature, humidity, System.currentTimeMillis())
-        );
-        notifySensorData(temperature, humidity, deviceAddress);
+                             @Nullable final String deviceAddress,
+                             final long timestamp) {
+        final String sampleAddress = (deviceAddress == null) ? RHTInternalSensorManager.INTERNAL_SENSOR_ADDRESS : deviceAddress;
+        mDeviceRegistry.onDataPoint(sampleAddress, temperature, humidity, timestamp);
+        notifySensorData(temperature, humidity, sampleAddress, timestamp);
     }
 
     @Override
@@ -226,14 +305,13 @@ public class RHTSensorFacade implements HumiSensorListener {
         Log.d(TAG, String.format("onGadgetConnectionChanged -> Device %s has been %s.", deviceAddress, (isConnected) ? "connected" : "disconnected"));
 
         if (isConnected) {
-            if (isDeviceConnected(deviceAddress)) {
+            if (!mDeviceRegistry.onDeviceConnected(model)) {
                 Log.w(TAG, String.format("onGadgetConnectionChanged -> Device with address %s was already in the connected device list.", deviceAddress));
                 return;
             }
-            mConnectedDeviceListModels.add(model);
             Settings.getInstance().setSelectedAddress(model.getAddress());
         } else {
-            mConnectedDeviceListModels.remove(model);
+            mDeviceRegistry.onDeviceDisconnected(deviceAddress);
             selectFallback(deviceAddress);
         }
 
@@ -253,11 +331,22 @@ public class RHTSensorFacade implements HumiSensorListener {
      */
     public void notifySensorData(final float temperature,
                                  final float relativeHumidity, @Nullable final String deviceAddress) {
-        synchronized (mListeners) {
-            for (final RHTSensorListener listener : mListeners) {
-                listener.onNewRHTSensorData(temperature, relativeHumidity, deviceAddress);
-            }
-        }
+        notifySensorData(temperature, relativeHumidity, deviceAddress, System.currentTimeMillis());
+    }
+
+    /**
+     * Publishes the new sensor data in the {@link RHTSampleBus}. The listeners and the history
+     * receive it in their own threads, so this method never waits for them.
+     *
+     * @param temperature      of the sample.
+     * @param relativeHumidity of the sample.
+     * @param deviceAddress    of the device - <code>null</code> in case the sensor is an internal sensor.
+     * @param timestamp        of the sample.
+     */
+    public void notifySensorData(final float temperature, final float relativeHumidity,
+                                 @Nullable final String deviceAddress, final long timestamp) {
+        final String sampleAddress = (deviceAddress == null) ? RHTInternalSensorManager.INTERNAL_SENSOR_ADDRESS : deviceAddress;
+        RHTSampleBus.getInstance().publish(sampleAddress, temperature, relativeHumidity, timestamp);
     }
 
     /**
@@ -273,15 +362,16 @@ public class RHTSensorFacade implements HumiSensorListener {
      * @param listener that will be notified
      */
     public void notifyCachedSensorData(@NonNull final RHTSensorListener listener) {
-        synchronized (mLastDataPoint) {
-            for (final String humigadgetsWithDatapoints : mLastDataPoint.keySet()) {
-                final RHTDataPoint dataPoint = mLastDataPoint.get(humigadgetsWithDatapoints);
-                listener.onNewRHTSensorData(
-                        dataPoint.getTemperatureCelsius(),
-                        dataPoint.getRelativeHumidity(),
-                        humigadgetsWithDatapoints
-                );
+        for (final RHTDeviceRegistry.DeviceSnapshot snapshot : mDeviceRegistry.getSnapshots()) {
+            final RHTDataPoint dataPoint = snapshot.getLastDataPoint();
+            if (dataPoint == null) {
+                continue;
             }
+            listener.onNewRHTSensorData(
+                    dataPoint.getTemperatureCelsius(),
+                    dataPoint.getRelativeHumidity(),
+                    snapshot.getDeviceAddress()
+            );
         }
     }
 }
@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.peripheral.rht_sensor.external;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Downloads the logged data of several gadgets. The gadgets are queued and only a limited number
+ * of them download at the same time, since every download keeps its connection busy with
+ * notifications and the Bluetooth stack only handles a few busy connections properly.
+ * <p/>
+ * A failed download is retried with an exponential backoff until it reaches the maximum number
+ * of attempts. The progress of every download is aggregated so the state of all the scheduled
+ * gadgets can be shown at once.
+ */
+public class GadgetDownloadScheduler {
+
+    private static final String TAG = GadgetDownloadScheduler.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 2;
+    public static final int MAX_CONCURRENT_DOWNLOADS = 4;
+    public static final int DEFAULT_MAX_DOWNLOAD_ATTEMPTS = 3;
+    private static final long INITIAL_RETRY_DELAY_MS = 2000;
+    private static final long MAX_RETRY_DELAY_MS = 60000;
+    private static final int COMPLETED_PROGRESS = 100;
+
+    @NonNull
+    private final GadgetDownloadStarter mDownloadStarter;
+    @NonNull
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    @NonNull
+    private final Set<String> mPendingAddresses = new LinkedHashSet<>();
+    @NonNull
+    private final Map<String, Integer> mRunningProgress = new HashMap<>();
+    @NonNull
+    private final Map<String, Runnable> mScheduledRetries = new HashMap<>();
+    @NonNull
+    private final Map<String, Integer> mNumberAttempts = new HashMap<>();
+    @NonNull
+    private final Set<String> mCompletedAddresses = new HashSet<>();
+    @NonNull
+    private final Set<String> mFailedAddresses = new HashSet<>();
+    @NonNull
+    private final Set<GadgetDownloadSchedulerListener> mListeners = Collections.synchronizedSet(new HashSet<GadgetDownloadSchedulerListener>());
+
+    private int mMaxConcurrentDownloads = DEFAULT_MAX_CONCURRENT_DOWNLOADS;
+    private int mMaxDownloadAttempts = DEFAULT_MAX_DOWNLOAD_ATTEMPTS;
+
+    /**
+     * @param downloadStarter starts the downloads of the gadgets, which report their progress back
+     *                        through the download callbacks of the scheduler.
+     */
+    public GadgetDownloadScheduler(@NonNull final GadgetDownloadStarter downloadStarter) {
+        mDownloadStarter = downloadStarter;
+    }
+
+    public void registerListener(@NonNull final GadgetDownloadSchedulerListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void unregisterListener(@NonNull final GadgetDownloadSchedulerListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Sets how many gadgets can download at the same time.
+     *
+     * @param maxConcurrentDownloads from 1 to {@link #MAX_CONCURRENT_DOWNLOADS}.
+     */
+    public synchronized void setMaxConcurrentDownloads(final int maxConcurrentDownloads) {
+        if (maxConcurrentDownloads < 1 || maxConcurrentDownloads > MAX_CONCURRENT_DOWNLOADS) {
+            throw new IllegalArgumentException(String.format("%s: setMaxConcurrentDownloads -> The number of concurrent downloads has to be between 1 and %d.", TAG, MAX_CONCURRENT_DOWNLOADS));
+        }
+        mMaxConcurrentDownloads = maxConcurrentDownloads;
+        if (isScheduling()) {
+            updateDownloads();
+        }
+    }
+
+    public synchronized int getMaxConcurrentDownloads() {
+        return mMaxConcurrentDownloads;
+    }
+
+    /**
+     * Sets how many times a gadget download is attempted before it is reported as failed.
+     *
+     * @param maxDownloadAttempts at least 1.
+     */
+    public synchronized void setMaxDownloadAttempts(final int maxDownloadAttempts) {
+        if (maxDownloadAttempts < 1) {
+            throw new IllegalArgumentException(String.format("%s: setMaxDownloadAttempts -> The gadget download has to be attempted at least once.", TAG));
+        }
+        mMaxDownloadAttempts = maxDownloadAttempts;
+    }
+
+    public synchronized int getMaxDownloadAttempts() {
+        return mMaxDownloadAttempts;
+    }
+
+    /**
+     * Queues the download of the given gadgets. Gadgets already waiting or downloading are ignored.
+     * If no scheduled download was running, the previous results are cleared first.
+     *
+     * @param deviceAddresses of the gadgets that have to be downloaded.
+     */
+    public synchronized void schedule(@NonNull final Collection<String> deviceAddresses) {
+        if (!isScheduling()) {
+            mNumberAttempts.clear();
+            mCompletedAddresses.clear();
+            mFailedAddresses.clear();
+        }
+        for (final String deviceAddress : deviceAddresses) {
+            if (isScheduled(deviceAddress)) {
+                continue;
+            }
+            mCompletedAddresses.remove(deviceAddress);
+            mFailedAddresses.remove(deviceAddress);
+            mNumberAttempts.remove(deviceAddress);
+            mPendingAddresses.add(deviceAddress);
+        }
+        Log.d(TAG, String.format("schedule -> %d gadgets are waiting for their download.", mPendingAddresses.size()));
+        updateDownloads();
+    }
+
+    /**
+     * Removes the waiting gadgets from the queue and cancels their retries. The running downloads
+     * can not be stopped, they finish without starting new ones.
+     */
+    public synchronized void cancel() {
+        mPendingAddresses.clear();
+        for (final Runnable retry : mScheduledRetries.values()) {
+            mMainHandler.removeCallbacks(retry);
+        }
+        mScheduledRetries.clear();
+        updateDownloads();
+    }
+
+    /**
+     * Checks if some gadget is downloading or waiting for its download.
+     *
+     * @return <code>true</code> if there is still work to do - <code>false</code> otherwise.
+     */
+    public synchronized boolean isScheduling() {
+        return !mPendingAddresses.isEmpty() || !mRunningProgress.isEmpty() || !mScheduledRetries.isEmpty();
+    }
+
+    /**
+     * Obtains the progress of all the scheduled downloads. Each gadget weighs the same, finished
+     * and failed gadgets count as complete.
+     *
+     * @return the aggregated progress, from 0 to 100.
+     */
+    public synchronized int getProgress() {
+        final int numberGadgets = mPendingAddresses.size() + mRunningProgress.size() + mScheduledRetries.size()
+                + mCompletedAddresses.size() + mFailedAddresses.size();
+        if (numberGadgets == 0) {
+            return COMPLETED_PROGRESS;
+        }
+        long progressSum = (mCompletedAddresses.size() + mFailedAddresses.size()) * COMPLETED_PROGRESS;
+        for (final int progress : mRunningProgress.values()) {
+            progressSum += progress;
+        }
+        return (int) (progressSum / numberGadgets);
+    }
+
+    /**
+     * Obtains how long a failed download waits before its next attempt. The delay doubles with
+     * every failed attempt, up to a maximum.
+     *
+     * @param numberAttempts number of attempts of the download that already failed.
+     * @return <code>long</code> with the delay in milliseconds.
+     */
+    public static long obtainRetryDelayMs(final int numberAttempts) {
+        long retryDelayMs = INITIAL_RETRY_DELAY_MS;
+        for (int attempt = 1; attempt < numberAttempts && retryDelayMs < MAX_RETRY_DELAY_MS; attempt++) {
+            retryDelayMs *= 2;
+        }
+        return Math.min(retryDelayMs, MAX_RETRY_DELAY_MS);
+    }
+
+    /*
+     * Download callbacks, forwarded by the GadgetDownloadStarter.
+     */
+
+    public synchronized void onDownloadProgress(@NonNull final String deviceAddress, final int progress) {
+        if (!mRunningProgress.containsKey(deviceAddress)) {
+            return;
+        }
+        mRunningProgress.put(deviceAddress, Math.max(0, Math.min(progress, COMPLETED_PROGRESS)));
+        notifyProgress();
+    }
+
+    public synchronized void onDownloadCompleted(@NonNull final String deviceAddress) {
+        if (mRunningProgress.remove(deviceAddress) == null) {
+            return;
+        }
+        mCompletedAddresses.add(deviceAddress);
+        Log.d(TAG, String.format("onDownloadCompleted -> Download of gadget %s completed.", deviceAddress));
+        updateDownloads();
+    }
+
+    public synchronized void onDownloadFailed(@NonNull final String deviceAddress) {
+        if (mRunningProgress.remove(deviceAddress) == null) {
+            return;
+        }
+        retryOrFail(deviceAddress);
+        updateDownloads();
+    }
+
+    /**
+     * A disconnected gadget can not be downloaded until it is connected again, so its download
+     * fails without retries.
+     */
+    public synchronized void onGadgetDisconnected(@NonNull final String deviceAddress) {
+        final Runnable retry = mScheduledRetries.remove(deviceAddress);
+        if (retry != null) {
+            mMainHandler.removeCallbacks(retry);
+        }
+        if (mPendingAddresses.remove(deviceAddress) || mRunningProgress.remove(deviceAddress) != null || retry != null) {
+            Log.w(TAG, String.format("onGadgetDisconnected -> Gadget %s was disconnected before its download finished.", deviceAddress));
+            mFailedAddresses.add(deviceAddress);
+            updateDownloads();
+        }
+    }
+
+    /*
+     * Private Helpers
+     */
+
+    private boolean isScheduled(@NonNull final String deviceAddress) {
+        return mPendingAddresses.contains(deviceAddress) || mRunningProgress.containsKey(deviceAddress)
+                || mScheduledRetries.containsKey(deviceAddress);
+    }
+
+    private void updateDownloads() {
+        startPendingDownloads();
+        notifyProgress();
+        if (!isScheduling()) {
+            notifyFinished();
+        }
+    }
+
+    private void startPendingDownloads() {
+        while (mRunningProgress.size() < mMaxConcurrentDownloads && !mPendingAddresses.isEmpty()) {
+            final String deviceAddress = mPendingAddresses.iterator().next();
+            mPendingAddresses.remove(deviceAddress);
+            startDownload(deviceAddress);
+        }
+    }
+
+    private void startDownload(@NonNull final String deviceAddress) {
+        if (!mDownloadStarter.isDownloadAvailable(deviceAddress)) {
+            Log.w(TAG, String.format("startDownload -> Gadget %s is not connected or can not download its log.", deviceAddress));
+            mFailedAddresses.add(deviceAddress);
+            return;
+        }
+        final Integer previousAttempts = mNumberAttempts.get(deviceAddress);
+        final int attempt = (previousAttempts == null) ? 1 : previousAttempts + 1;
+        mNumberAttempts.put(deviceAddress, attempt);
+        mRunningProgress.put(deviceAddress, 0);
+        if (mDownloadStarter.isDownloading(deviceAddress)) {
+            // A download started by hand is followed instead of being started again.
+            Log.d(TAG, String.format("startDownload -> Gadget %s is already downloading.", deviceAddress));
+            return;
+        }
+        Log.d(TAG, String.format("startDownload -> Starting attempt %d of the download of gadget %s.", attempt, deviceAddress));
+        if (!mDownloadStarter.startDownload(deviceAddress)) {
+            mRunningProgress.remove(deviceAddress);
+            retryOrFail(deviceAddress);
+        }
+    }
+
+    private void retryOrFail(@NonNull final String deviceAddress) {
+        final Integer numberAttempts = mNumberAttempts.get(deviceAddress);
+        final int attempts = (numberAttempts == null) ? 0 : numberAttempts;
+        if (attempts >= mMaxDownloadAttempts) {
+            Log.w(TAG, String.format("retryOrFail -> Download of gadget %s failed %d times, giving up.", deviceAddress, attempts));
+            mFailedAddresses.add(deviceAddress);
+            return;
+        }
+        final long retryDelayMs = obtainRetryDelayMs(attempts);
+        final Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (GadgetDownloadScheduler.this) {
+                    if (mScheduledRetries.remove(deviceAddress) != this) {
+                        return;
+                    }
+                    mPendingAddresses.add(deviceAddress);
+                    updateDownloads();
+                }
+            }
+        };
+        mScheduledRetries.put(deviceAddress, retry);
+        mMainHandler.postDelayed(retry, retryDelayMs);
+        Log.d(TAG, String.format("retryOrFail -> Download of gadget %s will be retried in %d ms.", deviceAddress, retryDelayMs));
+    }
+
+    private void notifyProgress() {
+        final int progress = getProgress();
+        final int numberDownloading = mRunningProgress.size();
+        final int numberWaiting = mPendingAddresses.size() + mScheduledRetries.size();
+        final int numberCompleted = mCompletedAddresses.size();
+        final int numberFailed = mFailedAddresses.size();
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mListeners) {
+                    for (final GadgetDownloadSchedulerListener listener : mListeners) {
+                        listener.onScheduledDownloadProgress(progress, numberDownloading, numberWaiting, numberCompleted, numberFailed);
+                    }
+                }
+            }
+        });
+    }
+
+    private void notifyFinished() {
+        final int numberCompleted = mCompletedAddresses.size();
+        final int numberFailed = mFailedAddresses.size();
+        Log.i(TAG, String.format("notifyFinished -> Scheduled downloads finished, %d completed and %d failed.", numberCompleted, numberFailed));
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mListeners) {
+                    for (final GadgetDownloadSchedulerListener listener : mListeners) {
+                        listener.onScheduledDownloadsFinished(numberCompleted, numberFailed);
+                    }
+                }
+            }
+        });
+    }
+}
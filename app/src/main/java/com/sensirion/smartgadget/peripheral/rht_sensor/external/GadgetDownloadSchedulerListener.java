@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.peripheral.rht_sensor.external;
+
+public interface GadgetDownloadSchedulerListener {
+    /**
+     * Called in the main thread every time the progress of the scheduled downloads changes.
+     *
+     * @param progress             of all the scheduled downloads together, from 0 to 100.
+     * @param numberDownloading    number of gadgets that are downloading right now.
+     * @param numberWaiting        number of gadgets waiting for their (next) download attempt.
+     * @param numberCompleted      number of gadgets whose download finished.
+     * @param numberFailed         number of gadgets whose download failed after every attempt.
+     */
+    void onScheduledDownloadProgress(int progress, int numberDownloading, int numberWaiting,
+                                     int numberCompleted, int numberFailed);
+
+    /**
+     * Called in the main thread when no scheduled download is running or waiting anymore.
+     *
+     * @param numberCompleted number of gadgets whose download finished.
+     * @param numberFailed    number of gadgets whose download failed after every attempt.
+     */
+    void onScheduledDownloadsFinished(int numberCompleted, int numberFailed);
+}
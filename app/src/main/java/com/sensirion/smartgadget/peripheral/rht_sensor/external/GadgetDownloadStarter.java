@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.peripheral.rht_sensor.external;
+
+import android.support.annotation.NonNull;
+
+public interface GadgetDownloadStarter {
+    /**
+     * Checks if a gadget is connected and can download its log.
+     *
+     * @param deviceAddress of the gadget.
+     * @return <code>true</code> if the gadget can be downloaded - <code>false</code> otherwise.
+     */
+    boolean isDownloadAvailable(@NonNull String deviceAddress);
+
+    /**
+     * Checks if a gadget is already downloading its log.
+     *
+     * @param deviceAddress of the gadget.
+     * @return <code>true</code> if the gadget is downloading - <code>false</code> otherwise.
+     */
+    boolean isDownloading(@NonNull String deviceAddress);
+
+    /**
+     * Starts the download of the log of a gadget. Its progress and its end are reported back to
+     * the {@link GadgetDownloadScheduler}.
+     *
+     * @param deviceAddress of the gadget.
+     * @return <code>true</code> if the download was started - <code>false</code> otherwise.
+     */
+    boolean startDownload(@NonNull String deviceAddress);
+}
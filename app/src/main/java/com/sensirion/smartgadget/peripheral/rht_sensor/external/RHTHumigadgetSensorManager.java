@@ -51,7 +51,6 @@ import com.sensirion.libsmartgadget.smartgadget.SHTC1TemperatureAndHumidityServi
 import com.sensirion.libsmartgadget.smartgadget.SensorTagTemperatureAndHumidityService;
 import com.sensirion.libsmartgadget.utils.BLEUtility;
 import com.sensirion.smartgadget.peripheral.rht_sensor.HumiSensorListener;
-import com.sensirion.smartgadget.peripheral.rht_utils.RHTDataPoint;
 import com.sensirion.smartgadget.persistence.device_name_database.DeviceNameDatabaseManager;
 import com.sensirion.smartgadget.persistence.history_database.HistoryDatabaseManager;
 import com.sensirion.smartgadget.utils.DeviceModel;
@@ -60,10 +59,11 @@ import com.sensirion.smartgadget.utils.view.ColorManager;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-public class RHTHumigadgetSensorManager implements GadgetManagerCallback, GadgetListener {
+public class RHTHumigadgetSensorManager implements GadgetManagerCallback, GadgetListener, GadgetDownloadStarter {
 
     private static final String TAG = RHTHumigadgetSensorManager.class.getSimpleName();
 
@@ -72,9 +72,15 @@ public class RHTHumigadgetSensorManager implements GadgetManagerCallback, Gadget
     @NonNull
     private final GadgetManager mGadgetManager;
     private final Set<HumiSensorListener> mSensorListeners = Collections.synchronizedSet(new HashSet<HumiSensorListener>());
+    // Copy of mSensorListeners, replaced on every change, so the live values are notified without locks nor iterators.
+    @NonNull
+    private volatile HumiSensorListener[] mSensorListenerArray = new HumiSensorListener[0];
     private final Map<String, Gadget> mDiscoveredGadgets = Collections.synchronizedMap(new HashMap<String, Gadget>());
     private final Map<String, Gadget> mConnectedGadgets = Collections.synchronizedMap(new HashMap<String, Gadget>());
 
+    @NonNull
+    private final GadgetDownloadScheduler mDownloadScheduler = new GadgetDownloadScheduler(this);
+
     private HumiGadgetConnectionStateListener mConnectionStateListener;
     // TODO: find a better way to filter devices, right now we have to register the service UUID
     // and then still enter the exact device names here. Better would be to keep everything within
@@ -125,6 +131,7 @@ public class RHTHumigadgetSensorManager implements GadgetManagerCallback, Gadget
      */
     public void release(@NonNull final Context context) {
         Log.i(TAG, String.format("release -> Releasing %s", TAG));
+        mDownloadScheduler.cancel();
         disconnectAllGadgets();
         mGadgetManager.release(context.getApplicationContext());
         mInstance = null;
@@ -136,7 +143,11 @@ public class RHTHumigadgetSensorManager implements GadgetManagerCallback, Gadget
      * @param listener of the humigadget notifications.
      */
     public void registerHumigadgetListener(@NonNull final HumiSensorListener listener) {
-        mSensorListeners.add(listener);
+        synchronized (mSensorListeners) {
+            if (mSensorListeners.add(listener)) {
+                mSensorListenerArray = mSensorListeners.toArray(new HumiSensorListener[mSensorListeners.size()]);
+            }
+        }
     }
 
     /**
@@ -146,7 +157,11 @@ public class RHTHumigadgetSensorManager implements GadgetManagerCallback, Gadget
      */
     @SuppressWarnings("unused")
     public void unregisterHumigadgetListener(@NonNull final HumiSensorListener listener) {
-        mSensorListeners.remove(listener);
+        synchronized (mSensorListeners) {
+            if (mSensorListeners.remove(listener)) {
+                mSensorListenerArray = mSensorListeners.toArray(new HumiSensorListener[mSensorListeners.size()]);
+            }
+        }
     }
 
     public void setConnectionStateListener(@Nullable HumiGadgetConnectionStateListener connectionStateListener) {
@@ -206,6 +221,61 @@ public class RHTHumigadgetSensorManager implements GadgetManagerCallback, Gadget
         return mConnectedGadgets.get(deviceAddress);
     }
 
+    /**
+     * Obtains the scheduler that downloads the logged data of several gadgets.
+     *
+     * @return the {@link com.sensirion.smartgadget.peripheral.rht_sensor.external.GadgetDownloadScheduler} of the connected gadgets.
+     */
+    @NonNull
+    public GadgetDownloadScheduler getDownloadScheduler() {
+        return mDownloadScheduler;
+    }
+
+    /**
+     * Queues the download of the logged data of every connected gadget.
+     */
+    public void downloadAllConnectedGadgets() {
+        final Set<String> deviceAddresses;
+        synchronized (mConnectedGadgets) {
+            deviceAddresses = new HashSet<>(mConnectedGadgets.keySet());
+        }
+        mDownloadScheduler.schedule(deviceAddresses);
+    }
+
+    /*
+     * Implementation of {@link GadgetDownloadStarter}
+     */
+
+    @Override
+    public boolean isDownloadAvailable(@NonNull final String deviceAddress) {
+        return getDownloadService(deviceAddress) != null;
+    }
+
+    @Override
+    public boolean isDownloading(@NonNull final String deviceAddress) {
+        final GadgetDownloadService downloadService = getDownloadService(deviceAddress);
+        return downloadService != null && downloadService.isDownloading();
+    }
+
+    @Override
+    public boolean startDownload(@NonNull final String deviceAddress) {
+        final GadgetDownloadService downloadService = getDownloadService(deviceAddress);
+        return downloadService != null && downloadService.download();
+    }
+
+    @Nullable
+    private GadgetDownloadService getDownloadService(@NonNull final String deviceAddress) {
+        final Gadget gadget = mConnectedGadgets.get(deviceAddress);
+        if (gadget == null) {
+            return null;
+        }
+        final List<GadgetService> services = gadget.getServicesOfType(GadgetDownloadService.class);
+        if (services.isEmpty()) {
+            return null;
+        }
+        return (GadgetDownloadService) services.get(0);
+    }
+
     /**
      * Checks if bluetooth connection is enabled on the device.
      *
@@ -299,6 +369,7 @@ public class RHTHumigadgetSensorManager implements GadgetManagerCallback, Gadget
     @Override
     public void onGadgetDisconnected(@NonNull final Gadget gadget) {
         mConnectedGadgets.remove(gadget.getAddress());
+        mDownloadScheduler.onGadgetDisconnected(gadget.getAddress());
 
         notifyGadgetConnectionChanged(gadget, false);
     }
@@ -314,21 +385,17 @@ public class RHTHumigadgetSensorManager implements GadgetManagerCallback, Gadget
     public void onGadgetNewDataPoint(@NonNull final Gadget gadget,
                                      @NonNull final GadgetService service,
                                      final GadgetDataPoint dataPoint) {
-        RHTDataPoint rhtDataPoint = new RHTDataPoint(dataPoint.getTemperature(), dataPoint.getHumidity(), dataPoint.getTimestamp());
-        notifyRHTDataPoint(gadget.getAddress(), rhtDataPoint, false);
+        notifyRHTDataPoint(gadget.getAddress(), dataPoint.getTemperature(), dataPoint.getHumidity(), dataPoint.getTimestamp());
     }
 
     @Override
     public void onGadgetDownloadProgress(@NonNull Gadget gadget, @NonNull GadgetDownloadService service, int progress) {
-        // Ignore...
+        mDownloadScheduler.onDownloadProgress(gadget.getAddress(), progress);
     }
 
     @Override
     public void onGadgetDownloadNewDataPoints(@NonNull Gadget gadget, @NonNull GadgetDownloadService service, @NonNull GadgetDataPoint[] dataPoints) {
-        for (GadgetDataPoint dataPoint : dataPoints) {
-            RHTDataPoint rhtDataPoint = new RHTDataPoint(dataPoint.getTemperature(), dataPoint.getHumidity(), dataPoint.getTimestamp());
-            notifyRHTDataPoint(gadget.getAddress(), rhtDataPoint, true);
-        }
+        HistoryDatabaseManager.getInstance().addLoggedData(gadget.getAddress(), dataPoints);
     }
 
     @Override
@@ -352,18 +419,22 @@ public class RHTHumigadgetSensorManager implements GadgetManagerCallback, Gadget
     public void onDownloadFailed(@NonNull final Gadget gadget,
                                  @NonNull final GadgetDownloadService service) {
         Log.w(TAG, String.format("Failed to perform download from gadget %s", gadget.getAddress()));
+        HistoryDatabaseManager.getInstance().onLogDownloadFailed(gadget.getAddress());
+        mDownloadScheduler.onDownloadFailed(gadget.getAddress());
     }
 
     @Override
     public void onDownloadCompleted(@NonNull final Gadget gadget,
                                     @NonNull final GadgetDownloadService service) {
-        // Ignore
+        HistoryDatabaseManager.getInstance().onLogDownloadCompleted(gadget.getAddress());
+        mDownloadScheduler.onDownloadCompleted(gadget.getAddress());
     }
 
     @Override
     public void onDownloadNoData(@NonNull final Gadget gadget,
                                  @NonNull final GadgetDownloadService service) {
         Log.w(TAG, String.format("No data available to download for gadget %s", gadget.getAddress()));
+        mDownloadScheduler.onDownloadCompleted(gadget.getAddress());
     }
 
     /*
@@ -384,10 +455,10 @@ public class RHTHumigadgetSensorManager implements GadgetManagerCallback, Gadget
     private void notifyGadgetConnectionChanged(@NonNull final String address,
                                                @Nullable final String name,
                                                final boolean isConnected) {
-        synchronized (mSensorListeners) {
-            for (HumiSensorListener listener : mSensorListeners) {
-                listener.onGadgetConnectionChanged(createDeviceModel(address), isConnected);
-            }
+        // The model reads the device name from the database, so it is created once for all the listeners.
+        final DeviceModel deviceModel = createDeviceModel(address);
+        for (final HumiSensorListener listener : mSensorListenerArray) {
+            listener.onGadgetConnectionChanged(deviceModel, isConnected);
         }
 
         if (mConnectionStateListener != null) {
@@ -395,16 +466,16 @@ public class RHTHumigadgetSensorManager implements GadgetManagerCallback, Gadget
         }
     }
 
-    private void notifyRHTDataPoint(@NonNull String deviceAddress, @NonNull RHTDataPoint dataPoint,
-                                    final boolean isHistory) {
-        if (!isHistory) {
-            synchronized (mSensorListeners) {
-                for (final HumiSensorListener listener : mSensorListeners) {
-                    listener.onNewRHTData(dataPoint.getTemperatureCelsius(), dataPoint.getRelativeHumidity(), deviceAddress);
-                }
-            }
+    /**
+     * Notifies a live value without allocating memory. The live values reach the history through
+     * the RHTSampleBus subscription of the HistoryDatabaseManager.
+     */
+    private void notifyRHTDataPoint(@NonNull final String deviceAddress, final float temperature,
+                                    final float humidity, final long timestamp) {
+        final HumiSensorListener[] listeners = mSensorListenerArray;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onNewRHTData(temperature, humidity, deviceAddress, timestamp);
         }
-        HistoryDatabaseManager.getInstance().addRHTData(deviceAddress, dataPoint, isHistory);
     }
 
     public boolean startDiscovery(final int durationMs) {
@@ -35,15 +35,16 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.sensirion.smartgadget.R;
 import com.sensirion.smartgadget.peripheral.rht_sensor.HumiSensorListener;
-import com.sensirion.smartgadget.peripheral.rht_utils.RHTDataPoint;
 import com.sensirion.smartgadget.persistence.device_name_database.DeviceNameDatabaseManager;
-import com.sensirion.smartgadget.persistence.history_database.HistoryDatabaseManager;
 import com.sensirion.smartgadget.utils.DeviceModel;
 import com.sensirion.smartgadget.utils.view.ColorManager;
 
@@ -62,68 +63,104 @@ public class RHTInternalSensorManager {
     private final String mInternalRHTSensorName;
     @NonNull
     private final SensorManager mSensorManager;
+    public static final long DEFAULT_SAMPLE_INTERVAL_MS = 1000;
+    public static final long DEFAULT_MAX_REPORT_LATENCY_MS = 10000;
+
+    private static final long NANOSECONDS_PER_MILLISECOND = 1000000;
+
     private final Set<HumiSensorListener> mRHTInternalSensorListeners = Collections.synchronizedSet(new HashSet<HumiSensorListener>());
-    @Nullable
-    private final SensorEventListener mInternalSensorEventListener = new SensorEventListener() {
+    @NonNull
+    private volatile HumiSensorListener[] mRHTInternalSensorListenerArray = new HumiSensorListener[0];
 
-        private Float mLastTemperature = null;
-        private Float mLastHumidity = null;
+    /**
+     * Receives the events of both sensors on the sensor thread. The events are paired by their
+     * timestamps in the {@link RHTSensorEventFuser}, which keeps the listeners from being woken
+     * up on every single event.
+     */
+    @NonNull
+    private final SensorEventListener mInternalSensorEventListener = new SensorEventListener() {
 
         @Override
         public void onSensorChanged(@NonNull final SensorEvent event) {
-            synchronized (this) {
-                switch (event.sensor.getType()) {
-                    case Sensor.TYPE_AMBIENT_TEMPERATURE:
-                        if (event.values[0] == 0f) {
-                            Log.e(TAG, "onSensorChanged -> The sensor returned a corrupt temperature.");
-                            return;
-                        }
-                        mLastTemperature = event.values[0];
-                        if (mLastHumidity != null) {
-                            notifyListeners();
-                        }
-                        break;
-                    case Sensor.TYPE_RELATIVE_HUMIDITY:
-                        if (event.values[0] == 0f) {
-                            Log.e(TAG, "onSensorChanged -> The sensor returned a corrupt humidity.");
-                            return;
-                        }
-                        mLastHumidity = event.values[0];
-                        if (mLastTemperature != null) {
-                            notifyListeners();
-                        }
-                        break;
-                }
+            final RHTSensorEventFuser fuser = mSensorEventFuser;
+            if (fuser == null) {
+                return;
+            }
+            final boolean isPending;
+            switch (event.sensor.getType()) {
+                case Sensor.TYPE_AMBIENT_TEMPERATURE:
+                    if (event.values[0] == 0f) {
+                        Log.e(TAG, "onSensorChanged -> The sensor returned a corrupt temperature.");
+                        return;
+                    }
+                    isPending = fuser.onTemperatureEvent(event.timestamp, event.values[0], SystemClock.elapsedRealtimeNanos());
+                    break;
+                case Sensor.TYPE_RELATIVE_HUMIDITY:
+                    if (event.values[0] == 0f) {
+                        Log.e(TAG, "onSensorChanged -> The sensor returned a corrupt humidity.");
+                        return;
+                    }
+                    isPending = fuser.onHumidityEvent(event.timestamp, event.values[0], SystemClock.elapsedRealtimeNanos());
+                    break;
+                default:
+                    return;
             }
+            scheduleFusionFlush(fuser, isPending);
         }
 
         @Override
         public void onAccuracyChanged(@NonNull final Sensor sensor, final int accuracy) {
             Log.w(TAG, String.format("onAccuracyChanged -> The accuracy of sensor %s has change to %d.", sensor.getName(), accuracy));
         }
+    };
 
-        private void notifyListeners() {
-            if (mLastTemperature == null || mLastHumidity == null) return;
+    @NonNull
+    private final RHTSensorEventFuser.Listener mFusedSampleListener = new RHTSensorEventFuser.Listener() {
+        @Override
+        public void onFusedSample(final long timestampNs, final float temperature, final float humidity) {
+            // Batched events are delivered late, the timestamp of the sample is taken from the sensor event.
+            final long timestamp = System.currentTimeMillis()
+                    - (SystemClock.elapsedRealtimeNanos() - timestampNs) / NANOSECONDS_PER_MILLISECOND;
+            // The values reach the history through the RHTSampleBus subscription of the HistoryDatabaseManager.
+            final HumiSensorListener[] listeners = mRHTInternalSensorListenerArray;
+            for (final HumiSensorListener listener : listeners) {
+                listener.onNewRHTData(temperature, humidity, INTERNAL_SENSOR_ADDRESS, timestamp);
+            }
+        }
+    };
 
-            synchronized (mRHTInternalSensorListeners) {
-                for (final HumiSensorListener listener : mRHTInternalSensorListeners) {
-                    listener.onNewRHTData(mLastTemperature, mLastHumidity, INTERNAL_SENSOR_ADDRESS);
-                }
+    @NonNull
+    private final Runnable mFusionFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final RHTSensorEventFuser fuser = mSensorEventFuser;
+            if (fuser != null) {
+                scheduleFusionFlush(fuser, fuser.flush(SystemClock.elapsedRealtimeNanos()));
             }
-            // TODO make asynchronous
-            final RHTDataPoint dataPoint = new RHTDataPoint(mLastTemperature, mLastHumidity, System.currentTimeMillis());
-            HistoryDatabaseManager.getInstance().addRHTData(INTERNAL_SENSOR_ADDRESS, dataPoint, false);
-            mLastTemperature = null;
-            mLastHumidity = null;
         }
     };
+
     @Nullable
     private DeviceModel mSensorModel = null;
     private boolean mIsStarted;
 
+    @Nullable
+    private HandlerThread mSensorThread = null;
+    @Nullable
+    private volatile Handler mSensorHandler = null;
+    @Nullable
+    private volatile RHTSensorEventFuser mSensorEventFuser = null;
+
+    private boolean mIsBatchedMode;
+    private long mSampleIntervalMs = DEFAULT_SAMPLE_INTERVAL_MS;
+    private long mMaxReportLatencyMs = DEFAULT_MAX_REPORT_LATENCY_MS;
+
     private RHTInternalSensorManager(@NonNull final Context context) {
         mSensorManager = (SensorManager) context.getApplicationContext().getSystemService(Context.SENSOR_SERVICE);
         mInternalRHTSensorName = context.getString(R.string.inphone_rht_sensor);
+        // The batched mode is only enabled by default when the sensor hub keeps the events of both sensors.
+        mIsBatchedMode = isHardwareBatchingSupported();
+        Log.d(TAG, String.format("RHTInternalSensorManager -> Batched mode %s by default.", (mIsBatchedMode) ? "enabled" : "disabled"));
     }
 
     @NonNull
@@ -153,6 +190,7 @@ public class RHTInternalSensorManager {
         }
         if (hasInternalSensor()) {
             mRHTInternalSensorListeners.add(listener);
+            updateListenerArray();
             startInternalSensor();
         }
     }
@@ -165,6 +203,7 @@ public class RHTInternalSensorManager {
     @SuppressWarnings("unused")
     public void unregisterInternalSensorListener(@NonNull final HumiSensorListener listener) {
         mRHTInternalSensorListeners.remove(listener);
+        updateListenerArray();
         if (mRHTInternalSensorListeners.isEmpty()) {
             stopInternalSensor();
         }
@@ -176,9 +215,64 @@ public class RHTInternalSensorManager {
     @SuppressWarnings("unused")
     public void unregisterAllInternalSensorListeners() {
         mRHTInternalSensorListeners.clear();
+        updateListenerArray();
         stopInternalSensor();
     }
 
+    private void updateListenerArray() {
+        synchronized (mRHTInternalSensorListeners) {
+            mRHTInternalSensorListenerArray = mRHTInternalSensorListeners.toArray(new HumiSensorListener[mRHTInternalSensorListeners.size()]);
+        }
+    }
+
+    /**
+     * Enables or disables the batched mode. In batched mode the sensor hub keeps the events in
+     * its hardware FIFO for up to the maximum report latency, so the application processor is
+     * not woken up on every event. The sensors are restarted if they are running.
+     *
+     * @param isBatchedMode      <code>true</code> for delivering the events in batches - <code>false</code> for delivering them as they are produced.
+     * @param sampleIntervalMs   minimum time between the samples given to the listeners, in milliseconds.
+     * @param maxReportLatencyMs maximum time the events are kept in the sensor FIFO, in milliseconds. Ignored if the batched mode is disabled.
+     */
+    public synchronized void setBatchedMode(final boolean isBatchedMode, final long sampleIntervalMs, final long maxReportLatencyMs) {
+        if (sampleIntervalMs < 0 || maxReportLatencyMs < 0) {
+            throw new IllegalArgumentException(String.format("%s: setBatchedMode -> The sample interval and the report latency cannot be negative.", TAG));
+        }
+        mIsBatchedMode = isBatchedMode;
+        mSampleIntervalMs = sampleIntervalMs;
+        mMaxReportLatencyMs = maxReportLatencyMs;
+        Log.d(TAG, String.format("setBatchedMode -> Batched mode %s with a sample interval of %d ms and a report latency of %d ms.",
+                (isBatchedMode) ? "enabled" : "disabled", sampleIntervalMs, maxReportLatencyMs));
+        if (mIsStarted) {
+            unregisterSensorListener();
+            if (!registerSensorListener()) {
+                stopInternalSensor();
+            }
+        }
+    }
+
+    /**
+     * Checks if the events of the internal sensor are delivered in batches.
+     *
+     * @return <code>true</code> if the batched mode is enabled - <code>false</code> otherwise.
+     */
+    public boolean isBatchedMode() {
+        return mIsBatchedMode;
+    }
+
+    /**
+     * Checks if the sensor hub of the device can keep the events of both sensors in a hardware FIFO.
+     *
+     * @return <code>true</code> if the batched mode saves wake ups on this device - <code>false</code> otherwise.
+     */
+    public boolean isHardwareBatchingSupported() {
+        if (!hasInternalSensor()) {
+            return false;
+        }
+        return mSensorManager.getDefaultSensor(Sensor.TYPE_AMBIENT_TEMPERATURE).getFifoMaxEventCount() > 0
+                && mSensorManager.getDefaultSensor(Sensor.TYPE_RELATIVE_HUMIDITY).getFifoMaxEventCount() > 0;
+    }
+
     private void startInternalSensor() {
         if (mIsStarted) {
             Log.w(TAG, "startInternalSensor -> The internal sensor was already initialized by the user.");
@@ -186,20 +280,74 @@ public class RHTInternalSensorManager {
         }
 
         if (hasInternalSensor()) {
-            if (initializeTemperatureSensor()) {
-                Log.d(TAG, "startInternalSensor -> Temperature Sensor has been initialized.");
-                if (initializeHumiditySensor()) {
-                    Log.d(TAG, "startInternalSensor -> Humidity Sensor has been initialized.");
-                    mIsStarted = true;
-                    notifyAllListenersNewSensor();
-                } else {
-                    stopInternalSensor();
-                }
+            if (registerSensorListener()) {
+                mIsStarted = true;
+                notifyAllListenersNewSensor();
+                return;
             }
+            stopInternalSensor();
         }
         Log.w(TAG, "startInternalSensor -> The device doesn't have a valid internal Sensor.");
     }
 
+    /**
+     * Starts the sensor thread and registers the sensor listener on both sensors.
+     *
+     * @return <code>true</code> if both sensors were initialized correctly. <code>false</code> otherwise.
+     */
+    private synchronized boolean registerSensorListener() {
+        if (mSensorThread == null) {
+            mSensorThread = new HandlerThread(TAG);
+            mSensorThread.start();
+            mSensorHandler = new Handler(mSensorThread.getLooper());
+        }
+        final long reorderWindowMs = (mIsBatchedMode) ? mMaxReportLatencyMs : 0;
+        mSensorEventFuser = new RHTSensorEventFuser(mSampleIntervalMs * NANOSECONDS_PER_MILLISECOND,
+                reorderWindowMs * NANOSECONDS_PER_MILLISECOND, mFusedSampleListener);
+        if (mIsBatchedMode && !isHardwareBatchingSupported()) {
+            Log.w(TAG, "registerSensorListener -> The sensors do not support hardware batching, the events are delivered as they are produced.");
+        }
+        if (initializeTemperatureSensor()) {
+            Log.d(TAG, "registerSensorListener -> Temperature Sensor has been initialized.");
+            if (initializeHumiditySensor()) {
+                Log.d(TAG, "registerSensorListener -> Humidity Sensor has been initialized.");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void unregisterSensorListener() {
+        mSensorManager.unregisterListener(mInternalSensorEventListener);
+        mSensorEventFuser = null;
+        final Handler sensorHandler = mSensorHandler;
+        if (sensorHandler != null) {
+            sensorHandler.removeCallbacks(mFusionFlushRunnable);
+        }
+    }
+
+    /**
+     * Merges the events that are still waiting for the other sensor once the reorder window has
+     * passed and emits the pending sample once the emission interval has expired, even if no
+     * further event arrives.
+     *
+     * @param fuser     that keeps the events.
+     * @param isPending <code>true</code> if the fuser still keeps events or a sample - <code>false</code> otherwise.
+     */
+    private void scheduleFusionFlush(@NonNull final RHTSensorEventFuser fuser, final boolean isPending) {
+        final Handler sensorHandler = mSensorHandler;
+        if (sensorHandler == null) {
+            return;
+        }
+        sensorHandler.removeCallbacks(mFusionFlushRunnable);
+        if (isPending) {
+            final long delayNs = fuser.getFlushDelayNs(SystemClock.elapsedRealtimeNanos());
+            // Rounded up, so the flush does not run before the fuser can make progress.
+            sensorHandler.postDelayed(mFusionFlushRunnable,
+                    (delayNs + NANOSECONDS_PER_MILLISECOND - 1) / NANOSECONDS_PER_MILLISECOND);
+        }
+    }
+
     private void notifyListenerNewSensor(@NonNull final HumiSensorListener listener) {
         listener.onGadgetConnectionChanged(getSensorModel(), true);
     }
@@ -248,9 +396,7 @@ public class RHTInternalSensorManager {
      * @return <code>true</code> if the temperature sensor was initialized correctly. <code>false</code> otherwise.
      */
     private boolean initializeTemperatureSensor() {
-        return mSensorManager.registerListener(mInternalSensorEventListener,
-                mSensorManager.getDefaultSensor(Sensor.TYPE_AMBIENT_TEMPERATURE),
-                android.hardware.SensorManager.SENSOR_DELAY_NORMAL);
+        return registerSensor(mSensorManager.getDefaultSensor(Sensor.TYPE_AMBIENT_TEMPERATURE));
     }
 
     /**
@@ -259,9 +405,23 @@ public class RHTInternalSensorManager {
      * @return <code>true</code> if the temperature sensor was initialized correctly. <code>false</code> otherwise.
      */
     private boolean initializeHumiditySensor() {
-        return mSensorManager.registerListener(mInternalSensorEventListener,
-                mSensorManager.getDefaultSensor(Sensor.TYPE_RELATIVE_HUMIDITY),
-                android.hardware.SensorManager.SENSOR_DELAY_NORMAL);
+        return registerSensor(mSensorManager.getDefaultSensor(Sensor.TYPE_RELATIVE_HUMIDITY));
+    }
+
+    /**
+     * Registers the sensor listener on the sensor thread. In batched mode the sensor is sampled
+     * at the sample interval and its events are reported with the maximum report latency.
+     *
+     * @param sensor that has to be registered.
+     * @return <code>true</code> if the sensor was registered correctly. <code>false</code> otherwise.
+     */
+    private boolean registerSensor(@NonNull final Sensor sensor) {
+        if (mIsBatchedMode) {
+            return mSensorManager.registerListener(mInternalSensorEventListener, sensor,
+                    (int) (mSampleIntervalMs * 1000), (int) (mMaxReportLatencyMs * 1000), mSensorHandler);
+        }
+        return mSensorManager.registerListener(mInternalSensorEventListener, sensor,
+                android.hardware.SensorManager.SENSOR_DELAY_NORMAL, mSensorHandler);
     }
 
     /**
@@ -276,8 +436,13 @@ public class RHTInternalSensorManager {
     /**
      * Stops the internal Sensor.
      */
-    private void stopInternalSensor() {
-        mSensorManager.unregisterListener(mInternalSensorEventListener);
+    private synchronized void stopInternalSensor() {
+        unregisterSensorListener();
+        if (mSensorThread != null) {
+            mSensorThread.quitSafely();
+            mSensorThread = null;
+            mSensorHandler = null;
+        }
         mIsStarted = false;
     }
 
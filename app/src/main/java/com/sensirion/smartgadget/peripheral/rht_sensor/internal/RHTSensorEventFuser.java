@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.peripheral.rht_sensor.internal;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Combines the events of the internal temperature and humidity sensors into samples with both
+ * values. Both sensors only report changes, so every sample holds the last value of the other
+ * sensor. With hardware batching the events of each sensor arrive in bursts, not in timestamp
+ * order across sensors; they are buffered and merged by timestamp, waiting up to the reorder
+ * window for the events of the other sensor.
+ * <p/>
+ * The samples are emitted at most once per emission interval. The newest sample suppressed within
+ * the interval is kept pending and emitted by {@link #flush(long)} once the interval has expired,
+ * so the last value of a burst is not lost. The events are kept in fixed size primitive queues,
+ * so no memory is allocated per event. It is not thread safe.
+ */
+public class RHTSensorEventFuser {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    public interface Listener {
+        /**
+         * Called with every emitted sample.
+         *
+         * @param timestampNs of the sensor event that completed the sample, in the sensor time base.
+         * @param temperature last temperature, in Celsius.
+         * @param humidity    last relative humidity.
+         */
+        void onFusedSample(long timestampNs, float temperature, float humidity);
+    }
+
+    @NonNull
+    private final Listener mListener;
+    private final long mEmissionIntervalNs;
+    private final long mReorderWindowNs;
+
+    @NonNull
+    private final EventQueue mTemperatureEvents = new EventQueue(DEFAULT_QUEUE_CAPACITY);
+    @NonNull
+    private final EventQueue mHumidityEvents = new EventQueue(DEFAULT_QUEUE_CAPACITY);
+
+    private boolean mHasTemperature = false;
+    private boolean mHasHumidity = false;
+    private float mTemperature;
+    private float mHumidity;
+    private boolean mHasEmitted = false;
+    private long mLastEmissionNs;
+    private boolean mHasPendingSample = false;
+    private long mPendingTimestampNs;
+    private float mPendingTemperature;
+    private float mPendingHumidity;
+
+    private long mNumberEvents = 0;
+    private long mNumberEmittedSamples = 0;
+
+    /**
+     * @param emissionIntervalNs minimum time between emitted samples, in nanoseconds.
+     * @param reorderWindowNs    maximum time an event waits for the events of the other sensor, in nanoseconds.
+     * @param listener           of the emitted samples.
+     */
+    public RHTSensorEventFuser(final long emissionIntervalNs, final long reorderWindowNs, @NonNull final Listener listener) {
+        if (emissionIntervalNs < 0 || reorderWindowNs < 0) {
+            throw new IllegalArgumentException(String.format("%s: RHTSensorEventFuser -> The emission interval and the reorder window cannot be negative.",
+                    RHTSensorEventFuser.class.getSimpleName()));
+        }
+        mEmissionIntervalNs = emissionIntervalNs;
+        mReorderWindowNs = reorderWindowNs;
+        mListener = listener;
+    }
+
+    /**
+     * @return <code>true</code> if events or a sample are still pending, see {@link #flush(long)}.
+     */
+    public boolean onTemperatureEvent(final long timestampNs, final float temperature, final long nowNs) {
+        mNumberEvents++;
+        mTemperatureEvents.add(timestampNs, temperature);
+        return flush(nowNs);
+    }
+
+    /**
+     * @return <code>true</code> if events or a sample are still pending, see {@link #flush(long)}.
+     */
+    public boolean onHumidityEvent(final long timestampNs, final float humidity, final long nowNs) {
+        mNumberEvents++;
+        mHumidityEvents.add(timestampNs, humidity);
+        return flush(nowNs);
+    }
+
+    /**
+     * Merges the buffered events in timestamp order. An event is kept while the other sensor has
+     * no buffered event and the event is younger than the reorder window. The pending sample is
+     * emitted once the emission interval has expired.
+     *
+     * @param nowNs current time in the sensor time base.
+     * @return <code>true</code> if events or a sample are still pending, so flush has to be called
+     * again after {@link #getFlushDelayNs(long)} - <code>false</code> otherwise.
+     */
+    public boolean flush(final long nowNs) {
+        while (!mTemperatureEvents.isEmpty() || !mHumidityEvents.isEmpty()) {
+            final boolean isTemperatureNext = mHumidityEvents.isEmpty()
+                    || (!mTemperatureEvents.isEmpty() && mTemperatureEvents.firstTimestamp() <= mHumidityEvents.firstTimestamp());
+            final EventQueue nextEvents = (isTemperatureNext) ? mTemperatureEvents : mHumidityEvents;
+            final EventQueue otherEvents = (isTemperatureNext) ? mHumidityEvents : mTemperatureEvents;
+            final long timestampNs = nextEvents.firstTimestamp();
+            if (otherEvents.isEmpty() && nowNs - timestampNs < mReorderWindowNs) {
+                flushPendingSample(nowNs);
+                return true;
+            }
+            if (isTemperatureNext) {
+                mTemperature = nextEvents.firstValue();
+                mHasTemperature = true;
+            } else {
+                mHumidity = nextEvents.firstValue();
+                mHasHumidity = true;
+            }
+            nextEvents.removeFirst();
+            if (mHasTemperature && mHasHumidity) {
+                emit(timestampNs);
+            }
+        }
+        flushPendingSample(nowNs);
+        return mHasPendingSample;
+    }
+
+    /**
+     * @param nowNs current time in the sensor time base.
+     * @return time until {@link #flush(long)} can emit the buffered events or the pending sample,
+     * in nanoseconds. <code>0</code> if nothing is pending or it can be emitted right away.
+     */
+    public long getFlushDelayNs(final long nowNs) {
+        long delayNs = Long.MAX_VALUE;
+        if (!mTemperatureEvents.isEmpty()) {
+            delayNs = Math.min(delayNs, mTemperatureEvents.firstTimestamp() + mReorderWindowNs - nowNs);
+        }
+        if (!mHumidityEvents.isEmpty()) {
+            delayNs = Math.min(delayNs, mHumidityEvents.firstTimestamp() + mReorderWindowNs - nowNs);
+        }
+        if (mHasPendingSample) {
+            delayNs = Math.min(delayNs, mLastEmissionNs + mEmissionIntervalNs - nowNs);
+        }
+        return (delayNs == Long.MAX_VALUE) ? 0 : Math.max(0, delayNs);
+    }
+
+    /**
+     * Forgets the last values and the buffered events, for example when the sensors are stopped.
+     */
+    public void reset() {
+        mTemperatureEvents.clear();
+        mHumidityEvents.clear();
+        mHasTemperature = false;
+        mHasHumidity = false;
+        mHasEmitted = false;
+        mHasPendingSample = false;
+    }
+
+    public long getNumberEvents() {
+        return mNumberEvents;
+    }
+
+    public long getNumberEmittedSamples() {
+        return mNumberEmittedSamples;
+    }
+
+    private void emit(final long timestampNs) {
+        if (mHasEmitted && timestampNs - mLastEmissionNs < mEmissionIntervalNs) {
+            mHasPendingSample = true;
+            mPendingTimestampNs = timestampNs;
+            mPendingTemperature = mTemperature;
+            mPendingHumidity = mHumidity;
+            return;
+        }
+        mHasPendingSample = false;
+        notifySample(timestampNs, mTemperature, mHumidity);
+    }
+
+    private void flushPendingSample(final long nowNs) {
+        if (mHasPendingSample && nowNs - mLastEmissionNs >= mEmissionIntervalNs) {
+            mHasPendingSample = false;
+            notifySample(mPendingTimestampNs, mPendingTemperature, mPendingHumidity);
+        }
+    }
+
+    private void notifySample(final long timestampNs, final float temperature, final float humidity) {
+        mHasEmitted = true;
+        mLastEmissionNs = timestampNs;
+        mNumberEmittedSamples++;
+        mListener.onFusedSample(timestampNs, temperature, humidity);
+    }
+
+    /**
+     * Fixed size queue of sensor events. When it is full the oldest event is overwritten.
+     */
+    private static final class EventQueue {
+        @NonNull
+        private final long[] mTimestamps;
+        @NonNull
+        private final float[] mValues;
+        private int mFirst = 0;
+        private int mSize = 0;
+
+        private EventQueue(final int capacity) {
+            mTimestamps = new long[capacity];
+            mValues = new float[capacity];
+        }
+
+        private boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        private long firstTimestamp() {
+            return mTimestamps[mFirst];
+        }
+
+        private float firstValue() {
+            return mValues[mFirst];
+        }
+
+        private void add(final long timestamp, final float value) {
+            if (mSize == mTimestamps.length) {
+                removeFirst();
+            }
+            final int index = (mFirst + mSize) % mTimestamps.length;
+            mTimestamps[index] = timestamp;
+            mValues[index] = value;
+            mSize++;
+        }
+
+        private void removeFirst() {
+            mFirst = (mFirst + 1) % mTimestamps.length;
+            mSize--;
+        }
+
+        private void clear() {
+            mFirst = 0;
+            mSize = 0;
+        }
+    }
+}
@@ -35,9 +35,9 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.DatabaseStatement;
 import com.sensirion.database_library.attributes.DatabaseAttributes;
 import com.sensirion.database_library.database_object.AbstractDatabaseObject;
-import com.sensirion.database_library.parser.QueryResult;
 import com.sensirion.smartgadget.R;
 import com.sensirion.smartgadget.persistence.device_name_database.table.DeviceNameTable;
 
@@ -125,13 +125,11 @@ public class DeviceNameDatabaseManager {
         if (mKnownDeviceNames.containsKey(deviceAddress)) {
             return mKnownDeviceNames.get(deviceAddress);
         }
-        final String sqlQuery = DeviceNameTable.getInstance().readUserDeviceNameSql(deviceAddress);
-        final QueryResult queryResult = mDatabase.rawDatabaseQuery(sqlQuery);
-        if (queryResult == null) {
+        final String deviceName = DeviceNameTable.getInstance().prepareReadUserDeviceName(mDatabase, deviceAddress).queryForString();
+        if (deviceName == null) {
             mKnownDeviceNames.put(deviceAddress, deviceAddress);
             return deviceAddress;
         }
-        final String deviceName = queryResult.getFirstQueryResult().getString(DeviceNameTable.COLUMN_USER_DEVICE_NAME);
         mKnownDeviceNames.put(deviceAddress, deviceName);
         return deviceName;
     }
@@ -145,21 +143,20 @@ public class DeviceNameDatabaseManager {
     public void updateDeviceName(@NonNull final String deviceAddress, @NonNull final String deviceName) {
         final DeviceNameTable deviceNameTable = DeviceNameTable.getInstance();
         final String oldDeviceName = readDeviceName(deviceAddress);
-        final String sqlQuery;
+        final DatabaseStatement statement;
 
         String deviceNameToStore = deviceName.trim();
 
         if (deviceNameToStore.isEmpty() || deviceNameToStore.equals(deviceAddress)) {
-            sqlQuery = deviceNameTable.deleteDeviceNameSql(deviceAddress);
+            statement = deviceNameTable.prepareDeleteDeviceName(mDatabase, deviceAddress);
             deviceNameToStore = deviceAddress;
         } else if (!deviceAddress.equals(oldDeviceName)) {
             // We already have a device name, so we update the database with a new value.
-            sqlQuery = deviceNameTable.updateDeviceNameSql(deviceAddress, deviceNameToStore);
+            statement = deviceNameTable.prepareUpdateDeviceName(mDatabase, deviceAddress, deviceNameToStore);
         } else {
-            sqlQuery = deviceNameTable.insertUserDeviceNameSql(deviceAddress, deviceNameToStore);
+            statement = deviceNameTable.prepareInsertUserDeviceName(mDatabase, deviceAddress, deviceNameToStore);
         }
-        mDatabase.executeSQL(sqlQuery);
-        mDatabase.commit();
+        statement.execute();
         mKnownDeviceNames.put(deviceAddress, deviceNameToStore);
     }
 
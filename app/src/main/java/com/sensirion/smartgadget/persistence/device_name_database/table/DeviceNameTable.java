@@ -32,6 +32,8 @@ package com.sensirion.smartgadget.persistence.device_name_database.table;
 
 import android.support.annotation.NonNull;
 
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.DatabaseStatement;
 import com.sensirion.database_library.database_object.AbstractDatabaseObject;
 import com.sensirion.database_library.database_object.DatabaseObjectType;
 
@@ -60,53 +62,59 @@ public class DeviceNameTable extends AbstractDatabaseObject {
     }
 
     /**
-     * SQL sentence for retrieving a device name from the database.
+     * Prepares the query for retrieving a device name from the database.
      *
+     * @param database      where the query is executed.
      * @param deviceAddress of the device we want to know the name.
-     * @return {@link java.lang.String} with the SQL sentence for looking for the name of the device.
+     * @return {@link com.sensirion.database_library.DatabaseStatement} for looking for the name of the device.
      */
     @NonNull
-    public String readUserDeviceNameSql(@NonNull final String deviceAddress) {
-        final String[] projectionIn = new String[]{COLUMN_USER_DEVICE_NAME};
-        final String selection = COLUMN_DEVICE_MAC + " = '" + deviceAddress + "'";
-        return mQueryBuilder.buildQuery(projectionIn, selection, null, null, null, null);
+    public DatabaseStatement prepareReadUserDeviceName(@NonNull final DatabaseFacade database, @NonNull final String deviceAddress) {
+        final String sql = String.format("SELECT %s FROM %s WHERE %s = ?;", COLUMN_USER_DEVICE_NAME, getName(), COLUMN_DEVICE_MAC);
+        return database.prepare(sql).bindString(1, deviceAddress);
     }
 
     /**
-     * SQL sentence for inserting a device name in the database.
+     * Prepares the statement for inserting a device name in the database.
      *
+     * @param database      where the name is inserted.
      * @param deviceAddress of the device we want to insert in the database.
      * @param deviceName    that the user has given to the device.
-     * @return {@link java.lang.String} with the SQL sentence for inserting the name of the device.
+     * @return {@link com.sensirion.database_library.DatabaseStatement} for inserting the name of the device.
      */
     @NonNull
-    public String insertUserDeviceNameSql(@NonNull final String deviceAddress, @NonNull final String deviceName) {
-        return String.format("INSERT INTO %s (%s, %s) VALUES (%s, %s);",
-                getName(), COLUMN_DEVICE_MAC, COLUMN_USER_DEVICE_NAME, convertToSqlString(deviceAddress), convertToSqlString(deviceName));
+    public DatabaseStatement prepareInsertUserDeviceName(@NonNull final DatabaseFacade database, @NonNull final String deviceAddress,
+                                                         @NonNull final String deviceName) {
+        final String sql = String.format("INSERT INTO %s (%s, %s) VALUES (?, ?);", getName(), COLUMN_DEVICE_MAC, COLUMN_USER_DEVICE_NAME);
+        return database.prepare(sql).bindString(1, deviceAddress).bindString(2, deviceName);
     }
 
     /**
-     * SQL sentence for update a device name in the database.
+     * Prepares the statement for updating a device name in the database.
      *
+     * @param database      where the name is updated.
      * @param deviceAddress of the device we want to update in the database.
      * @param deviceName    that the user has given to the device.
-     * @return {@link java.lang.String} with the SQL sentence for updating the name of the device.
+     * @return {@link com.sensirion.database_library.DatabaseStatement} for updating the name of the device.
      */
     @NonNull
-    public String updateDeviceNameSql(@NonNull final String deviceAddress, @NonNull final String deviceName) {
-        return String.format("UPDATE %s SET %s = %s WHERE %s = %s;",
-                getName(), COLUMN_USER_DEVICE_NAME, convertToSqlString(deviceName), COLUMN_DEVICE_MAC, convertToSqlString(deviceAddress));
+    public DatabaseStatement prepareUpdateDeviceName(@NonNull final DatabaseFacade database, @NonNull final String deviceAddress,
+                                                     @NonNull final String deviceName) {
+        final String sql = String.format("UPDATE %s SET %s = ? WHERE %s = ?;", getName(), COLUMN_USER_DEVICE_NAME, COLUMN_DEVICE_MAC);
+        return database.prepare(sql).bindString(1, deviceName).bindString(2, deviceAddress);
     }
 
     /**
-     * SQL sentence for deleting a device from the database.
+     * Prepares the statement for deleting a device from the database.
      *
+     * @param database      where the name is deleted.
      * @param deviceAddress of the device we want to delete from the database.
-     * @return {@link java.lang.String} with the SQL sentence of the device we want to delete from the database.
+     * @return {@link com.sensirion.database_library.DatabaseStatement} for deleting the name of the device.
      */
     @NonNull
-    public String deleteDeviceNameSql(@NonNull final String deviceAddress) {
-        return String.format("DELETE FROM %s WHERE %s = %s;", getName(), COLUMN_DEVICE_MAC, convertToSqlString(deviceAddress));
+    public DatabaseStatement prepareDeleteDeviceName(@NonNull final DatabaseFacade database, @NonNull final String deviceAddress) {
+        final String sql = String.format("DELETE FROM %s WHERE %s = ?;", getName(), COLUMN_DEVICE_MAC);
+        return database.prepare(sql).bindString(1, deviceAddress);
     }
 
     @NonNull
@@ -34,110 +34,72 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
-import com.sensirion.database_library.DatabaseFacade;
-import com.sensirion.smartgadget.peripheral.rht_utils.RHTDataPoint;
-import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataTable;
-
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
 class DatapointHandler {
     private static final String TAG = DatapointHandler.class.getSimpleName();
-    private static final byte SECONDS_MINIMUM_HISTORY_RESOLUTION = 10;
 
     private final String mDeviceAddress;
-    private final List<RHTDataPoint> mLastNotificationDataPoints = new LinkedList<>();
-    private final ExecutorService mBackgroundExecutor;
-
-    private boolean mIsFirstReceivedValue = true;
+    @NonNull
+    private final HistoryLiveAggregator mLiveAggregator;
 
-    DatapointHandler(@NonNull final String deviceAddress) {
+    DatapointHandler(@NonNull final String deviceAddress, @NonNull final HistoryLiveAggregator liveAggregator) {
         mDeviceAddress = deviceAddress;
-        mBackgroundExecutor = Executors.newSingleThreadExecutor(Executors.defaultThreadFactory());
-    }
-
-    private static long obtainMeanTimestamp(@NonNull final List<RHTDataPoint> dataPointList) {
-        long timestampSum = 0;
-        for (final RHTDataPoint dataPoint : dataPointList) {
-            timestampSum += dataPoint.getTimestamp();
-        }
-        return timestampSum / dataPointList.size();
-    }
-
-    private static float obtainMeanTemperature(@NonNull final List<RHTDataPoint> dataPointList) {
-        double temperatureSum = 0.0d;
-        for (final RHTDataPoint datapoint : dataPointList) {
-            temperatureSum += datapoint.getTemperatureCelsius();
-        }
-        return (float) (temperatureSum / dataPointList.size());
-    }
-
-    private static float obtainMeanHumidity(@NonNull final List<RHTDataPoint> dataPointList) {
-        double humiditySum = 0.0d;
-        for (final RHTDataPoint datapoint : dataPointList) {
-            humiditySum += datapoint.getRelativeHumidity();
-        }
-        return (float) (humiditySum / dataPointList.size());
+        mLiveAggregator = liveAggregator;
     }
 
     /**
-     * This methods adds a datapoint coming from the database logging functionality to the history database.
+     * This method adds a value coming from live notifications to the aggregator of the device,
+     * and stores every aggregated value the aggregator produces.
      *
-     * @param logDataPoint that will be put inside the database table.
+     * @param timestamp   of the value.
+     * @param temperature of the value.
+     * @param humidity    of the value.
      */
-    synchronized void addHistoryDatapoint(@NonNull final RHTDataPoint logDataPoint) {
-        Log.d(TAG, String.format("addHistoryDatapoint -> Adding logging datapoint to history database: %s.", logDataPoint));
-        insertDatapointDatabase(logDataPoint.getTimestamp(), logDataPoint.getTemperatureCelsius(), logDataPoint.getRelativeHumidity(), true);
+    synchronized void addLiveValue(final long timestamp, final float temperature, final float humidity) {
+        if (mLiveAggregator.addValue(timestamp, temperature, humidity)) {
+            storeAggregatedValues();
+        }
     }
 
     /**
-     * This method adds a datapoint coming from live notifications to the list.
-     *
-     * @param dataPoint with the data that will be parsed in order to be put in the history data table.
+     * This method stores the values that are still pending in the aggregator of the device, so
+     * they are not lost when the history is released.
      */
-    synchronized void addLiveDataDatapoint(@NonNull final RHTDataPoint dataPoint) {
-        mLastNotificationDataPoints.add(dataPoint);
-        if (hasPermissionToWriteNotificationDatapoint()) {
-            final RHTDataPoint datapoint = prepareNotificationDatapoint();
-            insertDatapointDatabase(datapoint.getTimestamp(), datapoint.getTemperatureCelsius(), datapoint.getRelativeHumidity(), false);
-            mLastNotificationDataPoints.clear();
-            Log.d(TAG, String.format("writeDatapointToDatabase -> Adding logging datapoint to history database: %s.", datapoint));
-        }
-    }
-
-    private boolean hasPermissionToWriteNotificationDatapoint() {
-        if (mIsFirstReceivedValue) {
-            return true;
+    synchronized void flush() {
+        if (mLiveAggregator.flush()) {
+            storeAggregatedValues();
         }
-        final long initialTime = mLastNotificationDataPoints.get(0).getTimestamp();
-        final long finalTime = mLastNotificationDataPoints.get(mLastNotificationDataPoints.size() - 1).getTimestamp();
-        final int timeDiff = (int) ((finalTime - initialTime) / 1000);
-        return timeDiff > SECONDS_MINIMUM_HISTORY_RESOLUTION;
     }
 
-    @NonNull
-    private RHTDataPoint prepareNotificationDatapoint() {
-        mIsFirstReceivedValue = false;
-        final long timestamp = obtainMeanTimestamp(mLastNotificationDataPoints);
-        final float temperature = obtainMeanTemperature(mLastNotificationDataPoints);
-        final float humidity = obtainMeanHumidity(mLastNotificationDataPoints);
-        return new RHTDataPoint(temperature, humidity, timestamp);
+    private void storeAggregatedValues() {
+        do {
+            final long aggregatedTimestamp = mLiveAggregator.getAggregatedTimestamp();
+            final float aggregatedTemperature = mLiveAggregator.getAggregatedTemperature();
+            final float aggregatedHumidity = mLiveAggregator.getAggregatedHumidity();
+            // A value dropped by the writer is never stored, so it cannot be shown from the cache either.
+            if (insertDatapointDatabase(aggregatedTimestamp, aggregatedTemperature, aggregatedHumidity)) {
+                HistoryDatabaseManager.getInstance().getLiveCache().addLiveValue(mDeviceAddress, aggregatedTimestamp,
+                        aggregatedTemperature, aggregatedHumidity);
+            }
+        } while (mLiveAggregator.nextAggregatedValue());
     }
 
-    private void insertDatapointDatabase(final long timestamp, final float temperature, final float humidity, final boolean comesFromLog) {
-        mBackgroundExecutor.submit(new Runnable() {
+    /**
+     * Submits a live value to the history writer, which can drop it when its queue is full.
+     *
+     * @return <code>true</code> if the value was queued for writing - <code>false</code> if the writer dropped it.
+     */
+    private boolean insertDatapointDatabase(final long timestamp, final float temperature, final float humidity) {
+        final HistoryDatabaseManager historyManager = HistoryDatabaseManager.getInstance();
+        return historyManager.getWriterService().submit(new Runnable() {
             @Override
             public void run() {
-                final String sql = HistoryDataTable.getInstance().insertValueSql(mDeviceAddress, timestamp, temperature, humidity, comesFromLog);
-                final DatabaseFacade databaseFacade = HistoryDatabaseManager.getInstance().getDatabaseFacade();
-                databaseFacade.rawDatabaseQuery(sql);
-                databaseFacade.commit();
-                Log.d(TAG, String.format("insertDatapointDatabase: DeviceAddress: %s, Timestamp: %d, Temperature: %f, humidity: %f, comesFromLog: %b",
-                        mDeviceAddress, timestamp, temperature, humidity, comesFromLog));
+                historyManager.getHistoryDataWriter().add(mDeviceAddress, timestamp, temperature, humidity, false);
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, String.format("insertDatapointDatabase: DeviceAddress: %s, Timestamp: %d, Temperature: %f, humidity: %f",
+                            mDeviceAddress, timestamp, temperature, humidity));
+                }
             }
-        });
+        }, false);
     }
 
     @Override
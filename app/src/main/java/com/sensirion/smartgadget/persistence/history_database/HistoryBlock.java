@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.support.annotation.NonNull;
+
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryBlockTable;
+import com.sensirion.smartgadget.view.history.HistorySeries;
+
+import java.util.Arrays;
+
+/**
+ * Values of a device inside one block of the {@link HistoryBlockTable}, ordered by timestamp,
+ * and the codec that packs them into the BLOB stored in the table.
+ * <p/>
+ * Every value is encoded as three zig-zag varints:
+ * <p/>
+ * - The timestamp as the delta of its delta with the previous value. The first value stores its
+ * offset from the block start and the second one its delta, so regular sampling costs one byte.
+ * <p/>
+ * - The temperature quantized to {@link #VALUE_RESOLUTION} as the delta from the previous value,
+ * with the log flag of the value in its lowest bit.
+ * <p/>
+ * - The humidity quantized to {@link #VALUE_RESOLUTION} as the delta from the previous value.
+ */
+public class HistoryBlock {
+
+    public static final float VALUE_RESOLUTION = 0.01f;
+
+    private static final String TAG = HistoryBlock.class.getSimpleName();
+    private static final int DEFAULT_INITIAL_CAPACITY = 64;
+    private static final int MAX_VARINT_LENGTH = 10;
+    private static final int MAX_ENCODED_VALUE_LENGTH = 3 * MAX_VARINT_LENGTH;
+
+    private long mBlockStart;
+    @NonNull
+    private long[] mTimestamps;
+    @NonNull
+    private int[] mTemperatures;
+    @NonNull
+    private int[] mHumidities;
+    @NonNull
+    private boolean[] mComesFromLog;
+    private int mSize = 0;
+
+    @NonNull
+    private byte[] mEncodeBuffer = new byte[0];
+    private int mBufferPosition;
+
+    public HistoryBlock(final long blockStart) {
+        mBlockStart = blockStart;
+        mTimestamps = new long[DEFAULT_INITIAL_CAPACITY];
+        mTemperatures = new int[DEFAULT_INITIAL_CAPACITY];
+        mHumidities = new int[DEFAULT_INITIAL_CAPACITY];
+        mComesFromLog = new boolean[DEFAULT_INITIAL_CAPACITY];
+    }
+
+    private static int quantize(final float value) {
+        return Math.round(value / VALUE_RESOLUTION);
+    }
+
+    private static float dequantize(final int value) {
+        return value * VALUE_RESOLUTION;
+    }
+
+    /**
+     * Adds a value to the block, keeping the values ordered by timestamp.
+     *
+     * @param timestamp    of the value in milliseconds, it has to belong to the block.
+     * @param temperature  of the value in Celsius.
+     * @param humidity     relative humidity of the value.
+     * @param comesFromLog <code>true</code> if the value comes from logging - <code>false</code> otherwise.
+     */
+    public void add(final long timestamp, final float temperature, final float humidity, final boolean comesFromLog) {
+        if (HistoryBlockTable.obtainBlockStart(timestamp) != mBlockStart) {
+            throw new IllegalArgumentException(String.format("%s: add -> Timestamp %d does not belong to the block starting at %d.", TAG, timestamp, mBlockStart));
+        }
+        if (mSize == mTimestamps.length) {
+            final int newCapacity = mSize * 2;
+            mTimestamps = Arrays.copyOf(mTimestamps, newCapacity);
+            mTemperatures = Arrays.copyOf(mTemperatures, newCapacity);
+            mHumidities = Arrays.copyOf(mHumidities, newCapacity);
+            mComesFromLog = Arrays.copyOf(mComesFromLog, newCapacity);
+        }
+        // Values usually arrive in order, so the insertion point is searched from the end.
+        int position = mSize;
+        while (position > 0 && mTimestamps[position - 1] > timestamp) {
+            position--;
+        }
+        if (position < mSize) {
+            System.arraycopy(mTimestamps, position, mTimestamps, position + 1, mSize - position);
+            System.arraycopy(mTemperatures, position, mTemperatures, position + 1, mSize - position);
+            System.arraycopy(mHumidities, position, mHumidities, position + 1, mSize - position);
+            System.arraycopy(mComesFromLog, position, mComesFromLog, position + 1, mSize - position);
+        }
+        mTimestamps[position] = timestamp;
+        mTemperatures[position] = quantize(temperature);
+        mHumidities[position] = quantize(humidity);
+        mComesFromLog[position] = comesFromLog;
+        mSize++;
+    }
+
+    public long getBlockStart() {
+        return mBlockStart;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getTimestamp(final int index) {
+        checkIndex(index);
+        return mTimestamps[index];
+    }
+
+    public float getTemperature(final int index) {
+        checkIndex(index);
+        return dequantize(mTemperatures[index]);
+    }
+
+    public float getHumidity(final int index) {
+        checkIndex(index);
+        return dequantize(mHumidities[index]);
+    }
+
+    public boolean comesFromLog(final int index) {
+        checkIndex(index);
+        return mComesFromLog[index];
+    }
+
+    public float getMinimumTemperature() {
+        return dequantize(obtainMinimum(mTemperatures));
+    }
+
+    public float getMaximumTemperature() {
+        return dequantize(obtainMaximum(mTemperatures));
+    }
+
+    public float getAverageTemperature() {
+        return dequantize(1) * obtainSum(mTemperatures) / Math.max(1, mSize);
+    }
+
+    public float getMinimumHumidity() {
+        return dequantize(obtainMinimum(mHumidities));
+    }
+
+    public float getMaximumHumidity() {
+        return dequantize(obtainMaximum(mHumidities));
+    }
+
+    public float getAverageHumidity() {
+        return dequantize(1) * obtainSum(mHumidities) / Math.max(1, mSize);
+    }
+
+    private int obtainMinimum(@NonNull final int[] values) {
+        int minimum = (mSize == 0) ? 0 : Integer.MAX_VALUE;
+        for (int i = 0; i < mSize; i++) {
+            minimum = Math.min(minimum, values[i]);
+        }
+        return minimum;
+    }
+
+    private int obtainMaximum(@NonNull final int[] values) {
+        int maximum = (mSize == 0) ? 0 : Integer.MIN_VALUE;
+        for (int i = 0; i < mSize; i++) {
+            maximum = Math.max(maximum, values[i]);
+        }
+        return maximum;
+    }
+
+    private long obtainSum(@NonNull final int[] values) {
+        long sum = 0;
+        for (int i = 0; i < mSize; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Encodes the values of the block.
+     *
+     * @return <code>byte[]</code> with the encoded values.
+     */
+    @NonNull
+    public byte[] encode() {
+        if (mEncodeBuffer.length < mSize * MAX_ENCODED_VALUE_LENGTH) {
+            mEncodeBuffer = new byte[mSize * MAX_ENCODED_VALUE_LENGTH];
+        }
+        mBufferPosition = 0;
+        long previousTimestamp = mBlockStart;
+        long previousDelta = 0;
+        int previousTemperature = 0;
+        int previousHumidity = 0;
+        for (int i = 0; i < mSize; i++) {
+            final long delta = mTimestamps[i] - previousTimestamp;
+            writeVarint(zigZagEncode(delta - previousDelta));
+            writeVarint(zigZagEncode(mTemperatures[i] - previousTemperature) << 1 | (mComesFromLog[i] ? 1 : 0));
+            writeVarint(zigZagEncode(mHumidities[i] - previousHumidity));
+            // The offset of the first value from the block start is not a sampling period.
+            previousDelta = (i == 0) ? 0 : delta;
+            previousTimestamp = mTimestamps[i];
+            previousTemperature = mTemperatures[i];
+            previousHumidity = mHumidities[i];
+        }
+        return Arrays.copyOf(mEncodeBuffer, mBufferPosition);
+    }
+
+    /**
+     * Replaces the values of the block with the decoded values of another block.
+     *
+     * @param blockStart    start of the encoded block in milliseconds.
+     * @param encodedValues obtained from {@link #encode()}.
+     * @param numberValues  number of values encoded.
+     */
+    public void decode(final long blockStart, @NonNull final byte[] encodedValues, final int numberValues) {
+        mBlockStart = blockStart;
+        mSize = 0;
+        if (mTimestamps.length < numberValues) {
+            mTimestamps = new long[numberValues];
+            mTemperatures = new int[numberValues];
+            mHumidities = new int[numberValues];
+            mComesFromLog = new boolean[numberValues];
+        }
+        mBufferPosition = 0;
+        long previousTimestamp = blockStart;
+        long previousDelta = 0;
+        int previousTemperature = 0;
+        int previousHumidity = 0;
+        for (int i = 0; i < numberValues; i++) {
+            final long delta = previousDelta + zigZagDecode(readVarint(encodedValues));
+            final long temperatureField = readVarint(encodedValues);
+            mTimestamps[i] = previousTimestamp + delta;
+            mTemperatures[i] = previousTemperature + (int) zigZagDecode(temperatureField >>> 1);
+            mComesFromLog[i] = (temperatureField & 1) == 1;
+            mHumidities[i] = previousHumidity + (int) zigZagDecode(readVarint(encodedValues));
+            previousDelta = (i == 0) ? 0 : delta;
+            previousTimestamp = mTimestamps[i];
+            previousTemperature = mTemperatures[i];
+            previousHumidity = mHumidities[i];
+        }
+        mSize = numberValues;
+    }
+
+    /**
+     * Appends the values of the block inside a period of time to a series.
+     *
+     * @param series         where the values are appended.
+     * @param firstTimestamp start of the period in milliseconds.
+     * @param lastTimestamp  end of the period in milliseconds.
+     * @return <code>int</code> with the number of appended values.
+     */
+    public int appendTo(@NonNull final HistorySeries series, final long firstTimestamp, final long lastTimestamp) {
+        int numberAppendedValues = 0;
+        for (int i = 0; i < mSize; i++) {
+            if (mTimestamps[i] >= firstTimestamp && mTimestamps[i] <= lastTimestamp) {
+                series.add(mTimestamps[i], dequantize(mTemperatures[i]), dequantize(mHumidities[i]));
+                numberAppendedValues++;
+            }
+        }
+        return numberAppendedValues;
+    }
+
+    private static long zigZagEncode(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigZagDecode(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            mEncodeBuffer[mBufferPosition++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        mEncodeBuffer[mBufferPosition++] = (byte) value;
+    }
+
+    private long readVarint(@NonNull final byte[] encodedValues) {
+        long value = 0;
+        int shift = 0;
+        byte currentByte;
+        do {
+            if (mBufferPosition >= encodedValues.length || shift >= 64) {
+                throw new IllegalArgumentException(String.format("%s: readVarint -> The encoded values of the block starting at %d are corrupted.", TAG, mBlockStart));
+            }
+            currentByte = encodedValues[mBufferPosition++];
+            value |= (long) (currentByte & 0x7F) << shift;
+            shift += 7;
+        } while ((currentByte & 0x80) != 0);
+        return value;
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException(String.format("Index %d is out of the block bounds. Block size: %d.", index, mSize));
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("Block starting at %d with %d values.", mBlockStart, mSize);
+    }
+}
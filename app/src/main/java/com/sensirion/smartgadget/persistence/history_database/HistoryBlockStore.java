@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.DatabaseStatement;
+import com.sensirion.database_library.parser.CursorReader;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryBlockTable;
+import com.sensirion.smartgadget.utils.Interval;
+import com.sensirion.smartgadget.view.history.HistoryResult;
+import com.sensirion.smartgadget.view.history.HistorySeries;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Optional storage of the raw history values in the compressed blocks of the {@link HistoryBlockTable}.
+ * <p/>
+ * The blocks the incoming values belong to are kept in memory, so appending a value only decodes
+ * a block when a value arrives for a block that is not open, for example when a device log is
+ * downloaded. Modified blocks are re-encoded and replaced in a single transaction by {@link #write()}.
+ * When the transaction fails the modified blocks stay in memory and are written again by the next
+ * call, up to {@link #MAX_OPEN_BLOCKS} blocks; the values of the blocks that are discarded are
+ * counted, see {@link #getNumberDroppedValues()}.
+ * Blocks older than the retention period are deleted while writing, at most once per block duration.
+ */
+public class HistoryBlockStore {
+
+    public static final long DEFAULT_RETENTION_MS = Interval.ONE_WEEK.getNumberMilliseconds();
+    public static final int MAX_OPEN_BLOCKS = 64;
+
+    private static final String TAG = HistoryBlockStore.class.getSimpleName();
+
+    @NonNull
+    private final DatabaseFacade mDatabase;
+    private final long mRetentionMs;
+    @NonNull
+    private final List<OpenBlock> mOpenBlocks = new ArrayList<>();
+    // Scratch block the stored blocks are decoded into while reading.
+    @NonNull
+    private final HistoryBlock mReadBlock = new HistoryBlock(0);
+
+    @Nullable
+    private SQLiteStatement mReplaceBlockStatement;
+    @Nullable
+    private SQLiteStatement mDeleteBlocksStatement;
+    private long mLastPurgeTime = 0;
+    private long mNumberDroppedValues = 0;
+
+    public HistoryBlockStore(@NonNull final DatabaseFacade database) {
+        this(database, DEFAULT_RETENTION_MS);
+    }
+
+    /**
+     * @param database    where the blocks are stored.
+     * @param retentionMs time in milliseconds the blocks are kept after they end.
+     */
+    public HistoryBlockStore(@NonNull final DatabaseFacade database, final long retentionMs) {
+        mDatabase = database;
+        mRetentionMs = retentionMs;
+    }
+
+    /**
+     * Adds a value to the block it belongs to. The value is stored after calling {@link #write()}.
+     * It cannot be called inside a transaction of the database, since it can read a stored block.
+     *
+     * @param deviceId     identifier of the device in the history.
+     * @param comesFromLog <code>true</code> if the incoming value comes from logging - <code>false</code> otherwise.
+     */
+    public synchronized void append(final long deviceId, final long timestamp, final float temperature,
+                                    final float humidity, final boolean comesFromLog) {
+        final OpenBlock openBlock = obtainOpenBlock(deviceId, HistoryBlockTable.obtainBlockStart(timestamp));
+        openBlock.mBlock.add(timestamp, temperature, humidity, comesFromLog);
+        openBlock.mNumberPendingValues++;
+    }
+
+    /**
+     * Counts values that could not be appended to their block, so they are never stored in blocks.
+     *
+     * @param numberValues that were dropped.
+     */
+    public synchronized void dropValues(final int numberValues) {
+        mNumberDroppedValues += numberValues;
+        Log.w(TAG, String.format("dropValues -> %d values were not stored in blocks. Total dropped values: %d.", numberValues, mNumberDroppedValues));
+    }
+
+    /**
+     * Obtains the number of values that were appended but never stored in a block.
+     *
+     * @return <code>long</code> with the number of dropped values.
+     */
+    public synchronized long getNumberDroppedValues() {
+        return mNumberDroppedValues;
+    }
+
+    /**
+     * Stores the modified blocks in a single transaction. Afterwards only the newest block of each
+     * device is kept in memory. If the transaction fails the modified blocks are kept for the next call.
+     *
+     * @return <code>int</code> with the number of stored blocks.
+     */
+    public synchronized int write() {
+        final HistoryBlockTable table = HistoryBlockTable.getInstance();
+        final long now = System.currentTimeMillis();
+        int numberWrittenBlocks = 0;
+        boolean isTransactionSuccessful = false;
+
+        mDatabase.beginTransaction();
+        try {
+            if (mReplaceBlockStatement == null) {
+                mReplaceBlockStatement = mDatabase.compileStatement(table.replaceBlockStatementSql());
+                mDeleteBlocksStatement = mDatabase.compileStatement(table.deleteBlocksOlderThanStatementSql());
+            }
+            for (final OpenBlock openBlock : mOpenBlocks) {
+                if (openBlock.mNumberPendingValues == 0) {
+                    continue;
+                }
+                final HistoryBlock block = openBlock.mBlock;
+                table.bindBlock(mReplaceBlockStatement, openBlock.mDeviceId, block.getBlockStart(), block.size(),
+                        block.getMinimumTemperature(), block.getMaximumTemperature(), block.getAverageTemperature(),
+                        block.getMinimumHumidity(), block.getMaximumHumidity(), block.getAverageHumidity(),
+                        block.encode());
+                mReplaceBlockStatement.executeInsert();
+                numberWrittenBlocks++;
+            }
+            if (now - mLastPurgeTime >= HistoryBlockTable.BLOCK_DURATION_MS) {
+                mDeleteBlocksStatement.bindLong(1, now - mRetentionMs);
+                final int numberDeletedBlocks = mDeleteBlocksStatement.executeUpdateDelete();
+                Log.d(TAG, String.format("write -> Deleted %d expired blocks.", numberDeletedBlocks));
+                mLastPurgeTime = now;
+            }
+            isTransactionSuccessful = true;
+        } catch (@NonNull final SQLException e) {
+            Log.e(TAG, String.format("write -> The %d modified blocks could not be written -> ", numberWrittenBlocks), e);
+            releaseStatements();
+        } finally {
+            if (isTransactionSuccessful) {
+                mDatabase.commit();
+                evictClosedBlocks();
+            } else {
+                mDatabase.rollbackTransaction();
+                // The blocks keep every appended value, so the next call writes them again.
+                discardExcessBlocks();
+            }
+        }
+        return (isTransactionSuccessful) ? numberWrittenBlocks : 0;
+    }
+
+    /**
+     * Obtains the values of some devices inside a period of time. Only the blocks that overlap the
+     * period are decoded.
+     *
+     * @param devicesList    addresses of the devices.
+     * @param firstTimestamp start of the period in milliseconds.
+     * @param lastTimestamp  end of the period in milliseconds.
+     * @return {@link com.sensirion.smartgadget.view.history.HistoryResult} with the values - <code>null</code> if they could not be read.
+     */
+    @Nullable
+    public synchronized HistoryResult readHistoryPoints(@NonNull final List<String> devicesList, final long firstTimestamp, final long lastTimestamp) {
+        final HistoryResult result = new HistoryResult(devicesList);
+        final DatabaseStatement statement = HistoryBlockTable.getInstance().prepareSelectBlocksQuery(mDatabase, devicesList, firstTimestamp, lastTimestamp);
+        final boolean wasRead = statement.query(new CursorReader() {
+            @Override
+            public void read(@NonNull final Cursor cursor) {
+                HistorySeries series = null;
+                while (cursor.moveToNext()) {
+                    final String deviceAddress = cursor.getString(0);
+                    if (series == null || !series.getDeviceAddress().equals(deviceAddress)) {
+                        series = result.obtainSeries(deviceAddress);
+                    }
+                    mReadBlock.decode(cursor.getLong(1), cursor.getBlob(3), cursor.getInt(2));
+                    mReadBlock.appendTo(series, firstTimestamp, lastTimestamp);
+                }
+            }
+        });
+        if (!wasRead) {
+            Log.e(TAG, "readHistoryPoints -> The history blocks could not be read from the database.");
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Forgets the blocks kept in memory and releases the compiled statements of the store.
+     * Values appended after the last successful {@link #write()} are discarded and counted.
+     */
+    public synchronized void release() {
+        releaseStatements();
+        int numberPendingValues = 0;
+        for (final OpenBlock openBlock : mOpenBlocks) {
+            numberPendingValues += openBlock.mNumberPendingValues;
+        }
+        mOpenBlocks.clear();
+        if (numberPendingValues > 0) {
+            dropValues(numberPendingValues);
+        }
+    }
+
+    @NonNull
+    private OpenBlock obtainOpenBlock(final long deviceId, final long blockStart) {
+        for (final OpenBlock openBlock : mOpenBlocks) {
+            if (openBlock.mDeviceId == deviceId && openBlock.mBlock.getBlockStart() == blockStart) {
+                return openBlock;
+            }
+        }
+        final OpenBlock openBlock = new OpenBlock(deviceId, new HistoryBlock(blockStart));
+        readStoredBlock(openBlock);
+        mOpenBlocks.add(openBlock);
+        return openBlock;
+    }
+
+    private void readStoredBlock(@NonNull final OpenBlock openBlock) {
+        final DatabaseStatement statement = mDatabase.prepare(HistoryBlockTable.getInstance().selectBlockStatementSql())
+                .bindLong(1, openBlock.mDeviceId).bindLong(2, openBlock.mBlock.getBlockStart());
+        statement.query(new CursorReader() {
+            @Override
+            public void read(@NonNull final Cursor cursor) {
+                if (cursor.moveToFirst()) {
+                    openBlock.mBlock.decode(openBlock.mBlock.getBlockStart(), cursor.getBlob(1), cursor.getInt(0));
+                }
+            }
+        });
+    }
+
+    private void evictClosedBlocks() {
+        final Iterator<OpenBlock> iterator = mOpenBlocks.iterator();
+        while (iterator.hasNext()) {
+            final OpenBlock openBlock = iterator.next();
+            openBlock.mNumberPendingValues = 0;
+            if (isNewerBlockOpen(openBlock)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Bounds the memory kept while the writes keep failing, discarding the oldest blocks first.
+     */
+    private void discardExcessBlocks() {
+        while (mOpenBlocks.size() > MAX_OPEN_BLOCKS) {
+            OpenBlock oldestBlock = mOpenBlocks.get(0);
+            for (final OpenBlock openBlock : mOpenBlocks) {
+                if (openBlock.mBlock.getBlockStart() < oldestBlock.mBlock.getBlockStart()) {
+                    oldestBlock = openBlock;
+                }
+            }
+            mOpenBlocks.remove(oldestBlock);
+            if (oldestBlock.mNumberPendingValues > 0) {
+                dropValues(oldestBlock.mNumberPendingValues);
+            }
+        }
+    }
+
+    private boolean isNewerBlockOpen(@NonNull final OpenBlock openBlock) {
+        for (final OpenBlock otherBlock : mOpenBlocks) {
+            if (otherBlock.mDeviceId == openBlock.mDeviceId && otherBlock.mBlock.getBlockStart() > openBlock.mBlock.getBlockStart()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void releaseStatements() {
+        if (mReplaceBlockStatement != null) {
+            mReplaceBlockStatement.close();
+            mReplaceBlockStatement = null;
+        }
+        if (mDeleteBlocksStatement != null) {
+            mDeleteBlocksStatement.close();
+            mDeleteBlocksStatement = null;
+        }
+    }
+
+    private static class OpenBlock {
+        private final long mDeviceId;
+        @NonNull
+        private final HistoryBlock mBlock;
+        // Values appended since the block was last written, the block is modified while it is not 0.
+        private int mNumberPendingValues = 0;
+
+        OpenBlock(final long deviceId, @NonNull final HistoryBlock block) {
+            mDeviceId = deviceId;
+            mBlock = block;
+        }
+    }
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.parser.CursorReader;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDeviceTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryLoggedRangeTable;
+
+import java.util.Arrays;
+
+/**
+ * Buffers history values and writes them to the {@link HistoryDataTable} in batches. Every batch
+ * is written inside a single transaction with one compiled insert statement that is reused for
+ * every row. A batch is written as soon as it holds the maximum number of rows or when
+ * {@link #flushIfDue()} is called after the maximum delay since its first row has elapsed.
+ * If a {@link HistoryBlockStore} is set, every written batch is appended to it afterwards.
+ * <p/>
+ * The values downloaded from the log of a device skip the buffer, see {@link #writeLoggedValues}.
+ */
+public class HistoryDataBatchWriter {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    public static final long DEFAULT_MAX_BATCH_DELAY_MS = 2000;
+
+    private static final String TAG = HistoryDataBatchWriter.class.getSimpleName();
+
+    @NonNull
+    private final DatabaseFacade mDatabase;
+    @NonNull
+    private final HistoryDeviceIdResolver mDeviceIdResolver;
+    private final int mMaxBatchSize;
+    private final long mMaxBatchDelayMs;
+
+    // Pending rows are stored column-wise so buffering a row does not allocate anything.
+    @NonNull
+    private final String[] mDeviceAddresses;
+    @NonNull
+    private final long[] mDeviceIds;
+    @NonNull
+    private final long[] mTimestamps;
+    @NonNull
+    private final float[] mTemperatures;
+    @NonNull
+    private final float[] mHumidities;
+    @NonNull
+    private final boolean[] mComesFromLog;
+    private int mNumberPendingRows = 0;
+    private long mFirstPendingRowTime = 0;
+
+    @Nullable
+    private SQLiteStatement mInsertStatement;
+    @Nullable
+    private SQLiteStatement mInsertIfNewStatement;
+    @Nullable
+    private SQLiteStatement mUpdateRangeStatement;
+
+    // Logged ranges of the device whose log is being written, reused between the downloaded chunks.
+    @NonNull
+    private long[] mStoredRangeStarts = new long[0];
+    @NonNull
+    private long[] mStoredRangeEnds = new long[0];
+    private int mNumberStoredRanges = 0;
+    @Nullable
+    private HistoryBlockStore mBlockStore;
+
+    public HistoryDataBatchWriter(@NonNull final DatabaseFacade database) {
+        this(database, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_DELAY_MS);
+    }
+
+    /**
+     * @param database        where the history values are written.
+     * @param maxBatchSize    number of buffered rows that triggers a write.
+     * @param maxBatchDelayMs maximum time a row can stay in the buffer before being written.
+     */
+    public HistoryDataBatchWriter(@NonNull final DatabaseFacade database, final int maxBatchSize, final long maxBatchDelayMs) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException(String.format("%s: HistoryDataBatchWriter -> Batch size has to be positive, received %d.", TAG, maxBatchSize));
+        }
+        mDatabase = database;
+        mDeviceIdResolver = new HistoryDeviceIdResolver(database);
+        mMaxBatchSize = maxBatchSize;
+        mMaxBatchDelayMs = maxBatchDelayMs;
+        mDeviceAddresses = new String[maxBatchSize];
+        mDeviceIds = new long[maxBatchSize];
+        mTimestamps = new long[maxBatchSize];
+        mTemperatures = new float[maxBatchSize];
+        mHumidities = new float[maxBatchSize];
+        mComesFromLog = new boolean[maxBatchSize];
+    }
+
+    /**
+     * Buffers a history value. The batch is written straight away if it is full.
+     *
+     * @param comesFromLog <code>true</code> if the incoming value comes from logging - <code>false</code> otherwise.
+     */
+    public synchronized void add(@NonNull final String deviceAddress, final long timestamp, final float temperature,
+                                 final float humidity, final boolean comesFromLog) {
+        mDeviceAddresses[mNumberPendingRows] = deviceAddress;
+        mTimestamps[mNumberPendingRows] = timestamp;
+        mTemperatures[mNumberPendingRows] = temperature;
+        mHumidities[mNumberPendingRows] = humidity;
+        mComesFromLog[mNumberPendingRows] = comesFromLog;
+        if (mNumberPendingRows++ == 0) {
+            mFirstPendingRowTime = System.currentTimeMillis();
+        }
+        if (mNumberPendingRows >= mMaxBatchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered values if the first of them has waited longer than the maximum batch delay.
+     *
+     * @return <code>int</code> with the number of rows written to the database.
+     */
+    public synchronized int flushIfDue() {
+        if (mNumberPendingRows > 0 && System.currentTimeMillis() - mFirstPendingRowTime >= mMaxBatchDelayMs) {
+            return flush();
+        }
+        return 0;
+    }
+
+    /**
+     * Writes all the buffered values in a single transaction.
+     *
+     * @return <code>int</code> with the number of rows written to the database.
+     */
+    public synchronized int flush() {
+        if (mNumberPendingRows == 0) {
+            return 0;
+        }
+        final long initialTime = System.currentTimeMillis();
+        final int numberRows = mNumberPendingRows;
+        final HistoryDataTable table = HistoryDataTable.getInstance();
+        boolean isTransactionSuccessful = false;
+
+        mDatabase.beginTransaction();
+        try {
+            final SQLiteStatement statement = obtainInsertStatement(table);
+            for (int i = 0; i < numberRows; i++) {
+                mDeviceIds[i] = mDeviceIdResolver.resolveDeviceId(mDeviceAddresses[i]);
+                table.bindInsertValue(statement, mDeviceIds[i], mTimestamps[i], mTemperatures[i], mHumidities[i], mComesFromLog[i]);
+                statement.executeInsert();
+            }
+            isTransactionSuccessful = true;
+        } catch (@NonNull final SQLException | IllegalStateException e) {
+            Log.e(TAG, String.format("flush -> The batch of %d rows could not be written -> ", numberRows), e);
+            releaseInsertStatement();
+            mDeviceIdResolver.release();
+        } finally {
+            if (isTransactionSuccessful) {
+                mDatabase.commit();
+            } else {
+                mDatabase.rollbackTransaction();
+                // Devices interned inside the rolled back transaction do not exist anymore.
+                mDeviceIdResolver.clear();
+            }
+            Arrays.fill(mDeviceAddresses, 0, numberRows, null);
+            mNumberPendingRows = 0;
+        }
+        if (isTransactionSuccessful && mBlockStore != null) {
+            appendToBlockStore(mBlockStore, numberRows);
+        }
+        Log.d(TAG, String.format("flush -> Wrote %d rows in %d milliseconds.", numberRows, System.currentTimeMillis() - initialTime));
+        return (isTransactionSuccessful) ? numberRows : 0;
+    }
+
+    /**
+     * Writes the values downloaded from the log of a device in a single transaction. The values
+     * inside the stored ranges of the device, see {@link HistoryLoggedRangeTable}, and the ones whose
+     * timestamp is already stored for the device are skipped. The range received by the download so
+     * far is stored in the same transaction, so it is never written again, even after a failed
+     * download, a restart of the application or the purge of the raw values. The pending batch is
+     * written before, so the values keep the order they were received in.
+     *
+     * @param deviceAddress of the device that logged the values.
+     * @param timestamps    of the downloaded values.
+     * @param temperatures  of the downloaded values.
+     * @param humidities    of the downloaded values.
+     * @param downloadStart first timestamp received by the download.
+     * @param downloadEnd   last timestamp received by the download, including these values.
+     * @return <code>int</code> with the number of inserted values.
+     */
+    public synchronized int writeLoggedValues(@NonNull final String deviceAddress, @NonNull final long[] timestamps, @NonNull final float[] temperatures,
+                                              @NonNull final float[] humidities, final long downloadStart, final long downloadEnd) {
+        flush();
+        if (timestamps.length == 0) {
+            return 0;
+        }
+        final long initialTime = System.currentTimeMillis();
+        final HistoryDataTable table = HistoryDataTable.getInstance();
+        final boolean[] isInserted = (mBlockStore == null) ? null : new boolean[timestamps.length];
+        long deviceId = 0;
+        int numberInsertedRows = 0;
+        boolean isTransactionSuccessful = false;
+
+        mDatabase.beginTransaction();
+        try {
+            deviceId = mDeviceIdResolver.resolveDeviceId(deviceAddress);
+            loadStoredRanges(deviceId);
+            final SQLiteStatement statement = obtainInsertIfNewStatement(table);
+            for (int i = 0; i < timestamps.length; i++) {
+                if (isInStoredRange(timestamps[i])) {
+                    continue;
+                }
+                table.bindInsertValueIfNew(statement, deviceId, timestamps[i], temperatures[i], humidities[i]);
+                if (statement.executeInsert() != -1) {
+                    numberInsertedRows++;
+                    if (isInserted != null) {
+                        isInserted[i] = true;
+                    }
+                }
+            }
+            mUpdateRangeStatement = obtainStatement(mUpdateRangeStatement, HistoryLoggedRangeTable.getInstance().updateRangeStatementSql());
+            mUpdateRangeStatement.bindLong(1, deviceId);
+            mUpdateRangeStatement.bindLong(2, downloadStart);
+            mUpdateRangeStatement.bindLong(3, downloadEnd);
+            mUpdateRangeStatement.execute();
+            isTransactionSuccessful = true;
+        } catch (@NonNull final SQLException | IllegalStateException e) {
+            Log.e(TAG, String.format("writeLoggedValues -> The %d logged values could not be written -> ", timestamps.length), e);
+            releaseInsertStatement();
+            mDeviceIdResolver.release();
+        } finally {
+            if (isTransactionSuccessful) {
+                mDatabase.commit();
+            } else {
+                mDatabase.rollbackTransaction();
+                mDeviceIdResolver.clear();
+            }
+        }
+        if (!isTransactionSuccessful) {
+            return 0;
+        }
+        if (mBlockStore != null && isInserted != null) {
+            appendToBlockStore(mBlockStore, deviceId, timestamps, temperatures, humidities, isInserted);
+        }
+        Log.d(TAG, String.format("writeLoggedValues -> Wrote %d of %d logged values in %d milliseconds.",
+                numberInsertedRows, timestamps.length, System.currentTimeMillis() - initialTime));
+        return numberInsertedRows;
+    }
+
+    /**
+     * Registers the end of a complete download of the log of a device. Every value up to the last
+     * one of the download is stored, so the logged ranges of the device it covers are replaced by
+     * its last logged timestamp.
+     *
+     * @param deviceAddress of the device that logged the values.
+     * @param downloadEnd   last timestamp received by the download.
+     */
+    public synchronized void completeLoggedDownload(@NonNull final String deviceAddress, final long downloadEnd) {
+        boolean isTransactionSuccessful = false;
+        mDatabase.beginTransaction();
+        try {
+            final long deviceId = mDeviceIdResolver.resolveDeviceId(deviceAddress);
+            final SQLiteStatement updateStatement = mDatabase.compileStatement(HistoryDeviceTable.getInstance().updateLastLoggedTimestampStatementSql());
+            final SQLiteStatement deleteStatement = mDatabase.compileStatement(HistoryLoggedRangeTable.getInstance().deleteCompletedRangesStatementSql());
+            try {
+                updateStatement.bindLong(1, downloadEnd);
+                updateStatement.bindLong(2, deviceId);
+                updateStatement.execute();
+                deleteStatement.bindLong(1, deviceId);
+                deleteStatement.execute();
+            } finally {
+                updateStatement.close();
+                deleteStatement.close();
+            }
+            isTransactionSuccessful = true;
+        } catch (@NonNull final SQLException | IllegalStateException e) {
+            Log.e(TAG, String.format("completeLoggedDownload -> The download of %s could not be completed -> ", deviceAddress), e);
+            mDeviceIdResolver.release();
+        } finally {
+            if (isTransactionSuccessful) {
+                mDatabase.commit();
+            } else {
+                mDatabase.rollbackTransaction();
+                mDeviceIdResolver.clear();
+            }
+        }
+    }
+
+    /**
+     * Reads the last logged timestamp and the logged ranges of a device. It has to be called inside
+     * the write transaction, so the ranges cannot change before the values are written.
+     */
+    private void loadStoredRanges(final long deviceId) {
+        mNumberStoredRanges = 0;
+        final String deviceIdArgument = Long.toString(deviceId);
+        mDatabase.rawDatabaseQuery(HistoryLoggedRangeTable.getInstance().selectStoredRangesStatementSql(), new String[]{deviceIdArgument, deviceIdArgument},
+                new CursorReader() {
+                    @Override
+                    public void read(@NonNull final Cursor cursor) {
+                        if (mStoredRangeStarts.length < cursor.getCount()) {
+                            mStoredRangeStarts = new long[cursor.getCount()];
+                            mStoredRangeEnds = new long[cursor.getCount()];
+                        }
+                        while (cursor.moveToNext()) {
+                            mStoredRangeStarts[mNumberStoredRanges] = cursor.getLong(0);
+                            mStoredRangeEnds[mNumberStoredRanges] = cursor.getLong(1);
+                            mNumberStoredRanges++;
+                        }
+                    }
+                });
+    }
+
+    private boolean isInStoredRange(final long timestamp) {
+        for (int i = 0; i < mNumberStoredRanges; i++) {
+            if (timestamp >= mStoredRangeStarts[i] && timestamp <= mStoredRangeEnds[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the block store the written values are appended to.
+     *
+     * @param blockStore where the values are compressed - <code>null</code> for only writing the history rows.
+     */
+    public synchronized void setBlockStore(@Nullable final HistoryBlockStore blockStore) {
+        if (mBlockStore != null && mBlockStore != blockStore) {
+            mBlockStore.release();
+        }
+        mBlockStore = blockStore;
+    }
+
+    /**
+     * Obtains the number of values waiting to be written.
+     *
+     * @return <code>int</code> with the number of buffered rows.
+     */
+    public synchronized int getNumberPendingRows() {
+        return mNumberPendingRows;
+    }
+
+    /**
+     * Obtains the maximum time a value waits in the buffer before {@link #flushIfDue()} writes it.
+     *
+     * @return <code>long</code> with the delay in milliseconds.
+     */
+    public long getMaxBatchDelayMs() {
+        return mMaxBatchDelayMs;
+    }
+
+    /**
+     * Writes the pending values and releases the compiled statements of the writer.
+     */
+    public synchronized void close() {
+        flush();
+        releaseInsertStatement();
+        mDeviceIdResolver.release();
+        if (mBlockStore != null) {
+            mBlockStore.release();
+        }
+    }
+
+    private void appendToBlockStore(@NonNull final HistoryBlockStore blockStore, final int numberRows) {
+        int numberDroppedValues = 0;
+        for (int i = 0; i < numberRows; i++) {
+            try {
+                blockStore.append(mDeviceIds[i], mTimestamps[i], mTemperatures[i], mHumidities[i], mComesFromLog[i]);
+            } catch (@NonNull final SQLException | IllegalArgumentException e) {
+                Log.e(TAG, String.format("appendToBlockStore -> The value with timestamp %d could not be compressed -> ", mTimestamps[i]), e);
+                numberDroppedValues++;
+            }
+        }
+        if (numberDroppedValues > 0) {
+            blockStore.dropValues(numberDroppedValues);
+        }
+        // The appended values are kept by the block store until they are written.
+        blockStore.write();
+    }
+
+    private void appendToBlockStore(@NonNull final HistoryBlockStore blockStore, final long deviceId, @NonNull final long[] timestamps,
+                                    @NonNull final float[] temperatures, @NonNull final float[] humidities, @NonNull final boolean[] isInserted) {
+        int numberDroppedValues = 0;
+        for (int i = 0; i < timestamps.length; i++) {
+            if (!isInserted[i]) {
+                continue;
+            }
+            try {
+                blockStore.append(deviceId, timestamps[i], temperatures[i], humidities[i], true);
+            } catch (@NonNull final SQLException | IllegalArgumentException e) {
+                Log.e(TAG, String.format("appendToBlockStore -> The logged value with timestamp %d could not be compressed -> ", timestamps[i]), e);
+                numberDroppedValues++;
+            }
+        }
+        if (numberDroppedValues > 0) {
+            blockStore.dropValues(numberDroppedValues);
+        }
+        blockStore.write();
+    }
+
+    @NonNull
+    private SQLiteStatement obtainStatement(@Nullable final SQLiteStatement statement, @NonNull final String sql) {
+        return (statement == null) ? mDatabase.compileStatement(sql) : statement;
+    }
+
+    @NonNull
+    private SQLiteStatement obtainInsertIfNewStatement(@NonNull final HistoryDataTable table) {
+        if (mInsertIfNewStatement == null) {
+            mInsertIfNewStatement = mDatabase.compileStatement(table.insertValueIfNewStatementSql());
+        }
+        return mInsertIfNewStatement;
+    }
+
+    @NonNull
+    private SQLiteStatement obtainInsertStatement(@NonNull final HistoryDataTable table) {
+        if (mInsertStatement == null) {
+            mInsertStatement = mDatabase.compileStatement(table.insertValueStatementSql());
+        }
+        return mInsertStatement;
+    }
+
+    private void releaseInsertStatement() {
+        if (mInsertStatement != null) {
+            mInsertStatement.close();
+            mInsertStatement = null;
+        }
+        if (mInsertIfNewStatement != null) {
+            mInsertIfNewStatement.close();
+            mInsertIfNewStatement = null;
+        }
+        if (mUpdateRangeStatement != null) {
+            mUpdateRangeStatement.close();
+            mUpdateRangeStatement = null;
+        }
+    }
+}
@@ -31,40 +31,70 @@
 package com.sensirion.smartgadget.persistence.history_database;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.DatabaseStatement;
 import com.sensirion.database_library.attributes.DatabaseAttributes;
 import com.sensirion.database_library.database_object.AbstractDatabaseObject;
-import com.sensirion.database_library.parser.QueryResult;
-import com.sensirion.database_library.parser.QueryResultRow;
+import com.sensirion.database_library.migration.AbstractDatabaseMigration;
+import com.sensirion.database_library.parser.RowMapper;
+import com.sensirion.libsmartgadget.GadgetDataPoint;
 import com.sensirion.smartgadget.R;
+import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSampleBus;
+import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSampleSubscriber;
 import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSensorFacade;
-import com.sensirion.smartgadget.peripheral.rht_utils.RHTDataPoint;
-import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataLast10MinutesView;
-import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataLast1DayView;
-import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataLast1HourView;
-import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataLast1WeekView;
-import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataLast6HoursView;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryBlockMigration;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryBlockTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataDeviceIdMigration;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataSource;
 import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDeviceTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryIncrementalVacuumMigration;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryLastLoggedTimestampMigration;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryLoggedRangeMigration;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryLoggedRangeTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryRollupMigration;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryRollupStateTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryRollupSumMigration;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryRollupTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryTierMigration;
 import com.sensirion.smartgadget.utils.DeviceModel;
 import com.sensirion.smartgadget.view.history.HistoryResult;
 import com.sensirion.smartgadget.view.history.type.HistoryIntervalType;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 public class HistoryDatabaseManager {
 
     private static final String TAG = HistoryDatabaseManager.class.getSimpleName();
 
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 11;
+    private static final long WRITER_SHUTDOWN_TIMEOUT_MS = 5000;
+    private static final String QUERY_CHANNEL_HISTORY_POINTS = "history_points";
+    private static final String LIVE_SAMPLE_THREAD_NAME = "HistoryLiveSamples";
+    private static final String RELEASE_THREAD_NAME = "HistoryRelease";
+
+    private static final RowMapper<String> DEVICE_ADDRESS_MAPPER = new RowMapper<String>() {
+        @Override
+        public String mapRow(@NonNull final Cursor cursor) {
+            return cursor.getString(0);
+        }
+    };
 
     @Nullable
     private static HistoryDatabaseManager mInstance = null;
@@ -72,13 +102,76 @@ public class HistoryDatabaseManager {
     @NonNull
     private final DatabaseFacade mDatabase;
 
+    @NonNull
+    private final HistoryDataBatchWriter mHistoryDataWriter;
+
+    @NonNull
+    private final HistoryBlockStore mBlockStore;
+
+    @NonNull
+    private final HistoryLiveCache mLiveCache = new HistoryLiveCache();
+
+    @NonNull
+    private final HistoryQueryEngine mQueryEngine = new HistoryQueryEngine();
+
+    @NonNull
+    private final HistoryWriterService mWriterService;
+
+    @NonNull
+    private final HistoryLogDownloadTracker mLogDownloadTracker;
+
     private final Map<String, DatapointHandler> mDatapointHandlers = Collections.synchronizedMap(new HashMap<String, DatapointHandler>());
 
+    @NonNull
+    private volatile HistoryLiveAggregator.Factory mLiveAggregatorFactory =
+            HistoryWindowedMeanAggregator.factory(HistoryWindowedMeanAggregator.DEFAULT_WINDOW_MS);
+
+    // The samples are handed over to a looper thread, whose pooled messages do not allocate memory.
+    @NonNull
+    private final HandlerThread mLiveSampleThread = new HandlerThread(LIVE_SAMPLE_THREAD_NAME);
+    @NonNull
+    private final Handler mLiveSampleHandler;
+    @NonNull
+    private final Executor mLiveSampleExecutor;
+
+    @NonNull
+    private final RHTSampleSubscriber mLiveSampleSubscriber = new RHTSampleSubscriber() {
+        @Override
+        public void onNewSample(@NonNull final String deviceAddress, final float temperature,
+                                final float relativeHumidity, final long timestamp) {
+            obtainDatapointHandler(deviceAddress).addLiveValue(timestamp, temperature, relativeHumidity);
+        }
+    };
+
     private final boolean mTestInProgress;
 
+    private volatile boolean mIsReleased = false;
+    @Nullable
+    private volatile Thread mReleaseThread = null;
+
     private HistoryDatabaseManager(@NonNull final Context context, final boolean isTest) {
         mTestInProgress = isTest;
         mDatabase = new DatabaseFacade(context, getPermanentDatabaseAttributes(context));
+        final int numberCreatedTables = HistoryRollupTable.createMissingTables(mDatabase);
+        if (numberCreatedTables > 0) {
+            Log.i(TAG, String.format("Constructor -> Created %d rollup tables of the tier configuration.", numberCreatedTables));
+        }
+        mHistoryDataWriter = new HistoryDataBatchWriter(mDatabase);
+        mBlockStore = new HistoryBlockStore(mDatabase);
+        mWriterService = new HistoryWriterService(mHistoryDataWriter,
+                new HistoryMaintenanceScheduler(mDatabase, new HistoryRollupEngine(mDatabase)), HistoryWriterService.DEFAULT_QUEUE_CAPACITY);
+        mLogDownloadTracker = new HistoryLogDownloadTracker();
+        mLiveSampleThread.start();
+        mLiveSampleHandler = new Handler(mLiveSampleThread.getLooper());
+        mLiveSampleExecutor = new Executor() {
+            @Override
+            public void execute(@NonNull final Runnable runnable) {
+                mLiveSampleHandler.post(runnable);
+            }
+        };
+        // The live values are aggregated in their own thread, so the sensor callbacks never wait for the history.
+        RHTSampleBus.getInstance().subscribe(mLiveSampleSubscriber, mLiveSampleExecutor,
+                RHTSampleBus.DeliveryPolicy.LOSSLESS, RHTSampleBus.DEFAULT_LOSSLESS_CAPACITY);
     }
 
     @NonNull
@@ -100,56 +193,150 @@ public class HistoryDatabaseManager {
     }
 
     /**
-     * Initializes the {@link com.sensirion.smartgadget.persistence.history_database.HistoryDatabaseManager} with a Context. This method needs to be called once for application.
+     * Initializes the {@link com.sensirion.smartgadget.persistence.history_database.HistoryDatabaseManager} with a Context. This method needs to be called once for application,
+     * or again after {@link #release()}, in which case it waits until the previous database connection is closed.
      *
      * @param context needed for initializing the manager
      * @param isTest  <code>true</code> if it's a test and the database should be deleted at the end of the execution - <code>false</code> if it's a permanent database.
      * @return <code>true</code> if the databases has been initialized - <code>false</code> if the databases where already initialized.
      */
     public synchronized static boolean init(@NonNull final Context context, final boolean isTest) {
-        if (mInstance == null) {
+        if (mInstance == null || mInstance.mIsReleased) {
+            if (mInstance != null && !mInstance.awaitRelease(2 * WRITER_SHUTDOWN_TIMEOUT_MS)) {
+                Log.w(TAG, "init -> The previous history database connection is still open.");
+            }
             mInstance = new HistoryDatabaseManager(context.getApplicationContext(), isTest);
             return true;
         }
         return false;
     }
 
+    /**
+     * Checks if the manager uses the test database, which is deleted at the end of the execution.
+     *
+     * @return <code>true</code> if it was initialized for a test - <code>false</code> if it uses the permanent database.
+     */
+    public boolean isTestDatabase() {
+        return mTestInProgress;
+    }
+
     @NonNull
     private DatabaseAttributes getPermanentDatabaseAttributes(@NonNull final Context context) {
         final String permanentDatabaseName = (mTestInProgress) ? context.getString(R.string.history_database_test) : context.getResources().getString(R.string.history_database);
-        return new DatabaseAttributes(permanentDatabaseName, DATABASE_VERSION, getDatabaseObjects(), true);
+        return new DatabaseAttributes(permanentDatabaseName, DATABASE_VERSION, getDatabaseObjects(), true, getDatabaseMigrations(), true);
+    }
+
+    @NonNull
+    private List<AbstractDatabaseMigration> getDatabaseMigrations() {
+        final List<AbstractDatabaseMigration> migrations = new LinkedList<>();
+        migrations.add(new HistoryDataDeviceIdMigration());
+        migrations.add(new HistoryRollupMigration());
+        migrations.add(new HistoryRollupSumMigration());
+        migrations.add(new HistoryBlockMigration());
+        migrations.add(new HistoryTierMigration());
+        migrations.add(new HistoryLastLoggedTimestampMigration());
+        migrations.add(new HistoryIncrementalVacuumMigration());
+        migrations.add(new HistoryLoggedRangeMigration());
+        return migrations;
     }
 
     @NonNull
     private Queue<AbstractDatabaseObject> getDatabaseObjects() {
         final Queue<AbstractDatabaseObject> databaseObject = new LinkedList<>();
+        // The history data and its rollups go before the devices, so replacing the tables does not violate their foreign keys.
         databaseObject.add(HistoryDataTable.getInstance());
-        databaseObject.add(HistoryDataLast10MinutesView.getInstance());
-        databaseObject.add(HistoryDataLast1HourView.getInstance());
-        databaseObject.add(HistoryDataLast6HoursView.getInstance());
-        databaseObject.add(HistoryDataLast1DayView.getInstance());
-        databaseObject.add(HistoryDataLast1WeekView.getInstance());
+        databaseObject.addAll(HistoryRollupTable.getInstances());
+        databaseObject.add(HistoryRollupStateTable.getInstance());
+        databaseObject.add(HistoryBlockTable.getInstance());
+        databaseObject.add(HistoryLoggedRangeTable.getInstance());
+        databaseObject.add(HistoryDeviceTable.getInstance());
+        databaseObject.addAll(HistoryDataTable.getInstance().getIndices());
         return databaseObject;
     }
 
     /**
-     * Adds the introduced datapoint to the history, if it's necessary.
+     * Sets how the live values of the devices are reduced before storing them, see
+     * {@link HistoryWindowedMeanAggregator} and {@link HistoryDeadbandAggregator}. The values
+     * pending in the previous aggregators are discarded.
+     *
+     * @param factory that creates the aggregator of every device.
+     */
+    public void setLiveAggregatorFactory(@NonNull final HistoryLiveAggregator.Factory factory) {
+        mLiveAggregatorFactory = factory;
+        mDatapointHandlers.clear();
+    }
+
+    @NonNull
+    private DatapointHandler obtainDatapointHandler(@NonNull final String deviceAddress) {
+        synchronized (mDatapointHandlers) {
+            DatapointHandler handler = mDatapointHandlers.get(deviceAddress);
+            if (handler == null) {
+                handler = new DatapointHandler(deviceAddress, mLiveAggregatorFactory.create(deviceAddress));
+                mDatapointHandlers.put(deviceAddress, handler);
+            }
+            return handler;
+        }
+    }
+
+    /**
+     * Adds the values downloaded from the log of a device to the history. Every downloaded chunk is
+     * written by a single task of the history writer thread, in one transaction. The values of
+     * previous downloads, see {@link HistoryLoggedRangeTable}, and the values whose timestamp is
+     * already stored for the device are skipped.
      *
      * @param deviceAddress of the device.
-     * @param datapoint     that wants to be added to the database.
+     * @param dataPoints    downloaded from the device.
      */
-    public void addRHTData(@NonNull final String deviceAddress, @NonNull final RHTDataPoint datapoint, final boolean isFromHistory) {
-        DatapointHandler handler = mDatapointHandlers.get(deviceAddress);
-        if (handler == null) {
-            handler = new DatapointHandler(deviceAddress);
-            mDatapointHandlers.put(deviceAddress, handler);
+    public void addLoggedData(@NonNull final String deviceAddress, @NonNull final GadgetDataPoint[] dataPoints) {
+        if (dataPoints.length == 0) {
+            return;
+        }
+        final long[] timestamps = new long[dataPoints.length];
+        final float[] temperatures = new float[dataPoints.length];
+        final float[] humidities = new float[dataPoints.length];
+        for (int i = 0; i < dataPoints.length; i++) {
+            timestamps[i] = dataPoints[i].getTimestamp();
+            temperatures[i] = dataPoints[i].getTemperature();
+            humidities[i] = dataPoints[i].getHumidity();
         }
+        final HistoryLogDownloadTracker.DownloadRange downloadRange = mLogDownloadTracker.onValuesReceived(deviceAddress, timestamps);
+        mLiveCache.invalidateUntil(deviceAddress, downloadRange.getEnd());
+        mWriterService.submit(new Runnable() {
+            @Override
+            public void run() {
+                mHistoryDataWriter.writeLoggedValues(deviceAddress, timestamps, temperatures, humidities, downloadRange.getStart(), downloadRange.getEnd());
+            }
+        }, true);
+    }
 
-        if (isFromHistory) {
-            handler.addHistoryDatapoint(datapoint);
-        } else {
-            handler.addLiveDataDatapoint(datapoint);
+    /**
+     * Notifies that the log of a device was completely downloaded, so the next download only
+     * writes the values logged afterwards.
+     *
+     * @param deviceAddress of the device.
+     */
+    public void onLogDownloadCompleted(@NonNull final String deviceAddress) {
+        final HistoryLogDownloadTracker.DownloadRange downloadRange = mLogDownloadTracker.onDownloadCompleted(deviceAddress);
+        if (downloadRange == null) {
+            return;
         }
+        // Enqueued after the writes of the download, so it is only stored once they are.
+        mWriterService.submit(new Runnable() {
+            @Override
+            public void run() {
+                mHistoryDataWriter.completeLoggedDownload(deviceAddress, downloadRange.getEnd());
+            }
+        }, true);
+    }
+
+    /**
+     * Notifies that the download of the log of a device failed. The values that were already
+     * received are skipped by the next downloads, since their range was stored with them.
+     *
+     * @param deviceAddress of the device.
+     */
+    public void onLogDownloadFailed(@NonNull final String deviceAddress) {
+        mLogDownloadTracker.onDownloadFailed(deviceAddress);
     }
 
     /**
@@ -166,7 +353,9 @@ public class HistoryDatabaseManager {
     }
 
     /**
-     * Obtains the history data from the database.
+     * Obtains the history data. The newest values come from the {@link HistoryLiveCache}: the raw
+     * interval is only read from the database before the values covered by the cache, and the
+     * rollup intervals are completed with the cached values that were not aggregated yet.
      *
      * @param interval    that the user wants to retrieve.
      * @param devicesList list of devices needed by the user.
@@ -174,28 +363,95 @@ public class HistoryDatabaseManager {
      */
     @Nullable
     public synchronized HistoryResult getHistoryPoints(@NonNull final HistoryIntervalType interval, @NonNull final List<String> devicesList) {
-        final String sql = interval.getIntervalView().getHistoryDataSql(devicesList);
-        final QueryResult queryResult = mDatabase.rawDatabaseQuery(sql);
-        if (queryResult == null) {
-            Log.e(TAG, "getHistoryPoints -> No results where found in the database.");
-            return null;
-        }
-        final List<QueryResultRow> listOfDatapoints = queryResult.getQueryResults();
+        final HistoryDataSource dataSource = interval.getDataSource();
+        final long now = System.currentTimeMillis();
+        final long firstTimestamp = now - interval.getNumberMilliseconds();
         final HistoryResult result = new HistoryResult(devicesList);
-        for (final QueryResultRow row : listOfDatapoints) {
-            final String deviceAddress = row.getString(HistoryDataTable.COLUMN_DEVICE_ADDRESS);
-            result.addResult(deviceAddress, obtainDatapointFromRow(row));
+        int numberCachedValues = 0;
+        if (dataSource instanceof HistoryDataTable) {
+            final List<String> uncachedDevices = new LinkedList<>();
+            for (final String deviceAddress : devicesList) {
+                final long coverageStart = mLiveCache.getCoverageStart(deviceAddress);
+                if (coverageStart == Long.MAX_VALUE) {
+                    uncachedDevices.add(deviceAddress);
+                    continue;
+                }
+                if (coverageStart > firstTimestamp && !readHistoryPoints(result, ((HistoryDataTable) dataSource)
+                        .prepareHistoryDataQuery(mDatabase, Collections.singletonList(deviceAddress), firstTimestamp, coverageStart))) {
+                    return null;
+                }
+                numberCachedValues += mLiveCache.appendValues(result.obtainSeries(deviceAddress), firstTimestamp);
+            }
+            if (!uncachedDevices.isEmpty() && !readHistoryPoints(result, dataSource.prepareHistoryDataQuery(mDatabase, uncachedDevices, interval.getNumberMilliseconds()))) {
+                return null;
+            }
+        } else {
+            if (!readHistoryPoints(result, dataSource.prepareHistoryDataQuery(mDatabase, devicesList, interval.getNumberMilliseconds()))) {
+                return null;
+            }
+            numberCachedValues = mLiveCache.appendNewestBuckets(result, firstTimestamp, dataSource.getResolution(), now);
         }
-        Log.i(TAG, String.format("getHistoryPoints -> Obtained %d datapoints from the database.", result.size()));
+        Log.i(TAG, String.format("getHistoryPoints -> Obtained %d datapoints, %d of them from the live cache.", result.size(), numberCachedValues));
         return result;
     }
 
+    /**
+     * Obtains the history data in the history reader thread. A new call supersedes the previous
+     * one, whose callback is not called if its result was not delivered yet.
+     *
+     * @param interval    that the user wants to retrieve.
+     * @param devicesList list of devices needed by the user.
+     * @param callback    that receives the {@link com.sensirion.smartgadget.view.history.HistoryResult} in the main thread.
+     * @return {@link java.util.concurrent.Future} that can be used for cancelling the query.
+     */
     @NonNull
-    private RHTDataPoint obtainDatapointFromRow(@NonNull final QueryResultRow row) {
-        final float humidity = row.getFloat(HistoryDataTable.COLUMN_HUMIDITY);
-        final float temperature = row.getFloat(HistoryDataTable.COLUMN_TEMPERATURE);
-        final long timestamp = row.getLong(HistoryDataTable.COLUMN_TIMESTAMP);
-        return new RHTDataPoint(temperature, humidity, timestamp);
+    public Future<HistoryResult> getHistoryPointsAsync(@NonNull final HistoryIntervalType interval,
+                                                       @NonNull final List<String> devicesList,
+                                                       @NonNull final HistoryQueryCallback<HistoryResult> callback) {
+        final List<String> queriedDevices = new ArrayList<>(devicesList);
+        return mQueryEngine.submit(QUERY_CHANNEL_HISTORY_POINTS, new Callable<HistoryResult>() {
+            @Override
+            public HistoryResult call() {
+                return getHistoryPoints(interval, queriedDevices);
+            }
+        }, callback);
+    }
+
+    private boolean readHistoryPoints(@NonNull final HistoryResult result, @NonNull final DatabaseStatement statement) {
+        if (!statement.query(new HistoryResultCursorReader(result))) {
+            Log.e(TAG, "readHistoryPoints -> The history data could not be read from the database.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Enables or disables the compressed block storage of the raw history values. While it is
+     * enabled, every value written to the history is appended to the {@link HistoryBlockStore} too,
+     * which keeps the raw values longer than the shortest history interval.
+     *
+     * @param isEnabled <code>true</code> for storing the values in blocks - <code>false</code> otherwise.
+     */
+    public void setBlockStorageEnabled(final boolean isEnabled) {
+        mHistoryDataWriter.setBlockStore((isEnabled) ? mBlockStore : null);
+        Log.i(TAG, String.format("setBlockStorageEnabled -> Block storage enabled: %b.", isEnabled));
+    }
+
+    /**
+     * Obtains the raw history values stored in compressed blocks inside a period of time.
+     *
+     * @param devicesList    list of devices needed by the user.
+     * @param firstTimestamp start of the period in milliseconds.
+     * @param lastTimestamp  end of the period in milliseconds.
+     * @return {@link com.sensirion.smartgadget.view.history.HistoryResult} with the found datapoints.
+     */
+    @Nullable
+    public HistoryResult getRawHistoryPoints(@NonNull final List<String> devicesList, final long firstTimestamp, final long lastTimestamp) {
+        final HistoryResult result = mBlockStore.readHistoryPoints(devicesList, firstTimestamp, lastTimestamp);
+        if (result != null) {
+            Log.i(TAG, String.format("getRawHistoryPoints -> Obtained %d datapoints from the history blocks.", result.size()));
+        }
+        return result;
     }
 
     /**
@@ -207,18 +463,11 @@ public class HistoryDatabaseManager {
     @NonNull
     public List<String> getConnectedDeviceListInterval(@NonNull final HistoryIntervalType interval) {
         Log.d(TAG, String.format("getConnectedDeviceListInterval -> Interval %s was selected.", interval));
-        purgeOldDatabaseData();
-        final String sql = interval.getIntervalView().getListOfDevicesSql();
-        final QueryResult queryResult = mDatabase.rawDatabaseQuery(sql);
-        if (queryResult == null) {
-            Log.e(TAG, String.format("getConnectedDeviceListInterval -> No results where found in the database on interval %s.", interval.getPosition()));
+        final List<String> unsortedListDevices = interval.getDataSource().prepareListOfDevicesQuery(mDatabase, interval.getNumberMilliseconds()).queryForList(DEVICE_ADDRESS_MAPPER);
+        if (unsortedListDevices == null) {
+            Log.e(TAG, String.format("getConnectedDeviceListInterval -> The devices could not be read from the database on interval %s.", interval.getPosition()));
             return new LinkedList<>();
         }
-        final List<QueryResultRow> listOfDatapoints = queryResult.getQueryResults();
-        final List<String> unsortedListDevices = new LinkedList<>();
-        for (final QueryResultRow device : listOfDatapoints) {
-            unsortedListDevices.add(device.getString(0));
-        }
         Log.i(TAG, String.format("getConnectedDeviceListInterval -> The device retrieved from the database %d devices.", unsortedListDevices.size()));
         return sortListDevices(unsortedListDevices);
     }
@@ -245,14 +494,133 @@ public class HistoryDatabaseManager {
     }
 
     /**
-     * Deletes all the unnecessary data from the device.
+     * Obtains the number of write tasks waiting for the history writer thread.
+     *
+     * @return <code>int</code> with the write queue depth.
+     */
+    public int getWriteQueueDepth() {
+        return mWriterService.getQueueDepth();
+    }
+
+    /**
+     * Obtains the number of live values that were not stored because the write queue was full.
+     *
+     * @return <code>long</code> with the number of dropped write tasks.
+     */
+    public long getNumberDroppedWrites() {
+        return mWriterService.getNumberDroppedTasks();
+    }
+
+    /**
+     * Obtains the number of live samples that never reached the history because its mailbox in the
+     * {@link RHTSampleBus} was full.
+     *
+     * @return <code>long</code> with the number of rejected live samples.
+     */
+    public long getNumberRejectedLiveSamples() {
+        return RHTSampleBus.getInstance().getNumberRejectedSamples(mLiveSampleSubscriber);
+    }
+
+    /**
+     * Obtains the number of raw values that were written to the history but not to the compressed blocks.
+     *
+     * @return <code>long</code> with the number of dropped block values.
+     */
+    public long getNumberDroppedBlockValues() {
+        return mBlockStore.getNumberDroppedValues();
+    }
+
+    /**
+     * Obtains the number of history rows merged or deleted by the background maintenance.
+     *
+     * @return <code>long</code> with the number of touched rows.
      */
-    public synchronized void purgeOldDatabaseData() {
-        final long initialTime = System.currentTimeMillis();
-        final long numberDataPoints = mDatabase.rawDatabaseQuery(HistoryDataTable.getInstance().getNumberRowsSql()).getFirstQueryResult().getInt(0);
-        mDatabase.executeSQL(HistoryDataTable.getInstance().purgeOldDataSql());
-        final long numberDataPointsAfterPurge = mDatabase.rawDatabaseQuery(HistoryDataTable.getInstance().getNumberRowsSql()).getFirstQueryResult().getInt(0);
-        Log.d(TAG, String.format("purgeOldDatabaseData -> Cleaned old elements: Elements at the beginning: %d - Elements at the end: %d  - Time: %d milliseconds.", numberDataPoints, numberDataPointsAfterPurge, (System.currentTimeMillis() - initialTime)));
+    public long getNumberMaintenanceTouchedRows() {
+        return mWriterService.getMaintenanceScheduler().getNumberTouchedRows();
+    }
+
+    /**
+     * Obtains the time the history writer thread spent in background maintenance.
+     *
+     * @return <code>long</code> with the maintenance time in milliseconds.
+     */
+    public long getMaintenanceTimeMs() {
+        return mWriterService.getMaintenanceScheduler().getMaintenanceTimeMs();
+    }
+
+    /**
+     * Stores the values pending in the live aggregators, writes the enqueued values, stops the
+     * history writer thread and closes the database connection. The shutdown waits for the
+     * history threads, so it runs in its own thread and this method returns immediately, see
+     * {@link #awaitRelease(long)}. The manager has to be initialized again before being used
+     * after calling this method.
+     */
+    public synchronized void release() {
+        if (mIsReleased) {
+            return;
+        }
+        mIsReleased = true;
+        RHTSampleBus.getInstance().unsubscribe(mLiveSampleSubscriber);
+        mQueryEngine.shutdown();
+        final Thread releaseThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        }, RELEASE_THREAD_NAME);
+        mReleaseThread = releaseThread;
+        releaseThread.start();
+    }
+
+    /**
+     * Waits until the shutdown started by {@link #release()} has finished.
+     *
+     * @param timeoutMs maximum time to wait.
+     * @return <code>true</code> if the manager is not being released - <code>false</code> if the timeout expired.
+     */
+    public boolean awaitRelease(final long timeoutMs) {
+        final Thread releaseThread = mReleaseThread;
+        if (releaseThread == null) {
+            return true;
+        }
+        try {
+            releaseThread.join(timeoutMs);
+        } catch (@NonNull final InterruptedException e) {
+            Log.w(TAG, "awaitRelease -> Interrupted while waiting for the release thread -> ", e);
+            Thread.currentThread().interrupt();
+        }
+        return !releaseThread.isAlive();
+    }
+
+    private void shutdown() {
+        // Posted after the samples that are still queued, so their aggregated values are flushed too.
+        mLiveSampleHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final List<DatapointHandler> datapointHandlers;
+                synchronized (mDatapointHandlers) {
+                    datapointHandlers = new ArrayList<>(mDatapointHandlers.values());
+                }
+                for (final DatapointHandler datapointHandler : datapointHandlers) {
+                    datapointHandler.flush();
+                }
+            }
+        });
+        mLiveSampleThread.quitSafely();
+        try {
+            mLiveSampleThread.join(WRITER_SHUTDOWN_TIMEOUT_MS);
+        } catch (@NonNull final InterruptedException e) {
+            Log.w(TAG, "shutdown -> Interrupted while waiting for the live samples thread -> ", e);
+            Thread.currentThread().interrupt();
+        }
+        if (!mWriterService.shutdown(WRITER_SHUTDOWN_TIMEOUT_MS)) {
+            // Closing the statements and the connection under a running writer would make it crash.
+            Log.e(TAG, "shutdown -> The history writer thread did not stop, the database connection is left open.");
+            return;
+        }
+        mHistoryDataWriter.close();
+        mDatabase.closeDatabaseConnection();
+        Log.i(TAG, "shutdown -> The history database manager was released.");
     }
 
     /**
@@ -261,7 +629,48 @@ public class HistoryDatabaseManager {
      * @return {@link com.sensirion.database_library.DatabaseFacade} with the permanent database.
      */
     @NonNull
-    DatabaseFacade getDatabaseFacade() {
+    public DatabaseFacade getDatabaseFacade() {
         return mDatabase;
     }
+
+    /**
+     * Gets the engine that executes the history queries in the background. Custom queries can be
+     * submitted to it for keeping their database reads away from the main thread.
+     *
+     * @return {@link com.sensirion.smartgadget.persistence.history_database.HistoryQueryEngine} of the permanent database.
+     */
+    @NonNull
+    public HistoryQueryEngine getQueryEngine() {
+        return mQueryEngine;
+    }
+
+    /**
+     * Gets the writer that stores the history values in batches.
+     *
+     * @return {@link com.sensirion.smartgadget.persistence.history_database.HistoryDataBatchWriter} of the permanent database.
+     */
+    @NonNull
+    HistoryDataBatchWriter getHistoryDataWriter() {
+        return mHistoryDataWriter;
+    }
+
+    /**
+     * Gets the cache with the newest live values of every device.
+     *
+     * @return {@link com.sensirion.smartgadget.persistence.history_database.HistoryLiveCache} of the history.
+     */
+    @NonNull
+    HistoryLiveCache getLiveCache() {
+        return mLiveCache;
+    }
+
+    /**
+     * Gets the service that executes the history writes in the background.
+     *
+     * @return {@link com.sensirion.smartgadget.persistence.history_database.HistoryWriterService} of the permanent database.
+     */
+    @NonNull
+    HistoryWriterService getWriterService() {
+        return mWriterService;
+    }
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import com.sensirion.smartgadget.R;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryTierConfiguration;
+
+/**
+ * Skips the aggregated values that are within a deadband of the last stored value. A value is
+ * stored when its temperature or its humidity moved beyond the threshold, or when nothing was
+ * stored for the maximum silence, so stable devices keep appearing in the history at a lower rate.
+ * When a change ends a period of skipped values, the last skipped value is stored before it, so
+ * the history keeps the stable level until the moment of the change.
+ */
+public class HistoryDeadbandAggregator implements HistoryLiveAggregator {
+
+    public static final float DEFAULT_TEMPERATURE_THRESHOLD = 0.1f;
+    public static final float DEFAULT_HUMIDITY_THRESHOLD = 0.5f;
+
+    @NonNull
+    private final HistoryLiveAggregator mAggregator;
+    private final float mTemperatureThreshold;
+    private final float mHumidityThreshold;
+    private final long mMaxSilenceMs;
+
+    private boolean mHasStoredValue = false;
+    private long mStoredTimestamp;
+    private float mStoredTemperature;
+    private float mStoredHumidity;
+
+    private boolean mHasSkippedValue = false;
+    private long mSkippedTimestamp;
+    private float mSkippedTemperature;
+    private float mSkippedHumidity;
+
+    // Value that follows the last skipped value, reached with nextAggregatedValue.
+    private boolean mHasNextValue = false;
+    private long mNextTimestamp;
+    private float mNextTemperature;
+    private float mNextHumidity;
+
+    private int mNumberSkippedValues = 0;
+
+    /**
+     * @param aggregator           whose aggregated values are filtered.
+     * @param temperatureThreshold minimum temperature change for storing a value, in Celsius.
+     * @param humidityThreshold    minimum humidity change for storing a value.
+     * @param maxSilenceMs         maximum time without storing a value.
+     */
+    public HistoryDeadbandAggregator(@NonNull final HistoryLiveAggregator aggregator,
+                                     final float temperatureThreshold,
+                                     final float humidityThreshold,
+                                     final long maxSilenceMs) {
+        if (temperatureThreshold < 0 || humidityThreshold < 0 || maxSilenceMs < 0) {
+            throw new IllegalArgumentException(String.format("%s: HistoryDeadbandAggregator -> The thresholds and the maximum silence cannot be negative.",
+                    HistoryDeadbandAggregator.class.getSimpleName()));
+        }
+        mAggregator = aggregator;
+        mTemperatureThreshold = temperatureThreshold;
+        mHumidityThreshold = humidityThreshold;
+        mMaxSilenceMs = maxSilenceMs;
+    }
+
+    /**
+     * Obtains the maximum silence that keeps a stable device connected in the history graph. The
+     * graph shows a gap between two values separated more than the raw resolution times
+     * {@link R.integer#history_graph_gap_resolution_multiplier}. The timestamp of a windowed mean
+     * can move up to a window from the one of the last skipped value, so two windows are left as margin.
+     *
+     * @param context  for reading the gap threshold of the history graph.
+     * @param windowMs of the windowed means.
+     * @return <code>long</code> with the maximum silence in milliseconds.
+     */
+    public static long obtainDefaultMaxSilenceMs(@NonNull final Context context, final long windowMs) {
+        final long rawResolutionMs = HistoryTierConfiguration.getInstance().getRawTier().getResolutionMs();
+        final int gapResolutionMultiplier = context.getResources().getInteger(R.integer.history_graph_gap_resolution_multiplier);
+        return Math.max(0, rawResolutionMs * gapResolutionMultiplier - 2 * windowMs);
+    }
+
+    /**
+     * Obtains a factory of windowed means filtered by a deadband.
+     *
+     * @param windowMs             of the windowed means.
+     * @param temperatureThreshold minimum temperature change for storing a value, in Celsius.
+     * @param humidityThreshold    minimum humidity change for storing a value.
+     * @param maxSilenceMs         maximum time without storing a value, see {@link #obtainDefaultMaxSilenceMs}.
+     * @return {@link HistoryLiveAggregator.Factory} creating {@link HistoryDeadbandAggregator} instances.
+     */
+    @NonNull
+    public static HistoryLiveAggregator.Factory factory(final long windowMs,
+                                                        final float temperatureThreshold,
+                                                        final float humidityThreshold,
+                                                        final long maxSilenceMs) {
+        return new HistoryLiveAggregator.Factory() {
+            @NonNull
+            @Override
+            public HistoryLiveAggregator create(@NonNull final String deviceAddress) {
+                return new HistoryDeadbandAggregator(new HistoryWindowedMeanAggregator(windowMs),
+                        temperatureThreshold, humidityThreshold, maxSilenceMs);
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean addValue(final long timestamp, final float temperature, final float humidity) {
+        mHasNextValue = false;
+        if (!mAggregator.addValue(timestamp, temperature, humidity)) {
+            return false;
+        }
+        final long aggregatedTimestamp = mAggregator.getAggregatedTimestamp();
+        final float aggregatedTemperature = mAggregator.getAggregatedTemperature();
+        final float aggregatedHumidity = mAggregator.getAggregatedHumidity();
+        final boolean isWithinDeadband = mHasStoredValue
+                && Math.abs(aggregatedTemperature - mStoredTemperature) < mTemperatureThreshold
+                && Math.abs(aggregatedHumidity - mStoredHumidity) < mHumidityThreshold;
+        if (isWithinDeadband && aggregatedTimestamp - mStoredTimestamp < mMaxSilenceMs) {
+            mNumberSkippedValues++;
+            mHasSkippedValue = true;
+            mSkippedTimestamp = aggregatedTimestamp;
+            mSkippedTemperature = aggregatedTemperature;
+            mSkippedHumidity = aggregatedHumidity;
+            return false;
+        }
+        if (!isWithinDeadband && mHasSkippedValue) {
+            // The last skipped value is stored first, the changed value follows it.
+            mHasNextValue = true;
+            mNextTimestamp = aggregatedTimestamp;
+            mNextTemperature = aggregatedTemperature;
+            mNextHumidity = aggregatedHumidity;
+            storeValue(mSkippedTimestamp, mSkippedTemperature, mSkippedHumidity);
+        } else {
+            storeValue(aggregatedTimestamp, aggregatedTemperature, aggregatedHumidity);
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The last skipped value is stored, so the history keeps the stable level until the end,
+     * followed by the pending mean of the windowed aggregator.
+     */
+    @Override
+    public boolean flush() {
+        mHasNextValue = false;
+        final boolean hasPendingMean = mAggregator.flush();
+        if (mHasSkippedValue) {
+            if (hasPendingMean) {
+                mHasNextValue = true;
+                mNextTimestamp = mAggregator.getAggregatedTimestamp();
+                mNextTemperature = mAggregator.getAggregatedTemperature();
+                mNextHumidity = mAggregator.getAggregatedHumidity();
+            }
+            storeValue(mSkippedTimestamp, mSkippedTemperature, mSkippedHumidity);
+            return true;
+        }
+        if (hasPendingMean) {
+            storeValue(mAggregator.getAggregatedTimestamp(), mAggregator.getAggregatedTemperature(), mAggregator.getAggregatedHumidity());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean nextAggregatedValue() {
+        if (!mHasNextValue) {
+            return false;
+        }
+        mHasNextValue = false;
+        storeValue(mNextTimestamp, mNextTemperature, mNextHumidity);
+        return true;
+    }
+
+    private void storeValue(final long timestamp, final float temperature, final float humidity) {
+        mHasStoredValue = true;
+        mHasSkippedValue = false;
+        mStoredTimestamp = timestamp;
+        mStoredTemperature = temperature;
+        mStoredHumidity = humidity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAggregatedTimestamp() {
+        return mStoredTimestamp;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public float getAggregatedTemperature() {
+        return mStoredTemperature;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public float getAggregatedHumidity() {
+        return mStoredHumidity;
+    }
+
+    /**
+     * Obtains the number of aggregated values that were not stored because they were within the deadband.
+     *
+     * @return the number of skipped values.
+     */
+    public int getNumberSkippedValues() {
+        return mNumberSkippedValues;
+    }
+}
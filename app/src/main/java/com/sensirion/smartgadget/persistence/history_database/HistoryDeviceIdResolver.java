@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDeviceTable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Translates device addresses into the identifiers of the {@link HistoryDeviceTable}, interning
+ * the devices that were not stored yet. Resolved identifiers are cached, so the database is only
+ * queried the first time a device is seen.
+ */
+class HistoryDeviceIdResolver {
+
+    @NonNull
+    private final DatabaseFacade mDatabase;
+    @NonNull
+    private final Map<String, Long> mDeviceIds = new ConcurrentHashMap<>();
+
+    @Nullable
+    private SQLiteStatement mInsertDeviceStatement;
+    @Nullable
+    private SQLiteStatement mSelectDeviceIdStatement;
+
+    HistoryDeviceIdResolver(@NonNull final DatabaseFacade database) {
+        mDatabase = database;
+    }
+
+    /**
+     * Obtains the identifier of a device, inserting the device if needed. It has to be called
+     * inside a write transaction of the database.
+     *
+     * @param deviceAddress of the device.
+     * @return <code>long</code> with the device identifier.
+     */
+    synchronized long resolveDeviceId(@NonNull final String deviceAddress) {
+        final Long cachedDeviceId = mDeviceIds.get(deviceAddress);
+        if (cachedDeviceId != null) {
+            return cachedDeviceId;
+        }
+        final HistoryDeviceTable table = HistoryDeviceTable.getInstance();
+        if (mInsertDeviceStatement == null) {
+            mInsertDeviceStatement = mDatabase.compileStatement(table.insertDeviceStatementSql());
+            mSelectDeviceIdStatement = mDatabase.compileStatement(table.selectDeviceIdStatementSql());
+        }
+        mInsertDeviceStatement.bindString(1, deviceAddress);
+        mInsertDeviceStatement.executeInsert();
+        mSelectDeviceIdStatement.bindString(1, deviceAddress);
+        final long deviceId = mSelectDeviceIdStatement.simpleQueryForLong();
+        mDeviceIds.put(deviceAddress, deviceId);
+        return deviceId;
+    }
+
+    /**
+     * Forgets the cached identifiers. Needs to be called when a transaction that could have
+     * interned new devices is rolled back.
+     */
+    void clear() {
+        mDeviceIds.clear();
+    }
+
+    /**
+     * Releases the compiled statements of the resolver.
+     */
+    synchronized void release() {
+        if (mInsertDeviceStatement != null) {
+            mInsertDeviceStatement.close();
+            mInsertDeviceStatement = null;
+        }
+        if (mSelectDeviceIdStatement != null) {
+            mSelectDeviceIdStatement.close();
+            mSelectDeviceIdStatement = null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Reduces the live values of a device to the values stored in the history. The values are added
+ * one by one; when {@link #addValue(long, float, float)} returns <code>true</code> the aggregated
+ * value is available until the next value is added. A single added value can produce several
+ * aggregated values, which are reached one after the other with {@link #nextAggregatedValue()}.
+ * The values that were added but not aggregated yet are obtained with {@link #flush()}.
+ * <p/>
+ * The aggregators of a device are only used by one thread at a time.
+ */
+public interface HistoryLiveAggregator {
+
+    /**
+     * Creates the aggregator of every device.
+     */
+    interface Factory {
+        @NonNull
+        HistoryLiveAggregator create(@NonNull String deviceAddress);
+    }
+
+    /**
+     * Adds a live value.
+     *
+     * @param timestamp   of the value, in milliseconds.
+     * @param temperature of the value, in Celsius.
+     * @param humidity    of the value.
+     * @return <code>true</code> if an aggregated value has to be stored - <code>false</code> otherwise.
+     */
+    boolean addValue(long timestamp, float temperature, float humidity);
+
+    /**
+     * Aggregates the values that are still pending, for example when the history is released.
+     * Further aggregated values are reached with {@link #nextAggregatedValue()}.
+     *
+     * @return <code>true</code> if an aggregated value has to be stored - <code>false</code> if nothing was pending.
+     */
+    boolean flush();
+
+    /**
+     * Moves to the next aggregated value produced by the last added value, in timestamp order.
+     *
+     * @return <code>true</code> if there is another aggregated value to store - <code>false</code> otherwise.
+     */
+    boolean nextAggregatedValue();
+
+    long getAggregatedTimestamp();
+
+    float getAggregatedTemperature();
+
+    float getAggregatedHumidity();
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryTier;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryTierConfiguration;
+import com.sensirion.smartgadget.view.history.HistoryResult;
+import com.sensirion.smartgadget.view.history.HistorySeries;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the newest live values written to the history of every device in a {@link HistoryRingBuffer},
+ * so the newest part of the history can be read without querying the database.
+ */
+class HistoryLiveCache {
+
+    @NonNull
+    private final Map<String, HistoryRingBuffer> mRingBuffers = new ConcurrentHashMap<>();
+    // 0 when the capacity follows the raw tier of the tier configuration.
+    private final int mRingCapacity;
+
+    HistoryLiveCache() {
+        this(0);
+    }
+
+    HistoryLiveCache(final int ringCapacity) {
+        mRingCapacity = ringCapacity;
+    }
+
+    /**
+     * Obtains the ring capacity that holds twice the retention of the raw tier, since live values
+     * are written at most once per raw resolution.
+     *
+     * @return <code>int</code> with the number of values of every ring.
+     */
+    static int obtainDefaultRingCapacity() {
+        final HistoryTier rawTier = HistoryTierConfiguration.getInstance().getRawTier();
+        return (int) Math.max(1, 2 * rawTier.getRetentionMs() / rawTier.getResolutionMs());
+    }
+
+    /**
+     * Adds a live value of a device. The ring of the device covers the history since its first value.
+     */
+    void addLiveValue(@NonNull final String deviceAddress, final long timestamp, final float temperature, final float humidity) {
+        HistoryRingBuffer ringBuffer = mRingBuffers.get(deviceAddress);
+        if (ringBuffer == null) {
+            ringBuffer = new HistoryRingBuffer((mRingCapacity > 0) ? mRingCapacity : obtainDefaultRingCapacity(), timestamp);
+            mRingBuffers.put(deviceAddress, ringBuffer);
+        }
+        ringBuffer.add(timestamp, temperature, humidity);
+    }
+
+    /**
+     * Notifies that a value of a device was stored in the history without going through the cache.
+     *
+     * @param timestamp of the stored value.
+     */
+    void invalidateUntil(@NonNull final String deviceAddress, final long timestamp) {
+        final HistoryRingBuffer ringBuffer = mRingBuffers.get(deviceAddress);
+        if (ringBuffer != null) {
+            ringBuffer.invalidateUntil(timestamp);
+        }
+    }
+
+    /**
+     * Obtains since when the cache holds every history value of a device.
+     *
+     * @return <code>long</code> with the coverage start in milliseconds - {@link Long#MAX_VALUE} if the device is not cached.
+     */
+    long getCoverageStart(@NonNull final String deviceAddress) {
+        final HistoryRingBuffer ringBuffer = mRingBuffers.get(deviceAddress);
+        return (ringBuffer == null) ? Long.MAX_VALUE : ringBuffer.getCoverageStart();
+    }
+
+    /**
+     * Appends the cached values of a device that are not older than a timestamp to a series.
+     *
+     * @param series         of the device.
+     * @param firstTimestamp of the first value that can be appended.
+     * @return <code>int</code> with the number of appended values.
+     */
+    int appendValues(@NonNull final HistorySeries series, final long firstTimestamp) {
+        final HistoryRingBuffer ringBuffer = mRingBuffers.get(series.getDeviceAddress());
+        return (ringBuffer == null) ? 0 : ringBuffer.appendTo(series, firstTimestamp);
+    }
+
+    /**
+     * Completes the series of a rollup result with the cached values newer than their last bucket,
+     * which may not have been aggregated yet.
+     *
+     * @param result         read from the rollups, with a series per device.
+     * @param firstTimestamp start of the interval in milliseconds.
+     * @param resolution     size of the rollup buckets in milliseconds.
+     * @param now            current time, the timestamp of the bucket in progress.
+     * @return <code>int</code> with the number of appended buckets.
+     */
+    int appendNewestBuckets(@NonNull final HistoryResult result, final long firstTimestamp, final long resolution, final long now) {
+        int numberAppendedBuckets = 0;
+        for (final HistorySeries series : result.getResults().values()) {
+            final HistoryRingBuffer ringBuffer = mRingBuffers.get(series.getDeviceAddress());
+            if (ringBuffer != null) {
+                numberAppendedBuckets += ringBuffer.appendBucketsTo(series, obtainFirstMissingTimestamp(series, firstTimestamp, resolution), resolution, now);
+            }
+        }
+        return numberAppendedBuckets;
+    }
+
+    /**
+     * Obtains the end of the last bucket of a series. A bucket that is already stored can be
+     * partially aggregated, so the cache only completes the buckets after it.
+     */
+    private static long obtainFirstMissingTimestamp(@Nullable final HistorySeries series, final long firstTimestamp, final long resolution) {
+        if (series == null || series.isEmpty()) {
+            return firstTimestamp;
+        }
+        final long lastBucketTimestamp = series.getTimestamp(series.size() - 1);
+        return (lastBucketTimestamp / resolution) * resolution + resolution;
+    }
+}
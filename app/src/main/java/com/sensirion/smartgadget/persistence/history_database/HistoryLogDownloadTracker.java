@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryLoggedRangeTable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the timestamp range received by the download in progress of every device.
+ * <p/>
+ * The range is stored with the values of every downloaded chunk in the {@link HistoryLoggedRangeTable},
+ * so the values it covers are skipped by any later download, even if this one fails or the
+ * application is restarted. This expects the log to be transferred in timestamp order, which makes
+ * the received range contiguous. The ranges of failed downloads are kept as separate rows until a
+ * complete download covers them.
+ */
+class HistoryLogDownloadTracker {
+
+    private static final String TAG = HistoryLogDownloadTracker.class.getSimpleName();
+
+    /**
+     * Timestamps received by a download, including the ones of its last chunk.
+     */
+    static final class DownloadRange {
+
+        private long mStart = Long.MAX_VALUE;
+        private long mEnd = Long.MIN_VALUE;
+
+        private DownloadRange() {
+        }
+
+        long getStart() {
+            return mStart;
+        }
+
+        long getEnd() {
+            return mEnd;
+        }
+
+        private boolean isEmpty() {
+            return mStart > mEnd;
+        }
+    }
+
+    @NonNull
+    private final Map<String, DownloadRange> mDownloadRanges = new HashMap<>();
+
+    /**
+     * Registers a chunk of a download.
+     *
+     * @param deviceAddress of the device.
+     * @param timestamps    of the values received from the device.
+     * @return {@link DownloadRange} copy with the range received by the download so far.
+     */
+    @NonNull
+    synchronized DownloadRange onValuesReceived(@NonNull final String deviceAddress, @NonNull final long[] timestamps) {
+        DownloadRange range = mDownloadRanges.get(deviceAddress);
+        if (range == null) {
+            range = new DownloadRange();
+            mDownloadRanges.put(deviceAddress, range);
+        }
+        for (final long timestamp : timestamps) {
+            range.mStart = Math.min(range.mStart, timestamp);
+            range.mEnd = Math.max(range.mEnd, timestamp);
+        }
+        final DownloadRange receivedRange = new DownloadRange();
+        receivedRange.mStart = range.mStart;
+        receivedRange.mEnd = range.mEnd;
+        return receivedRange;
+    }
+
+    /**
+     * Registers the end of a complete download. Every value of the log is stored afterwards.
+     *
+     * @param deviceAddress of the device.
+     * @return {@link DownloadRange} received by the download - <code>null</code> if it did not receive any value.
+     */
+    @Nullable
+    synchronized DownloadRange onDownloadCompleted(@NonNull final String deviceAddress) {
+        final DownloadRange range = mDownloadRanges.remove(deviceAddress);
+        return (range == null || range.isEmpty()) ? null : range;
+    }
+
+    /**
+     * Registers a failed download. Its received range was already stored with its values, the next
+     * download of the device starts a new range.
+     *
+     * @param deviceAddress of the device.
+     */
+    synchronized void onDownloadFailed(@NonNull final String deviceAddress) {
+        final DownloadRange range = mDownloadRanges.remove(deviceAddress);
+        if (range != null && !range.isEmpty()) {
+            Log.i(TAG, String.format("onDownloadFailed -> The next downloads of %s skip the values between %d and %d.", deviceAddress, range.mStart, range.mEnd));
+        }
+    }
+}
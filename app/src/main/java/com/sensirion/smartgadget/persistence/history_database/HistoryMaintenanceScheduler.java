@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.parser.CursorReader;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryTierConfiguration;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the maintenance of the history database from the {@link HistoryWriterService} thread.
+ * <p/>
+ * The maintenance is split in tasks with their own interval: the rollup of the new values into
+ * their bins, the purge of the data that left its interval, the release of the free pages of the
+ * database file and the refresh of the statistics used by the query planner. The due tasks run
+ * when the writer queue is idle, unless they are overdue for too long, and a run stops starting
+ * tasks once its time budget is spent. The remaining tasks are postponed to the next run. The
+ * budget is only checked between tasks, so it does not bound the duration of a single task.
+ * <p/>
+ * The first run of every task is staggered after the creation of the scheduler, so an app start
+ * does not run all the tasks back to back.
+ */
+class HistoryMaintenanceScheduler {
+
+    static final long DEFAULT_TIME_BUDGET_MS = 200;
+
+    private static final String TAG = HistoryMaintenanceScheduler.class.getSimpleName();
+
+    // A task that waited this many intervals runs even if the writer queue is busy.
+    private static final int OVERDUE_FACTOR = 3;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    private static final int INCREMENTAL_VACUUM_PAGES = 256;
+
+    private enum MaintenanceTask {
+        // Follows the raw resolution of the tier configuration, read every time it is used.
+        ROLLUP(0, 0) {
+            @Override
+            long getIntervalMs() {
+                return HistoryTierConfiguration.getInstance().getRawTier().getResolutionMs();
+            }
+
+            @Override
+            long getFirstRunDelayMs() {
+                return getIntervalMs();
+            }
+        },
+        PURGE(60 * 1000, 60 * 1000),
+        VACUUM(60 * 60 * 1000, 5 * 60 * 1000),
+        ANALYZE(24 * 60 * 60 * 1000, 10 * 60 * 1000);
+
+        private final long mIntervalMs;
+        private final long mFirstRunDelayMs;
+
+        MaintenanceTask(final long intervalMs, final long firstRunDelayMs) {
+            mIntervalMs = intervalMs;
+            mFirstRunDelayMs = firstRunDelayMs;
+        }
+
+        long getIntervalMs() {
+            return mIntervalMs;
+        }
+
+        long getFirstRunDelayMs() {
+            return mFirstRunDelayMs;
+        }
+    }
+
+    @NonNull
+    private final DatabaseFacade mDatabase;
+    @NonNull
+    private final HistoryRollupEngine mRollupEngine;
+    private final long mTimeBudgetMs;
+    @NonNull
+    private final long[] mLastRunTimes = new long[MaintenanceTask.values().length];
+    @NonNull
+    private final AtomicLong mNumberTouchedRows = new AtomicLong();
+    @NonNull
+    private final AtomicLong mNumberReleasedPages = new AtomicLong();
+    @NonNull
+    private final AtomicLong mMaintenanceTimeMs = new AtomicLong();
+
+    /**
+     * @param database     where the history values are stored.
+     * @param rollupEngine that merges and purges the history values.
+     */
+    HistoryMaintenanceScheduler(@NonNull final DatabaseFacade database, @NonNull final HistoryRollupEngine rollupEngine) {
+        this(database, rollupEngine, DEFAULT_TIME_BUDGET_MS);
+    }
+
+    /**
+     * @param database     where the history values are stored.
+     * @param rollupEngine that merges and purges the history values.
+     * @param timeBudgetMs time after which a run does not start more tasks.
+     */
+    HistoryMaintenanceScheduler(@NonNull final DatabaseFacade database, @NonNull final HistoryRollupEngine rollupEngine, final long timeBudgetMs) {
+        mDatabase = database;
+        mRollupEngine = rollupEngine;
+        mTimeBudgetMs = timeBudgetMs;
+        final long now = System.currentTimeMillis();
+        for (final MaintenanceTask task : MaintenanceTask.values()) {
+            mLastRunTimes[task.ordinal()] = now - task.getIntervalMs() + task.getFirstRunDelayMs();
+        }
+    }
+
+    /**
+     * Runs the maintenance tasks whose interval elapsed, in order, until the time budget is spent.
+     *
+     * @param isIdle <code>true</code> if the writer queue is empty - <code>false</code> for running only the overdue tasks.
+     * @return <code>int</code> with the number of rows touched by the run.
+     */
+    int runIfDue(final boolean isIdle) {
+        final long initialTime = System.currentTimeMillis();
+        int numberTouchedRows = 0;
+        int numberReleasedPages = 0;
+        int numberExecutedTasks = 0;
+        for (final MaintenanceTask task : MaintenanceTask.values()) {
+            final long now = System.currentTimeMillis();
+            if (now - initialTime >= mTimeBudgetMs) {
+                break;
+            }
+            final long elapsedTime = now - mLastRunTimes[task.ordinal()];
+            final long intervalMs = task.getIntervalMs();
+            if (elapsedTime < intervalMs || (!isIdle && elapsedTime < intervalMs * OVERDUE_FACTOR)) {
+                continue;
+            }
+            mLastRunTimes[task.ordinal()] = now;
+            numberExecutedTasks++;
+            switch (task) {
+                case ROLLUP:
+                    numberTouchedRows += mRollupEngine.rollup();
+                    break;
+                case PURGE:
+                    numberTouchedRows += mRollupEngine.purge(now);
+                    break;
+                case VACUUM:
+                    numberReleasedPages += releaseFreePages();
+                    break;
+                case ANALYZE:
+                    mDatabase.executeWithoutTransaction("ANALYZE;");
+                    break;
+            }
+        }
+        if (numberExecutedTasks == 0) {
+            return 0;
+        }
+        final long duration = System.currentTimeMillis() - initialTime;
+        mNumberTouchedRows.addAndGet(numberTouchedRows);
+        mNumberReleasedPages.addAndGet(numberReleasedPages);
+        mMaintenanceTimeMs.addAndGet(duration);
+        Log.d(TAG, String.format("runIfDue -> Executed %d tasks touching %d rows and releasing %d pages in %d milliseconds. Idle: %b.",
+                numberExecutedTasks, numberTouchedRows, numberReleasedPages, duration, isIdle));
+        return numberTouchedRows;
+    }
+
+    /**
+     * Obtains the number of rows merged or deleted by the maintenance since the scheduler was created.
+     *
+     * @return <code>long</code> with the number of touched rows.
+     */
+    long getNumberTouchedRows() {
+        return mNumberTouchedRows.get();
+    }
+
+    /**
+     * Obtains the number of database pages given back to the file system since the scheduler was created.
+     *
+     * @return <code>long</code> with the number of released pages.
+     */
+    long getNumberReleasedPages() {
+        return mNumberReleasedPages.get();
+    }
+
+    /**
+     * Obtains the time spent in maintenance since the scheduler was created.
+     *
+     * @return <code>long</code> with the maintenance time in milliseconds.
+     */
+    long getMaintenanceTimeMs() {
+        return mMaintenanceTimeMs.get();
+    }
+
+    /**
+     * Releases the compiled statements used by the maintenance tasks.
+     */
+    void release() {
+        mRollupEngine.release();
+    }
+
+    /**
+     * Gives the free pages of the database back to the file system. Databases are switched to
+     * incremental vacuum by the {@link com.sensirion.smartgadget.persistence.history_database.table.HistoryIncrementalVacuumMigration},
+     * the scheduler never rewrites the whole file.
+     *
+     * @return <code>int</code> with the number of released pages.
+     */
+    private int releaseFreePages() {
+        final long numberFreePages = mDatabase.prepare("PRAGMA freelist_count;").queryForLong(0);
+        if (numberFreePages == 0) {
+            return 0;
+        }
+        if (mDatabase.prepare("PRAGMA auto_vacuum;").queryForLong(0) != AUTO_VACUUM_INCREMENTAL) {
+            Log.w(TAG, "releaseFreePages -> The database does not use incremental vacuum.");
+            return 0;
+        }
+        // Every row of the pragma is a released page, so the cursor has to be read until its end.
+        mDatabase.rawDatabaseQuery(String.format("PRAGMA incremental_vacuum(%d);", INCREMENTAL_VACUUM_PAGES), null, new CursorReader() {
+            @Override
+            public void read(@NonNull final Cursor cursor) {
+                cursor.getCount();
+            }
+        });
+        return (int) Math.max(0, numberFreePages - mDatabase.prepare("PRAGMA freelist_count;").queryForLong(0));
+    }
+}
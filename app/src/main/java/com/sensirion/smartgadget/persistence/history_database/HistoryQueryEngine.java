@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executes the history queries in a dedicated reader thread and delivers their results in the
+ * main thread, so the user interface never waits for the database.
+ * <p/>
+ * Every query belongs to a channel. Submitting a query cancels the previous query of its channel:
+ * if the previous query did not start yet it is never executed, and if it is running its result
+ * is discarded. Quickly repeated requests are coalesced this way into the last one.
+ */
+public class HistoryQueryEngine {
+
+    private static final String TAG = HistoryQueryEngine.class.getSimpleName();
+    private static final String THREAD_NAME = "HistoryReader";
+
+    @NonNull
+    private final ExecutorService mReaderExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            return new Thread(runnable, THREAD_NAME);
+        }
+    });
+    @NonNull
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    @NonNull
+    private final Map<String, QueryTask<?>> mLastQueries = new HashMap<>();
+
+    /**
+     * Submits a query, superseding the previous query of the same channel.
+     *
+     * @param channel  of the query, queries of different channels do not cancel each other.
+     * @param query    executed in the reader thread.
+     * @param callback that receives the result in the main thread.
+     * @param <T>      type of the query result.
+     * @return {@link java.util.concurrent.Future} that can be used for cancelling the query.
+     */
+    @NonNull
+    public synchronized <T> Future<T> submit(@NonNull final String channel,
+                                             @NonNull final Callable<T> query,
+                                             @NonNull final HistoryQueryCallback<T> callback) {
+        final QueryTask<?> supersededQuery = mLastQueries.get(channel);
+        if (supersededQuery != null) {
+            supersededQuery.discard();
+            Log.d(TAG, String.format("submit -> Superseded the previous query of channel %s.", channel));
+        }
+        final QueryTask<T> task = new QueryTask<>(channel, query, callback);
+        mLastQueries.put(channel, task);
+        mReaderExecutor.execute(task);
+        return task;
+    }
+
+    /**
+     * Cancels the last query of a channel. Its callback is not called afterwards.
+     *
+     * @param channel of the query.
+     */
+    public synchronized void cancel(@NonNull final String channel) {
+        final QueryTask<?> lastQuery = mLastQueries.remove(channel);
+        if (lastQuery != null) {
+            lastQuery.discard();
+        }
+    }
+
+    /**
+     * Cancels every query and stops the reader thread once the running query finishes.
+     */
+    public synchronized void shutdown() {
+        for (final QueryTask<?> query : mLastQueries.values()) {
+            query.discard();
+        }
+        mLastQueries.clear();
+        mReaderExecutor.shutdown();
+    }
+
+    private synchronized void removeQuery(@NonNull final QueryTask<?> task) {
+        if (mLastQueries.get(task.mChannel) == task) {
+            mLastQueries.remove(task.mChannel);
+        }
+    }
+
+    private class QueryTask<T> extends FutureTask<T> {
+
+        @NonNull
+        private final String mChannel;
+        @NonNull
+        private final HistoryQueryCallback<T> mCallback;
+        // Set when the query is cancelled or superseded, even if it already finished.
+        private volatile boolean mIsDiscarded = false;
+
+        QueryTask(@NonNull final String channel, @NonNull final Callable<T> query, @NonNull final HistoryQueryCallback<T> callback) {
+            super(query);
+            mChannel = channel;
+            mCallback = callback;
+        }
+
+        void discard() {
+            cancel(false);
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            mIsDiscarded = true;
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                removeQuery(this);
+                return;
+            }
+            T result = null;
+            try {
+                result = get();
+            } catch (@NonNull final ExecutionException e) {
+                Log.e(TAG, String.format("done -> The query of channel %s failed -> ", mChannel), e.getCause());
+            } catch (@NonNull final InterruptedException | CancellationException e) {
+                removeQuery(this);
+                return;
+            }
+            final T queryResult = result;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    removeQuery(QueryTask.this);
+                    // The query can be discarded while its result waits for the main thread.
+                    if (!mIsDiscarded) {
+                        mCallback.onQueryResult(queryResult);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.sensirion.database_library.parser.CursorReader;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDeviceTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryRollupTable;
+import com.sensirion.smartgadget.view.history.HistoryResult;
+import com.sensirion.smartgadget.view.history.HistorySeries;
+
+/**
+ * Fills a {@link HistoryResult} straight from a history cursor ordered by device address and
+ * timestamp. Column indices are resolved once per query and the device address of each row is
+ * copied into a reused buffer, so reading a row does not allocate any object.
+ */
+class HistoryResultCursorReader implements CursorReader {
+
+    private static final int DEVICE_ADDRESS_LENGTH = 17;
+
+    @NonNull
+    private final HistoryResult mResult;
+    @NonNull
+    private final CharArrayBuffer mAddressBuffer = new CharArrayBuffer(DEVICE_ADDRESS_LENGTH);
+
+    HistoryResultCursorReader(@NonNull final HistoryResult result) {
+        mResult = result;
+    }
+
+    private static boolean isAddressOfSeries(@Nullable final HistorySeries series, @NonNull final CharArrayBuffer addressBuffer) {
+        if (series == null) {
+            return false;
+        }
+        final String seriesAddress = series.getDeviceAddress();
+        if (seriesAddress.length() != addressBuffer.sizeCopied) {
+            return false;
+        }
+        for (int i = 0; i < addressBuffer.sizeCopied; i++) {
+            if (seriesAddress.charAt(i) != addressBuffer.data[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void read(@NonNull final Cursor cursor) {
+        final int addressIndex = cursor.getColumnIndexOrThrow(HistoryDeviceTable.COLUMN_DEVICE_ADDRESS);
+        final int timestampIndex = cursor.getColumnIndexOrThrow(HistoryDataTable.COLUMN_TIMESTAMP);
+        final int temperatureIndex = cursor.getColumnIndexOrThrow(HistoryDataTable.COLUMN_TEMPERATURE);
+        final int humidityIndex = cursor.getColumnIndexOrThrow(HistoryDataTable.COLUMN_HUMIDITY);
+        // Sources without a min/max envelope use the average value as minimum and maximum.
+        final int minTemperatureIndex = obtainColumnIndex(cursor, HistoryRollupTable.COLUMN_TEMPERATURE_MIN, temperatureIndex);
+        final int maxTemperatureIndex = obtainColumnIndex(cursor, HistoryRollupTable.COLUMN_TEMPERATURE_MAX, temperatureIndex);
+        final int minHumidityIndex = obtainColumnIndex(cursor, HistoryRollupTable.COLUMN_HUMIDITY_MIN, humidityIndex);
+        final int maxHumidityIndex = obtainColumnIndex(cursor, HistoryRollupTable.COLUMN_HUMIDITY_MAX, humidityIndex);
+
+        HistorySeries series = null;
+        while (cursor.moveToNext()) {
+            cursor.copyStringToBuffer(addressIndex, mAddressBuffer);
+            if (!isAddressOfSeries(series, mAddressBuffer)) {
+                series = mResult.obtainSeries(new String(mAddressBuffer.data, 0, mAddressBuffer.sizeCopied));
+            }
+            series.add(cursor.getLong(timestampIndex),
+                    cursor.getFloat(temperatureIndex), cursor.getFloat(minTemperatureIndex), cursor.getFloat(maxTemperatureIndex),
+                    cursor.getFloat(humidityIndex), cursor.getFloat(minHumidityIndex), cursor.getFloat(maxHumidityIndex));
+        }
+    }
+
+    private static int obtainColumnIndex(@NonNull final Cursor cursor, @NonNull final String columnName, final int fallbackIndex) {
+        final int columnIndex = cursor.getColumnIndex(columnName);
+        return (columnIndex < 0) ? fallbackIndex : columnIndex;
+    }
+}
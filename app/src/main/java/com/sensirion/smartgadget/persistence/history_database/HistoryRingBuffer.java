@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.support.annotation.NonNull;
+
+import com.sensirion.smartgadget.view.history.HistorySeries;
+
+/**
+ * Fixed-capacity ring of the newest live values of a device, stored in primitive arrays ordered
+ * by timestamp. When the ring is full the oldest value is overwritten.
+ * <p/>
+ * The ring knows since when it holds every value of the device: its coverage start. Values older
+ * than the coverage start have to be read from the database. The coverage start moves forward when
+ * a value is overwritten or when a value is stored in the database without going through the ring.
+ */
+class HistoryRingBuffer {
+
+    @NonNull
+    private final long[] mTimestamps;
+    @NonNull
+    private final float[] mTemperatures;
+    @NonNull
+    private final float[] mHumidities;
+    private int mOldestIndex = 0;
+    private int mSize = 0;
+    private long mCoverageStart;
+
+    /**
+     * @param capacity      maximum number of values of the ring.
+     * @param coverageStart timestamp since the ring receives every value of the device.
+     */
+    HistoryRingBuffer(final int capacity, final long coverageStart) {
+        mTimestamps = new long[capacity];
+        mTemperatures = new float[capacity];
+        mHumidities = new float[capacity];
+        mCoverageStart = coverageStart;
+    }
+
+    /**
+     * Adds the newest value of the device. Values older than the newest value of the ring are not
+     * added, and the ring stops covering them.
+     */
+    synchronized void add(final long timestamp, final float temperature, final float humidity) {
+        if (mSize > 0 && timestamp < mTimestamps[obtainIndex(mSize - 1)]) {
+            invalidateUntil(timestamp);
+            return;
+        }
+        final int index;
+        if (mSize == mTimestamps.length) {
+            index = mOldestIndex;
+            invalidateUntil(mTimestamps[index]);
+            mOldestIndex = obtainIndex(1);
+        } else {
+            index = obtainIndex(mSize++);
+        }
+        mTimestamps[index] = timestamp;
+        mTemperatures[index] = temperature;
+        mHumidities[index] = humidity;
+    }
+
+    /**
+     * Notifies that a value was stored without going through the ring, so the ring cannot serve
+     * the values up to its timestamp anymore.
+     *
+     * @param timestamp of the value that is not in the ring.
+     */
+    synchronized void invalidateUntil(final long timestamp) {
+        mCoverageStart = Math.max(mCoverageStart, timestamp + 1);
+    }
+
+    /**
+     * Obtains the timestamp since the ring holds every value of the device.
+     *
+     * @return <code>long</code> with the coverage start in milliseconds.
+     */
+    synchronized long getCoverageStart() {
+        return mCoverageStart;
+    }
+
+    /**
+     * Appends the covered values of the ring that are not older than a timestamp to a series.
+     *
+     * @param series         where the values are appended.
+     * @param firstTimestamp of the first value that can be appended.
+     * @return <code>int</code> with the number of appended values.
+     */
+    synchronized int appendTo(@NonNull final HistorySeries series, final long firstTimestamp) {
+        final long minimumTimestamp = Math.max(firstTimestamp, mCoverageStart);
+        int numberAppendedValues = 0;
+        for (int i = 0; i < mSize; i++) {
+            final int index = obtainIndex(i);
+            if (mTimestamps[index] >= minimumTimestamp) {
+                series.add(mTimestamps[index], mTemperatures[index], mHumidities[index]);
+                numberAppendedValues++;
+            }
+        }
+        return numberAppendedValues;
+    }
+
+    /**
+     * Aggregates the covered values of the ring that are not older than a timestamp into buckets
+     * and appends them to a series, the same way the history rollups do.
+     *
+     * @param series         where the buckets are appended.
+     * @param firstTimestamp of the first value that can be aggregated.
+     * @param resolution     size of the buckets in milliseconds.
+     * @param now            current time, the timestamp of the bucket in progress.
+     * @return <code>int</code> with the number of appended buckets.
+     */
+    synchronized int appendBucketsTo(@NonNull final HistorySeries series, final long firstTimestamp, final long resolution, final long now) {
+        final long minimumTimestamp = Math.max(firstTimestamp, mCoverageStart);
+        int numberAppendedBuckets = 0;
+        long bucket = -1;
+        int sampleCount = 0;
+        float temperatureMin = 0, temperatureMax = 0, humidityMin = 0, humidityMax = 0;
+        double temperatureSum = 0, humiditySum = 0;
+        for (int i = 0; i < mSize; i++) {
+            final int index = obtainIndex(i);
+            final long timestamp = mTimestamps[index];
+            if (timestamp < minimumTimestamp) {
+                continue;
+            }
+            final long valueBucket = (timestamp / resolution) * resolution;
+            if (valueBucket != bucket) {
+                if (sampleCount > 0) {
+                    series.add(Math.min(bucket + resolution / 2, now), (float) (temperatureSum / sampleCount), temperatureMin, temperatureMax,
+                            (float) (humiditySum / sampleCount), humidityMin, humidityMax);
+                    numberAppendedBuckets++;
+                }
+                bucket = valueBucket;
+                sampleCount = 0;
+                temperatureSum = humiditySum = 0;
+                temperatureMin = temperatureMax = mTemperatures[index];
+                humidityMin = humidityMax = mHumidities[index];
+            }
+            sampleCount++;
+            temperatureSum += mTemperatures[index];
+            humiditySum += mHumidities[index];
+            temperatureMin = Math.min(temperatureMin, mTemperatures[index]);
+            temperatureMax = Math.max(temperatureMax, mTemperatures[index]);
+            humidityMin = Math.min(humidityMin, mHumidities[index]);
+            humidityMax = Math.max(humidityMax, mHumidities[index]);
+        }
+        if (sampleCount > 0) {
+            series.add(Math.min(bucket + resolution / 2, now), (float) (temperatureSum / sampleCount), temperatureMin, temperatureMax,
+                    (float) (humiditySum / sampleCount), humidityMin, humidityMax);
+            numberAppendedBuckets++;
+        }
+        return numberAppendedBuckets;
+    }
+
+    private int obtainIndex(final int position) {
+        return (mOldestIndex + position) % mTimestamps.length;
+    }
+}
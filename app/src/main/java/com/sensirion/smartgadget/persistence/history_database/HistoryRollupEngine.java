@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryRollupStateTable;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryRollupTable;
+
+import java.util.List;
+
+/**
+ * Keeps the {@link HistoryRollupTable}s up to date with the values of the {@link HistoryDataTable}.
+ * <p/>
+ * Every rollup table has a watermark, the identifier of the last value it aggregated, stored in the
+ * {@link HistoryRollupStateTable}. A step merges the values between the watermark and the last
+ * stored value into the buckets of every rollup table and moves the watermarks in the same
+ * transaction, so its cost is proportional to the values received since the last step instead of
+ * to the size of the tables. Values that arrive late, like the downloaded logs, are merged into the
+ * old buckets they belong to. The buckets and the values that left their interval are deleted
+ * separately by {@link #purge(long)}, once every rollup table aggregated them.
+ * <p/>
+ * The engine is not thread safe, it has to be used from the history writer thread only.
+ */
+public class HistoryRollupEngine {
+
+    private static final String TAG = HistoryRollupEngine.class.getSimpleName();
+
+    @NonNull
+    private final DatabaseFacade mDatabase;
+    @NonNull
+    private final List<HistoryRollupTable> mRollupTables;
+
+    @NonNull
+    private final long[] mWatermarks;
+    private boolean mAreWatermarksLoaded = false;
+
+    @NonNull
+    private final SQLiteStatement[] mMergeStatements;
+    @NonNull
+    private final SQLiteStatement[] mDeleteBucketsStatements;
+    @Nullable
+    private SQLiteStatement mLastValueIdStatement;
+    @Nullable
+    private SQLiteStatement mUpdateWatermarkStatement;
+    @Nullable
+    private SQLiteStatement mDeleteValuesStatement;
+
+    /**
+     * @param database where the history values are stored.
+     */
+    public HistoryRollupEngine(@NonNull final DatabaseFacade database) {
+        mDatabase = database;
+        mRollupTables = HistoryRollupTable.getInstances();
+        mWatermarks = new long[mRollupTables.size()];
+        mMergeStatements = new SQLiteStatement[mRollupTables.size()];
+        mDeleteBucketsStatements = new SQLiteStatement[mRollupTables.size()];
+    }
+
+    /**
+     * Merges the new values into the rollup tables.
+     *
+     * @return <code>int</code> with the number of values merged into the rollup tables.
+     */
+    public int rollup() {
+        final long initialTime = System.currentTimeMillis();
+        final long[] newWatermarks = new long[mWatermarks.length];
+        long numberMergedValues = 0;
+        boolean isTransactionSuccessful = false;
+
+        mDatabase.beginTransaction();
+        try {
+            loadWatermarks();
+            mLastValueIdStatement = obtainStatement(mLastValueIdStatement, HistoryDataTable.getInstance().obtainLastValueIdSql());
+            final long lastValueId = mLastValueIdStatement.simpleQueryForLong();
+            for (int i = 0; i < mRollupTables.size(); i++) {
+                newWatermarks[i] = mWatermarks[i];
+                if (lastValueId > mWatermarks[i]) {
+                    mergeValues(i, mWatermarks[i], lastValueId);
+                    numberMergedValues = Math.max(numberMergedValues, lastValueId - mWatermarks[i]);
+                    newWatermarks[i] = lastValueId;
+                }
+            }
+            isTransactionSuccessful = true;
+        } catch (@NonNull final SQLException | IllegalStateException e) {
+            Log.e(TAG, "rollup -> The rollup step could not be executed -> ", e);
+            release();
+        } finally {
+            if (isTransactionSuccessful) {
+                mDatabase.commit();
+                System.arraycopy(newWatermarks, 0, mWatermarks, 0, mWatermarks.length);
+            } else {
+                mDatabase.rollbackTransaction();
+            }
+        }
+        Log.d(TAG, String.format("rollup -> Merged %d values in %d milliseconds.", numberMergedValues, System.currentTimeMillis() - initialTime));
+        return (isTransactionSuccessful) ? (int) numberMergedValues : 0;
+    }
+
+    /**
+     * Deletes the buckets that left the interval of their rollup table and the values that left the
+     * raw interval, as long as every rollup table already aggregated them.
+     *
+     * @param now current time in milliseconds.
+     * @return <code>int</code> with the number of deleted buckets and values.
+     */
+    public int purge(final long now) {
+        int numberDeletedRows = 0;
+        boolean isTransactionSuccessful = false;
+
+        mDatabase.beginTransaction();
+        try {
+            loadWatermarks();
+            long oldestWatermark = Long.MAX_VALUE;
+            for (int i = 0; i < mRollupTables.size(); i++) {
+                numberDeletedRows += deleteExpiredBuckets(i, now);
+                oldestWatermark = Math.min(oldestWatermark, mWatermarks[i]);
+            }
+            numberDeletedRows += deleteExpiredValues(now, oldestWatermark);
+            isTransactionSuccessful = true;
+        } catch (@NonNull final SQLException | IllegalStateException e) {
+            Log.e(TAG, "purge -> The expired history data could not be deleted -> ", e);
+            release();
+        } finally {
+            if (isTransactionSuccessful) {
+                mDatabase.commit();
+            } else {
+                mDatabase.rollbackTransaction();
+            }
+        }
+        return (isTransactionSuccessful) ? numberDeletedRows : 0;
+    }
+
+    private void loadWatermarks() {
+        if (mAreWatermarksLoaded) {
+            return;
+        }
+        final SQLiteStatement statement = mDatabase.compileStatement(HistoryRollupStateTable.getInstance().obtainLastValueIdStatementSql());
+        try {
+            for (int i = 0; i < mRollupTables.size(); i++) {
+                statement.bindString(1, mRollupTables.get(i).getName());
+                mWatermarks[i] = statement.simpleQueryForLong();
+            }
+        } finally {
+            statement.close();
+        }
+        mAreWatermarksLoaded = true;
+    }
+
+    private void mergeValues(final int tableIndex, final long fromValueId, final long toValueId) {
+        final HistoryRollupTable table = mRollupTables.get(tableIndex);
+        if (mMergeStatements[tableIndex] == null) {
+            mMergeStatements[tableIndex] = mDatabase.compileStatement(table.mergeValuesStatementSql());
+        }
+        mMergeStatements[tableIndex].bindLong(1, fromValueId);
+        mMergeStatements[tableIndex].bindLong(2, toValueId);
+        mMergeStatements[tableIndex].execute();
+
+        mUpdateWatermarkStatement = obtainStatement(mUpdateWatermarkStatement, HistoryRollupStateTable.getInstance().updateLastValueIdStatementSql());
+        mUpdateWatermarkStatement.bindString(1, table.getName());
+        mUpdateWatermarkStatement.bindLong(2, toValueId);
+        mUpdateWatermarkStatement.execute();
+    }
+
+    private int deleteExpiredBuckets(final int tableIndex, final long now) {
+        final HistoryRollupTable table = mRollupTables.get(tableIndex);
+        if (mDeleteBucketsStatements[tableIndex] == null) {
+            mDeleteBucketsStatements[tableIndex] = mDatabase.compileStatement(table.deleteBucketsOlderThanStatementSql());
+        }
+        mDeleteBucketsStatements[tableIndex].bindLong(1, table.obtainFirstBucket(now));
+        return mDeleteBucketsStatements[tableIndex].executeUpdateDelete();
+    }
+
+    private int deleteExpiredValues(final long now, final long oldestWatermark) {
+        final HistoryDataTable table = HistoryDataTable.getInstance();
+        mDeleteValuesStatement = obtainStatement(mDeleteValuesStatement, table.deleteAggregatedValuesOlderThanStatementSql());
+        mDeleteValuesStatement.bindLong(1, now - table.getNumberMilliseconds());
+        mDeleteValuesStatement.bindLong(2, oldestWatermark);
+        return mDeleteValuesStatement.executeUpdateDelete();
+    }
+
+    @NonNull
+    private SQLiteStatement obtainStatement(@Nullable final SQLiteStatement statement, @NonNull final String sql) {
+        return (statement == null) ? mDatabase.compileStatement(sql) : statement;
+    }
+
+    /**
+     * Releases the compiled statements of the engine. The watermarks are read again from the
+     * database before the next step.
+     */
+    public void release() {
+        for (int i = 0; i < mRollupTables.size(); i++) {
+            mMergeStatements[i] = closeStatement(mMergeStatements[i]);
+            mDeleteBucketsStatements[i] = closeStatement(mDeleteBucketsStatements[i]);
+        }
+        mLastValueIdStatement = closeStatement(mLastValueIdStatement);
+        mUpdateWatermarkStatement = closeStatement(mUpdateWatermarkStatement);
+        mDeleteValuesStatement = closeStatement(mDeleteValuesStatement);
+        mAreWatermarksLoaded = false;
+    }
+
+    @Nullable
+    private static SQLiteStatement closeStatement(@Nullable final SQLiteStatement statement) {
+        if (statement != null) {
+            statement.close();
+        }
+        return null;
+    }
+}
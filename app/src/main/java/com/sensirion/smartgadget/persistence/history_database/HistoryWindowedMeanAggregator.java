@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Stores the mean of the live values of every window. The first value is stored immediately, so
+ * a device shows up in the history as soon as it sends data. Afterwards the values are summed
+ * up until they span the whole window, and their mean is stored.
+ * <p/>
+ * Only the running sums are kept, so the memory does not depend on the number of values.
+ */
+public class HistoryWindowedMeanAggregator implements HistoryLiveAggregator {
+
+    public static final long DEFAULT_WINDOW_MS = 10 * 1000;
+
+    private final long mWindowMs;
+
+    private boolean mIsFirstValue = true;
+    private int mNumberValues = 0;
+    private long mFirstTimestamp;
+    // Offsets from the first timestamp, so the sum does not overflow.
+    private long mTimestampOffsetSum;
+    private double mTemperatureSum;
+    private double mHumiditySum;
+
+    private long mAggregatedTimestamp;
+    private float mAggregatedTemperature;
+    private float mAggregatedHumidity;
+
+    /**
+     * @param windowMs minimum time between the first and the last value of a stored mean, <code>0</code> stores every value.
+     */
+    public HistoryWindowedMeanAggregator(final long windowMs) {
+        if (windowMs < 0) {
+            throw new IllegalArgumentException(String.format("%s: HistoryWindowedMeanAggregator -> The window cannot be negative.",
+                    HistoryWindowedMeanAggregator.class.getSimpleName()));
+        }
+        mWindowMs = windowMs;
+    }
+
+    /**
+     * Obtains a factory of aggregators with the same window for every device.
+     *
+     * @param windowMs of the aggregators.
+     * @return {@link HistoryLiveAggregator.Factory} creating {@link HistoryWindowedMeanAggregator} instances.
+     */
+    @NonNull
+    public static HistoryLiveAggregator.Factory factory(final long windowMs) {
+        return new HistoryLiveAggregator.Factory() {
+            @NonNull
+            @Override
+            public HistoryLiveAggregator create(@NonNull final String deviceAddress) {
+                return new HistoryWindowedMeanAggregator(windowMs);
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean addValue(final long timestamp, final float temperature, final float humidity) {
+        if (mNumberValues == 0) {
+            mFirstTimestamp = timestamp;
+        }
+        mNumberValues++;
+        mTimestampOffsetSum += timestamp - mFirstTimestamp;
+        mTemperatureSum += temperature;
+        mHumiditySum += humidity;
+        if (!mIsFirstValue && timestamp - mFirstTimestamp < mWindowMs) {
+            return false;
+        }
+        mIsFirstValue = false;
+        aggregateValues();
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean flush() {
+        if (mNumberValues == 0) {
+            return false;
+        }
+        mIsFirstValue = false;
+        aggregateValues();
+        return true;
+    }
+
+    private void aggregateValues() {
+        mAggregatedTimestamp = mFirstTimestamp + mTimestampOffsetSum / mNumberValues;
+        mAggregatedTemperature = (float) (mTemperatureSum / mNumberValues);
+        mAggregatedHumidity = (float) (mHumiditySum / mNumberValues);
+        mNumberValues = 0;
+        mTimestampOffsetSum = 0;
+        mTemperatureSum = 0d;
+        mHumiditySum = 0d;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean nextAggregatedValue() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getAggregatedTimestamp() {
+        return mAggregatedTimestamp;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public float getAggregatedTemperature() {
+        return mAggregatedTemperature;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public float getAggregatedHumidity() {
+        return mAggregatedHumidity;
+    }
+}
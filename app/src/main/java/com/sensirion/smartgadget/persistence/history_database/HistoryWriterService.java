@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single background thread that performs every history database write of the application.
+ * <p/>
+ * Tasks are executed one after the other in submission order, so the values of each device are
+ * always written in the order they were received. The task queue is bounded; when it is full
+ * lossless tasks wait until there is space for them, while the rest of the tasks wait up to
+ * {@link #LOSSY_ENQUEUE_TIMEOUT_MS} milliseconds and are dropped afterwards.
+ * <p/>
+ * Between tasks, and whenever the queue is idle, the service gives the
+ * {@link HistoryDataBatchWriter} the chance to write its pending batch and the
+ * {@link HistoryMaintenanceScheduler} the chance to run its due tasks.
+ */
+class HistoryWriterService {
+
+    static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final String TAG = HistoryWriterService.class.getSimpleName();
+    private static final String THREAD_NAME = "HistoryWriter";
+    private static final long LOSSY_ENQUEUE_TIMEOUT_MS = 250;
+    private static final long LOSSLESS_ENQUEUE_RETRY_MS = 250;
+
+    @NonNull
+    private final BlockingQueue<Runnable> mTaskQueue;
+    @NonNull
+    private final HistoryDataBatchWriter mBatchWriter;
+    @NonNull
+    private final HistoryMaintenanceScheduler mMaintenanceScheduler;
+    @NonNull
+    private final Thread mWorkerThread;
+    @NonNull
+    private final AtomicLong mNumberDroppedTasks = new AtomicLong();
+    @NonNull
+    private final AtomicLong mNumberExecutedTasks = new AtomicLong();
+    @NonNull
+    private final Runnable mStopTask = new Runnable() {
+        @Override
+        public void run() {
+            // Marks the end of the queue, it is never executed.
+        }
+    };
+
+    private volatile boolean mIsShutdown = false;
+
+    HistoryWriterService(@NonNull final HistoryDataBatchWriter batchWriter, @NonNull final HistoryMaintenanceScheduler maintenanceScheduler,
+                         final int queueCapacity) {
+        mBatchWriter = batchWriter;
+        mMaintenanceScheduler = maintenanceScheduler;
+        mTaskQueue = new ArrayBlockingQueue<>(queueCapacity);
+        mWorkerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processTasks();
+            }
+        }, THREAD_NAME);
+        mWorkerThread.start();
+    }
+
+    /**
+     * Enqueues a write task.
+     *
+     * @param task       that will be executed in the writer thread.
+     * @param isLossless <code>true</code> if the caller has to wait until the task can be enqueued -
+     *                   <code>false</code> if the task can be dropped when the queue stays full.
+     * @return <code>true</code> if the task was enqueued - <code>false</code> if it was dropped.
+     */
+    boolean submit(@NonNull final Runnable task, final boolean isLossless) {
+        try {
+            if (!mIsShutdown && mTaskQueue.offer(task)) {
+                return true;
+            }
+            if (isLossless) {
+                while (!mIsShutdown) {
+                    if (mTaskQueue.offer(task, LOSSLESS_ENQUEUE_RETRY_MS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } else if (!mIsShutdown && mTaskQueue.offer(task, LOSSY_ENQUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (@NonNull final InterruptedException e) {
+            Log.w(TAG, "submit -> Interrupted while waiting for space in the queue -> ", e);
+            Thread.currentThread().interrupt();
+        }
+        final long numberDroppedTasks = mNumberDroppedTasks.incrementAndGet();
+        Log.w(TAG, String.format("submit -> Dropped a write task. Shutdown: %b - Total dropped tasks: %d.", mIsShutdown, numberDroppedTasks));
+        return false;
+    }
+
+    /**
+     * Obtains the number of tasks waiting to be executed.
+     *
+     * @return <code>int</code> with the queue depth.
+     */
+    int getQueueDepth() {
+        return mTaskQueue.size();
+    }
+
+    /**
+     * Obtains the number of tasks that were dropped because the queue was full or the service was stopped.
+     *
+     * @return <code>long</code> with the number of dropped tasks.
+     */
+    long getNumberDroppedTasks() {
+        return mNumberDroppedTasks.get();
+    }
+
+    /**
+     * Obtains the number of tasks that were executed since the service was created.
+     *
+     * @return <code>long</code> with the number of executed tasks.
+     */
+    long getNumberExecutedTasks() {
+        return mNumberExecutedTasks.get();
+    }
+
+    /**
+     * Obtains the maintenance scheduler run by the writer thread.
+     *
+     * @return {@link HistoryMaintenanceScheduler} of the service.
+     */
+    @NonNull
+    HistoryMaintenanceScheduler getMaintenanceScheduler() {
+        return mMaintenanceScheduler;
+    }
+
+    /**
+     * Stops accepting new tasks, executes the enqueued ones and writes the pending batch.
+     *
+     * @param timeoutMs maximum time to wait for the enqueued tasks.
+     * @return <code>true</code> if every enqueued task was executed - <code>false</code> if the timeout expired.
+     */
+    boolean shutdown(final long timeoutMs) {
+        mIsShutdown = true;
+        try {
+            if (mTaskQueue.offer(mStopTask, timeoutMs, TimeUnit.MILLISECONDS)) {
+                mWorkerThread.join(timeoutMs);
+            }
+        } catch (@NonNull final InterruptedException e) {
+            Log.w(TAG, "shutdown -> Interrupted while waiting for the writer thread -> ", e);
+            Thread.currentThread().interrupt();
+        }
+        final boolean isTerminated = !mWorkerThread.isAlive();
+        if (!isTerminated) {
+            mWorkerThread.interrupt();
+        }
+        Log.i(TAG, String.format("shutdown -> Terminated: %b - Executed tasks: %d - Dropped tasks: %d - Pending tasks: %d.",
+                isTerminated, getNumberExecutedTasks(), getNumberDroppedTasks(), getQueueDepth()));
+        return isTerminated;
+    }
+
+    private void processTasks() {
+        while (true) {
+            final Runnable task;
+            try {
+                task = mTaskQueue.poll(mBatchWriter.getMaxBatchDelayMs(), TimeUnit.MILLISECONDS);
+            } catch (@NonNull final InterruptedException e) {
+                Log.w(TAG, "processTasks -> The writer thread was interrupted.");
+                break;
+            }
+            if (task == mStopTask) {
+                break;
+            }
+            if (task != null) {
+                try {
+                    task.run();
+                } catch (@NonNull final RuntimeException e) {
+                    Log.e(TAG, "processTasks -> A write task failed -> ", e);
+                }
+                mNumberExecutedTasks.incrementAndGet();
+            }
+            mBatchWriter.flushIfDue();
+            try {
+                mMaintenanceScheduler.runIfDue(mTaskQueue.isEmpty());
+            } catch (@NonNull final RuntimeException e) {
+                Log.e(TAG, "processTasks -> The history maintenance failed -> ", e);
+            }
+        }
+        mBatchWriter.flush();
+        mMaintenanceScheduler.release();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database.table;
+
+import android.support.annotation.NonNull;
+
+import com.sensirion.database_library.migration.AbstractDatabaseMigration;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Adds the {@link HistoryBlockTable} to the version 6 of the database. The blocks start empty,
+ * they are only filled with the values received once the block storage is enabled.
+ */
+public class HistoryBlockMigration extends AbstractDatabaseMigration {
+
+    private static final int FROM_VERSION = 6;
+    private static final int TO_VERSION = 7;
+
+    // Schema of the version 7, later versions of the block table can be different.
+    private static final String CREATE_BLOCK_TABLE_SQL = "CREATE TABLE IF NOT EXISTS history_blocks ("
+            + "device_id INTEGER NOT NULL REFERENCES history_devices(device_id), "
+            + "block_start INTEGER NOT NULL, "
+            + "sample_count INTEGER NOT NULL, "
+            + "temperature_min FLOAT NOT NULL, "
+            + "temperature_max FLOAT NOT NULL, "
+            + "temperature_avg FLOAT NOT NULL, "
+            + "humidity_min FLOAT NOT NULL, "
+            + "humidity_max FLOAT NOT NULL, "
+            + "humidity_avg FLOAT NOT NULL, "
+            + "encoded_values BLOB NOT NULL, "
+            + "PRIMARY KEY (device_id, block_start)) WITHOUT ROWID;";
+
+    public HistoryBlockMigration() {
+        super(FROM_VERSION, TO_VERSION);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public List<String> getMigrationSql() {
+        return Collections.singletonList(CREATE_BLOCK_TABLE_SQL);
+    }
+}
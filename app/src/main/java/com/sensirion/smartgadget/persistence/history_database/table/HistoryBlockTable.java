@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database.table;
+
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.DatabaseStatement;
+import com.sensirion.database_library.database_object.AbstractDatabaseObject;
+import com.sensirion.database_library.database_object.DatabaseObjectType;
+import com.sensirion.smartgadget.utils.Interval;
+
+import java.util.List;
+
+/**
+ * This table stores the raw history values in compressed blocks. Every block keeps the values of
+ * one device inside a fixed period of time, encoded in a single BLOB, together with the number of
+ * values and the minimum, maximum and average temperature and humidity of the block.
+ */
+public class HistoryBlockTable extends AbstractDatabaseObject {
+
+    public static final String COLUMN_DEVICE_ID = HistoryDeviceTable.COLUMN_DEVICE_ID;
+    public static final String COLUMN_BLOCK_START = "block_start";
+    public static final String COLUMN_SAMPLE_COUNT = "sample_count";
+    public static final String COLUMN_TEMPERATURE_MIN = "temperature_min";
+    public static final String COLUMN_TEMPERATURE_MAX = "temperature_max";
+    public static final String COLUMN_TEMPERATURE_AVG = "temperature_avg";
+    public static final String COLUMN_HUMIDITY_MIN = "humidity_min";
+    public static final String COLUMN_HUMIDITY_MAX = "humidity_max";
+    public static final String COLUMN_HUMIDITY_AVG = "humidity_avg";
+    public static final String COLUMN_ENCODED_VALUES = "encoded_values";
+
+    public static final int BLOCK_DURATION_MS = Interval.ONE_HOUR.getNumberMilliseconds();
+
+    static final String TABLE_NAME = "history_blocks";
+
+    private static HistoryBlockTable mInstance;
+
+    private HistoryBlockTable() {
+        super(TABLE_NAME, DatabaseObjectType.TABLE);
+    }
+
+    public synchronized static HistoryBlockTable getInstance() {
+        if (mInstance == null) {
+            mInstance = new HistoryBlockTable();
+        }
+        return mInstance;
+    }
+
+    /**
+     * Obtains the start of the block a timestamp belongs to.
+     *
+     * @param timestamp of a value in milliseconds.
+     * @return <code>long</code> with the start of the block in milliseconds.
+     */
+    public static long obtainBlockStart(final long timestamp) {
+        return (timestamp / BLOCK_DURATION_MS) * BLOCK_DURATION_MS;
+    }
+
+    @NonNull
+    @Override
+    public String createSqlStatement() {
+        return "CREATE TABLE IF NOT EXISTS " + getName() + " ("
+                + COLUMN_DEVICE_ID + " INTEGER NOT NULL REFERENCES " + HistoryDeviceTable.TABLE_NAME + "(" + HistoryDeviceTable.COLUMN_DEVICE_ID + "), "
+                + COLUMN_BLOCK_START + " INTEGER NOT NULL, "
+                + COLUMN_SAMPLE_COUNT + " INTEGER NOT NULL, "
+                + COLUMN_TEMPERATURE_MIN + " FLOAT NOT NULL, "
+                + COLUMN_TEMPERATURE_MAX + " FLOAT NOT NULL, "
+                + COLUMN_TEMPERATURE_AVG + " FLOAT NOT NULL, "
+                + COLUMN_HUMIDITY_MIN + " FLOAT NOT NULL, "
+                + COLUMN_HUMIDITY_MAX + " FLOAT NOT NULL, "
+                + COLUMN_HUMIDITY_AVG + " FLOAT NOT NULL, "
+                + COLUMN_ENCODED_VALUES + " BLOB NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_DEVICE_ID + ", " + COLUMN_BLOCK_START + ")"
+                + ") WITHOUT ROWID;";
+    }
+
+    /**
+     * Obtains the SQL that inserts or replaces a block, meant to be bound with {@link #bindBlock}.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String replaceBlockStatementSql() {
+        return String.format("INSERT OR REPLACE INTO %s (%s, %s, %s, %s, %s, %s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?);", getName(),
+                COLUMN_DEVICE_ID, COLUMN_BLOCK_START, COLUMN_SAMPLE_COUNT,
+                COLUMN_TEMPERATURE_MIN, COLUMN_TEMPERATURE_MAX, COLUMN_TEMPERATURE_AVG,
+                COLUMN_HUMIDITY_MIN, COLUMN_HUMIDITY_MAX, COLUMN_HUMIDITY_AVG, COLUMN_ENCODED_VALUES);
+    }
+
+    /**
+     * Binds a block to a statement compiled from {@link #replaceBlockStatementSql()}.
+     *
+     * @param statement     compiled replace statement.
+     * @param deviceId      identifier of the device in the {@link HistoryDeviceTable}.
+     * @param blockStart    start of the block in milliseconds.
+     * @param sampleCount   number of values encoded in the block.
+     * @param encodedValues values of the block.
+     */
+    public void bindBlock(@NonNull final SQLiteStatement statement, final long deviceId, final long blockStart, final int sampleCount,
+                          final float temperatureMin, final float temperatureMax, final float temperatureAvg,
+                          final float humidityMin, final float humidityMax, final float humidityAvg,
+                          @NonNull final byte[] encodedValues) {
+        statement.clearBindings();
+        statement.bindLong(1, deviceId);
+        statement.bindLong(2, blockStart);
+        statement.bindLong(3, sampleCount);
+        statement.bindDouble(4, temperatureMin);
+        statement.bindDouble(5, temperatureMax);
+        statement.bindDouble(6, temperatureAvg);
+        statement.bindDouble(7, humidityMin);
+        statement.bindDouble(8, humidityMax);
+        statement.bindDouble(9, humidityAvg);
+        statement.bindBlob(10, encodedValues);
+    }
+
+    /**
+     * Obtains the SQL that reads the number of values and the encoded values of a single block,
+     * with the device identifier and the block start as arguments.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String selectBlockStatementSql() {
+        return String.format("SELECT %s, %s FROM %s WHERE %s = ? AND %s = ?;",
+                COLUMN_SAMPLE_COUNT, COLUMN_ENCODED_VALUES, getName(), COLUMN_DEVICE_ID, COLUMN_BLOCK_START);
+    }
+
+    /**
+     * Prepares the query that reads the blocks of some devices overlapping a period of time, ordered by
+     * device address and block start. Blocks are aligned to their duration, so the primary key
+     * range of the block start is enough for discarding the blocks outside of the period.
+     *
+     * @param database       where the query is executed.
+     * @param listOfDevices  addresses of the devices.
+     * @param firstTimestamp start of the period in milliseconds.
+     * @param lastTimestamp  end of the period in milliseconds.
+     * @return {@link com.sensirion.database_library.DatabaseStatement} with the values bound.
+     */
+    @NonNull
+    public DatabaseStatement prepareSelectBlocksQuery(@NonNull final DatabaseFacade database, @NonNull final List<String> listOfDevices,
+                                                      final long firstTimestamp, final long lastTimestamp) {
+        final HistoryDeviceTable deviceTable = HistoryDeviceTable.getInstance();
+        final String sql = String.format("SELECT d.%s, b.%s, b.%s, b.%s FROM %s d INNER JOIN %s b ON b.%s = d.%s WHERE d.%s IN %s AND b.%s > ? AND b.%s <= ? ORDER BY d.%s, b.%s;",
+                HistoryDeviceTable.COLUMN_DEVICE_ADDRESS, COLUMN_BLOCK_START, COLUMN_SAMPLE_COUNT, COLUMN_ENCODED_VALUES,
+                HistoryDeviceTable.TABLE_NAME, getName(), COLUMN_DEVICE_ID, HistoryDeviceTable.COLUMN_DEVICE_ID,
+                HistoryDeviceTable.COLUMN_DEVICE_ADDRESS, deviceTable.obtainDeviceListSql(listOfDevices.size()),
+                COLUMN_BLOCK_START, COLUMN_BLOCK_START, HistoryDeviceTable.COLUMN_DEVICE_ADDRESS, COLUMN_BLOCK_START);
+        final DatabaseStatement statement = database.prepare(sql);
+        final int index = deviceTable.bindDeviceAddresses(statement, 1, listOfDevices);
+        return statement.bindLong(index, firstTimestamp - BLOCK_DURATION_MS).bindLong(index + 1, lastTimestamp);
+    }
+
+    /**
+     * Obtains the SQL that deletes the blocks that ended before a timestamp, its only argument.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String deleteBlocksOlderThanStatementSql() {
+        return String.format("DELETE FROM %s WHERE %s + %d <= ?;", getName(), COLUMN_BLOCK_START, BLOCK_DURATION_MS);
+    }
+}
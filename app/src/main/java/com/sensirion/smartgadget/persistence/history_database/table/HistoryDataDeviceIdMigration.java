@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database.table;
+
+import android.support.annotation.NonNull;
+
+import com.sensirion.database_library.migration.AbstractDatabaseMigration;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Moves the history values of the version 3 of the database, that stored the address of the
+ * device in every row, to the history data table of the version 4, which references the
+ * devices interned in the {@link HistoryDeviceTable} and has an integer primary key.
+ */
+public class HistoryDataDeviceIdMigration extends AbstractDatabaseMigration {
+
+    private static final int FROM_VERSION = 3;
+    private static final int TO_VERSION = 4;
+
+    static final String[] LEGACY_VIEW_NAMES = {"history_data_last_10_min", "history_data_last_1_hour",
+            "history_data_last_6_hours", "history_data_last_1_day", "history_data_last_1_week"};
+
+    private static final String LEGACY_TABLE_NAME = "history_data_v3";
+    private static final String LEGACY_COLUMN_DEVICE_ADDRESS = "device_address";
+
+    // Schema of the version 4, later versions of the tables can be different.
+    private static final String CREATE_DEVICE_TABLE_SQL = "CREATE TABLE IF NOT EXISTS history_devices ("
+            + "device_id INTEGER PRIMARY KEY, "
+            + "device_address VARCHAR NOT NULL UNIQUE);";
+    private static final String CREATE_DATA_TABLE_SQL = "CREATE TABLE IF NOT EXISTS history_data ("
+            + "_id INTEGER PRIMARY KEY, "
+            + "device_id INTEGER NOT NULL REFERENCES history_devices(device_id), "
+            + "timestamp INTEGER NOT NULL, "
+            + "temperature FLOAT NOT NULL, "
+            + "humidity FLOAT NOT NULL, "
+            + "comes_from_log TINYINT NOT NULL, "
+            + "bin_size TINYINT NOT NULL DEFAULT 1);";
+
+    public HistoryDataDeviceIdMigration() {
+        super(FROM_VERSION, TO_VERSION);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public List<String> getMigrationSql() {
+        final List<String> migrationSql = new LinkedList<>();
+        for (final String legacyViewName : LEGACY_VIEW_NAMES) {
+            migrationSql.add(String.format("DROP VIEW IF EXISTS %s;", legacyViewName));
+        }
+        migrationSql.add(CREATE_DEVICE_TABLE_SQL);
+        migrationSql.add(String.format("INSERT OR IGNORE INTO history_devices (device_address) SELECT DISTINCT %s FROM history_data;", LEGACY_COLUMN_DEVICE_ADDRESS));
+        migrationSql.add(String.format("ALTER TABLE history_data RENAME TO %s;", LEGACY_TABLE_NAME));
+        migrationSql.add(CREATE_DATA_TABLE_SQL);
+        migrationSql.add(String.format("INSERT INTO history_data (device_id, timestamp, temperature, humidity, comes_from_log, bin_size) "
+                + "SELECT d.device_id, o.timestamp, o.temperature, o.humidity, o.comes_from_log, IFNULL(o.bin_size, 1) "
+                + "FROM %s o INNER JOIN history_devices d ON o.%s = d.device_address;", LEGACY_TABLE_NAME, LEGACY_COLUMN_DEVICE_ADDRESS));
+        migrationSql.add(String.format("DROP TABLE %s;", LEGACY_TABLE_NAME));
+        return migrationSql;
+    }
+}
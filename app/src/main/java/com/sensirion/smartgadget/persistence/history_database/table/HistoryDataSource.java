@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database.table;
+
+import android.support.annotation.NonNull;
+
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.DatabaseStatement;
+
+import java.util.List;
+
+/**
+ * Database object the history of a {@link com.sensirion.smartgadget.view.history.type.HistoryIntervalType}
+ * is read from, see {@link HistoryTierConfiguration#obtainDataSource(long)}. The time window of the
+ * queries ends at the moment they are created.
+ */
+public interface HistoryDataSource {
+
+    /**
+     * Prepares the query that obtains the historical data of an interval, ordered by
+     * device address and timestamp, with the columns {@link HistoryDeviceTable#COLUMN_DEVICE_ADDRESS},
+     * {@link HistoryDataTable#COLUMN_TIMESTAMP}, {@link HistoryDataTable#COLUMN_TEMPERATURE} and
+     * {@link HistoryDataTable#COLUMN_HUMIDITY} with the average values, and the minimum and maximum
+     * values in the columns {@link HistoryRollupTable#COLUMN_TEMPERATURE_MIN},
+     * {@link HistoryRollupTable#COLUMN_TEMPERATURE_MAX}, {@link HistoryRollupTable#COLUMN_HUMIDITY_MIN}
+     * and {@link HistoryRollupTable#COLUMN_HUMIDITY_MAX}.
+     *
+     * @param database      where the query is executed.
+     * @param listOfDevices with the list of devices needed for retrieving the historical data.
+     * @param intervalMs    length of the interval, which ends now.
+     * @return {@link com.sensirion.database_library.DatabaseStatement} with the values bound.
+     */
+    @NonNull
+    DatabaseStatement prepareHistoryDataQuery(@NonNull DatabaseFacade database, @NonNull List<String> listOfDevices, long intervalMs);
+
+    /**
+     * Prepares the query that obtains the addresses of the devices with data in an interval.
+     *
+     * @param database   where the query is executed.
+     * @param intervalMs length of the interval, which ends now.
+     * @return {@link com.sensirion.database_library.DatabaseStatement} with the values bound.
+     */
+    @NonNull
+    DatabaseStatement prepareListOfDevicesQuery(@NonNull DatabaseFacade database, long intervalMs);
+
+    /**
+     * Obtains the number of milliseconds the data is kept.
+     *
+     * @return <code>long</code> with the retention in milliseconds.
+     */
+    long getNumberMilliseconds();
+
+    /**
+     * Returns the resolution of the data.
+     *
+     * @return <code>long</code> with the resolution in milliseconds.
+     */
+    long getResolution();
+}
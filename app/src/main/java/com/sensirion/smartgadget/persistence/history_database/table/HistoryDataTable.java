@@ -30,37 +30,36 @@
  */
 package com.sensirion.smartgadget.persistence.history_database.table;
 
+import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.NonNull;
-import android.util.Log;
 
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.DatabaseStatement;
 import com.sensirion.database_library.database_object.AbstractDatabaseObject;
+import com.sensirion.database_library.database_object.DatabaseIndex;
 import com.sensirion.database_library.database_object.DatabaseObjectType;
-import com.sensirion.smartgadget.utils.Interval;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
-import java.util.Queue;
 
 /**
- * This table controls the historical data of the device.
+ * This table controls the historical data of the device, as it was received. The values are
+ * aggregated into the {@link HistoryRollupTable}s and only kept for the retention of the raw
+ * {@link HistoryTier} of the {@link HistoryTierConfiguration}.
  */
-public class HistoryDataTable extends AbstractDatabaseObject {
+public class HistoryDataTable extends AbstractDatabaseObject implements HistoryDataSource {
 
-    public static final String COLUMN_DEVICE_ADDRESS = "device_address";
+    public static final String COLUMN_VALUE_ID = COLUMN_ID;
+    public static final String COLUMN_DEVICE_ID = HistoryDeviceTable.COLUMN_DEVICE_ID;
     public static final String COLUMN_TIMESTAMP = "timestamp";
     public static final String COLUMN_TEMPERATURE = "temperature";
     public static final String COLUMN_HUMIDITY = "humidity";
     public static final String COLUMN_COMES_FROM_LOG = "comes_from_log";
-    public static final String COLUMN_BIN_SIZE = "bin_size";
 
     static final String TABLE_NAME = "history_data";
 
-    static final int RESOLUTION_TEN_MINUTES_MS = Interval.ONE_SECOND.getNumberMilliseconds() * 10;
-    static final int RESOLUTION_ONE_HOUR_MS = RESOLUTION_TEN_MINUTES_MS * 6;
-    static final int RESOLUTION_SIX_HOURS_MS = RESOLUTION_ONE_HOUR_MS * 6;
-    static final int RESOLUTION_ONE_DAY_MS = RESOLUTION_ONE_HOUR_MS * 24;
-    static final int RESOLUTION_ONE_WEEK_MS = RESOLUTION_ONE_DAY_MS * 7;
+    private static final String INDEX_DEVICE_TIMESTAMP = "history_data_device_timestamp";
+    private static final String INDEX_TIMESTAMP = "history_data_timestamp";
 
     private static HistoryDataTable mInstance;
 
@@ -78,109 +77,193 @@ public class HistoryDataTable extends AbstractDatabaseObject {
     @NonNull
     @Override
     public String createSqlStatement() {
+        // AUTOINCREMENT guarantees that identifiers are never reused, the rollups track the values they aggregated by them.
         return "CREATE TABLE IF NOT EXISTS " + getName() + " ("
-                + COLUMN_DEVICE_ADDRESS + " VARCHAR NOT NULL, "
+                + COLUMN_VALUE_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_DEVICE_ID + " INTEGER NOT NULL REFERENCES " + HistoryDeviceTable.TABLE_NAME + "(" + HistoryDeviceTable.COLUMN_DEVICE_ID + "), "
                 + COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
                 + COLUMN_TEMPERATURE + " FLOAT NOT NULL, "
                 + COLUMN_HUMIDITY + " FLOAT NOT NULL, "
-                + COLUMN_COMES_FROM_LOG + " TINYINT NOT NULL, "
-                + COLUMN_BIN_SIZE + " TINYINT DEFAULT 1"
+                + COLUMN_COMES_FROM_LOG + " TINYINT NOT NULL"
                 + ");";
     }
 
     /**
-     * Obtains the timestamp of the last downloaded data of a device.
+     * Obtains the indices of the table:
+     * <p/>
+     * - (device_id, timestamp, temperature, humidity, comes_from_log) covers the history reads, so
+     * they are answered without touching the table rows, and the duplicate lookups of the logged values.
+     * <p/>
+     * - (timestamp) serves the range scans of the purge.
      *
-     * @param deviceAddress of the device we want to obtain the timestamp from.
-     * @return {@link java.lang.String} with the SQL sentence.
+     * @return {@link java.util.List} with the indices of the history data.
      */
-    @SuppressWarnings("unused")
-    public String obtainLastLoggedValueTimestampSql(final String deviceAddress) {
-        return String.format("SELECT MAX(%s) FROM %s WHERE %s = %s AND %s = %d", COLUMN_TIMESTAMP, getName(),
-                COLUMN_DEVICE_ADDRESS, convertToSqlString(deviceAddress), COLUMN_COMES_FROM_LOG, TRUE);
+    @NonNull
+    public List<DatabaseIndex> getIndices() {
+        return Arrays.asList(
+                new DatabaseIndex(INDEX_DEVICE_TIMESTAMP, getName(), false,
+                        COLUMN_DEVICE_ID, COLUMN_TIMESTAMP, COLUMN_TEMPERATURE, COLUMN_HUMIDITY, COLUMN_COMES_FROM_LOG),
+                new DatabaseIndex(INDEX_TIMESTAMP, getName(), false, COLUMN_TIMESTAMP)
+        );
     }
 
     /**
-     * Inserts a value inside the history list.
-     *
-     * @param comesFromLog <code>true</code> if the incoming value comes from logging - <code>false</code> otherwise.
-     * @return {@link java.lang.String} with the SQL sentence.
+     * {@inheritDoc}
      */
-    public String insertValueSql(final String deviceAddress, final long timestamp, final float temperature, final float humidity, final boolean comesFromLog) {
-        return String.format(Locale.ENGLISH, "INSERT INTO %s (%s, %s, %s, %s, %s) VALUES (%s, %s, %s, %s, %d)", getName()
-                , COLUMN_DEVICE_ADDRESS, COLUMN_TIMESTAMP, COLUMN_TEMPERATURE, COLUMN_HUMIDITY, COLUMN_COMES_FROM_LOG,
-                convertToSqlString(deviceAddress), convertToSqlInteger(timestamp), convertToSqlFloat(temperature), convertToSqlFloat(humidity), convertBooleanSqlite(comesFromLog));
-    }
-
- /*
-     STORAGE SCALES:
-
-    SCALE    |     RESOLUTION    |     BIN SIZE
-    ----------------------------------------------------
-	10 min	 |    10 seconds     |        1
-    ----------------------------------------------------
-	1 hour	 |    60 seconds     |        2
-    ----------------------------------------------------
-	6 hours	 |    6  minutes     |        3
-    ----------------------------------------------------
-	1 day	 |    24 minutes     |	      4
-    ----------------------------------------------------
-	1 Week	 |   168 minutes     |	      5
-    ----------------------------------------------------
-*/
+    @NonNull
+    @Override
+    public DatabaseStatement prepareHistoryDataQuery(@NonNull final DatabaseFacade database, @NonNull final List<String> listOfDevices, final long intervalMs) {
+        return prepareHistoryDataQuery(database, listOfDevices, System.currentTimeMillis() - intervalMs, Long.MAX_VALUE);
+    }
 
     /**
-     * Purges the database from the data that the application is not going to use anymore.
+     * Prepares the query that obtains the historical data of a period of time, with the same
+     * columns and order as {@link #prepareHistoryDataQuery(DatabaseFacade, List, long)}.
      *
-     * @return {@link java.util.List <{java.lang.String}>} with the SQL sentences needed for the purge.+
+     * @param database       where the query is executed.
+     * @param listOfDevices  addresses of the devices.
+     * @param firstTimestamp of the first value of the period.
+     * @param endTimestamp   end of the period, the values with this timestamp are not included.
+     * @return {@link com.sensirion.database_library.DatabaseStatement} with the values bound.
      */
     @NonNull
-    public List<String> purgeOldDataSql() {
-
-        final long initialTime = System.currentTimeMillis();
-        final List<String> purgeOldDataSql = new LinkedList<>();
-
-        purgeOldDataSql.add(deleteRecordsOlderThan(Interval.ONE_WEEK.getNumberMilliseconds()));
-        purgeOldDataSql.addAll(updateBin(Interval.TEN_MINUTES.getNumberMilliseconds(), RESOLUTION_TEN_MINUTES_MS, 1));
-        purgeOldDataSql.addAll(updateBin(Interval.ONE_HOUR.getNumberMilliseconds(), RESOLUTION_ONE_HOUR_MS, 2));
-        purgeOldDataSql.addAll(updateBin(Interval.SIX_HOURS.getNumberMilliseconds(), RESOLUTION_SIX_HOURS_MS, 3));
-        purgeOldDataSql.addAll(updateBin(Interval.ONE_DAY.getNumberMilliseconds(), RESOLUTION_ONE_DAY_MS, 4));
+    public DatabaseStatement prepareHistoryDataQuery(@NonNull final DatabaseFacade database, @NonNull final List<String> listOfDevices,
+                                                     final long firstTimestamp, final long endTimestamp) {
+        final HistoryDeviceTable deviceTable = HistoryDeviceTable.getInstance();
+        // Every raw value is its own minimum and maximum.
+        final String sql = String.format("SELECT d.%s AS %s, v.%s AS %s, v.%s AS %s, v.%s AS %s, v.%s AS %s, v.%s AS %s, v.%s AS %s, v.%s AS %s FROM %s d INNER JOIN %s v ON v.%s = d.%s WHERE d.%s IN %s AND v.%s >= ? AND v.%s < ? ORDER BY d.%s, v.%s;",
+                HistoryDeviceTable.COLUMN_DEVICE_ADDRESS, HistoryDeviceTable.COLUMN_DEVICE_ADDRESS, COLUMN_TIMESTAMP, COLUMN_TIMESTAMP,
+                COLUMN_TEMPERATURE, COLUMN_TEMPERATURE, COLUMN_TEMPERATURE, HistoryRollupTable.COLUMN_TEMPERATURE_MIN, COLUMN_TEMPERATURE, HistoryRollupTable.COLUMN_TEMPERATURE_MAX,
+                COLUMN_HUMIDITY, COLUMN_HUMIDITY, COLUMN_HUMIDITY, HistoryRollupTable.COLUMN_HUMIDITY_MIN, COLUMN_HUMIDITY, HistoryRollupTable.COLUMN_HUMIDITY_MAX,
+                HistoryDeviceTable.TABLE_NAME, getName(), COLUMN_DEVICE_ID, HistoryDeviceTable.COLUMN_DEVICE_ID,
+                HistoryDeviceTable.COLUMN_DEVICE_ADDRESS, deviceTable.obtainDeviceListSql(listOfDevices.size()),
+                COLUMN_TIMESTAMP, COLUMN_TIMESTAMP, HistoryDeviceTable.COLUMN_DEVICE_ADDRESS, COLUMN_TIMESTAMP);
+        final DatabaseStatement statement = database.prepare(sql);
+        final int index = deviceTable.bindDeviceAddresses(statement, 1, listOfDevices);
+        return statement.bindLong(index, firstTimestamp).bindLong(index + 1, endTimestamp);
+    }
 
-        Log.d(TAG, String.format("purgeOldDataSql -> has %d sentences.", purgeOldDataSql.size()));
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public DatabaseStatement prepareListOfDevicesQuery(@NonNull final DatabaseFacade database, final long intervalMs) {
+        final String sql = String.format("SELECT d.%s FROM %s d WHERE EXISTS (SELECT 1 FROM %s v WHERE v.%s = d.%s AND v.%s >= ?);",
+                HistoryDeviceTable.COLUMN_DEVICE_ADDRESS, HistoryDeviceTable.TABLE_NAME, getName(),
+                COLUMN_DEVICE_ID, HistoryDeviceTable.COLUMN_DEVICE_ID, COLUMN_TIMESTAMP);
+        return database.prepare(sql).bindLong(1, System.currentTimeMillis() - intervalMs);
+    }
 
-        for (final String purgeSqlSentence : purgeOldDataSql) {
-            Log.d(TAG, String.format("purgeOldDataSql -> The following sentence was created: %s", purgeSqlSentence));
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNumberMilliseconds() {
+        return HistoryTierConfiguration.getInstance().getRawTier().getRetentionMs();
+    }
 
-        Log.d(TAG, String.format("purgeOldDataSql -> Creation of the sentence last for %d milliseconds", (System.currentTimeMillis() - initialTime)));
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getResolution() {
+        return HistoryTierConfiguration.getInstance().getRawTier().getResolutionMs();
+    }
 
-        return purgeOldDataSql;
+    /**
+     * Prepares the insertion of a single value inside the history list. The device needs to be
+     * inserted in the {@link HistoryDeviceTable} before.
+     *
+     * @param database     where the value is inserted.
+     * @param comesFromLog <code>true</code> if the incoming value comes from logging - <code>false</code> otherwise.
+     * @return {@link com.sensirion.database_library.DatabaseStatement} with the values bound.
+     */
+    @NonNull
+    public DatabaseStatement prepareInsertValue(@NonNull final DatabaseFacade database, @NonNull final String deviceAddress, final long timestamp,
+                                                final float temperature, final float humidity, final boolean comesFromLog) {
+        final String sql = String.format("INSERT INTO %s (%s, %s, %s, %s, %s) VALUES (%s, ?, ?, ?, ?)", getName(),
+                COLUMN_DEVICE_ID, COLUMN_TIMESTAMP, COLUMN_TEMPERATURE, COLUMN_HUMIDITY, COLUMN_COMES_FROM_LOG,
+                HistoryDeviceTable.getInstance().selectDeviceIdSubquery());
+        return database.prepare(sql).bindString(1, deviceAddress).bindLong(2, timestamp)
+                .bindDouble(3, temperature).bindDouble(4, humidity).bindLong(5, convertBooleanSqlite(comesFromLog));
     }
 
+    /**
+     * Obtains the SQL that inserts a value by device identifier, meant to be compiled once
+     * and bound with {@link #bindInsertValue} for every inserted row.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
     @NonNull
-    private Queue<String> updateBin(final int numSecondsScale, final int numSecondsResolution, final int initialBinSize) {
-        final Queue<String> updateBeanSql = new LinkedList<>();
+    public String insertValueStatementSql() {
+        return String.format("INSERT INTO %s (%s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?)", getName(),
+                COLUMN_DEVICE_ID, COLUMN_TIMESTAMP, COLUMN_TEMPERATURE, COLUMN_HUMIDITY, COLUMN_COMES_FROM_LOG);
+    }
 
-        final String beanParserSql = String.format("INSERT INTO %s (%s, %s, %s, %s, %s, %s)",
-                getName(), COLUMN_DEVICE_ADDRESS, COLUMN_TIMESTAMP, COLUMN_TEMPERATURE, COLUMN_HUMIDITY, COLUMN_COMES_FROM_LOG, COLUMN_BIN_SIZE)
-                + String.format(" SELECT hd.%s, ROUND(AVG(hd.%s)), AVG(hd.%s), AVG(hd.%s), hd.%s, %s ",
-                COLUMN_DEVICE_ADDRESS, COLUMN_TIMESTAMP, COLUMN_TEMPERATURE, COLUMN_HUMIDITY, COLUMN_COMES_FROM_LOG, (initialBinSize + 1))
-                + String.format(" FROM %s hd", getName())
-                + String.format(" WHERE hd.%s = %d AND %s - hd.%s > %d",
-                COLUMN_BIN_SIZE, initialBinSize, System.currentTimeMillis(), COLUMN_TIMESTAMP, numSecondsScale)
-                + String.format(" GROUP BY %s, %s, ((%s - %s)/%d);", COLUMN_DEVICE_ADDRESS, COLUMN_COMES_FROM_LOG, System.currentTimeMillis(),
-                COLUMN_TIMESTAMP, numSecondsResolution);
+    /**
+     * Obtains the SQL that inserts a logged value by device identifier unless the device already has
+     * a value with the same timestamp. The arguments are the same ones as in {@link #insertValueStatementSql()},
+     * followed by the device identifier and the timestamp again. The lookup is answered by the
+     * (device_id, timestamp) index, and values inserted earlier in the same transaction are found too.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String insertValueIfNewStatementSql() {
+        return String.format("INSERT INTO %s (%s, %s, %s, %s, %s) SELECT ?, ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM %s WHERE %s = ? AND %s = ?)", getName(),
+                COLUMN_DEVICE_ID, COLUMN_TIMESTAMP, COLUMN_TEMPERATURE, COLUMN_HUMIDITY, COLUMN_COMES_FROM_LOG,
+                getName(), COLUMN_DEVICE_ID, COLUMN_TIMESTAMP);
+    }
 
-        updateBeanSql.add(beanParserSql);
+    /**
+     * Binds a logged value to a statement compiled from {@link #insertValueIfNewStatementSql()}.
+     *
+     * @param statement compiled insert statement.
+     * @param deviceId  identifier of the device in the {@link HistoryDeviceTable}.
+     */
+    public void bindInsertValueIfNew(@NonNull final SQLiteStatement statement, final long deviceId, final long timestamp,
+                                     final float temperature, final float humidity) {
+        bindInsertValue(statement, deviceId, timestamp, temperature, humidity, true);
+        statement.bindLong(6, deviceId);
+        statement.bindLong(7, timestamp);
+    }
 
-        updateBeanSql.add(String.format("DELETE FROM %s WHERE %s = %d AND %s - %s > %s;",
-                getName(), COLUMN_BIN_SIZE, initialBinSize, System.currentTimeMillis(), COLUMN_TIMESTAMP, numSecondsScale));
+    /**
+     * Binds a history value to a statement compiled from {@link #insertValueStatementSql()}.
+     *
+     * @param statement    compiled insert statement.
+     * @param deviceId     identifier of the device in the {@link HistoryDeviceTable}.
+     * @param comesFromLog <code>true</code> if the incoming value comes from logging - <code>false</code> otherwise.
+     */
+    public void bindInsertValue(@NonNull final SQLiteStatement statement, final long deviceId, final long timestamp,
+                                final float temperature, final float humidity, final boolean comesFromLog) {
+        statement.clearBindings();
+        statement.bindLong(1, deviceId);
+        statement.bindLong(2, timestamp);
+        statement.bindDouble(3, temperature);
+        statement.bindDouble(4, humidity);
+        statement.bindLong(5, convertBooleanSqlite(comesFromLog));
+    }
 
-        return updateBeanSql;
+    /**
+     * Obtains the SQL for retrieving the identifier of the last inserted value.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String obtainLastValueIdSql() {
+        return String.format("SELECT IFNULL(MAX(%s), 0) FROM %s;", COLUMN_VALUE_ID, getName());
     }
 
-    private String deleteRecordsOlderThan(final int numberOfMilliseconds) {
-        return String.format("DELETE FROM %s WHERE %s - %s > %s;",
-                TABLE_NAME, System.currentTimeMillis(), COLUMN_TIMESTAMP, convertToSqlInteger(numberOfMilliseconds));
+    /**
+     * Obtains the SQL that deletes the values older than a timestamp, its first argument, which
+     * were already aggregated, which means their identifier is not bigger than the second argument.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String deleteAggregatedValuesOlderThanStatementSql() {
+        return String.format("DELETE FROM %s WHERE %s < ? AND %s <= ?;", getName(), COLUMN_TIMESTAMP, COLUMN_VALUE_ID);
     }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database.table;
+
+import android.support.annotation.NonNull;
+
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.DatabaseStatement;
+import com.sensirion.database_library.database_object.AbstractDatabaseObject;
+import com.sensirion.database_library.database_object.DatabaseObjectType;
+
+import java.util.List;
+
+/**
+ * This table interns the addresses of the devices stored in the history, so every history value
+ * only stores the integer identifier of its device. It also keeps the timestamp of the newest value
+ * of a completely downloaded gadget log, the older logged values do not need to be written again.
+ */
+public class HistoryDeviceTable extends AbstractDatabaseObject {
+
+    public static final String COLUMN_DEVICE_ID = "device_id";
+    public static final String COLUMN_DEVICE_ADDRESS = "device_address";
+    public static final String COLUMN_LAST_LOGGED_TIMESTAMP = "last_logged_timestamp";
+
+    static final String TABLE_NAME = "history_devices";
+
+    private static HistoryDeviceTable mInstance;
+
+    private HistoryDeviceTable() {
+        super(TABLE_NAME, DatabaseObjectType.TABLE);
+    }
+
+    public synchronized static HistoryDeviceTable getInstance() {
+        if (mInstance == null) {
+            mInstance = new HistoryDeviceTable();
+        }
+        return mInstance;
+    }
+
+    @NonNull
+    @Override
+    public String createSqlStatement() {
+        return "CREATE TABLE IF NOT EXISTS " + getName() + " ("
+                + COLUMN_DEVICE_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_DEVICE_ADDRESS + " VARCHAR NOT NULL UNIQUE, "
+                + COLUMN_LAST_LOGGED_TIMESTAMP + " INTEGER NOT NULL DEFAULT 0"
+                + ");";
+    }
+
+    /**
+     * Obtains the SQL that updates the timestamp of the newest value of a completely downloaded log
+     * of a device, which never moves backwards. Its arguments are the timestamp and the device identifier.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String updateLastLoggedTimestampStatementSql() {
+        return String.format("UPDATE %s SET %s = MAX(%s, ?) WHERE %s = ?;", getName(),
+                COLUMN_LAST_LOGGED_TIMESTAMP, COLUMN_LAST_LOGGED_TIMESTAMP, COLUMN_DEVICE_ID);
+    }
+
+    /**
+     * Obtains the SQL that inserts a device in the table if it was not inserted before, with the
+     * device address as its only argument.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String insertDeviceStatementSql() {
+        return String.format("INSERT OR IGNORE INTO %s (%s) VALUES (?);", getName(), COLUMN_DEVICE_ADDRESS);
+    }
+
+    /**
+     * Obtains the SQL for retrieving the identifier of a device, with the device address as its only argument.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String selectDeviceIdStatementSql() {
+        return String.format("SELECT %s FROM %s WHERE %s = ?;", COLUMN_DEVICE_ID, getName(), COLUMN_DEVICE_ADDRESS);
+    }
+
+    /**
+     * Obtains a subquery that returns the identifier of a device, meant to be embedded inside other
+     * SQL sentences, with the device address as its only argument.
+     *
+     * @return {@link java.lang.String} with the SQL subquery.
+     */
+    @NonNull
+    String selectDeviceIdSubquery() {
+        return String.format("(SELECT %s FROM %s WHERE %s = ?)", COLUMN_DEVICE_ID, getName(), COLUMN_DEVICE_ADDRESS);
+    }
+
+    /**
+     * Obtains a SQL list with one argument per device, meant to be used with the IN operator and
+     * bound with {@link #bindDeviceAddresses}.
+     *
+     * @param numberDevices number of devices of the list.
+     * @return {@link java.lang.String} with the SQL list.
+     */
+    @NonNull
+    String obtainDeviceListSql(final int numberDevices) {
+        final StringBuilder listOfDevicesSql = new StringBuilder();
+        listOfDevicesSql.append('(');
+        for (int i = 0; i < numberDevices; i++) {
+            if (i > 0) {
+                listOfDevicesSql.append(", ");
+            }
+            listOfDevicesSql.append('?');
+        }
+        listOfDevicesSql.append(')');
+        return listOfDevicesSql.toString();
+    }
+
+    /**
+     * Binds the device addresses to the arguments of a list obtained from {@link #obtainDeviceListSql}.
+     *
+     * @param statement       where the addresses are bound.
+     * @param firstIndex      index of the first argument of the list.
+     * @param deviceAddresses of the devices.
+     * @return <code>int</code> with the index of the argument that follows the list.
+     */
+    int bindDeviceAddresses(@NonNull final DatabaseStatement statement, final int firstIndex, @NonNull final List<String> deviceAddresses) {
+        int index = firstIndex;
+        for (final String deviceAddress : deviceAddresses) {
+            statement.bindString(index++, deviceAddress);
+        }
+        return index;
+    }
+}
@@ -32,47 +32,41 @@ package com.sensirion.smartgadget.persistence.history_database.table;
 
 import android.support.annotation.NonNull;
 
-import com.sensirion.smartgadget.utils.Interval;
+import com.sensirion.database_library.migration.AbstractDatabaseMigration;
 
-public class HistoryDataLast10MinutesView extends AbstractHistoryDataView {
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
-    static final String VIEW_NAME = "history_data_last_10_min";
-    private static final byte BIN_SIZE = 1;
-
-    private static HistoryDataLast10MinutesView mInstance;
+/**
+ * Switches the databases of the version 9 to incremental vacuum. Changing the vacuum mode of a
+ * database with tables needs a full <code>VACUUM</code>, which rewrites the whole file and
+ * cannot run inside the upgrade transaction, so it is executed once after the upgrade.
+ */
+public class HistoryIncrementalVacuumMigration extends AbstractDatabaseMigration {
 
-    private HistoryDataLast10MinutesView() {
-        super(VIEW_NAME);
-    }
+    private static final int FROM_VERSION = 9;
+    private static final int TO_VERSION = 10;
 
-    public synchronized static HistoryDataLast10MinutesView getInstance() {
-        if (mInstance == null) {
-            mInstance = new HistoryDataLast10MinutesView();
-        }
-        return mInstance;
+    public HistoryIncrementalVacuumMigration() {
+        super(FROM_VERSION, TO_VERSION);
     }
 
-    @Override
+    /**
+     * {@inheritDoc}
+     */
     @NonNull
-    public String createSqlStatement() {
-        /*
-        CREATE VIEW IF NOT EXISTS history_data_last_10_min
-        AS SELECT device_mac, timestamp, temperature, humidity
-        FROM history_data
-        WHERE bin_size = 1;
-        */
-        return String.format("CREATE VIEW IF NOT EXISTS %s AS SELECT %s, %s, %s, %s FROM %s WHERE %s = %d;"
-                , getName(), HistoryDataTable.COLUMN_DEVICE_ADDRESS, HistoryDataTable.COLUMN_TIMESTAMP, HistoryDataTable.COLUMN_TEMPERATURE, HistoryDataTable.COLUMN_HUMIDITY,
-                HistoryDataTable.TABLE_NAME, HistoryDataTable.COLUMN_BIN_SIZE, BIN_SIZE);
-    }
-
     @Override
-    public int getNumberMilliseconds() {
-        return Interval.TEN_MINUTES.getNumberMilliseconds();
+    public List<String> getMigrationSql() {
+        return Collections.emptyList();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
     @Override
-    public int getResolution() {
-        return HistoryDataTable.RESOLUTION_TEN_MINUTES_MS;
+    public List<String> getPostMigrationSql() {
+        return Arrays.asList("PRAGMA auto_vacuum = INCREMENTAL;", "VACUUM;");
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database.table;
+
+import android.support.annotation.NonNull;
+
+import com.sensirion.database_library.database_object.AbstractDatabaseObject;
+import com.sensirion.database_library.database_object.DatabaseObjectType;
+
+/**
+ * This table stores the timestamp ranges of the downloaded gadget logs whose values are already
+ * stored in the history, so they are never written twice, even after the raw values were purged
+ * and merged into the {@link HistoryRollupTable}s. The log is transferred in timestamp order, so
+ * every download covers a contiguous range, identified by its first timestamp. The ranges of a
+ * device that are older than its last completely downloaded log, see
+ * {@link HistoryDeviceTable#COLUMN_LAST_LOGGED_TIMESTAMP}, are deleted.
+ */
+public class HistoryLoggedRangeTable extends AbstractDatabaseObject {
+
+    public static final String COLUMN_DEVICE_ID = HistoryDeviceTable.COLUMN_DEVICE_ID;
+    public static final String COLUMN_RANGE_START = "range_start";
+    public static final String COLUMN_RANGE_END = "range_end";
+
+    static final String TABLE_NAME = "history_logged_ranges";
+
+    private static HistoryLoggedRangeTable mInstance;
+
+    private HistoryLoggedRangeTable() {
+        super(TABLE_NAME, DatabaseObjectType.TABLE);
+    }
+
+    public synchronized static HistoryLoggedRangeTable getInstance() {
+        if (mInstance == null) {
+            mInstance = new HistoryLoggedRangeTable();
+        }
+        return mInstance;
+    }
+
+    @NonNull
+    @Override
+    public String createSqlStatement() {
+        return "CREATE TABLE IF NOT EXISTS " + getName() + " ("
+                + COLUMN_DEVICE_ID + " INTEGER NOT NULL REFERENCES " + HistoryDeviceTable.TABLE_NAME + "(" + HistoryDeviceTable.COLUMN_DEVICE_ID + "), "
+                + COLUMN_RANGE_START + " INTEGER NOT NULL, "
+                + COLUMN_RANGE_END + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_DEVICE_ID + ", " + COLUMN_RANGE_START + ")"
+                + ") WITHOUT ROWID;";
+    }
+
+    /**
+     * Obtains the SQL that returns the stored logged ranges of a device, with the device identifier
+     * as its only argument. The last completely downloaded log is returned as a range starting at 0.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String selectStoredRangesStatementSql() {
+        return String.format("SELECT 0, %s FROM %s WHERE %s = ? UNION ALL SELECT %s, %s FROM %s WHERE %s = ?;",
+                HistoryDeviceTable.COLUMN_LAST_LOGGED_TIMESTAMP, HistoryDeviceTable.TABLE_NAME, HistoryDeviceTable.COLUMN_DEVICE_ID,
+                COLUMN_RANGE_START, COLUMN_RANGE_END, getName(), COLUMN_DEVICE_ID);
+    }
+
+    /**
+     * Obtains the SQL that stores the range received by a download, with the device identifier,
+     * the first timestamp and the last timestamp of the download as arguments.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String updateRangeStatementSql() {
+        return String.format("INSERT OR REPLACE INTO %s (%s, %s, %s) VALUES (?, ?, ?);", getName(),
+                COLUMN_DEVICE_ID, COLUMN_RANGE_START, COLUMN_RANGE_END);
+    }
+
+    /**
+     * Obtains the SQL that deletes the ranges of a device covered by its last completely downloaded
+     * log, with the device identifier as its only argument.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String deleteCompletedRangesStatementSql() {
+        return String.format("DELETE FROM %s WHERE %s = ? AND %s <= (SELECT %s FROM %s WHERE %s = %s.%s);", getName(),
+                COLUMN_DEVICE_ID, COLUMN_RANGE_END, HistoryDeviceTable.COLUMN_LAST_LOGGED_TIMESTAMP, HistoryDeviceTable.TABLE_NAME,
+                HistoryDeviceTable.COLUMN_DEVICE_ID, getName(), COLUMN_DEVICE_ID);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database.table;
+
+import android.support.annotation.NonNull;
+
+import com.sensirion.database_library.migration.AbstractDatabaseMigration;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Replaces the history views and the bins of the version 4 of the database by the rollup tables
+ * of the version 5. The rollup tables are filled with the values of every bin, and only the
+ * values of the smallest bin are kept in the history data table.
+ * <p/>
+ * The tables and their schema are the ones of the version 5, so the result does not depend on the
+ * current {@link HistoryTierConfiguration}; later migrations start from them.
+ */
+public class HistoryRollupMigration extends AbstractDatabaseMigration {
+
+    private static final int FROM_VERSION = 4;
+    private static final int TO_VERSION = 5;
+
+    private static final String DATA_TABLE_NAME = "history_data";
+    private static final String LEGACY_TABLE_NAME = DATA_TABLE_NAME + "_v4";
+    private static final String LEGACY_COLUMN_BIN_SIZE = "bin_size";
+    private static final int LEGACY_SMALLEST_BIN_SIZE = 1;
+
+    private static final long ONE_MINUTE_MS = 60 * 1000;
+    private static final String[] ROLLUP_TABLE_NAMES = {"history_rollup_1_min", "history_rollup_6_min", "history_rollup_24_min", "history_rollup_168_min"};
+    private static final long[] ROLLUP_TABLE_RESOLUTIONS_MS = {ONE_MINUTE_MS, 6 * ONE_MINUTE_MS, 24 * ONE_MINUTE_MS, 168 * ONE_MINUTE_MS};
+    // Every table keeps sixty buckets.
+    private static final long[] ROLLUP_TABLE_INTERVALS_MS = {60 * ONE_MINUTE_MS, 360 * ONE_MINUTE_MS, 1440 * ONE_MINUTE_MS, 10080 * ONE_MINUTE_MS};
+
+    // Schema of the version 5, later versions of the tables can be different.
+    private static final String CREATE_ROLLUP_TABLE_SQL = "CREATE TABLE IF NOT EXISTS %s ("
+            + "device_id INTEGER NOT NULL REFERENCES history_devices(device_id), "
+            + "bucket INTEGER NOT NULL, "
+            + "sample_count INTEGER NOT NULL, "
+            + "temperature_min FLOAT NOT NULL, "
+            + "temperature_max FLOAT NOT NULL, "
+            + "temperature_avg FLOAT NOT NULL, "
+            + "humidity_min FLOAT NOT NULL, "
+            + "humidity_max FLOAT NOT NULL, "
+            + "humidity_avg FLOAT NOT NULL, "
+            + "PRIMARY KEY (device_id, bucket)) WITHOUT ROWID;";
+
+    // Values of the bigger bins were already averages, they are counted as a single value.
+    private static final String BACKFILL_ROLLUP_TABLE_SQL = "INSERT OR REPLACE INTO %s (device_id, bucket, sample_count, "
+            + "temperature_min, temperature_max, temperature_avg, humidity_min, humidity_max, humidity_avg) "
+            + "SELECT device_id, (timestamp / %d) * %d AS bucket, COUNT(*), MIN(temperature), MAX(temperature), AVG(temperature), "
+            + "MIN(humidity), MAX(humidity), AVG(humidity) FROM " + DATA_TABLE_NAME + " WHERE timestamp >= %d GROUP BY device_id, bucket;";
+
+    private static final String CREATE_DATA_TABLE_SQL = "CREATE TABLE IF NOT EXISTS " + DATA_TABLE_NAME + " ("
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "device_id INTEGER NOT NULL REFERENCES history_devices(device_id), "
+            + "timestamp INTEGER NOT NULL, "
+            + "temperature FLOAT NOT NULL, "
+            + "humidity FLOAT NOT NULL, "
+            + "comes_from_log TINYINT NOT NULL);";
+
+    private static final String COPY_SMALLEST_BIN_SQL = "INSERT INTO " + DATA_TABLE_NAME + " (device_id, timestamp, temperature, humidity, comes_from_log) "
+            + "SELECT device_id, timestamp, temperature, humidity, comes_from_log FROM " + LEGACY_TABLE_NAME
+            + " WHERE " + LEGACY_COLUMN_BIN_SIZE + " = " + LEGACY_SMALLEST_BIN_SIZE + " ORDER BY timestamp;";
+
+    private static final String CREATE_ROLLUP_STATE_TABLE_SQL = "CREATE TABLE IF NOT EXISTS history_rollup_state ("
+            + "table_name VARCHAR PRIMARY KEY, "
+            + "last_value_id INTEGER NOT NULL);";
+
+    // The kept values were already aggregated by the backfill.
+    private static final String MARK_ALL_VALUES_MERGED_SQL = "INSERT OR REPLACE INTO history_rollup_state (table_name, last_value_id) "
+            + "SELECT '%s', IFNULL(MAX(_id), 0) FROM " + DATA_TABLE_NAME + ";";
+
+    public HistoryRollupMigration() {
+        super(FROM_VERSION, TO_VERSION);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public List<String> getMigrationSql() {
+        final long now = System.currentTimeMillis();
+        final List<String> migrationSql = new LinkedList<>();
+
+        for (final String legacyViewName : HistoryDataDeviceIdMigration.LEGACY_VIEW_NAMES) {
+            migrationSql.add(String.format("DROP VIEW IF EXISTS %s;", legacyViewName));
+        }
+        for (int i = 0; i < ROLLUP_TABLE_NAMES.length; i++) {
+            final long resolution = ROLLUP_TABLE_RESOLUTIONS_MS[i];
+            final long firstBucket = ((now - ROLLUP_TABLE_INTERVALS_MS[i]) / resolution) * resolution;
+            migrationSql.add(String.format(CREATE_ROLLUP_TABLE_SQL, ROLLUP_TABLE_NAMES[i]));
+            migrationSql.add(String.format(BACKFILL_ROLLUP_TABLE_SQL, ROLLUP_TABLE_NAMES[i], resolution, resolution, firstBucket));
+        }
+        migrationSql.add(String.format("ALTER TABLE %s RENAME TO %s;", DATA_TABLE_NAME, LEGACY_TABLE_NAME));
+        migrationSql.add(CREATE_DATA_TABLE_SQL);
+        migrationSql.add(COPY_SMALLEST_BIN_SQL);
+        migrationSql.add(String.format("DROP TABLE %s;", LEGACY_TABLE_NAME));
+
+        migrationSql.add(CREATE_ROLLUP_STATE_TABLE_SQL);
+        for (final String rollupTableName : ROLLUP_TABLE_NAMES) {
+            migrationSql.add(String.format(MARK_ALL_VALUES_MERGED_SQL, rollupTableName));
+        }
+        return migrationSql;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database.table;
+
+import android.support.annotation.NonNull;
+
+import com.sensirion.database_library.database_object.AbstractDatabaseObject;
+import com.sensirion.database_library.database_object.DatabaseObjectType;
+
+/**
+ * This table stores the identifier of the last {@link HistoryDataTable} value merged into each
+ * {@link HistoryRollupTable}, so no value is aggregated twice after restarting the application.
+ */
+public class HistoryRollupStateTable extends AbstractDatabaseObject {
+
+    public static final String COLUMN_TABLE_NAME = "table_name";
+    public static final String COLUMN_LAST_VALUE_ID = "last_value_id";
+
+    static final String TABLE_NAME = "history_rollup_state";
+
+    private static HistoryRollupStateTable mInstance;
+
+    private HistoryRollupStateTable() {
+        super(TABLE_NAME, DatabaseObjectType.TABLE);
+    }
+
+    public synchronized static HistoryRollupStateTable getInstance() {
+        if (mInstance == null) {
+            mInstance = new HistoryRollupStateTable();
+        }
+        return mInstance;
+    }
+
+    @NonNull
+    @Override
+    public String createSqlStatement() {
+        return "CREATE TABLE IF NOT EXISTS " + getName() + " ("
+                + COLUMN_TABLE_NAME + " VARCHAR PRIMARY KEY, "
+                + COLUMN_LAST_VALUE_ID + " INTEGER NOT NULL"
+                + ");";
+    }
+
+    /**
+     * Obtains the SQL for retrieving the last value merged into a rollup table, with the name of the
+     * rollup table as its only argument. It returns 0 when the table did not merge any value yet.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String obtainLastValueIdStatementSql() {
+        return String.format("SELECT IFNULL(MAX(%s), 0) FROM %s WHERE %s = ?;", COLUMN_LAST_VALUE_ID, getName(), COLUMN_TABLE_NAME);
+    }
+
+    /**
+     * Obtains the SQL that stores the last value merged into a rollup table, with the name of the
+     * rollup table and the value identifier as arguments.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String updateLastValueIdStatementSql() {
+        return String.format("INSERT OR REPLACE INTO %s (%s, %s) VALUES (?, ?);", getName(), COLUMN_TABLE_NAME, COLUMN_LAST_VALUE_ID);
+    }
+
+    /**
+     * Obtains the SQL that makes a rollup table merge every value kept by the {@link HistoryDataTable}.
+     *
+     * @param rollupTable whose state is updated.
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    String resetLastValueIdSql(@NonNull final HistoryRollupTable rollupTable) {
+        return String.format("INSERT OR REPLACE INTO %s (%s, %s) VALUES (%s, 0);", getName(), COLUMN_TABLE_NAME, COLUMN_LAST_VALUE_ID,
+                convertToSqlString(rollupTable.getName()));
+    }
+
+    /**
+     * Obtains the SQL that makes a rollup table continue merging from the last value merged into another one.
+     *
+     * @param rollupTable whose state is updated.
+     * @param sourceTable whose state is copied.
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    String copyLastValueIdSql(@NonNull final HistoryRollupTable rollupTable, @NonNull final HistoryRollupTable sourceTable) {
+        return String.format("INSERT OR REPLACE INTO %s (%s, %s) SELECT %s, IFNULL(MAX(%s), 0) FROM %s WHERE %s = %s;", getName(), COLUMN_TABLE_NAME, COLUMN_LAST_VALUE_ID,
+                convertToSqlString(rollupTable.getName()), COLUMN_LAST_VALUE_ID, getName(), COLUMN_TABLE_NAME, convertToSqlString(sourceTable.getName()));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database.table;
+
+import android.support.annotation.NonNull;
+
+import com.sensirion.database_library.migration.AbstractDatabaseMigration;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Adds the temperature and humidity sums to the rollup tables of the version 5 of the database,
+ * computed from the averages and the number of values of the stored buckets. The tables are the
+ * ones of the version 5, not the ones of the current {@link HistoryTierConfiguration}.
+ */
+public class HistoryRollupSumMigration extends AbstractDatabaseMigration {
+
+    private static final int FROM_VERSION = 5;
+    private static final int TO_VERSION = 6;
+
+    private static final String[] ROLLUP_TABLE_NAMES = {"history_rollup_1_min", "history_rollup_6_min", "history_rollup_24_min", "history_rollup_168_min"};
+
+    private static final String ADD_TEMPERATURE_SUM_SQL = "ALTER TABLE %s ADD COLUMN temperature_sum FLOAT NOT NULL DEFAULT 0;";
+    private static final String ADD_HUMIDITY_SUM_SQL = "ALTER TABLE %s ADD COLUMN humidity_sum FLOAT NOT NULL DEFAULT 0;";
+    private static final String FILL_SUMS_SQL = "UPDATE %s SET temperature_sum = temperature_avg * sample_count, humidity_sum = humidity_avg * sample_count;";
+
+    public HistoryRollupSumMigration() {
+        super(FROM_VERSION, TO_VERSION);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public List<String> getMigrationSql() {
+        final List<String> migrationSql = new LinkedList<>();
+        for (final String rollupTableName : ROLLUP_TABLE_NAMES) {
+            migrationSql.add(String.format(ADD_TEMPERATURE_SUM_SQL, rollupTableName));
+            migrationSql.add(String.format(ADD_HUMIDITY_SUM_SQL, rollupTableName));
+            migrationSql.add(String.format(FILL_SUMS_SQL, rollupTableName));
+        }
+        return migrationSql;
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database.table;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import com.sensirion.database_library.DatabaseFacade;
+import com.sensirion.database_library.DatabaseStatement;
+import com.sensirion.database_library.database_object.AbstractDatabaseObject;
+import com.sensirion.database_library.database_object.DatabaseObjectType;
+import com.sensirion.database_library.parser.RowMapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregates of the {@link HistoryDataTable} values in buckets of a fixed resolution, aligned to
+ * multiples of the resolution. Every bucket keeps the number of values, the minimum, the maximum,
+ * the sum and the average of the temperature and the humidity of a device.
+ * <p/>
+ * There is a table per rollup {@link HistoryTier} of the {@link HistoryTierConfiguration}. The
+ * buckets are only kept while they overlap the retention of the tier, and reading an interval is
+ * a single range scan of the primary key.
+ */
+public class HistoryRollupTable extends AbstractDatabaseObject implements HistoryDataSource {
+
+    public static final String COLUMN_DEVICE_ID = HistoryDeviceTable.COLUMN_DEVICE_ID;
+    public static final String COLUMN_BUCKET = "bucket";
+    public static final String COLUMN_SAMPLE_COUNT = "sample_count";
+    public static final String COLUMN_TEMPERATURE_MIN = "temperature_min";
+    public static final String COLUMN_TEMPERATURE_MAX = "temperature_max";
+    public static final String COLUMN_TEMPERATURE_AVG = "temperature_avg";
+    public static final String COLUMN_TEMPERATURE_SUM = "temperature_sum";
+    public static final String COLUMN_HUMIDITY_MIN = "humidity_min";
+    public static final String COLUMN_HUMIDITY_MAX = "humidity_max";
+    public static final String COLUMN_HUMIDITY_AVG = "humidity_avg";
+    public static final String COLUMN_HUMIDITY_SUM = "humidity_sum";
+
+    private static final String TABLE_NAME_FORMAT = "history_rollup_%d_min";
+    private static final String EXISTING_TABLE_NAMES_SQL = "SELECT name FROM sqlite_master WHERE type = 'table';";
+
+    private static final RowMapper<String> TABLE_NAME_MAPPER = new RowMapper<String>() {
+        @Override
+        public String mapRow(@NonNull final Cursor cursor) {
+            return cursor.getString(0);
+        }
+    };
+
+    private static List<HistoryRollupTable> mInstances;
+    private static HistoryTierConfiguration mInstancesConfiguration;
+
+    private final long mResolution;
+    private final long mNumberMilliseconds;
+
+    private HistoryRollupTable(@NonNull final HistoryTier tier) {
+        super(String.format(TABLE_NAME_FORMAT, TimeUnit.MILLISECONDS.toMinutes(tier.getResolutionMs())), DatabaseObjectType.TABLE);
+        mResolution = tier.getResolutionMs();
+        mNumberMilliseconds = tier.getRetentionMs();
+    }
+
+    /**
+     * Obtains a rollup table for every rollup tier of the {@link HistoryTierConfiguration}, ordered by resolution.
+     *
+     * @return {@link java.util.List} with the rollup tables.
+     */
+    @NonNull
+    public synchronized static List<HistoryRollupTable> getInstances() {
+        final HistoryTierConfiguration configuration = HistoryTierConfiguration.getInstance();
+        if (mInstances == null || mInstancesConfiguration != configuration) {
+            final List<HistoryRollupTable> instances = new ArrayList<>();
+            for (final HistoryTier tier : configuration.getRollupTiers()) {
+                instances.add(new HistoryRollupTable(tier));
+            }
+            mInstances = Collections.unmodifiableList(instances);
+            mInstancesConfiguration = configuration;
+        }
+        return mInstances;
+    }
+
+    /**
+     * Creates the rollup tables of the {@link HistoryTierConfiguration} that do not exist in a
+     * database yet, so a new configuration does not need a new database version. A new table is
+     * filled with the buckets of the coarsest existing rollup table whose resolution divides its
+     * own and continues merging from the last value merged into that table. Without such a table
+     * it starts merging from the first value kept by the {@link HistoryDataTable}.
+     *
+     * @param database where the history is stored.
+     * @return <code>int</code> with the number of created tables.
+     */
+    public static int createMissingTables(@NonNull final DatabaseFacade database) {
+        final List<String> existingTableNames = database.queryForList(EXISTING_TABLE_NAMES_SQL, null, TABLE_NAME_MAPPER);
+        final List<HistoryRollupTable> existingTables = new ArrayList<>();
+        for (final HistoryRollupTable table : getInstances()) {
+            if (existingTableNames.contains(table.getName())) {
+                existingTables.add(table);
+            }
+        }
+        final HistoryRollupStateTable stateTable = HistoryRollupStateTable.getInstance();
+        final List<String> creationSql = new LinkedList<>();
+        int numberCreatedTables = 0;
+        for (final HistoryRollupTable table : getInstances()) {
+            if (existingTables.contains(table)) {
+                continue;
+            }
+            creationSql.add(table.createSqlStatement());
+            HistoryRollupTable sourceTable = null;
+            for (final HistoryRollupTable existingTable : existingTables) {
+                if (existingTable.mResolution < table.mResolution && table.mResolution % existingTable.mResolution == 0) {
+                    sourceTable = existingTable;
+                }
+            }
+            if (sourceTable == null) {
+                // The state of a table removed by an older configuration is not valid for the new table.
+                creationSql.add(stateTable.resetLastValueIdSql(table));
+            } else {
+                creationSql.add(table.backfillFromSql(sourceTable));
+                creationSql.add(stateTable.copyLastValueIdSql(table, sourceTable));
+            }
+            numberCreatedTables++;
+        }
+        if (numberCreatedTables > 0) {
+            database.executeSQL(creationSql);
+        }
+        return numberCreatedTables;
+    }
+
+    @NonNull
+    @Override
+    public String createSqlStatement() {
+        return "CREATE TABLE IF NOT EXISTS " + getName() + " ("
+                + COLUMN_DEVICE_ID + " INTEGER NOT NULL REFERENCES " + HistoryDeviceTable.TABLE_NAME + "(" + HistoryDeviceTable.COLUMN_DEVICE_ID + "), "
+                + COLUMN_BUCKET + " INTEGER NOT NULL, "
+                + COLUMN_SAMPLE_COUNT + " INTEGER NOT NULL, "
+                + COLUMN_TEMPERATURE_MIN + " FLOAT NOT NULL, "
+                + COLUMN_TEMPERATURE_MAX + " FLOAT NOT NULL, "
+                + COLUMN_TEMPERATURE_AVG + " FLOAT NOT NULL, "
+                + COLUMN_TEMPERATURE_SUM + " FLOAT NOT NULL, "
+                + COLUMN_HUMIDITY_MIN + " FLOAT NOT NULL, "
+                + COLUMN_HUMIDITY_MAX + " FLOAT NOT NULL, "
+                + COLUMN_HUMIDITY_AVG + " FLOAT NOT NULL, "
+                + COLUMN_HUMIDITY_SUM + " FLOAT NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_DEVICE_ID + ", " + COLUMN_BUCKET + ")"
+                + ") WITHOUT ROWID;";
+    }
+
+    /**
+     * Obtains the start of the oldest bucket that overlaps the retention of the table.
+     *
+     * @param now current time in milliseconds.
+     * @return <code>long</code> with the first bucket kept by the table.
+     */
+    public long obtainFirstBucket(final long now) {
+        return obtainFirstBucket(now, mNumberMilliseconds);
+    }
+
+    private long obtainFirstBucket(final long now, final long intervalMs) {
+        return ((now - intervalMs) / mResolution) * mResolution;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The timestamp of every bucket is its center, or the current time for the bucket in progress.
+     */
+    @NonNull
+    @Override
+    public DatabaseStatement prepareHistoryDataQuery(@NonNull final DatabaseFacade database, @NonNull final List<String> listOfDevices, final long intervalMs) {
+        final HistoryDeviceTable deviceTable = HistoryDeviceTable.getInstance();
+        final long now = System.currentTimeMillis();
+        final String sql = String.format("SELECT d.%s AS %s, MIN(r.%s + %d, ?) AS %s, r.%s AS %s, r.%s, r.%s, r.%s AS %s, r.%s, r.%s FROM %s d INNER JOIN %s r ON r.%s = d.%s WHERE d.%s IN %s AND r.%s >= ? ORDER BY d.%s, r.%s;",
+                HistoryDeviceTable.COLUMN_DEVICE_ADDRESS, HistoryDeviceTable.COLUMN_DEVICE_ADDRESS,
+                COLUMN_BUCKET, mResolution / 2, HistoryDataTable.COLUMN_TIMESTAMP,
+                COLUMN_TEMPERATURE_AVG, HistoryDataTable.COLUMN_TEMPERATURE, COLUMN_TEMPERATURE_MIN, COLUMN_TEMPERATURE_MAX,
+                COLUMN_HUMIDITY_AVG, HistoryDataTable.COLUMN_HUMIDITY, COLUMN_HUMIDITY_MIN, COLUMN_HUMIDITY_MAX,
+                HistoryDeviceTable.TABLE_NAME, getName(), COLUMN_DEVICE_ID, HistoryDeviceTable.COLUMN_DEVICE_ID,
+                HistoryDeviceTable.COLUMN_DEVICE_ADDRESS, deviceTable.obtainDeviceListSql(listOfDevices.size()),
+                COLUMN_BUCKET, HistoryDeviceTable.COLUMN_DEVICE_ADDRESS, COLUMN_BUCKET);
+        final DatabaseStatement statement = database.prepare(sql).bindLong(1, now);
+        final int index = deviceTable.bindDeviceAddresses(statement, 2, listOfDevices);
+        return statement.bindLong(index, obtainFirstBucket(now, intervalMs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public DatabaseStatement prepareListOfDevicesQuery(@NonNull final DatabaseFacade database, final long intervalMs) {
+        final String sql = String.format("SELECT d.%s FROM %s d WHERE EXISTS (SELECT 1 FROM %s r WHERE r.%s = d.%s AND r.%s >= ?);",
+                HistoryDeviceTable.COLUMN_DEVICE_ADDRESS, HistoryDeviceTable.TABLE_NAME, getName(),
+                COLUMN_DEVICE_ID, HistoryDeviceTable.COLUMN_DEVICE_ID, COLUMN_BUCKET);
+        return database.prepare(sql).bindLong(1, obtainFirstBucket(System.currentTimeMillis(), intervalMs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNumberMilliseconds() {
+        return mNumberMilliseconds;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getResolution() {
+        return mResolution;
+    }
+
+    /**
+     * Obtains the SQL that merges the {@link HistoryDataTable} values with an identifier bigger than
+     * the first argument and not bigger than the second one into the buckets of the table. The
+     * values of every bucket are aggregated first and then combined with the stored bucket, so
+     * values that arrive late update old buckets correctly.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String mergeValuesStatementSql() {
+        final String newBucketsSql = String.format("SELECT %s, (%s / %d) * %d AS %s, COUNT(*) AS %s, MIN(%s) AS %s, MAX(%s) AS %s, TOTAL(%s) AS %s, MIN(%s) AS %s, MAX(%s) AS %s, TOTAL(%s) AS %s FROM %s WHERE %s > ? AND %s <= ? GROUP BY %s, %s",
+                HistoryDataTable.COLUMN_DEVICE_ID, HistoryDataTable.COLUMN_TIMESTAMP, mResolution, mResolution, COLUMN_BUCKET, COLUMN_SAMPLE_COUNT,
+                HistoryDataTable.COLUMN_TEMPERATURE, COLUMN_TEMPERATURE_MIN, HistoryDataTable.COLUMN_TEMPERATURE, COLUMN_TEMPERATURE_MAX, HistoryDataTable.COLUMN_TEMPERATURE, COLUMN_TEMPERATURE_SUM,
+                HistoryDataTable.COLUMN_HUMIDITY, COLUMN_HUMIDITY_MIN, HistoryDataTable.COLUMN_HUMIDITY, COLUMN_HUMIDITY_MAX, HistoryDataTable.COLUMN_HUMIDITY, COLUMN_HUMIDITY_SUM,
+                HistoryDataTable.TABLE_NAME, HistoryDataTable.COLUMN_VALUE_ID, HistoryDataTable.COLUMN_VALUE_ID, HistoryDataTable.COLUMN_DEVICE_ID, COLUMN_BUCKET);
+
+        // The sums are merged exactly, the averages are derived from them.
+        final String mergedSampleCountSql = String.format("(n.%s + IFNULL(o.%s, 0))", COLUMN_SAMPLE_COUNT, COLUMN_SAMPLE_COUNT);
+        final String mergedTemperatureSumSql = mergeSumSql(COLUMN_TEMPERATURE_SUM);
+        final String mergedHumiditySumSql = mergeSumSql(COLUMN_HUMIDITY_SUM);
+        return String.format("INSERT OR REPLACE INTO %s (%s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s)", getName(),
+                COLUMN_DEVICE_ID, COLUMN_BUCKET, COLUMN_SAMPLE_COUNT, COLUMN_TEMPERATURE_MIN, COLUMN_TEMPERATURE_MAX, COLUMN_TEMPERATURE_AVG, COLUMN_TEMPERATURE_SUM,
+                COLUMN_HUMIDITY_MIN, COLUMN_HUMIDITY_MAX, COLUMN_HUMIDITY_AVG, COLUMN_HUMIDITY_SUM)
+                + String.format(" SELECT n.%s, n.%s, %s, %s, %s, %s / %s, %s, %s, %s, %s / %s, %s",
+                COLUMN_DEVICE_ID, COLUMN_BUCKET, mergedSampleCountSql,
+                mergeMinimumSql(COLUMN_TEMPERATURE_MIN), mergeMaximumSql(COLUMN_TEMPERATURE_MAX), mergedTemperatureSumSql, mergedSampleCountSql, mergedTemperatureSumSql,
+                mergeMinimumSql(COLUMN_HUMIDITY_MIN), mergeMaximumSql(COLUMN_HUMIDITY_MAX), mergedHumiditySumSql, mergedSampleCountSql, mergedHumiditySumSql)
+                + String.format(" FROM (%s) n LEFT JOIN %s o ON o.%s = n.%s AND o.%s = n.%s;",
+                newBucketsSql, getName(), COLUMN_DEVICE_ID, COLUMN_DEVICE_ID, COLUMN_BUCKET, COLUMN_BUCKET);
+    }
+
+    @NonNull
+    private static String mergeMinimumSql(@NonNull final String column) {
+        return String.format("MIN(n.%s, IFNULL(o.%s, n.%s))", column, column, column);
+    }
+
+    @NonNull
+    private static String mergeMaximumSql(@NonNull final String column) {
+        return String.format("MAX(n.%s, IFNULL(o.%s, n.%s))", column, column, column);
+    }
+
+    @NonNull
+    private static String mergeSumSql(@NonNull final String column) {
+        return String.format("(n.%s + IFNULL(o.%s, 0))", column, column);
+    }
+
+    /**
+     * Obtains the SQL that fills the table with the buckets of a finer rollup table, each one
+     * assigned to the bucket its start belongs to.
+     *
+     * @param sourceTable whose resolution divides the resolution of this table.
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    String backfillFromSql(@NonNull final HistoryRollupTable sourceTable) {
+        return String.format("INSERT OR REPLACE INTO %s (%s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s) "
+                        + "SELECT %s, (%s / %d) * %d AS new_bucket, SUM(%s), MIN(%s), MAX(%s), TOTAL(%s) / SUM(%s), TOTAL(%s), "
+                        + "MIN(%s), MAX(%s), TOTAL(%s) / SUM(%s), TOTAL(%s) FROM %s GROUP BY %s, new_bucket;", getName(),
+                COLUMN_DEVICE_ID, COLUMN_BUCKET, COLUMN_SAMPLE_COUNT, COLUMN_TEMPERATURE_MIN, COLUMN_TEMPERATURE_MAX, COLUMN_TEMPERATURE_AVG, COLUMN_TEMPERATURE_SUM,
+                COLUMN_HUMIDITY_MIN, COLUMN_HUMIDITY_MAX, COLUMN_HUMIDITY_AVG, COLUMN_HUMIDITY_SUM,
+                COLUMN_DEVICE_ID, COLUMN_BUCKET, mResolution, mResolution, COLUMN_SAMPLE_COUNT,
+                COLUMN_TEMPERATURE_MIN, COLUMN_TEMPERATURE_MAX, COLUMN_TEMPERATURE_SUM, COLUMN_SAMPLE_COUNT, COLUMN_TEMPERATURE_SUM,
+                COLUMN_HUMIDITY_MIN, COLUMN_HUMIDITY_MAX, COLUMN_HUMIDITY_SUM, COLUMN_SAMPLE_COUNT, COLUMN_HUMIDITY_SUM,
+                sourceTable.getName(), COLUMN_DEVICE_ID);
+    }
+
+    /**
+     * Obtains the SQL that deletes the buckets older than the bucket given as its only argument.
+     *
+     * @return {@link java.lang.String} with the SQL sentence.
+     */
+    @NonNull
+    public String deleteBucketsOlderThanStatementSql() {
+        return String.format("DELETE FROM %s WHERE %s < ?;", getName(), COLUMN_BUCKET);
+    }
+}
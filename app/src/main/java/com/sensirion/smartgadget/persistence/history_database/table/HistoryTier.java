@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database.table;
+
+/**
+ * Resolution and retention of one level of the history storage, see {@link HistoryTierConfiguration}.
+ */
+public class HistoryTier {
+
+    private static final String TAG = HistoryTier.class.getSimpleName();
+
+    private final long mResolutionMs;
+    private final long mRetentionMs;
+
+    /**
+     * @param resolutionMs time covered by every value of the tier.
+     * @param retentionMs  time the values of the tier are kept.
+     */
+    public HistoryTier(final long resolutionMs, final long retentionMs) {
+        if (resolutionMs <= 0 || retentionMs < resolutionMs) {
+            throw new IllegalArgumentException(String.format("%s: HistoryTier -> Invalid resolution of %d ms for a retention of %d ms.", TAG, resolutionMs, retentionMs));
+        }
+        mResolutionMs = resolutionMs;
+        mRetentionMs = retentionMs;
+    }
+
+    /**
+     * Obtains the time covered by every value of the tier.
+     *
+     * @return <code>long</code> with the resolution in milliseconds.
+     */
+    public long getResolutionMs() {
+        return mResolutionMs;
+    }
+
+    /**
+     * Obtains the time the values of the tier are kept.
+     *
+     * @return <code>long</code> with the retention in milliseconds.
+     */
+    public long getRetentionMs() {
+        return mRetentionMs;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database.table;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tiers the history storage is derived from. The raw tier sets the expected resolution of the
+ * values received and how long the {@link HistoryDataTable} keeps them. Every rollup tier is stored
+ * in its own {@link HistoryRollupTable}, named after its resolution, which keeps its buckets during
+ * the retention of the tier. The rollups, the purge and the data sources of the
+ * {@link com.sensirion.smartgadget.view.history.type.HistoryIntervalType}s follow the tiers.
+ * <p/>
+ * A custom configuration has to be set before the history database is initialized. The tables of
+ * new rollup tiers are created when the database is opened, see
+ * {@link HistoryRollupTable#createMissingTables(com.sensirion.database_library.DatabaseFacade)}.
+ */
+public class HistoryTierConfiguration {
+
+    private static final String TAG = HistoryTierConfiguration.class.getSimpleName();
+
+    // Intervals are served by the coarsest tier that still draws them with this number of values.
+    private static final int MIN_NUMBER_VALUES_PER_INTERVAL = 60;
+
+    private static HistoryTierConfiguration mInstance;
+
+    @NonNull
+    private final HistoryTier mRawTier;
+    @NonNull
+    private final List<HistoryTier> mRollupTiers;
+
+    /**
+     * @param rawTier     of the values as they were received.
+     * @param rollupTiers ordered by resolution. Their resolutions have to be whole minutes bigger than the raw resolution.
+     */
+    public HistoryTierConfiguration(@NonNull final HistoryTier rawTier, @NonNull final List<HistoryTier> rollupTiers) {
+        long lastResolutionMs = rawTier.getResolutionMs();
+        for (final HistoryTier rollupTier : rollupTiers) {
+            if (rollupTier.getResolutionMs() <= lastResolutionMs || rollupTier.getResolutionMs() % TimeUnit.MINUTES.toMillis(1) != 0) {
+                throw new IllegalArgumentException(String.format("%s: HistoryTierConfiguration -> Invalid rollup resolution of %d ms after a resolution of %d ms.",
+                        TAG, rollupTier.getResolutionMs(), lastResolutionMs));
+            }
+            lastResolutionMs = rollupTier.getResolutionMs();
+        }
+        mRawTier = rawTier;
+        mRollupTiers = Collections.unmodifiableList(new ArrayList<>(rollupTiers));
+    }
+
+    /**
+     * Obtains the configuration of the history storage.
+     *
+     * @return {@link HistoryTierConfiguration} set with {@link #setInstance(HistoryTierConfiguration)} or the default one.
+     */
+    @NonNull
+    public synchronized static HistoryTierConfiguration getInstance() {
+        if (mInstance == null) {
+            mInstance = createDefaultConfiguration();
+        }
+        return mInstance;
+    }
+
+    /**
+     * Replaces the configuration of the history storage. It has to be called before the history
+     * database is initialized.
+     *
+     * @param configuration with the tiers of the history storage.
+     */
+    public synchronized static void setInstance(@NonNull final HistoryTierConfiguration configuration) {
+        mInstance = configuration;
+    }
+
+    /**
+     * Raw values for 10 minutes and one rollup tier of about 60 buckets for every history interval.
+     */
+    @NonNull
+    private static HistoryTierConfiguration createDefaultConfiguration() {
+        return new HistoryTierConfiguration(
+                new HistoryTier(TimeUnit.SECONDS.toMillis(10), TimeUnit.MINUTES.toMillis(10)),
+                Arrays.asList(
+                        new HistoryTier(TimeUnit.MINUTES.toMillis(1), TimeUnit.HOURS.toMillis(1)),
+                        new HistoryTier(TimeUnit.MINUTES.toMillis(6), TimeUnit.HOURS.toMillis(6)),
+                        new HistoryTier(TimeUnit.MINUTES.toMillis(24), TimeUnit.DAYS.toMillis(1)),
+                        new HistoryTier(TimeUnit.MINUTES.toMillis(168), TimeUnit.DAYS.toMillis(7)),
+                        new HistoryTier(TimeUnit.MINUTES.toMillis(720), TimeUnit.DAYS.toMillis(30)),
+                        new HistoryTier(TimeUnit.MINUTES.toMillis(8640), TimeUnit.DAYS.toMillis(365))
+                )
+        );
+    }
+
+    /**
+     * Obtains the tier of the values as they were received.
+     *
+     * @return {@link HistoryTier} of the {@link HistoryDataTable}.
+     */
+    @NonNull
+    public HistoryTier getRawTier() {
+        return mRawTier;
+    }
+
+    /**
+     * Obtains the rollup tiers, ordered by resolution.
+     *
+     * @return {@link java.util.List} with a tier per {@link HistoryRollupTable}.
+     */
+    @NonNull
+    public List<HistoryTier> getRollupTiers() {
+        return mRollupTiers;
+    }
+
+    /**
+     * Obtains the data source a history interval is read from: the coarsest one that keeps the whole
+     * interval with enough values for drawing it, the finest one that keeps the whole interval if
+     * none has enough values, or the one with the longest retention if none keeps the whole interval.
+     *
+     * @param intervalMs length of the history interval.
+     * @return {@link HistoryDataSource} for the interval.
+     */
+    @NonNull
+    public HistoryDataSource obtainDataSource(final long intervalMs) {
+        final List<HistoryDataSource> dataSources = new ArrayList<HistoryDataSource>(HistoryRollupTable.getInstances());
+        dataSources.add(0, HistoryDataTable.getInstance());
+        HistoryDataSource selectedDataSource = null;
+        HistoryDataSource longestDataSource = dataSources.get(0);
+        for (final HistoryDataSource dataSource : dataSources) {
+            if (dataSource.getNumberMilliseconds() > longestDataSource.getNumberMilliseconds()) {
+                longestDataSource = dataSource;
+            }
+            if (dataSource.getNumberMilliseconds() < intervalMs) {
+                continue;
+            }
+            if (selectedDataSource == null || dataSource.getResolution() * MIN_NUMBER_VALUES_PER_INTERVAL <= intervalMs) {
+                selectedDataSource = dataSource;
+            }
+        }
+        return (selectedDataSource == null) ? longestDataSource : selectedDataSource;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.persistence.history_database.table;
+
+import android.support.annotation.NonNull;
+
+import com.sensirion.database_library.migration.AbstractDatabaseMigration;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Adds the rollup tables of the one month and one year tiers to the version 7 of the database.
+ * They are filled with the buckets of the one week rollup table, each one assigned to the new
+ * bucket its start belongs to, and continue merging from the last value merged into it.
+ */
+public class HistoryTierMigration extends AbstractDatabaseMigration {
+
+    private static final int FROM_VERSION = 7;
+    private static final int TO_VERSION = 8;
+
+    private static final String SOURCE_TABLE_NAME = "history_rollup_168_min";
+    private static final String[] NEW_TABLE_NAMES = {"history_rollup_720_min", "history_rollup_8640_min"};
+    private static final long[] NEW_TABLE_RESOLUTIONS_MS = {720L * 60 * 1000, 8640L * 60 * 1000};
+
+    // Schema of the version 8, later versions of the rollup tables can be different.
+    private static final String CREATE_ROLLUP_TABLE_SQL = "CREATE TABLE IF NOT EXISTS %s ("
+            + "device_id INTEGER NOT NULL REFERENCES history_devices(device_id), "
+            + "bucket INTEGER NOT NULL, "
+            + "sample_count INTEGER NOT NULL, "
+            + "temperature_min FLOAT NOT NULL, "
+            + "temperature_max FLOAT NOT NULL, "
+            + "temperature_avg FLOAT NOT NULL, "
+            + "temperature_sum FLOAT NOT NULL, "
+            + "humidity_min FLOAT NOT NULL, "
+            + "humidity_max FLOAT NOT NULL, "
+            + "humidity_avg FLOAT NOT NULL, "
+            + "humidity_sum FLOAT NOT NULL, "
+            + "PRIMARY KEY (device_id, bucket)) WITHOUT ROWID;";
+
+    private static final String BACKFILL_ROLLUP_TABLE_SQL = "INSERT OR REPLACE INTO %s (device_id, bucket, sample_count, "
+            + "temperature_min, temperature_max, temperature_avg, temperature_sum, humidity_min, humidity_max, humidity_avg, humidity_sum) "
+            + "SELECT device_id, (bucket / %d) * %d AS new_bucket, SUM(sample_count), MIN(temperature_min), MAX(temperature_max), "
+            + "TOTAL(temperature_sum) / SUM(sample_count), TOTAL(temperature_sum), MIN(humidity_min), MAX(humidity_max), "
+            + "TOTAL(humidity_sum) / SUM(sample_count), TOTAL(humidity_sum) FROM %s GROUP BY device_id, new_bucket;";
+
+    private static final String COPY_ROLLUP_STATE_SQL = "INSERT OR REPLACE INTO history_rollup_state (table_name, last_value_id) "
+            + "SELECT '%s', last_value_id FROM history_rollup_state WHERE table_name = '%s';";
+
+    public HistoryTierMigration() {
+        super(FROM_VERSION, TO_VERSION);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NonNull
+    @Override
+    public List<String> getMigrationSql() {
+        final List<String> migrationSql = new LinkedList<>();
+        for (int i = 0; i < NEW_TABLE_NAMES.length; i++) {
+            migrationSql.add(String.format(CREATE_ROLLUP_TABLE_SQL, NEW_TABLE_NAMES[i]));
+            migrationSql.add(String.format(BACKFILL_ROLLUP_TABLE_SQL, NEW_TABLE_NAMES[i], NEW_TABLE_RESOLUTIONS_MS[i], NEW_TABLE_RESOLUTIONS_MS[i], SOURCE_TABLE_NAME));
+            migrationSql.add(String.format(COPY_ROLLUP_STATE_SQL, NEW_TABLE_NAMES[i], SOURCE_TABLE_NAME));
+        }
+        return migrationSql;
+    }
+}
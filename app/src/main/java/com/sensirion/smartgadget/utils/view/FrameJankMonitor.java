@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.utils.view;
+
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+
+import java.util.Locale;
+
+/**
+ * Measures the smoothness of the user interface while it is started, by observing the time
+ * between consecutive frames. A frame that took longer than one and a half refresh periods is
+ * counted as janky, and the refresh periods it took beyond the first one as dropped frames.
+ * <p/>
+ * It has to be used from the main thread.
+ */
+public class FrameJankMonitor implements Choreographer.FrameCallback {
+
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+    private static final float JANK_FACTOR = 1.5f;
+
+    private final long mFrameIntervalNs;
+    private final long mJankThresholdNs;
+
+    private boolean mIsStarted = false;
+    private long mLastFrameTimeNs = 0;
+
+    private long mNumberFrames = 0;
+    private long mNumberJankyFrames = 0;
+    private long mNumberDroppedFrames = 0;
+    private long mMaxFrameIntervalNs = 0;
+
+    public FrameJankMonitor() {
+        this(DEFAULT_REFRESH_RATE);
+    }
+
+    /**
+     * @param refreshRate of the display, in frames per second.
+     */
+    public FrameJankMonitor(final float refreshRate) {
+        if (refreshRate <= 0) {
+            throw new IllegalArgumentException(String.format("%s: FrameJankMonitor -> The refresh rate has to be positive.",
+                    FrameJankMonitor.class.getSimpleName()));
+        }
+        mFrameIntervalNs = (long) (1e9 / refreshRate);
+        mJankThresholdNs = (long) (mFrameIntervalNs * JANK_FACTOR);
+    }
+
+    /**
+     * Starts observing the frames. The interval between the stop and the next start is not measured.
+     */
+    public void start() {
+        if (mIsStarted) {
+            return;
+        }
+        mIsStarted = true;
+        mLastFrameTimeNs = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public void stop() {
+        mIsStarted = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    public void reset() {
+        mNumberFrames = 0;
+        mNumberJankyFrames = 0;
+        mNumberDroppedFrames = 0;
+        mMaxFrameIntervalNs = 0;
+        mLastFrameTimeNs = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void doFrame(final long frameTimeNanos) {
+        if (!mIsStarted) {
+            return;
+        }
+        if (mLastFrameTimeNs != 0) {
+            final long frameIntervalNs = frameTimeNanos - mLastFrameTimeNs;
+            mNumberFrames++;
+            if (frameIntervalNs > mJankThresholdNs) {
+                mNumberJankyFrames++;
+                mNumberDroppedFrames += frameIntervalNs / mFrameIntervalNs - 1;
+            }
+            mMaxFrameIntervalNs = Math.max(mMaxFrameIntervalNs, frameIntervalNs);
+        }
+        mLastFrameTimeNs = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public long getNumberFrames() {
+        return mNumberFrames;
+    }
+
+    public long getNumberJankyFrames() {
+        return mNumberJankyFrames;
+    }
+
+    public long getNumberDroppedFrames() {
+        return mNumberDroppedFrames;
+    }
+
+    public long getMaxFrameIntervalNs() {
+        return mMaxFrameIntervalNs;
+    }
+
+    /**
+     * Obtains the percentage of janky frames.
+     *
+     * @return the percentage of the observed frames that were janky - <code>0</code> if no frames were observed.
+     */
+    public float getJankyFramePercentage() {
+        return (mNumberFrames == 0) ? 0f : 100f * mNumberJankyFrames / mNumberFrames;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "Frames: %d - Janky frames: %d (%.1f%%) - Dropped frames: %d - Longest frame: %.1f ms",
+                mNumberFrames, mNumberJankyFrames, getJankyFramePercentage(), mNumberDroppedFrames, mMaxFrameIntervalNs / 1e6);
+    }
+}
@@ -65,16 +65,19 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.sensirion.smartgadget.R;
+import com.sensirion.smartgadget.peripheral.rht_sensor.RHTFrameDispatcher;
 import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSensorFacade;
 import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSensorListener;
 import com.sensirion.smartgadget.peripheral.rht_sensor.external.RHTHumigadgetSensorManager;
 import com.sensirion.smartgadget.persistence.device_name_database.DeviceNameDatabaseManager;
+import com.sensirion.smartgadget.persistence.history_database.HistoryDatabaseManager;
 import com.sensirion.smartgadget.utils.ManagerInitializer;
 import com.sensirion.smartgadget.utils.Settings;
 import com.sensirion.smartgadget.utils.section_manager.SectionManager;
 import com.sensirion.smartgadget.utils.section_manager.SectionManagerMobile;
 import com.sensirion.smartgadget.utils.section_manager.SectionManagerTablet;
 import com.sensirion.smartgadget.utils.view.ApplicationHeaderGenerator;
+import com.sensirion.smartgadget.utils.view.FrameJankMonitor;
 import com.sensirion.smartgadget.utils.view.SmartGadgetRequirementDialog;
 import com.sensirion.smartgadget.view.device_management.ManageDeviceFragment;
 import com.sensirion.smartgadget.view.device_management.ScanDeviceFragment;
@@ -91,6 +94,8 @@ import butterknife.Optional;
 
 public class MainActivity extends FragmentActivity implements View.OnTouchListener, RHTSensorListener {
     private static final String TAG = MainActivity.class.getSimpleName();
+    // Debug switch: 'adb shell setprop log.tag.ImmediateRHTDelivery DEBUG' delivers every sample as it arrives instead of once per frame.
+    private static final String IMMEDIATE_DELIVERY_SWITCH = "ImmediateRHTDelivery";
     public static final int NO_REMOTE_INSTRUCTION = 0;
     protected int mRemoteInstruction;
 
@@ -140,6 +145,8 @@ public class MainActivity extends FragmentActivity implements View.OnTouchListen
     private boolean mUserPreferencesModified = false;
     @Nullable
     private Fragment mLastFragment = null;
+    @NonNull
+    private final FrameJankMonitor mFrameJankMonitor = new FrameJankMonitor();
 
     @Override
     public void onCreate(@Nullable final Bundle savedInstanceState) {
@@ -460,7 +467,13 @@ public class MainActivity extends FragmentActivity implements View.OnTouchListen
     public void onResume() {
         super.onResume();
         Log.d(TAG, "onResume()");
+        RHTSensorFacade.getInstance().setFrameAlignedDelivery(!Log.isLoggable(IMMEDIATE_DELIVERY_SWITCH, Log.DEBUG));
         RHTSensorFacade.getInstance().registerListener(this);
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            mFrameJankMonitor.reset();
+            RHTFrameDispatcher.getInstance().resetStatistics();
+            mFrameJankMonitor.start();
+        }
     }
 
     @Override
@@ -468,6 +481,13 @@ public class MainActivity extends FragmentActivity implements View.OnTouchListen
         super.onPause();
         Log.d(TAG, "onPause()");
         RHTSensorFacade.getInstance().unregisterListener(this);
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            mFrameJankMonitor.stop();
+            final RHTFrameDispatcher frameDispatcher = RHTFrameDispatcher.getInstance();
+            Log.d(TAG, String.format("onPause -> Frame aligned delivery: %b - %s - Sample frames: %d - Longest sample dispatch: %d us.",
+                    RHTSensorFacade.getInstance().isFrameAlignedDelivery(), mFrameJankMonitor,
+                    frameDispatcher.getNumberDispatchedFrames(), frameDispatcher.getMaxFrameDispatchTimeNs() / 1000));
+        }
         if (mIsTablet && mTabletLeftMenuDrawer != null && mTabletLeftMenuListView != null) {
             if (mTabletLeftMenuDrawer.isDrawerOpen(mTabletLeftMenuListView)) {
                 toggleTabletMenu();
@@ -481,6 +501,7 @@ public class MainActivity extends FragmentActivity implements View.OnTouchListen
         if (isFinishing()) {
             DeviceNameDatabaseManager.getInstance().closeDatabaseConnection();
             RHTSensorFacade.getInstance().release(getApplicationContext());
+            HistoryDatabaseManager.getInstance().release();
         }
         super.onDestroy();
     }
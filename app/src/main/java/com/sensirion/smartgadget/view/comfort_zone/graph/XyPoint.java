@@ -59,6 +59,8 @@ public class XyPoint extends View {
     private Paint mInnerPaint = null;
     @Nullable
     private Paint mOutlinePaint = null;
+    @Nullable
+    private AnimatorSet mMoveAnimation = null;
 
     public XyPoint(Context context) {
         super(context);
@@ -176,6 +178,10 @@ public class XyPoint extends View {
     }
 
     public void animateMove(float relativeX, float relativeY) {
+        // A new position replaces the movement in progress instead of animating both at once.
+        if (mMoveAnimation != null) {
+            mMoveAnimation.cancel();
+        }
         ObjectAnimator moverX = ObjectAnimator.ofFloat(this,
                 "translationX",
                 getX(),
@@ -190,6 +196,7 @@ public class XyPoint extends View {
         move.setInterpolator(new DecelerateInterpolator());
         move.playTogether(moverX, moverY);
         move.start();
+        mMoveAnimation = move;
         setVisibility(VISIBLE);
     }
 
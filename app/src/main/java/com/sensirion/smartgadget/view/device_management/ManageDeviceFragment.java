@@ -67,6 +67,8 @@ import com.sensirion.libsmartgadget.GadgetService;
 import com.sensirion.libsmartgadget.GadgetValue;
 import com.sensirion.libsmartgadget.smartgadget.BatteryService;
 import com.sensirion.smartgadget.R;
+import com.sensirion.smartgadget.peripheral.rht_sensor.external.GadgetDownloadScheduler;
+import com.sensirion.smartgadget.peripheral.rht_sensor.external.GadgetDownloadSchedulerListener;
 import com.sensirion.smartgadget.peripheral.rht_sensor.external.RHTHumigadgetSensorManager;
 import com.sensirion.smartgadget.persistence.device_name_database.DeviceNameDatabaseManager;
 import com.sensirion.smartgadget.utils.DeviceModel;
@@ -87,7 +89,7 @@ import butterknife.BindView;
 import butterknife.ButterKnife;
 
 // TODO: Requires improved initUiElements calling behavior...
-public class ManageDeviceFragment extends ParentFragment implements GadgetListener {
+public class ManageDeviceFragment extends ParentFragment implements GadgetListener, GadgetDownloadSchedulerListener {
     private static final String TAG = ManageDeviceFragment.class.getSimpleName();
     public static final int UNKNOWN_BATTERY_LEVEL = -1;
     private static final int UNKNOWN_LOGGING_INTERVAL = -1;
@@ -96,6 +98,7 @@ public class ManageDeviceFragment extends ParentFragment implements GadgetListen
     private Gadget mSelectedGadget;
     private DeviceModel mSelectedDeviceModel;
     private Runnable mDownloadButtonReset;
+    private Runnable mDownloadAllButtonReset;
 
     // XML Resources
     @BindBool(R.bool.is_tablet)
@@ -126,6 +129,8 @@ public class ManageDeviceFragment extends ParentFragment implements GadgetListen
     Button mIntervalBoardView;
     @BindView(R.id.dashboard_download_progress)
     Button mDownloadBoardView;
+    @BindView(R.id.dashboard_download_all_progress)
+    Button mDownloadAllBoardView;
 
     @BindView(R.id.manage_device_gadget_name_edit_field)
     EditText mGadgetNameEditText;
@@ -147,6 +152,10 @@ public class ManageDeviceFragment extends ParentFragment implements GadgetListen
     TextView mDownloadButtonText;
     @BindView(R.id.manage_device_download_progress_bar)
     ProgressBar mDownloadProgressBar;
+    @BindView(R.id.manage_device_download_all_progress)
+    TextView mDownloadAllButtonText;
+    @BindView(R.id.manage_device_download_all_progress_bar)
+    ProgressBar mDownloadAllProgressBar;
     @BindView(R.id.manage_device_gdaget_type)
     TextView mGadgetType;
     @BindColor(R.color.sensirion_green_darkened)
@@ -200,6 +209,7 @@ public class ManageDeviceFragment extends ParentFragment implements GadgetListen
         super.onResume();
         if (isSelectedDeviceAvailable()) {
             mSelectedGadget.addListener(this);
+            RHTHumigadgetSensorManager.getInstance().getDownloadScheduler().registerListener(this);
             initUiElements();
         } else {
             closeScreen();
@@ -212,9 +222,13 @@ public class ManageDeviceFragment extends ParentFragment implements GadgetListen
             assert mSelectedGadget != null;
             mSelectedGadget.removeListener(this);
         }
+        RHTHumigadgetSensorManager.getInstance().getDownloadScheduler().unregisterListener(this);
         if (mDownloadButtonReset != null) {
             mDownloadButtonText.removeCallbacks(mDownloadButtonReset);
         }
+        if (mDownloadAllButtonReset != null) {
+            mDownloadAllButtonText.removeCallbacks(mDownloadAllButtonReset);
+        }
         super.onPause();
     }
 
@@ -316,6 +330,44 @@ public class ManageDeviceFragment extends ParentFragment implements GadgetListen
         resetAfterDownload(isLoggingStateEditable(gadget), R.string.manage_device_download_no_data);
     }
 
+    /*
+     * Implementation of {@link GadgetDownloadSchedulerListener}
+     */
+
+    @Override
+    public void onScheduledDownloadProgress(final int progress, final int numberDownloading, final int numberWaiting,
+                                            final int numberCompleted, final int numberFailed) {
+        if (numberDownloading + numberWaiting == 0) {
+            return;
+        }
+        mDownloadAllProgressBar.setVisibility(View.VISIBLE);
+        mDownloadAllProgressBar.setProgress(progress);
+        mDownloadAllButtonText.setEnabled(false);
+        mDownloadAllButtonText.setText(getString(R.string.manage_device_download_all_progress, progress, numberWaiting));
+    }
+
+    @Override
+    public void onScheduledDownloadsFinished(final int numberCompleted, final int numberFailed) {
+        mDownloadAllProgressBar.setProgress(0);
+        mDownloadAllButtonText.setText(getString(R.string.manage_device_download_all_finished, numberCompleted, numberFailed));
+        if (numberFailed > 0) {
+            mDownloadAllButtonText.setTextColor(mColorOrange);
+        }
+        if (mDownloadAllButtonReset != null) {
+            mDownloadAllButtonText.removeCallbacks(mDownloadAllButtonReset);
+        }
+        mDownloadAllButtonReset = new Runnable() {
+            @Override
+            public void run() {
+                mDownloadAllProgressBar.setVisibility(View.GONE);
+                mDownloadAllButtonText.setText(R.string.label_download_all);
+                mDownloadAllButtonText.setEnabled(true);
+                mDownloadAllButtonText.setTextColor(mDeviceButtonColors);
+            }
+        };
+        mDownloadAllButtonText.postDelayed(mDownloadAllButtonReset, DOWNLOAD_COMPLETE_RESET_DELAY_MS);
+    }
+
     /*
      * Private helpers
      */
@@ -439,6 +491,7 @@ public class ManageDeviceFragment extends ParentFragment implements GadgetListen
         initLoggingSwitch();
         initBatteryBar();
         initDownloadButton();
+        initDownloadAllButton();
         initDisconnectButton();
         initGadgetName();
     }
@@ -452,11 +505,13 @@ public class ManageDeviceFragment extends ParentFragment implements GadgetListen
         mGadgetType.setTypeface(typefaceNormal);
         mDisconnectButton.setTypeface(typefaceBold);
         mDownloadButtonText.setTypeface(typefaceNormal);
+        mDownloadAllButtonText.setTypeface(typefaceNormal);
         mLoggingIntervalButton.setTypeface(typefaceNormal);
         mBatteryBoardBoardView.setTypeface(typefaceNormal);
         mLoggingBoardBoardView.setTypeface(typefaceNormal);
         mIntervalBoardView.setTypeface(typefaceNormal);
         mDownloadBoardView.setTypeface(typefaceNormal);
+        mDownloadAllBoardView.setTypeface(typefaceNormal);
     }
 
     private void initIntervalChooser() {
@@ -583,6 +638,32 @@ public class ManageDeviceFragment extends ParentFragment implements GadgetListen
         });
     }
 
+    private void initDownloadAllButton() {
+        final GadgetDownloadScheduler downloadScheduler = RHTHumigadgetSensorManager.getInstance().getDownloadScheduler();
+        mDownloadAllProgressBar.setProgressDrawable(mDownloadProgressDrawable);
+        mDownloadAllButtonText.setTextColor(mDeviceButtonColors);
+        if (downloadScheduler.isScheduling()) {
+            mDownloadAllProgressBar.setVisibility(View.VISIBLE);
+            mDownloadAllProgressBar.setProgress(downloadScheduler.getProgress());
+            mDownloadAllButtonText.setEnabled(false);
+            mDownloadAllButtonText.setText(R.string.label_downloading);
+        } else {
+            mDownloadAllProgressBar.setVisibility(View.GONE);
+            mDownloadAllButtonText.setEnabled(true);
+            mDownloadAllButtonText.setText(R.string.label_download_all);
+        }
+        mDownloadAllButtonText.setOnClickListener(new OnClickListener() {
+            @Override
+            public void onClick(final View v) {
+                mDownloadAllButtonText.setEnabled(false);
+                mDownloadAllButtonText.setText(R.string.manage_device_download_start);
+                mDownloadAllProgressBar.setProgress(0);
+                mDownloadAllProgressBar.setVisibility(View.VISIBLE);
+                RHTHumigadgetSensorManager.getInstance().downloadAllConnectedGadgets();
+            }
+        });
+    }
+
     private void updateBatteryLevel() {
         final int batteryLevel = getBatteryLevel(mSelectedGadget);
         if (batteryLevel == UNKNOWN_BATTERY_LEVEL) {
@@ -49,14 +49,13 @@ import android.widget.Button;
 import android.widget.LinearLayout;
 import android.widget.ListView;
 
-import com.androidplot.xy.SimpleXYSeries;
 import com.androidplot.xy.XYPlot;
 import com.sensirion.smartgadget.R;
 import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSensorFacade;
 import com.sensirion.smartgadget.peripheral.rht_sensor.RHTSensorListener;
-import com.sensirion.smartgadget.peripheral.rht_utils.RHTDataPoint;
 import com.sensirion.smartgadget.persistence.device_name_database.DeviceNameDatabaseManager;
 import com.sensirion.smartgadget.persistence.history_database.HistoryDatabaseManager;
+import com.sensirion.smartgadget.persistence.history_database.HistoryQueryCallback;
 import com.sensirion.smartgadget.utils.DeviceModel;
 import com.sensirion.smartgadget.utils.Interval;
 import com.sensirion.smartgadget.utils.Settings;
@@ -67,9 +66,10 @@ import com.sensirion.smartgadget.view.history.adapter.HistoryDeviceAdapter;
 import com.sensirion.smartgadget.view.history.type.HistoryIntervalType;
 import com.sensirion.smartgadget.view.history.type.HistoryUnitType;
 
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import butterknife.BindInt;
 import butterknife.BindString;
@@ -86,8 +86,11 @@ public class HistoryFragment extends ParentFragment
     // Default plot parameters
     @NonNull
     private static final HistoryUnitType DEFAULT_UNIT_TYPE = HistoryUnitType.TEMPERATURE;
+    private static final int DEFAULT_TIME_INTERVAL_POSITION = 0;
+
+    // Channel of the device list queries in the history query engine
     @NonNull
-    private static final HistoryIntervalType DEFAULT_TIME_INTERVAL = HistoryIntervalType.INTERVAL_OF_10_MINUTES;
+    private static final String DEVICE_MODELS_QUERY_CHANNEL = "history_device_models";
 
     // Injected application Views
     @BindView(R.id.history_plot_container)
@@ -113,7 +116,7 @@ public class HistoryFragment extends ParentFragment
     @NonNull
     private HistoryUnitType mUnitTypeSelected = DEFAULT_UNIT_TYPE;
     @NonNull
-    private HistoryIntervalType mIntervalSelected = DEFAULT_TIME_INTERVAL;
+    private HistoryIntervalType mIntervalSelected = HistoryIntervalType.getInterval(DEFAULT_TIME_INTERVAL_POSITION);
 
     // Plot handler
     @Nullable
@@ -123,9 +126,21 @@ public class HistoryFragment extends ParentFragment
     @Nullable
     private HistoryDeviceAdapter mHistoryDeviceAdapter;
 
+    // History queries running in the background
+    @Nullable
+    private Future<HistoryResult> mHistoryQuery;
+    @Nullable
+    private Future<List<DeviceModel>> mDeviceModelsQuery;
+
+    // Last history values received, reused when only the displayed unit changes
+    @Nullable
+    private HistoryResult mLastHistoryResult;
+    @Nullable
+    private HistoryIntervalType mLastHistoryResultInterval;
+
     // Fragment state controllers
     private long mLastDatabaseQuery = System.currentTimeMillis();
-    private int mLastIntervalPosition = 0;
+    private int mLastIntervalPosition = DEFAULT_TIME_INTERVAL_POSITION;
     private int mLastUnitPosition = 0;
 
     @Override
@@ -164,12 +179,26 @@ public class HistoryFragment extends ParentFragment
         Settings.getInstance().unregisterOnSharedPreferenceChangeListener(this);
     }
 
+    @Override
+    public void onDestroyView() {
+        // The results of the pending queries cannot be displayed anymore.
+        if (mHistoryQuery != null) {
+            mHistoryQuery.cancel(false);
+            mHistoryQuery = null;
+        }
+        if (mDeviceModelsQuery != null) {
+            mDeviceModelsQuery.cancel(false);
+            mDeviceModelsQuery = null;
+        }
+        super.onDestroyView();
+    }
+
     public void init(@NonNull final View historyView) {
         refreshIntervalTabs();
         initHistoryDeviceListView();
         refreshTypeValueTabs();
         updateDeviceView();
-        mPlotHandler = new PlotHandler(historyView, DEFAULT_TIME_INTERVAL, DEFAULT_UNIT_TYPE);
+        mPlotHandler = new PlotHandler(historyView, mIntervalSelected, DEFAULT_UNIT_TYPE);
         updateGraph();
     }
 
@@ -189,16 +218,10 @@ public class HistoryFragment extends ParentFragment
             Log.e(TAG, "updateGraph -> Don't have a plot handler for managing the plot");
             return;
         }
-        mPlotHandler.updateSeries(
-                getContext(),
-                obtainPlotSeries(selectedItems),
-                mIntervalSelected,
-                mUnitTypeSelected
-        );
+        requestPlotUpdate(selectedItems);
     }
 
     private void initHistoryDeviceListView() {
-        HistoryDatabaseManager.getInstance().purgeOldDatabaseData();
         mHistoryDeviceAdapter = new HistoryDeviceAdapter(getContext().getApplicationContext());
         mDeviceListView.setAdapter(mHistoryDeviceAdapter);
 
@@ -212,32 +235,45 @@ public class HistoryFragment extends ParentFragment
                     Log.e(TAG, "updateGraph -> Don't have a plot handler for managing the plot");
                     return;
                 }
-                mPlotHandler.updateSeries(
-                        getContext(),
-                        obtainPlotSeries(mHistoryDeviceAdapter.getListOfSelectedItems()),
-                        mIntervalSelected,
-                        mUnitTypeSelected
-                );
+                requestPlotUpdate(mHistoryDeviceAdapter.getListOfSelectedItems());
             }
         });
         updateDeviceView();
     }
 
     private void updateDeviceView() {
-        if (isAdded()) {
-            final HistoryDatabaseManager historyDb = HistoryDatabaseManager.getInstance();
-            final List<String> connectedDevicesAddresses =
-                    historyDb.getConnectedDeviceListInterval(mIntervalSelected);
-
-            final List<DeviceModel> deviceModels = new LinkedList<>();
-            for (final String deviceAddress : connectedDevicesAddresses) {
-                DeviceModel model = RHTSensorFacade.getInstance().getDeviceModel(deviceAddress);
-                if (model == null) {
-                    model = obtainDeviceModelDisconnectedDevice(deviceAddress);
+        if (!isAdded()) {
+            return;
+        }
+        final HistoryDatabaseManager historyDb = HistoryDatabaseManager.getInstance();
+        final HistoryIntervalType interval = mIntervalSelected;
+        // The device names can be read from the database too, so the models are prepared in the background.
+        mDeviceModelsQuery = historyDb.getQueryEngine().submit(DEVICE_MODELS_QUERY_CHANNEL, new Callable<List<DeviceModel>>() {
+            @Override
+            public List<DeviceModel> call() {
+                final List<String> connectedDevicesAddresses = historyDb.getConnectedDeviceListInterval(interval);
+                final List<DeviceModel> deviceModels = new LinkedList<>();
+                for (final String deviceAddress : connectedDevicesAddresses) {
+                    DeviceModel model = RHTSensorFacade.getInstance().getDeviceModel(deviceAddress);
+                    if (model == null) {
+                        model = obtainDeviceModelDisconnectedDevice(deviceAddress);
+                    }
+                    deviceModels.add(model);
+                }
+                return deviceModels;
+            }
+        }, new HistoryQueryCallback<List<DeviceModel>>() {
+            @Override
+            public void onQueryResult(@Nullable final List<DeviceModel> deviceModels) {
+                if (deviceModels != null) {
+                    displayDeviceModels(deviceModels);
                 }
-                deviceModels.add(model);
             }
+        });
+    }
 
+    private void displayDeviceModels(@NonNull final List<DeviceModel> deviceModels) {
+        if (isAdded() && mDeviceListView != null) {
             final HistoryDeviceAdapter adapter = (HistoryDeviceAdapter) mDeviceListView.getAdapter();
 
             final Handler viewHandler = mDeviceListView.getHandler();
@@ -258,7 +294,7 @@ public class HistoryFragment extends ParentFragment
 
     private void refreshIntervalTabs() {
         mIntervalTabs.removeAllViews();
-        for (int i = 0; i < HistoryIntervalType.values().length; i++) {
+        for (int i = 0; i < HistoryIntervalType.getIntervals().size(); i++) {
             final String tabDisplayName = HistoryIntervalType.getInterval(i).getDisplayName(getContext());
             final float textSize = INTERVAL_TABS_TEXT_SIZE;
             final View intervalTab =
@@ -370,17 +406,7 @@ public class HistoryFragment extends ParentFragment
                     Log.e(TAG, "onNewRHTSensorData -> mPlotHandler can't be null.");
                     return;
                 }
-                final Context context = getContext();
-                if (context != null) {
-                    mPlotHandler.updateSeries(
-                            context,
-                            obtainPlotSeries(mHistoryDeviceAdapter.getListOfSelectedItems()),
-                            mIntervalSelected,
-                            mUnitTypeSelected
-                    );
-                } else {
-                    Log.e(TAG, "onNewRHTSensorData -> plot view not updated.");
-                }
+                requestPlotUpdate(mHistoryDeviceAdapter.getListOfSelectedItems());
             }
             mLastDatabaseQuery = System.currentTimeMillis();
         }
@@ -407,10 +433,7 @@ public class HistoryFragment extends ParentFragment
         mIntervalSelected = HistoryIntervalType.getInterval(position);
 
         updateDeviceView();
-
-        final List<String> selectedItems = mHistoryDeviceAdapter.getListOfSelectedItems();
-        final List<SimpleXYSeries> plotSeries = obtainPlotSeries(selectedItems);
-        mPlotHandler.updateSeries(getContext(), plotSeries, mIntervalSelected, mUnitTypeSelected);
+        requestPlotUpdate(mHistoryDeviceAdapter.getListOfSelectedItems());
         refreshIntervalTabs();
     }
 
@@ -433,90 +456,38 @@ public class HistoryFragment extends ParentFragment
         mLastUnitPosition = position;
 
         mUnitTypeSelected = HistoryUnitType.getUnitType(position);
-
-        final List<String> selectedItems = mHistoryDeviceAdapter.getListOfSelectedItems();
-        final List<SimpleXYSeries> plotSeries = obtainPlotSeries(selectedItems);
-        mPlotHandler.updateSeries(getContext(), plotSeries, mIntervalSelected, mUnitTypeSelected);
+        if (mLastHistoryResult != null && mLastHistoryResultInterval == mIntervalSelected
+                && (mHistoryQuery == null || mHistoryQuery.isDone())) {
+            // The values of the interval are already known, only the displayed unit changed.
+            mPlotHandler.updateSeries(getContext(), mLastHistoryResult, mIntervalSelected, mUnitTypeSelected);
+        } else {
+            requestPlotUpdate(mHistoryDeviceAdapter.getListOfSelectedItems());
+        }
         refreshTypeValueTabs();
     }
 
     /**
-     * Obtain the list of series from the database.
+     * Obtains the history values of the selected devices in the background and displays them in
+     * the plot once they are read. A new request supersedes the ones that did not finish yet.
      *
      * @param deviceAddressList with the devices that will be used in order to display data.
-     * @return {@link java.util.List} with the {@link com.androidplot.xy.SimpleXYSeries} that will be displayed in the graph.
-     */
-    @NonNull
-    private List<SimpleXYSeries> obtainPlotSeries(@NonNull final List<String> deviceAddressList) {
-
-        final HistoryDatabaseManager historyDb = HistoryDatabaseManager.getInstance();
-        final HistoryResult databaseResults =
-                historyDb.getHistoryPoints(mIntervalSelected, deviceAddressList);
-
-        final List<SimpleXYSeries> listOfDataPoints = new LinkedList<>();
-
-        if (databaseResults == null) {
-            return listOfDataPoints;
-        }
-        for (final String deviceAddress : databaseResults.getResults().keySet()) {
-            final List<RHTDataPoint> deviceDataPoints = databaseResults.getResults().get(deviceAddress);
-            if (deviceDataPoints.isEmpty()) {
-                continue;
-            }
-            final SimpleXYSeries newSeries = obtainGraphSeriesFromDataPointList(deviceAddress, deviceDataPoints);
-            listOfDataPoints.add(newSeries);
-        }
-        return listOfDataPoints;
-    }
-
-    /**
-     * Obtains a SimpleXYSeries from a datapoint list.
-     *
-     * @param dataPoints that haves to be converted into a graph series.
-     * @return {@link com.androidplot.xy.SimpleXYSeries} with the device data.
      */
-    @NonNull
-    private SimpleXYSeries obtainGraphSeriesFromDataPointList(@NonNull final String deviceAddress,
-                                                              @NonNull final List<RHTDataPoint> dataPoints) {
-        if (dataPoints.isEmpty()) {
-            throw new IllegalArgumentException(
-                    String.format(
-                            "%s: %s -> In order to obtain data from a list it cannot be empty.",
-                            "obtainGraphSeriesFromDataPointList",
-                            TAG
-                    )
-            );
-        }
-        sortDataPointListByTimestamp(dataPoints);
-        final SimpleXYSeries deviceSeries = new SimpleXYSeries(deviceAddress);
-        for (final RHTDataPoint dataPoint : dataPoints) {
-            final Float value = getRequiredValueFromDatapoint(dataPoint);
-            deviceSeries.addFirst(dataPoint.getTimestamp(), value);
-        }
-        return deviceSeries;
-    }
-
-    /**
-     * Sorts the datapoint List by timestamps.
-     * Uses {@link RHTDataPoint#compareTo} for sorting.
-     *
-     * @param deviceDataPoints is to be sorted.
-     */
-    private void sortDataPointListByTimestamp(@NonNull final List<RHTDataPoint> deviceDataPoints) {
-        Collections.sort(deviceDataPoints);
-    }
-
-    /**
-     * Obtains the required value from a data point.
-     *
-     * @param dataPoint that is going to be used in order to obtain the required value.
-     * @return {@link Float} with the requiredValue. <code>null</code> if the value is corrupted.
-     */
-    private float getRequiredValueFromDatapoint(@NonNull final RHTDataPoint dataPoint) {
-        if (mUnitTypeSelected == HistoryUnitType.TEMPERATURE) {
-            return dataPoint.getTemperatureCelsius();
-        }
-        return dataPoint.getRelativeHumidity();
+    private void requestPlotUpdate(@NonNull final List<String> deviceAddressList) {
+        final HistoryIntervalType interval = mIntervalSelected;
+        mHistoryQuery = HistoryDatabaseManager.getInstance().getHistoryPointsAsync(interval, deviceAddressList,
+                new HistoryQueryCallback<HistoryResult>() {
+                    @Override
+                    public void onQueryResult(@Nullable final HistoryResult historyResult) {
+                        final Context context = getContext();
+                        if (mPlotHandler == null || context == null) {
+                            Log.e(TAG, "requestPlotUpdate -> plot view not updated.");
+                            return;
+                        }
+                        mLastHistoryResult = historyResult;
+                        mLastHistoryResultInterval = interval;
+                        mPlotHandler.updateSeries(context, historyResult, interval, mUnitTypeSelected);
+                    }
+                });
     }
 
     /**
@@ -31,47 +31,77 @@
 package com.sensirion.smartgadget.view.history;
 
 import android.support.annotation.NonNull;
-
-import com.sensirion.smartgadget.peripheral.rht_utils.RHTDataPoint;
+import android.support.annotation.Nullable;
 
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * History values of several devices, with one column-wise {@link HistorySeries} per device.
+ */
 public class HistoryResult {
 
     @NonNull
-    private final Map<String, List<RHTDataPoint>> mResultValues =
+    private final Map<String, HistorySeries> mResultValues =
             Collections.synchronizedMap(
-                    new HashMap<String, List<RHTDataPoint>>()
+                    new LinkedHashMap<String, HistorySeries>()
             );
 
     public HistoryResult(@NonNull final List<String> devices) {
         for (final String device : devices) {
-            mResultValues.put(device, Collections.synchronizedList(new LinkedList<RHTDataPoint>()));
+            mResultValues.put(device, new HistorySeries(device));
         }
     }
 
     /**
      * Obtains the history results.
      *
-     * @return Iterable of {@link java.util.List <@link RHTDataPoint>}>} with the results
+     * @return {@link java.util.Map} with the {@link HistorySeries} of every device, using the device address as key.
      */
     @NonNull
-    public Map<String, List<RHTDataPoint>> getResults() {
+    public Map<String, HistorySeries> getResults() {
         return mResultValues;
     }
 
     /**
-     * Adds a datapoint to the result list.
+     * Obtains the series of a device, creating it if the device was not requested.
      *
-     * @param dataPoint that is going to be added.
+     * @param deviceAddress of the device.
+     * @return {@link HistorySeries} of the device.
+     */
+    @NonNull
+    public HistorySeries obtainSeries(@NonNull final String deviceAddress) {
+        synchronized (mResultValues) {
+            HistorySeries series = mResultValues.get(deviceAddress);
+            if (series == null) {
+                series = new HistorySeries(deviceAddress);
+                mResultValues.put(deviceAddress, series);
+            }
+            return series;
+        }
+    }
+
+    /**
+     * Obtains the series of a device.
+     *
+     * @param deviceAddress of the device.
+     * @return {@link HistorySeries} of the device - <code>null</code> if the device is not part of the result.
+     */
+    @Nullable
+    public HistorySeries getSeries(@NonNull final String deviceAddress) {
+        return mResultValues.get(deviceAddress);
+    }
+
+    /**
+     * Adds a value to the result list. Values of a device have to be added in ascending timestamp order.
      */
     public void addResult(@NonNull final String deviceAddress,
-                          @NonNull final RHTDataPoint dataPoint) {
-        mResultValues.get(deviceAddress).add(dataPoint);
+                          final long timestamp,
+                          final float temperature,
+                          final float humidity) {
+        obtainSeries(deviceAddress).add(timestamp, temperature, humidity);
     }
 
     /**
@@ -82,7 +112,7 @@ public class HistoryResult {
     public int size() {
         int size = 0;
         synchronized (mResultValues) {
-            for (List<RHTDataPoint> results : mResultValues.values()) {
+            for (final HistorySeries results : mResultValues.values()) {
                 size += results.size();
             }
         }
@@ -94,13 +124,15 @@ public class HistoryResult {
     public String toString() {
         final StringBuilder sb = new StringBuilder();
         synchronized (mResultValues) {
-            for (final String deviceAddress : mResultValues.keySet()) {
-                for (final RHTDataPoint datapoint : mResultValues.get(deviceAddress)) {
+            for (final HistorySeries series : mResultValues.values()) {
+                for (int i = 0; i < series.size(); i++) {
                     sb.append(
                             String.format(
-                                    "\nDevice with address: %s - %s",
-                                    deviceAddress,
-                                    datapoint.toString())
+                                    "\nDevice with address: %s - Timestamp: %d - Temperature: %f - Humidity: %f",
+                                    series.getDeviceAddress(),
+                                    series.getTimestamp(i),
+                                    series.getTemperature(i),
+                                    series.getHumidity(i))
                     );
                 }
             }
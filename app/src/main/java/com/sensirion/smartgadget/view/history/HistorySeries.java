@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.view.history;
+
+import android.support.annotation.NonNull;
+
+import com.sensirion.smartgadget.view.history.type.HistoryUnitType;
+import com.sensirion.smartgadget.view.history.type.HistoryValueType;
+
+import java.util.Arrays;
+
+/**
+ * History values of a single device, stored column-wise in primitive arrays ordered by timestamp.
+ * Every value keeps the average of its bucket together with the minimum and the maximum of it.
+ * The series is filled once by the history database and read afterwards by the plot, so it is
+ * not synchronized.
+ */
+public class HistorySeries {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 64;
+
+    @NonNull
+    private final String mDeviceAddress;
+    @NonNull
+    private long[] mTimestamps;
+    @NonNull
+    private float[] mTemperatures;
+    @NonNull
+    private float[] mMinTemperatures;
+    @NonNull
+    private float[] mMaxTemperatures;
+    @NonNull
+    private float[] mHumidities;
+    @NonNull
+    private float[] mMinHumidities;
+    @NonNull
+    private float[] mMaxHumidities;
+    private int mSize = 0;
+    private boolean mHasEnvelope = false;
+
+    public HistorySeries(@NonNull final String deviceAddress) {
+        this(deviceAddress, DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public HistorySeries(@NonNull final String deviceAddress, final int initialCapacity) {
+        mDeviceAddress = deviceAddress;
+        final int capacity = Math.max(1, initialCapacity);
+        mTimestamps = new long[capacity];
+        mTemperatures = new float[capacity];
+        mMinTemperatures = new float[capacity];
+        mMaxTemperatures = new float[capacity];
+        mHumidities = new float[capacity];
+        mMinHumidities = new float[capacity];
+        mMaxHumidities = new float[capacity];
+    }
+
+    /**
+     * Appends a value to the series. Values have to be added in ascending timestamp order.
+     *
+     * @param timestamp   of the value in milliseconds.
+     * @param temperature of the value in Celsius.
+     * @param humidity    relative humidity of the value.
+     */
+    public void add(final long timestamp, final float temperature, final float humidity) {
+        add(timestamp, temperature, temperature, temperature, humidity, humidity, humidity);
+    }
+
+    /**
+     * Appends an aggregated value to the series. Values have to be added in ascending timestamp order.
+     *
+     * @param timestamp      of the value in milliseconds.
+     * @param temperature    average temperature of the value in Celsius.
+     * @param minTemperature minimum temperature of the value in Celsius.
+     * @param maxTemperature maximum temperature of the value in Celsius.
+     * @param humidity       average relative humidity of the value.
+     * @param minHumidity    minimum relative humidity of the value.
+     * @param maxHumidity    maximum relative humidity of the value.
+     */
+    public void add(final long timestamp, final float temperature, final float minTemperature, final float maxTemperature,
+                    final float humidity, final float minHumidity, final float maxHumidity) {
+        if (mSize == mTimestamps.length) {
+            final int newCapacity = mSize * 2;
+            mTimestamps = Arrays.copyOf(mTimestamps, newCapacity);
+            mTemperatures = Arrays.copyOf(mTemperatures, newCapacity);
+            mMinTemperatures = Arrays.copyOf(mMinTemperatures, newCapacity);
+            mMaxTemperatures = Arrays.copyOf(mMaxTemperatures, newCapacity);
+            mHumidities = Arrays.copyOf(mHumidities, newCapacity);
+            mMinHumidities = Arrays.copyOf(mMinHumidities, newCapacity);
+            mMaxHumidities = Arrays.copyOf(mMaxHumidities, newCapacity);
+        }
+        mTimestamps[mSize] = timestamp;
+        mTemperatures[mSize] = temperature;
+        mMinTemperatures[mSize] = minTemperature;
+        mMaxTemperatures[mSize] = maxTemperature;
+        mHumidities[mSize] = humidity;
+        mMinHumidities[mSize] = minHumidity;
+        mMaxHumidities[mSize] = maxHumidity;
+        mHasEnvelope |= minTemperature != maxTemperature || minHumidity != maxHumidity;
+        mSize++;
+    }
+
+    /**
+     * Obtains the address of the device the values belong to.
+     *
+     * @return {@link java.lang.String} with the device address.
+     */
+    @NonNull
+    public String getDeviceAddress() {
+        return mDeviceAddress;
+    }
+
+    /**
+     * Obtains the number of values of the series.
+     *
+     * @return <code>int</code> with the number of values.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Checks if the series has no values.
+     *
+     * @return <code>true</code> if the series is empty - <code>false</code> otherwise.
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Checks if any value of the series has a minimum different from its maximum.
+     *
+     * @return <code>true</code> if the series has a min/max envelope to draw - <code>false</code> otherwise.
+     */
+    public boolean hasEnvelope() {
+        return mHasEnvelope;
+    }
+
+    public long getTimestamp(final int index) {
+        checkIndex(index);
+        return mTimestamps[index];
+    }
+
+    public float getTemperature(final int index) {
+        checkIndex(index);
+        return mTemperatures[index];
+    }
+
+    public float getHumidity(final int index) {
+        checkIndex(index);
+        return mHumidities[index];
+    }
+
+    /**
+     * Obtains the value of the series that corresponds to a unit type.
+     *
+     * @param index    of the value.
+     * @param unitType that has to be returned.
+     * @return <code>float</code> with the temperature in Celsius or the relative humidity.
+     */
+    public float getValue(final int index, @NonNull final HistoryUnitType unitType) {
+        if (unitType == HistoryUnitType.TEMPERATURE) {
+            return getTemperature(index);
+        }
+        return getHumidity(index);
+    }
+
+    /**
+     * Obtains the average, minimum or maximum value of the series that corresponds to a unit type.
+     *
+     * @param index     of the value.
+     * @param unitType  that has to be returned.
+     * @param valueType that has to be returned.
+     * @return <code>float</code> with the temperature in Celsius or the relative humidity.
+     */
+    public float getValue(final int index, @NonNull final HistoryUnitType unitType, @NonNull final HistoryValueType valueType) {
+        if (valueType == HistoryValueType.MINIMUM) {
+            return getMinimumValue(index, unitType);
+        }
+        if (valueType == HistoryValueType.MAXIMUM) {
+            return getMaximumValue(index, unitType);
+        }
+        return getValue(index, unitType);
+    }
+
+    /**
+     * Obtains the minimum value of the series that corresponds to a unit type.
+     *
+     * @param index    of the value.
+     * @param unitType that has to be returned.
+     * @return <code>float</code> with the minimum temperature in Celsius or relative humidity.
+     */
+    public float getMinimumValue(final int index, @NonNull final HistoryUnitType unitType) {
+        checkIndex(index);
+        if (unitType == HistoryUnitType.TEMPERATURE) {
+            return mMinTemperatures[index];
+        }
+        return mMinHumidities[index];
+    }
+
+    /**
+     * Obtains the maximum value of the series that corresponds to a unit type.
+     *
+     * @param index    of the value.
+     * @param unitType that has to be returned.
+     * @return <code>float</code> with the maximum temperature in Celsius or relative humidity.
+     */
+    public float getMaximumValue(final int index, @NonNull final HistoryUnitType unitType) {
+        checkIndex(index);
+        if (unitType == HistoryUnitType.TEMPERATURE) {
+            return mMaxTemperatures[index];
+        }
+        return mMaxHumidities[index];
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException(String.format("Index %d is out of the series bounds. Series size: %d.", index, mSize));
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("Series of device %s with %d values.", mDeviceAddress, mSize);
+    }
+}
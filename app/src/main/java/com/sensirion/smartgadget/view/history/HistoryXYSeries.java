@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017, Sensirion AG
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of Sensirion AG nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sensirion.smartgadget.view.history;
+
+import android.support.annotation.NonNull;
+
+import com.androidplot.xy.XYSeries;
+import com.sensirion.smartgadget.utils.Converter;
+import com.sensirion.smartgadget.view.history.type.HistoryUnitType;
+import com.sensirion.smartgadget.view.history.type.HistoryValueType;
+
+/**
+ * Plot series that reads a contiguous range of a {@link HistorySeries} in place, converting
+ * the values to the displayed unit on the fly instead of copying them into a new series.
+ * The series shows either the average values or one of the bounds of the min/max envelope.
+ * NOTE: The title of the series is the device address, needed for obtaining the device color.
+ */
+class HistoryXYSeries implements XYSeries {
+
+    @NonNull
+    private final HistorySeries mSeries;
+    private final int mFirstIndex;
+    private final int mNumberValues;
+    @NonNull
+    private final HistoryUnitType mUnitType;
+    @NonNull
+    private final HistoryValueType mValueType;
+    private final boolean mIsFahrenheit;
+    private final long mSingleValueLineLength;
+
+    /**
+     * @param series                the values are read from.
+     * @param firstIndex            of the first value of the series that is displayed.
+     * @param numberValues          number of consecutive values that are displayed.
+     * @param unitType              unit of the displayed values.
+     * @param valueType             average, minimum or maximum of the displayed buckets.
+     * @param isFahrenheit          <code>true</code> if temperatures are displayed in Fahrenheit.
+     * @param singleValueLineLength length in milliseconds of the line used when only one value is displayed.
+     */
+    HistoryXYSeries(@NonNull final HistorySeries series,
+                    final int firstIndex,
+                    final int numberValues,
+                    @NonNull final HistoryUnitType unitType,
+                    @NonNull final HistoryValueType valueType,
+                    final boolean isFahrenheit,
+                    final long singleValueLineLength) {
+        mSeries = series;
+        mFirstIndex = firstIndex;
+        mNumberValues = numberValues;
+        mUnitType = unitType;
+        mValueType = valueType;
+        mIsFahrenheit = isFahrenheit;
+        mSingleValueLineLength = singleValueLineLength;
+    }
+
+    /**
+     * Obtains a value of a series converted to the displayed unit.
+     *
+     * @param series       the value is read from.
+     * @param index        of the value in the series.
+     * @param unitType     unit of the displayed values.
+     * @param valueType    average, minimum or maximum of the displayed bucket.
+     * @param isFahrenheit <code>true</code> if temperatures are displayed in Fahrenheit.
+     * @return <code>float</code> with the displayed value.
+     */
+    static float obtainDisplayedValue(@NonNull final HistorySeries series,
+                                      final int index,
+                                      @NonNull final HistoryUnitType unitType,
+                                      @NonNull final HistoryValueType valueType,
+                                      final boolean isFahrenheit) {
+        final float value = series.getValue(index, unitType, valueType);
+        if (isFahrenheit && unitType == HistoryUnitType.TEMPERATURE) {
+            return Converter.convertToF(value);
+        }
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getTitle() {
+        return mSeries.getDeviceAddress();
+    }
+
+    /**
+     * By definition a linear format only shows the difference between two values. A series with
+     * a single value is displayed as a tiny line ending in that value.
+     * <p/>
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return (mNumberValues == 1) ? 2 : mNumberValues;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Number getX(final int index) {
+        if (mNumberValues == 1) {
+            final long timestamp = mSeries.getTimestamp(mFirstIndex);
+            return (index == 0) ? timestamp - mSingleValueLineLength : timestamp;
+        }
+        return mSeries.getTimestamp(mFirstIndex + index);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Number getY(final int index) {
+        final int seriesIndex = (mNumberValues == 1) ? mFirstIndex : mFirstIndex + index;
+        return obtainDisplayedValue(mSeries, seriesIndex, mUnitType, mValueType, mIsFahrenheit);
+    }
+}
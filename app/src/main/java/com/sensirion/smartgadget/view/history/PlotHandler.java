@@ -47,21 +47,18 @@ import com.androidplot.ui.SizeMode;
 import com.androidplot.ui.VerticalPositioning;
 import com.androidplot.xy.BoundaryMode;
 import com.androidplot.xy.LineAndPointFormatter;
-import com.androidplot.xy.SimpleXYSeries;
 import com.androidplot.xy.StepMode;
 import com.androidplot.xy.XYGraphWidget;
 import com.androidplot.xy.XYPlot;
 import com.sensirion.smartgadget.R;
-import com.sensirion.smartgadget.utils.Converter;
 import com.sensirion.smartgadget.utils.Settings;
 import com.sensirion.smartgadget.utils.view.ColorManager;
 import com.sensirion.smartgadget.view.history.graph.value_formatter.ShowNothingFormat;
 import com.sensirion.smartgadget.view.history.type.HistoryIntervalType;
 import com.sensirion.smartgadget.view.history.type.HistoryUnitType;
+import com.sensirion.smartgadget.view.history.type.HistoryValueType;
 
 import java.text.Format;
-import java.util.LinkedList;
-import java.util.List;
 
 import butterknife.BindInt;
 import butterknife.BindString;
@@ -105,8 +102,8 @@ public class PlotHandler {
     int GAP_THRESHOLD_RESOLUTION_MULTIPLIER;
 
     // Plot State
-    @NonNull
-    private List<SimpleXYSeries> mDeviceSeries = new LinkedList<>();
+    @Nullable
+    private HistoryResult mHistoryResult;
     private boolean mShouldResetRangeBoundaries = true;
     private double mRangeValueMin;
     private double mRangeValueMax;
@@ -197,13 +194,13 @@ public class PlotHandler {
     }
 
     public synchronized void updateSeries(@NonNull final Context context,
-                                          @NonNull final List<SimpleXYSeries> series,
+                                          @Nullable final HistoryResult historyResult,
                                           @NonNull final HistoryIntervalType interval,
                                           @NonNull final HistoryUnitType type) {
 
         mShouldResetRangeBoundaries = true;
         cleanSeries();
-        mDeviceSeries = series;
+        mHistoryResult = historyResult;
         updatePlotRangeFormat(context, type);
         updatePlotDomainFormat(context, interval);
         updatePlot();
@@ -248,20 +245,21 @@ public class PlotHandler {
     private void updatePlot() {
         boolean validSeriesFound = false;
         long biggestTimestampSeries = 0;
-        for (final SimpleXYSeries deviceSeries : mDeviceSeries) {
-            checkSeriesRange(deviceSeries);
-            final long biggestSeriesTimestamp = obtainBiggestTimestampSeries(deviceSeries);
-            if (biggestSeriesTimestamp > biggestTimestampSeries) {
-                biggestTimestampSeries = biggestSeriesTimestamp;
-            }
-            final LineAndPointFormatter deviceFormatter = getDeviceFormatterFromSeries(deviceSeries);
-
-            List<SimpleXYSeries> deviceSeriesNoGaps = handleGapsForSeries(deviceSeries);
-            for (final SimpleXYSeries series : deviceSeriesNoGaps) {
-                mViewPlot.addSeries(prepareSeriesToShow(series), deviceFormatter);
+        if (mHistoryResult != null) {
+            for (final HistorySeries deviceSeries : mHistoryResult.getResults().values()) {
+                if (deviceSeries.isEmpty()) {
+                    continue;
+                }
+                checkSeriesRange(deviceSeries);
+                final long biggestSeriesTimestamp = deviceSeries.getTimestamp(deviceSeries.size() - 1);
+                if (biggestSeriesTimestamp > biggestTimestampSeries) {
+                    biggestTimestampSeries = biggestSeriesTimestamp;
+                }
+                final LineAndPointFormatter deviceFormatter = getDeviceFormatter(deviceSeries.getDeviceAddress());
+                final LineAndPointFormatter envelopeFormatter = getEnvelopeFormatter(deviceSeries.getDeviceAddress());
+                addSeriesHandlingGaps(deviceSeries, deviceFormatter, envelopeFormatter);
+                validSeriesFound = true;
             }
-
-            validSeriesFound = true;
         }
         adjustGraphFormat(biggestTimestampSeries, validSeriesFound);
     }
@@ -279,120 +277,93 @@ public class PlotHandler {
     }
 
     /**
-     * Separates a series in several series so the graph will have separated lines for very separated datapoints.
+     * Adds a series to the plot, separated in several plot series so the graph will have separated
+     * lines for very separated datapoints. The plot series read the device series in place.
+     * If the series has a min/max envelope its bounds are drawn behind the average line.
      *
-     * @param deviceSeries that is going to be slitted.
-     * @return {@link java.util.List} with the different series.
+     * @param deviceSeries      that is going to be split, ordered by timestamp.
+     * @param deviceFormatter   used for every average plot series of the device.
+     * @param envelopeFormatter used for every min/max plot series of the device.
      */
-    @NonNull
-    private List<SimpleXYSeries> handleGapsForSeries(@NonNull final SimpleXYSeries deviceSeries) {
-        final List<SimpleXYSeries> listOfSeriesOfDevice = new LinkedList<>();
-
-        SimpleXYSeries analysedSeries = new SimpleXYSeries(deviceSeries.getTitle());
-
-        final long lastIntervalResolution = mLastInterval.getIntervalView().getResolution();
+    private void addSeriesHandlingGaps(@NonNull final HistorySeries deviceSeries,
+                                       @Nullable final LineAndPointFormatter deviceFormatter,
+                                       @Nullable final LineAndPointFormatter envelopeFormatter) {
+        final long lastIntervalResolution = mLastInterval.getDataSource().getResolution();
         final long maximumResolutionBetweenGraphPoints = lastIntervalResolution * GAP_THRESHOLD_RESOLUTION_MULTIPLIER;
-
-        for (int i = deviceSeries.size() - 1; i >= 0; i--) {
-            if (analysedSeries.size() > 0) {
-                final long timestampDeviceSeries = deviceSeries.getX(i).longValue();
-                final long lastTimestampSeriesToShow = analysedSeries.getX(analysedSeries.size() - 1).longValue();
-                if (timestampDeviceSeries > lastTimestampSeriesToShow + maximumResolutionBetweenGraphPoints) {
-                    listOfSeriesOfDevice.add(analysedSeries);
-                    analysedSeries = new SimpleXYSeries(deviceSeries.getTitle());
+        final long singleValueLineLength = lastIntervalResolution / 3;
+        final boolean isFahrenheit = mIsFahrenheit && mLastUnit == HistoryUnitType.TEMPERATURE;
+        final boolean hasEnvelope = deviceSeries.hasEnvelope();
+
+        int firstSegmentIndex = 0;
+        for (int i = 1; i <= deviceSeries.size(); i++) {
+            if (i == deviceSeries.size()
+                    || deviceSeries.getTimestamp(i) > deviceSeries.getTimestamp(i - 1) + maximumResolutionBetweenGraphPoints) {
+                final int numberSegmentValues = i - firstSegmentIndex;
+                if (hasEnvelope) {
+                    mViewPlot.addSeries(new HistoryXYSeries(deviceSeries, firstSegmentIndex, numberSegmentValues,
+                            mLastUnit, HistoryValueType.MINIMUM, isFahrenheit, singleValueLineLength), envelopeFormatter);
+                    mViewPlot.addSeries(new HistoryXYSeries(deviceSeries, firstSegmentIndex, numberSegmentValues,
+                            mLastUnit, HistoryValueType.MAXIMUM, isFahrenheit, singleValueLineLength), envelopeFormatter);
                 }
+                final HistoryXYSeries segment = new HistoryXYSeries(deviceSeries, firstSegmentIndex, numberSegmentValues,
+                        mLastUnit, HistoryValueType.AVERAGE, isFahrenheit, singleValueLineLength);
+                mViewPlot.addSeries(segment, deviceFormatter);
+                firstSegmentIndex = i;
             }
-            analysedSeries.addLast(deviceSeries.getX(i), deviceSeries.getY(i));
         }
-        listOfSeriesOfDevice.add(analysedSeries);
-        return listOfSeriesOfDevice;
-    }
-
-    @NonNull
-    private SimpleXYSeries prepareSeriesToShow(@NonNull final SimpleXYSeries series) {
-        final SimpleXYSeries fixedDeviceSeries;
-        if (mIsFahrenheit && mLastUnit == HistoryUnitType.TEMPERATURE) {
-            fixedDeviceSeries = convertSeriesToFahrenheit(series);
-        } else {
-            fixedDeviceSeries = series;
-        }
-        if (fixedDeviceSeries.size() == 1) {
-            prepare1ValueSeries(fixedDeviceSeries);
-        }
-        return fixedDeviceSeries;
-    }
-
-    @NonNull
-    private SimpleXYSeries convertSeriesToFahrenheit(@NonNull final SimpleXYSeries seriesInCelsius) {
-        final SimpleXYSeries seriesInFahrenheit = new SimpleXYSeries(seriesInCelsius.getTitle());
-        for (int i = 0; i < seriesInCelsius.size(); i++) {
-            final Number x = seriesInCelsius.getX(i);
-            final Number y = Converter.convertToF(seriesInCelsius.getY(i).floatValue());
-            seriesInFahrenheit.addFirst(x, y);
-        }
-        return seriesInFahrenheit;
-    }
-
-    private long obtainBiggestTimestampSeries(@NonNull final SimpleXYSeries series) {
-        final long firstValue = series.getX(0).longValue();
-        final long lastValue = series.getX(series.size() - 1).longValue();
-
-        if (firstValue > lastValue) {
-            return firstValue;
-        }
-        return lastValue;
     }
 
     /**
-     * Checks if the graph range is modified in some way when.
+     * Checks if the graph range is modified in some way when. The min/max envelope of the series
+     * has to fit in the graph too.
      *
      * @param series that has to be checked.
      */
-    private void checkSeriesRange(@NonNull final SimpleXYSeries series) {
+    private void checkSeriesRange(@NonNull final HistorySeries series) {
+        final boolean isFahrenheit = mIsFahrenheit && mLastUnit == HistoryUnitType.TEMPERATURE;
         for (int i = 0; i < series.size(); i++) {
-            final float rangeValue = series.getY(i).floatValue();
-            if (mIsFahrenheit && mLastUnit == HistoryUnitType.TEMPERATURE) {
-                final float rangeValueFahrenheit = Converter.convertToF(rangeValue);
-                recalculateRangeBoundaries(rangeValueFahrenheit);
-            } else {
-                recalculateRangeBoundaries(rangeValue);
-            }
+            recalculateRangeBoundaries(HistoryXYSeries.obtainDisplayedValue(series, i, mLastUnit, HistoryValueType.MINIMUM, isFahrenheit));
+            recalculateRangeBoundaries(HistoryXYSeries.obtainDisplayedValue(series, i, mLastUnit, HistoryValueType.MAXIMUM, isFahrenheit));
         }
     }
 
-    /**
-     * By definition a linear format only shows the deference between two values. In this way when we have
-     * 1 single value the graph is shown. It extends the value to show a tiny line to display the value.
-     *
-     * @param series that is going to be prepared to be shown.
-     */
-    private void prepare1ValueSeries(@NonNull final SimpleXYSeries series) {
-        final long resolutionTime = mLastInterval.getIntervalView().getResolution();
-        final long displayedLineLength = resolutionTime / 3;
-        series.addFirst((series.getX(0).longValue() - displayedLineLength), series.getY(0));
-    }
-
     /**
      * Obtains and prepares the formatter of a series, using the specific color of a device.
      *
-     * @param deviceSeries that is to be formatted.
+     * @param deviceAddress of the device whose series is going to be formatted.
      * @return {@link com.androidplot.xy.LineAndPointFormatter} of a device series.
-     * NOTE: The name of a series MUST be the device address of the device.
      */
     @Nullable
-    private LineAndPointFormatter getDeviceFormatterFromSeries(@NonNull final SimpleXYSeries deviceSeries) {
-        final int lineColor = ColorManager.getInstance().getDeviceColor(deviceSeries.getTitle());
+    private LineAndPointFormatter getDeviceFormatter(@NonNull final String deviceAddress) {
+        final int lineColor = ColorManager.getInstance().getDeviceColor(deviceAddress);
         final Paint fillColor = new Paint();
         fillColor.setColor(lineColor);
         fillColor.setAlpha(45);
         return new LineAndPointFormatter(lineColor, null, fillColor.getColor(), null);
     }
 
+    /**
+     * Obtains and prepares the formatter of the min/max envelope of a series, using a translucent
+     * version of the specific color of a device.
+     *
+     * @param deviceAddress of the device whose envelope is going to be formatted.
+     * @return {@link com.androidplot.xy.LineAndPointFormatter} of a device envelope series.
+     */
+    @Nullable
+    private LineAndPointFormatter getEnvelopeFormatter(@NonNull final String deviceAddress) {
+        final Paint envelopeColor = new Paint();
+        envelopeColor.setColor(ColorManager.getInstance().getDeviceColor(deviceAddress));
+        envelopeColor.setAlpha(110);
+        final LineAndPointFormatter formatter = new LineAndPointFormatter(envelopeColor.getColor(), null, null, null);
+        formatter.getLinePaint().setStrokeWidth(formatter.getLinePaint().getStrokeWidth() / 2);
+        return formatter;
+    }
+
     /**
      * Deletes all the graph data displayed in the plot.
      */
     private void cleanSeries() {
-        mDeviceSeries.clear();
+        mHistoryResult = null;
 
         /* FIXME Change plot update approach.
          *
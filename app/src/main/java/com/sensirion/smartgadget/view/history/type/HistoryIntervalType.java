@@ -32,88 +32,90 @@ package com.sensirion.smartgadget.view.history.type;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.PluralsRes;
 import android.support.annotation.StringRes;
 
 import com.sensirion.smartgadget.R;
-import com.sensirion.smartgadget.persistence.history_database.table.AbstractHistoryDataView;
-import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataLast10MinutesView;
-import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataLast1DayView;
-import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataLast1HourView;
-import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataLast1WeekView;
-import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataLast6HoursView;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryDataSource;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryTier;
+import com.sensirion.smartgadget.persistence.history_database.table.HistoryTierConfiguration;
 import com.sensirion.smartgadget.view.history.graph.value_formatter.DaysElapsedTimeFormat;
 import com.sensirion.smartgadget.view.history.graph.value_formatter.HourElapsedTimeFormat;
 import com.sensirion.smartgadget.view.history.graph.value_formatter.MinutesElapsedTimeFormat;
 
 import java.text.Format;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-public enum HistoryIntervalType {
-
-    INTERVAL_OF_10_MINUTES(
-            0,
-            R.string.label_10_minutes,
-            HistoryDataLast10MinutesView.getInstance(),
-            11,
-            new MinutesElapsedTimeFormat(),
-            R.string.graph_label_domain_min
-    ),
-    INTERVAL_OF_1_HOUR(
-            1,
-            R.string.label_1_hour,
-            HistoryDataLast1HourView.getInstance(),
-            7,
-            new MinutesElapsedTimeFormat(),
-            R.string.graph_label_domain_min
-    ),
-    INTERVAL_OF_6_HOUR(
-            2,
-            R.string.label_6_hours,
-            HistoryDataLast6HoursView.getInstance(),
-            7,
-            new HourElapsedTimeFormat(),
-            R.string.graph_label_domain_hours
-    ),
-    INTERVAL_OF_1_DAY(
-            3,
-            R.string.label_1_day,
-            HistoryDataLast1DayView.getInstance(),
-            7,
-            new HourElapsedTimeFormat(),
-            R.string.graph_label_domain_hours
-    ),
-    INTERVAL_OF_1_WEEK(
-            4,
-            R.string.label_1_week,
-            HistoryDataLast1WeekView.getInstance(),
-            8,
-            new DaysElapsedTimeFormat(),
-            R.string.graph_label_domain_days
-    );
+/**
+ * Selectable history interval. There is an interval for the retention of every tier of the
+ * {@link HistoryTierConfiguration}, ordered by length.
+ */
+public final class HistoryIntervalType {
 
     @NonNull
     private static final String TAG = HistoryIntervalType.class.getSimpleName();
 
+    // Units of the display names, from the largest to the smallest one.
+    private static final long[] DISPLAY_UNITS_MS = {
+            TimeUnit.DAYS.toMillis(365),
+            TimeUnit.DAYS.toMillis(30),
+            TimeUnit.DAYS.toMillis(7),
+            TimeUnit.DAYS.toMillis(1),
+            TimeUnit.HOURS.toMillis(1),
+            TimeUnit.MINUTES.toMillis(1)
+    };
+    private static final int[] DISPLAY_UNIT_NAME_IDS = {
+            R.plurals.label_interval_years,
+            R.plurals.label_interval_months,
+            R.plurals.label_interval_weeks,
+            R.plurals.label_interval_days,
+            R.plurals.label_interval_hours,
+            R.plurals.label_interval_minutes
+    };
+
+    // Intervals with a domain element per time unit have at most this many units.
+    private static final int MAX_NUMBER_DOMAIN_UNITS = 10;
+    private static final int DEFAULT_NUMBER_DOMAIN_ELEMENTS = 7;
+
+    @Nullable
+    private static HistoryTierConfiguration mIntervalsConfiguration;
+    @Nullable
+    private static List<HistoryIntervalType> mIntervals;
+
     private final int mPosition;
-    private final int mDisplayNameId;
-    @NonNull
-    private final AbstractHistoryDataView mDatabaseView;
-    private final int mNumberDomainElements;
-    @NonNull
-    private final Format mTimeFormat;
-    private final int mGraphLabelId;
-
-    HistoryIntervalType(final int position,
-                        @StringRes final int displayNameId,
-                        @NonNull final AbstractHistoryDataView view,
-                        final int numberDomainElements,
-                        @NonNull final Format timeFormat,
-                        @StringRes final int graphLabelId) {
+    private final long mNumberMilliseconds;
+
+    private HistoryIntervalType(final int position, final long numberMilliseconds) {
         mPosition = position;
-        mDisplayNameId = displayNameId;
-        mDatabaseView = view;
-        mNumberDomainElements = numberDomainElements;
-        mTimeFormat = timeFormat;
-        mGraphLabelId = graphLabelId;
+        mNumberMilliseconds = numberMilliseconds;
+    }
+
+    /**
+     * Obtains the selectable intervals of the current {@link HistoryTierConfiguration}. The list is
+     * built again when the configuration is replaced.
+     *
+     * @return unmodifiable {@link List} with the intervals, ordered by position.
+     */
+    @NonNull
+    public synchronized static List<HistoryIntervalType> getIntervals() {
+        final HistoryTierConfiguration configuration = HistoryTierConfiguration.getInstance();
+        if (mIntervals == null || mIntervalsConfiguration != configuration) {
+            final List<HistoryIntervalType> intervals = new ArrayList<>();
+            intervals.add(new HistoryIntervalType(0, configuration.getRawTier().getRetentionMs()));
+            for (final HistoryTier rollupTier : configuration.getRollupTiers()) {
+                final long retentionMs = rollupTier.getRetentionMs();
+                if (retentionMs > intervals.get(intervals.size() - 1).getNumberMilliseconds()) {
+                    intervals.add(new HistoryIntervalType(intervals.size(), retentionMs));
+                }
+            }
+            mIntervals = Collections.unmodifiableList(intervals);
+            mIntervalsConfiguration = configuration;
+        }
+        return mIntervals;
     }
 
     /**
@@ -124,19 +126,18 @@ public enum HistoryIntervalType {
      */
     @NonNull
     public static HistoryIntervalType getInterval(final int position) {
-        for (final HistoryIntervalType interval : values()) {
-            if (interval.getPosition() == position) {
-                return interval;
-            }
+        final List<HistoryIntervalType> intervals = getIntervals();
+        if (position < 0 || position >= intervals.size()) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "%s: getInterval -> Position %d it's not a valid %s.",
+                            TAG,
+                            position,
+                            TAG
+                    )
+            );
         }
-        throw new IllegalArgumentException(
-                String.format(
-                        "%s: getInterval -> Position %d it's not a valid %s.",
-                        TAG,
-                        position,
-                        TAG
-                )
-        );
+        return intervals.get(position);
     }
 
     /**
@@ -149,33 +150,49 @@ public enum HistoryIntervalType {
     }
 
     /**
-     * Obtains the display name from the database.
+     * Obtains the display name of the interval, in the largest unit that divides it.
      *
      * @param context needed for extracting the label from the XML.
      * @return {@link String} with the display name
      */
     @NonNull
     public String getDisplayName(@NonNull final Context context) {
-        return context.getResources().getString(mDisplayNameId);
+        int unitIndex = DISPLAY_UNITS_MS.length - 1;
+        for (int i = 0; i < DISPLAY_UNITS_MS.length; i++) {
+            if (mNumberMilliseconds % DISPLAY_UNITS_MS[i] == 0) {
+                unitIndex = i;
+                break;
+            }
+        }
+        @PluralsRes final int displayNameId = DISPLAY_UNIT_NAME_IDS[unitIndex];
+        final int numberUnits = (int) Math.max(1, mNumberMilliseconds / DISPLAY_UNITS_MS[unitIndex]);
+        return context.getResources().getQuantityString(displayNameId, numberUnits, numberUnits);
     }
 
     /**
-     * Obtains the database {@link AbstractHistoryDataView} from the interval
+     * Obtains the database {@link HistoryDataSource} the interval is read from, which depends on
+     * the tiers of the {@link HistoryTierConfiguration}.
      *
-     * @return {@link AbstractHistoryDataView}
+     * @return {@link HistoryDataSource}
      */
     @NonNull
-    public AbstractHistoryDataView getIntervalView() {
-        return mDatabaseView;
+    public HistoryDataSource getDataSource() {
+        return HistoryTierConfiguration.getInstance().obtainDataSource(mNumberMilliseconds);
     }
 
     /**
-     * Obtains the number of domain elements in the graph.
+     * Obtains the number of domain elements in the graph: one per time unit of the graph label
+     * for short intervals.
      *
      * @return <code>int</code> with the number of domain elements.
      */
     public int getNumberDomainElements() {
-        return mNumberDomainElements;
+        final long domainUnitMs = obtainDomainUnitMs();
+        final long numberDomainUnits = mNumberMilliseconds / domainUnitMs;
+        if (mNumberMilliseconds % domainUnitMs == 0 && numberDomainUnits <= MAX_NUMBER_DOMAIN_UNITS) {
+            return (int) numberDomainUnits + 1;
+        }
+        return DEFAULT_NUMBER_DOMAIN_ELEMENTS;
     }
 
     /**
@@ -185,7 +202,12 @@ public enum HistoryIntervalType {
      */
     @NonNull
     public Format getTimeFormat() {
-        return mTimeFormat;
+        if (obtainDomainUnitMs() == TimeUnit.MINUTES.toMillis(1)) {
+            return new MinutesElapsedTimeFormat();
+        } else if (obtainDomainUnitMs() == TimeUnit.HOURS.toMillis(1)) {
+            return new HourElapsedTimeFormat();
+        }
+        return new DaysElapsedTimeFormat();
     }
 
     /**
@@ -196,15 +218,43 @@ public enum HistoryIntervalType {
      */
     @NonNull
     public String getGraphLabel(@NonNull final Context context) {
-        return context.getResources().getString(mGraphLabelId);
+        @StringRes final int graphLabelId;
+        if (obtainDomainUnitMs() == TimeUnit.MINUTES.toMillis(1)) {
+            graphLabelId = R.string.graph_label_domain_min;
+        } else if (obtainDomainUnitMs() == TimeUnit.HOURS.toMillis(1)) {
+            graphLabelId = R.string.graph_label_domain_hours;
+        } else {
+            graphLabelId = R.string.graph_label_domain_days;
+        }
+        return context.getResources().getString(graphLabelId);
     }
 
     /**
-     * Obtains the number of milliseconds of the view.
+     * Obtains the number of milliseconds of the interval.
      *
-     * @return <code>int</code> with the number of milliseconds.
+     * @return <code>long</code> with the number of milliseconds.
      */
-    public int getNumberMilliseconds() {
-        return mDatabaseView.getNumberMilliseconds();
+    public long getNumberMilliseconds() {
+        return mNumberMilliseconds;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("%s(position=%d, %d ms)", TAG, mPosition, mNumberMilliseconds);
+    }
+
+    /**
+     * Minutes are shown for intervals up to one hour, hours up to one day and days otherwise.
+     */
+    private long obtainDomainUnitMs() {
+        if (mNumberMilliseconds <= TimeUnit.HOURS.toMillis(1)) {
+            return TimeUnit.MINUTES.toMillis(1);
+        } else if (mNumberMilliseconds <= TimeUnit.DAYS.toMillis(1)) {
+            return TimeUnit.HOURS.toMillis(1);
+        }
+        return TimeUnit.DAYS.toMillis(1);
     }
 }